@@ -0,0 +1,40 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks of this module with the GC profiler, so that the
+ * allocation rate is reported for each benchmark. All arguments are passed to
+ * JMH, e.g., {@code -p reactions=1000} restricts the runs to the smallest
+ * tables and a regular expression selects some of the benchmarks.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class BenchmarkRunner {
+
+  /**
+   * @param args
+   *        JMH command-line options
+   * @throws RunnerException
+   * @throws CommandLineOptionException
+   */
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    OptionsBuilder options = new OptionsBuilder();
+    options.parent(cmd);
+    options.addProfiler(GCProfiler.class);
+    if (cmd.getIncludes().isEmpty()) {
+      options.include(BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark");
+    }
+    new Runner(options.build()).run();
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.ext.fbc.converters.GPRParser;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Compares parsing every gene-protein-reaction rule with {@link GPRParser} to
+ * the {@link GPRCache}, which parses each distinct rule only once. The rules
+ * are drawn from a pool of isozyme sets and enzyme complexes, so that the
+ * fewer distinct rules there are, the more reactions share the same rule.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GPRBenchmark {
+
+  /**
+   * One rule for each reaction.
+   */
+  @State(Scope.Benchmark)
+  public static class Rules {
+
+    /** Number of reactions. */
+    @Param({"10000"})
+    public int reactions;
+
+    /** Number of distinct rules among all reactions. */
+    @Param({"100", "1000", "10000"})
+    public int distinctRules;
+
+    String gprs[];
+
+    /**
+     * Generates the rules.
+     */
+    @Setup(Level.Trial)
+    public void generate() {
+      Random random = new Random(1L);
+      int geneCount = Math.max(10, reactions * 2 / 3);
+      String pool[] = new String[distinctRules];
+      for (int i = 0; i < pool.length; i++) {
+        String genes[] = new String[4];
+        for (int j = 0; j < genes.length; j++) {
+          genes[j] = format("cg{0,number,0000}", random.nextInt(geneCount));
+        }
+        switch (random.nextInt(4)) {
+        case 0:
+          pool[i] = genes[0];
+          break;
+        case 1:
+          pool[i] = format("{0} or {1} or {2}", (Object[]) genes);
+          break;
+        case 2:
+          pool[i] = format("{0} and {1} and {2}", (Object[]) genes);
+          break;
+        default:
+          pool[i] = format("({0} and {1}) or ({2} and {3})", (Object[]) genes);
+          break;
+        }
+      }
+      gprs = new String[reactions];
+      for (int i = 0; i < gprs.length; i++) {
+        gprs[i] = pool[random.nextInt(pool.length)];
+      }
+    }
+
+  }
+
+  /**
+   * A new model with one reaction without rule for each rule.
+   */
+  @State(Scope.Thread)
+  public static class Reactions {
+
+    List<Reaction> reactions;
+
+    /**
+     * @param rules
+     */
+    @Setup(Level.Invocation)
+    public void create(Rules rules) {
+      ModelBuilder builder = Table2Model.createModelBuilder();
+      reactions = new ArrayList<Reaction>(rules.gprs.length);
+      for (int i = 0; i < rules.gprs.length; i++) {
+        reactions.add(builder.buildReaction("R_" + i, null, (Compartment) null, false, false));
+      }
+    }
+
+  }
+
+  /**
+   * Parses every rule with {@link GPRParser}.
+   *
+   * @param rules
+   * @param state
+   * @param blackhole
+   */
+  @Benchmark
+  public void parseGPR(Rules rules, Reactions state, Blackhole blackhole) {
+    for (int i = 0; i < rules.gprs.length; i++) {
+      blackhole.consume(GPRParser.parseGPR(state.reactions.get(i), rules.gprs[i], false, false));
+    }
+  }
+
+  /**
+   * Parses each distinct rule once and copies it for all other reactions.
+   *
+   * @param rules
+   * @param state
+   * @param blackhole
+   */
+  @Benchmark
+  public void cachedGPR(Rules rules, Reactions state, Blackhole blackhole) {
+    GPRCache cache = new GPRCache();
+    for (int i = 0; i < rules.gprs.length; i++) {
+      blackhole.consume(cache.parseGPR(state.reactions.get(i), rules.gprs[i], false));
+    }
+  }
+
+}
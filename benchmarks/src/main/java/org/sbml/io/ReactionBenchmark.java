@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.converters.GPRParser;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Measures the steps of {@link ReactionRowReader} that build the model
+ * separately: reaction equations, gene-protein-reaction rules, and flux
+ * bounds. Each benchmark method processes all rows of the reaction table.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReactionBenchmark {
+
+  /**
+   * The parsed reaction table together with a model that already contains
+   * all reactions.
+   */
+  @State(Scope.Benchmark)
+  public static class Reactions {
+
+    ReactionRowReader reader;
+    ModelBuilder builder;
+    List<ParsedReaction> records;
+    List<Reaction> reactions;
+
+    /**
+     * @param fixture
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void read(TableFixture fixture) throws IOException {
+      ConversionContext context = new ConversionContext();
+      builder = fixture.newBuilderWithMetabolites(context);
+      reader = new ReactionRowReader(context);
+      records = new ArrayList<ParsedReaction>();
+      TableTokenizer tokenizer = new TableTokenizer(fixture.reactionFile, fixture.options.getSeparator(), fixture.options.getCharset());
+      try {
+        TableRow row;
+        while ((row = tokenizer.next()) != null) {
+          if (row.getRowNumber() > 0) {
+            records.add(reader.parseRow(row));
+          }
+        }
+      } finally {
+        tokenizer.close();
+      }
+      reactions = new ArrayList<Reaction>(records.size());
+      for (ParsedReaction record : records) {
+        reactions.add((Reaction) reader.applyRow(record, builder));
+      }
+    }
+
+  }
+
+  /**
+   * Adds the participants of all equations to new reactions outside of the
+   * model.
+   *
+   * @param state
+   * @param blackhole
+   */
+  @Benchmark
+  public void readRxnEqn(Reactions state, Blackhole blackhole) {
+    Model m = state.builder.getModel();
+    for (ParsedReaction record : state.records) {
+      Reaction r = new Reaction(m.getLevel(), m.getVersion());
+      r.setId(record.id);
+      r.setReversible(record.reversible);
+      state.reader.readRxnEqn(record, r, state.builder);
+      blackhole.consume(r);
+    }
+  }
+
+  /**
+   * Parses all gene-protein-reaction rules again.
+   *
+   * @param state
+   * @param blackhole
+   */
+  @Benchmark
+  public void parseGPR(Reactions state, Blackhole blackhole) {
+    for (int i = 0; i < state.records.size(); i++) {
+      String gpr = state.records.get(i).gpr;
+      if (gpr != null) {
+        blackhole.consume(GPRParser.parseGPR(state.reactions.get(i), gpr, false, false));
+      }
+    }
+  }
+
+  /**
+   * Assigns the flux bounds of all reactions again.
+   *
+   * @param state
+   */
+  @Benchmark
+  public void readFluxBounds(Reactions state) {
+    Model m = state.builder.getModel();
+    for (int i = 0; i < state.records.size(); i++) {
+      ParsedReaction record = state.records.get(i);
+      Reaction r = state.reactions.get(i);
+      FBCReactionPlugin rplug = (FBCReactionPlugin) r.getPlugin(FBCConstants.shortLabel);
+      state.reader.readFluxBounds(record.lowerBound, record.upperBound, state.builder, r, m, rplug);
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Measures {@link Table2Model#readTable(java.io.File, ModelBuilder, RowReader, ConversionOptions)}
+ * for both tables, i.e., tokenizing, parsing, and building the model.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadTableBenchmark {
+
+  /**
+   * @param fixture
+   * @return the model with all metabolites.
+   * @throws IOException
+   */
+  @Benchmark
+  public Model readMetabolites(TableFixture fixture) throws IOException {
+    return fixture.newBuilderWithMetabolites(new ConversionContext()).getModel();
+  }
+
+  /**
+   * @param fixture
+   * @return the model with all metabolites and reactions.
+   * @throws IOException
+   */
+  @Benchmark
+  public Model readTables(TableFixture fixture) throws IOException {
+    ConversionContext context = new ConversionContext();
+    ModelBuilder builder = fixture.newBuilderWithMetabolites(context);
+    Table2Model.readTable(fixture.reactionFile, builder, new ReactionRowReader(context), fixture.options);
+    return builder.getModel();
+  }
+
+}
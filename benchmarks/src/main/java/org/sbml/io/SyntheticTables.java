@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates metabolite and reaction tables in the column layout of the
+ * iCW773 tables. The tables are random but reproducible: the same number of
+ * reactions and the same seed always give identical files. The proportions
+ * of metabolites, genes, compartments, and subsystems follow those of
+ * genome-scale models.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class SyntheticTables {
+
+  /** The compartments of all species. */
+  private static final String COMPARTMENTS[] = {"c", "e", "p"};
+
+  private static final String FORMULAS[] = {"C6H12O6", "H2O", "C3H4O3", "CO2", "H", "C10H16N5O13P3", "C21H36N7O16P3S", ""};
+
+  private static final String CHARGES[] = {"0", "-1", "1", "-2", ""};
+
+  /** Number of subsystems per thousand reactions. */
+  private static final int SUBSYSTEMS_PER_1000 = 60;
+
+  private final int reactionCount;
+  private final int metaboliteCount;
+  private final int geneCount;
+  private final int subsystemCount;
+  private final long seed;
+
+  /**
+   * @param reactionCount
+   *        the number of rows in the reaction table
+   * @param seed
+   *        seed for the random numbers
+   */
+  public SyntheticTables(int reactionCount, long seed) {
+    this.reactionCount = reactionCount;
+    this.seed = seed;
+    // iCW773 has 1207 reactions, 950 metabolites, and 773 genes.
+    metaboliteCount = Math.max(10, reactionCount * 4 / 5);
+    geneCount = Math.max(10, reactionCount * 2 / 3);
+    subsystemCount = Math.max(1, reactionCount * SUBSYSTEMS_PER_1000 / 1000);
+  }
+
+  /**
+   * @return the number of rows in the reaction table.
+   */
+  public int getReactionCount() {
+    return reactionCount;
+  }
+
+  /**
+   * @return the number of rows in the metabolite table.
+   */
+  public int getMetaboliteCount() {
+    return metaboliteCount;
+  }
+
+  /**
+   * Writes the metabolite table.
+   *
+   * @param file
+   * @throws IOException
+   */
+  public void writeMetabolites(File file) throws IOException {
+    Random random = new Random(seed);
+    Writer out = newWriter(file);
+    try {
+      out.write("Abbreviation;Officialname;Formula (neutral);Formula (charged);Charge;KEGG ID\n");
+      for (int i = 0; i < metaboliteCount; i++) {
+        String formula = pick(random, FORMULAS);
+        out.write(format("{0};Metabolite {1,number,#};{2};{2};{3};C{1,number,00000}\n", metabolite(i), i, formula, pick(random, CHARGES)));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the reaction table. A few metabolites in the equations are not
+   * declared in the metabolite table and a few reversibility flags contradict
+   * the equation, as in real tables.
+   *
+   * @param file
+   * @throws IOException
+   */
+  public void writeReactions(File file) throws IOException {
+    Random random = new Random(seed + 1L);
+    Writer out = newWriter(file);
+    try {
+      out.write("Abbreviation;Officialname;Equation;GPR;Genes;Proteins;Subsystem;Reversible;Lower bound;Upper bound;Objective;Confidence Score;EC Number;Notes;References\n");
+      for (int i = 0; i < reactionCount; i++) {
+        boolean reversible = random.nextDouble() < 0.4d;
+        String compartment = pick(random, COMPARTMENTS);
+        StringBuilder eqn = new StringBuilder();
+        appendSide(eqn, random, compartment);
+        String arrow = reversible ? "<=>" : "->";
+        if (random.nextDouble() < 0.02d) {
+          arrow = reversible ? "->" : "<=>";
+        }
+        eqn.append(' ').append(arrow).append(' ');
+        appendSide(eqn, random, compartment);
+
+        String genes[] = new String[random.nextInt(4)];
+        StringBuilder geneColumn = new StringBuilder();
+        StringBuilder proteinColumn = new StringBuilder();
+        for (int j = 0; j < genes.length; j++) {
+          genes[j] = format("cg{0,number,0000}", random.nextInt(geneCount));
+          geneColumn.append(j > 0 ? " " : "").append(genes[j]);
+          proteinColumn.append(j > 0 ? " " : "").append("P").append(genes[j]);
+        }
+        String gpr;
+        if (genes.length == 3) {
+          gpr = format("({0} and {1}) or {2}", (Object[]) genes);
+        } else {
+          gpr = String.join(random.nextBoolean() ? " and " : " or ", genes);
+        }
+
+        String subsystem = random.nextDouble() < 0.8d ? "Subsystem " + random.nextInt(subsystemCount) : "";
+        String lb = reversible ? pick(random, "-1000", "-1000", "-10", "-inf", "-5.5") : "0";
+        String ub = pick(random, "1000", "1000", "1000", "10", "inf");
+        String objective = i == reactionCount / 2 ? "1" : "";
+        String confidence = Integer.toString(random.nextInt(5));
+        String ec = random.nextBoolean() ? format("{0}.{1}.{2}.{3}", 1 + random.nextInt(6), 1 + random.nextInt(9), 1 + random.nextInt(9), 1 + random.nextInt(99)) : "";
+        String notes = random.nextDouble() < 0.1d ? "Added during gap filling" : "";
+        String refs = random.nextDouble() < 0.3d ? "PMID:" + (10000000 + random.nextInt(20000000)) : "";
+
+        out.write(String.join(";", "R" + i, "Reaction " + i, eqn, gpr, geneColumn, proteinColumn, subsystem,
+          Boolean.toString(reversible), lb, ub, objective, confidence, ec, notes, refs));
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Appends one to three participants to one side of an equation.
+   *
+   * @param eqn
+   * @param random
+   * @param compartment
+   *        the compartment of most participants
+   */
+  private void appendSide(StringBuilder eqn, Random random, String compartment) {
+    int count = 1 + random.nextInt(3);
+    for (int j = 0; j < count; j++) {
+      if (j > 0) {
+        eqn.append(" + ");
+      }
+      eqn.append(pick(random, "", "", "", "2 ", "0.5 "));
+      // about one percent of all metabolites are not declared
+      int m = random.nextInt(metaboliteCount + Math.max(1, metaboliteCount / 100));
+      eqn.append(metabolite(m)).append('[');
+      eqn.append(random.nextDouble() < 0.85d ? compartment : pick(random, COMPARTMENTS)).append(']');
+    }
+  }
+
+  /**
+   * @param i
+   * @return the abbreviation of the i-th metabolite.
+   */
+  private static String metabolite(int i) {
+    return "m" + i + "-L";
+  }
+
+  /**
+   * @param random
+   * @param values
+   * @return one of the given values.
+   */
+  private static String pick(Random random, String... values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  /**
+   * @param file
+   * @return a buffered writer for the given file in UTF-8.
+   * @throws IOException
+   */
+  private static Writer newWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param args
+   *        number of reactions, metabolites file, reactions file, and
+   *        optionally the seed
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    SyntheticTables tables = new SyntheticTables(Integer.parseInt(args[0]), args.length > 3 ? Long.parseLong(args[3]) : 1L);
+    tables.writeMetabolites(new File(args[1]));
+    tables.writeReactions(new File(args[2]));
+  }
+
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Synthetic tables of one size, shared by all benchmark methods. The files
+ * are generated once per trial and deleted afterwards.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+@State(Scope.Benchmark)
+public class TableFixture {
+
+  /** Number of rows in the reaction table. */
+  @Param({"1000", "10000", "100000"})
+  public int reactions;
+
+  File metaboliteFile;
+  File reactionFile;
+  ConversionOptions options;
+
+  /**
+   * Writes both tables to temporary files.
+   *
+   * @throws IOException
+   */
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    SyntheticTables tables = new SyntheticTables(reactions, 1L);
+    metaboliteFile = File.createTempFile("metabolites", ".csv");
+    reactionFile = File.createTempFile("reactions", ".csv");
+    tables.writeMetabolites(metaboliteFile);
+    tables.writeReactions(reactionFile);
+    options = new ConversionOptions();
+    options.setCharset(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Deletes both tables.
+   */
+  @TearDown(Level.Trial)
+  public void delete() {
+    metaboliteFile.delete();
+    reactionFile.delete();
+  }
+
+  /**
+   * @return a builder for a model that contains only the units, as used by
+   *         {@link Table2Model}.
+   */
+  static ModelBuilder newBuilder() {
+    return Table2Model.createModelBuilder();
+  }
+
+  /**
+   * @param context
+   * @return a builder whose model already contains the metabolite table.
+   * @throws IOException
+   */
+  ModelBuilder newBuilderWithMetabolites(ConversionContext context) throws IOException {
+    ModelBuilder builder = newBuilder();
+    Table2Model.readTable(metaboliteFile, builder, new SpeciesRowReader(context), options);
+    return builder;
+  }
+
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.TidySBMLWriter;
+
+/**
+ * Measures writing the complete model with {@link TidySBMLWriter}. The output
+ * is discarded, so that the disk does not influence the result.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteBenchmark {
+
+  /**
+   * The converted tables.
+   */
+  @State(Scope.Benchmark)
+  public static class Document {
+
+    SBMLDocument doc;
+
+    /**
+     * @param fixture
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void convert(TableFixture fixture) throws IOException {
+      doc = new Table2Model(fixture.metaboliteFile, fixture.reactionFile, fixture.options).getSBMLDocument();
+      doc.getModel().setId("synthetic");
+    }
+
+  }
+
+  /**
+   * Counts and discards all bytes.
+   */
+  private static class NullOutputStream extends OutputStream {
+
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) {
+      count += len;
+    }
+
+  }
+
+  /**
+   * @param state
+   * @return the number of bytes written.
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  @Benchmark
+  public long write(Document state) throws SBMLException, XMLStreamException {
+    NullOutputStream out = new NullOutputStream();
+    TidySBMLWriter.write(state.doc, out, ' ', (short) 2);
+    return out.count;
+  }
+
+}
@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package org.sbml;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sbml.jsbml.CVTerm.Qualifier;
+
+/**
+ * An inverted index from the features of many models to the set of models
+ * in which they occur. Features are species identifiers, EC codes, and
+ * genes. Each set of models is a {@link BitSet} with one bit per model, so
+ * that the index of dozens of models needs hardly more memory than the index
+ * of a single one. Based on the number of models in which it occurs, each
+ * feature belongs to the core (all models), to the unique features (one
+ * model), or to the accessory features (all others).
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class AnnotationIndex {
+
+  /**
+   * The types of features.
+   */
+  public enum Category {
+    SPECIES("species"),
+    EC_CODE("ec-code"),
+    GENE("gene");
+
+    private final String label;
+
+    /**
+     * @param label
+     */
+    private Category(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  /**
+   * The sets into which features are divided.
+   */
+  public enum Distribution {
+    CORE,
+    ACCESSORY,
+    UNIQUE;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+
+  /** Names of the models in the order of their bits. */
+  private final List<String> models = new ArrayList<String>();
+
+  /** Models by feature and category. */
+  private final Map<Category, Map<String, BitSet>> index = new EnumMap<Category, Map<String, BitSet>>(Category.class);
+
+  /**
+   * Creates an empty index.
+   */
+  public AnnotationIndex() {
+    for (Category category : Category.values()) {
+      index.put(category, new HashMap<String, BitSet>());
+    }
+  }
+
+  /**
+   * Adds all features of the given model as the next model of this index.
+   *
+   * @param summary
+   */
+  public void add(ModelSummary summary) {
+    int model = models.size();
+    models.add(summary.getFile().getName());
+    for (String id : summary.getSpeciesIds()) {
+      add(Category.SPECIES, id, model);
+    }
+    for (String uri : summary.filterResources(Qualifier.BQB_IS, ".*ec-code.*")) {
+      add(Category.EC_CODE, uri, model);
+    }
+    // Genes are annotated with either of both qualifiers.
+    for (Qualifier qualifier : new Qualifier[] {Qualifier.BQB_IS_ENCODED_BY, Qualifier.BQB_IS}) {
+      for (String uri : summary.filterResources(qualifier, ".*kegg.genes.*")) {
+        add(Category.GENE, uri, model);
+      }
+    }
+  }
+
+  /**
+   * @param category
+   * @param feature
+   * @param model
+   */
+  private void add(Category category, String feature, int model) {
+    Map<String, BitSet> features = index.get(category);
+    BitSet bits = features.get(feature);
+    if (bits == null) {
+      bits = new BitSet();
+      features.put(feature, bits);
+    }
+    bits.set(model);
+  }
+
+  /**
+   * @return the number of models in this index.
+   */
+  public int getModelCount() {
+    return models.size();
+  }
+
+  /**
+   * @param category
+   * @param feature
+   * @return the models in which the given feature occurs, which must not be
+   *         changed, or {@code null}.
+   */
+  public BitSet get(Category category, String feature) {
+    return index.get(category).get(feature);
+  }
+
+  /**
+   * @param models
+   *        the models in which one feature occurs
+   * @return the set to which the feature belongs.
+   */
+  public Distribution classify(BitSet models) {
+    int count = models.cardinality();
+    if (count == getModelCount()) {
+      return Distribution.CORE;
+    }
+    return count == 1 ? Distribution.UNIQUE : Distribution.ACCESSORY;
+  }
+
+  /**
+   * Writes one line per feature with its category, the feature, its set,
+   * and a column for each model with {@code 1} if the feature occurs in the
+   * model and {@code 0} otherwise, separated by tabs. Features are sorted
+   * within each category.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeMatrix(Writer out) throws IOException {
+    out.write("category\tfeature\tset");
+    for (String model : models) {
+      out.write('\t');
+      out.write(model);
+    }
+    out.write('\n');
+    for (Category category : Category.values()) {
+      Map<String, BitSet> features = index.get(category);
+      List<String> sorted = new ArrayList<String>(features.keySet());
+      Collections.sort(sorted);
+      for (String feature : sorted) {
+        BitSet bits = features.get(feature);
+        out.write(category.toString());
+        out.write('\t');
+        out.write(feature);
+        out.write('\t');
+        out.write(classify(bits).toString());
+        for (int i = 0; i < models.size(); i++) {
+          out.write(bits.get(i) ? "\t1" : "\t0");
+        }
+        out.write('\n');
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Prints the size of the core, accessory, and unique set of each category
+   * and the number of unique features of each model.
+   *
+   * @param out
+   */
+  public void printSummary(PrintStream out) {
+    for (Category category : Category.values()) {
+      int counts[] = new int[Distribution.values().length];
+      int unique[] = new int[models.size()];
+      for (BitSet bits : index.get(category).values()) {
+        Distribution distribution = classify(bits);
+        counts[distribution.ordinal()]++;
+        if (distribution == Distribution.UNIQUE) {
+          unique[bits.nextSetBit(0)]++;
+        }
+      }
+      out.println(format("{0} in {1,number,#} models: {2,number,#} core, {3,number,#} accessory, {4,number,#} unique",
+        category, models.size(), counts[Distribution.CORE.ordinal()], counts[Distribution.ACCESSORY.ordinal()],
+        counts[Distribution.UNIQUE.ordinal()]));
+      for (int i = 0; i < models.size(); i++) {
+        out.println(format("Unique:\t{0,number,#}\t{1}", unique[i], models.get(i)));
+      }
+      out.println();
+    }
+  }
+
+}
@@ -0,0 +1,376 @@
+/**
+ *
+ */
+package org.sbml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.sbml.ReactionSummary.Field;
+
+/**
+ * The differences between two models. Species and reactions are first joined
+ * by their identifier and compared field by field. Elements that only occur
+ * in one of the models are then joined by their
+ * {@link SpeciesSummary#getSignature() signature} or
+ * {@link ReactionSummary#getSignature() signature}, so that an element that
+ * has only been renamed is reported as such instead of as removed and added.
+ * All joins use hash tables, so that the time needed grows linearly with the
+ * size of the models.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ModelDiff {
+
+  /**
+   * The kind of a difference.
+   */
+  public enum Kind {
+    /** The element only occurs in the second model. */
+    ADDED,
+    /** The element only occurs in the first model. */
+    REMOVED,
+    /** One field of the element differs. */
+    CHANGED,
+    /** The element occurs with another identifier in the second model. */
+    RENAMED;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * One difference between the two models.
+   */
+  public static class Difference {
+
+    private final Kind kind;
+    private final String element;
+    private final String id;
+    private final String field;
+    private final String oldValue;
+    private final String newValue;
+
+    /**
+     * @param kind
+     * @param element
+     *        the type of the element, e.g., {@code reaction}
+     * @param id
+     *        the identifier of the element in the first model, if it exists
+     *        there
+     * @param field
+     *        the changed field or {@code null}
+     * @param oldValue
+     * @param newValue
+     */
+    Difference(Kind kind, String element, String id, String field, String oldValue, String newValue) {
+      this.kind = kind;
+      this.element = element;
+      this.id = id;
+      this.field = field;
+      this.oldValue = oldValue;
+      this.newValue = newValue;
+    }
+
+    /**
+     * @return the kind of this difference.
+     */
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * @return the type of the element.
+     */
+    public String getElement() {
+      return element;
+    }
+
+    /**
+     * @return the identifier of the element.
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return the changed field or {@code null}.
+     */
+    public String getField() {
+      return field;
+    }
+
+    /**
+     * @return the value in the first model or {@code null}.
+     */
+    public String getOldValue() {
+      return oldValue;
+    }
+
+    /**
+     * @return the value in the second model or {@code null}.
+     */
+    public String getNewValue() {
+      return newValue;
+    }
+
+  }
+
+  private static final String SPECIES = "species";
+  private static final String REACTION = "reaction";
+
+  private final ModelSummary model1;
+  private final ModelSummary model2;
+
+  private final List<Difference> differences = new ArrayList<Difference>();
+
+  /**
+   * Compares the given models.
+   *
+   * @param model1
+   * @param model2
+   */
+  public ModelDiff(ModelSummary model1, ModelSummary model2) {
+    this.model1 = model1;
+    this.model2 = model2;
+    compareSpecies();
+    compareReactions();
+  }
+
+  /**
+   * Reports changed, renamed, and removed species, sorted by their
+   * identifier in the first model, and then added species, sorted by their
+   * identifier.
+   */
+  private void compareSpecies() {
+    Set<String> ids1 = model1.getSpeciesIds();
+    Set<String> ids2 = model2.getSpeciesIds();
+    Map<Long, List<SpeciesSummary>> bySignature = new HashMap<Long, List<SpeciesSummary>>();
+    Set<String> added = new TreeSet<String>();
+    for (String id : ids2) {
+      if (!ids1.contains(id)) {
+        SpeciesSummary s2 = model2.getSpecies(id);
+        added.add(id);
+        List<SpeciesSummary> candidates = bySignature.get(s2.getSignature());
+        if (candidates == null) {
+          candidates = new ArrayList<SpeciesSummary>(1);
+          bySignature.put(s2.getSignature(), candidates);
+        }
+        candidates.add(s2);
+      }
+    }
+    for (String id : new TreeSet<String>(ids1)) {
+      SpeciesSummary s1 = model1.getSpecies(id);
+      SpeciesSummary s2 = model2.getSpecies(id);
+      if (s2 != null) {
+        for (SpeciesSummary.Field field : SpeciesSummary.Field.values()) {
+          String value1 = s1.get(field);
+          String value2 = s2.get(field);
+          if (!value1.equals(value2)) {
+            differences.add(new Difference(Kind.CHANGED, SPECIES, id, field.toString(), value1, value2));
+          }
+        }
+        continue;
+      }
+      List<SpeciesSummary> candidates = bySignature.get(s1.getSignature());
+      for (int i = 0; (candidates != null) && (i < candidates.size()) && (s2 == null); i++) {
+        if (s1.isEquivalent(candidates.get(i))) {
+          s2 = candidates.remove(i);
+        }
+      }
+      if (s2 == null) {
+        differences.add(new Difference(Kind.REMOVED, SPECIES, id, null, null, null));
+      } else {
+        added.remove(s2.getId());
+        differences.add(new Difference(Kind.RENAMED, SPECIES, id, "id", id, s2.getId()));
+      }
+    }
+    for (String id : added) {
+      differences.add(new Difference(Kind.ADDED, SPECIES, id, null, null, null));
+    }
+  }
+
+  /**
+   * Reports changed, renamed, removed, and added reactions in the order of
+   * the first and then of the second model.
+   */
+  private void compareReactions() {
+    // Join by identifier
+    List<ReactionSummary> unmatched = new ArrayList<ReactionSummary>();
+    for (ReactionSummary r1 : model1.getReactions()) {
+      ReactionSummary r2 = model2.getReaction(r1.getId());
+      if (r2 == null) {
+        unmatched.add(r1);
+      } else if (!r1.isEquivalent(r2)) {
+        for (Field field : Field.values()) {
+          String value1 = r1.get(field);
+          String value2 = r2.get(field);
+          if (!value1.equals(value2)) {
+            differences.add(new Difference(Kind.CHANGED, REACTION, r1.getId(), field.toString(), value1, value2));
+          }
+        }
+      }
+    }
+
+    // Join the remaining reactions by signature
+    Set<ReactionSummary> added = new LinkedHashSet<ReactionSummary>();
+    Map<Long, List<ReactionSummary>> bySignature = new HashMap<Long, List<ReactionSummary>>();
+    for (ReactionSummary r2 : model2.getReactions()) {
+      if (model1.getReaction(r2.getId()) == null) {
+        added.add(r2);
+        List<ReactionSummary> candidates = bySignature.get(r2.getSignature());
+        if (candidates == null) {
+          candidates = new ArrayList<ReactionSummary>(1);
+          bySignature.put(r2.getSignature(), candidates);
+        }
+        candidates.add(r2);
+      }
+    }
+    for (ReactionSummary r1 : unmatched) {
+      ReactionSummary match = null;
+      List<ReactionSummary> candidates = bySignature.get(r1.getSignature());
+      if (candidates != null) {
+        for (int i = 0; (i < candidates.size()) && (match == null); i++) {
+          if (r1.isEquivalent(candidates.get(i))) {
+            match = candidates.remove(i);
+          }
+        }
+      }
+      if (match == null) {
+        differences.add(new Difference(Kind.REMOVED, REACTION, r1.getId(), null, null, null));
+      } else {
+        added.remove(match);
+        differences.add(new Difference(Kind.RENAMED, REACTION, r1.getId(), "id", r1.getId(), match.getId()));
+      }
+    }
+    for (ReactionSummary r2 : added) {
+      differences.add(new Difference(Kind.ADDED, REACTION, r2.getId(), null, null, null));
+    }
+  }
+
+  /**
+   * @return all differences, first of the species, then of the reactions.
+   */
+  public List<Difference> getDifferences() {
+    return Collections.unmodifiableList(differences);
+  }
+
+  /**
+   * Writes one line per difference with the columns kind, element,
+   * identifier, field, old value, and new value, separated by tabs.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeTSV(Writer out) throws IOException {
+    out.write("kind\telement\tid\tfield\told\tnew\n");
+    for (Difference d : differences) {
+      out.write(d.getKind().toString());
+      for (String value : new String[] {d.getElement(), d.getId(), d.getField(), d.getOldValue(), d.getNewValue()}) {
+        out.write('\t');
+        if (value != null) {
+          out.write(value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+        }
+      }
+      out.write('\n');
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the names of both files and an array of all differences in
+   * JSON.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeJSON(Writer out) throws IOException {
+    out.write("{\n  \"model1\": ");
+    writeString(out, model1.getFile().getName());
+    out.write(",\n  \"model2\": ");
+    writeString(out, model2.getFile().getName());
+    out.write(",\n  \"differences\": [");
+    for (int i = 0; i < differences.size(); i++) {
+      Difference d = differences.get(i);
+      out.write(i > 0 ? ",\n    {" : "\n    {");
+      writeMember(out, "kind", d.getKind().toString(), true);
+      writeMember(out, "element", d.getElement(), false);
+      writeMember(out, "id", d.getId(), false);
+      writeMember(out, "field", d.getField(), false);
+      writeMember(out, "old", d.getOldValue(), false);
+      writeMember(out, "new", d.getNewValue(), false);
+      out.write('}');
+    }
+    out.write(differences.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    out.flush();
+  }
+
+  /**
+   * Writes nothing if the value is {@code null}.
+   *
+   * @param out
+   * @param name
+   * @param value
+   * @param first
+   *        whether this is the first member of the object
+   * @throws IOException
+   */
+  private static void writeMember(Writer out, String name, String value, boolean first) throws IOException {
+    if (value != null) {
+      if (!first) {
+        out.write(", ");
+      }
+      writeString(out, name);
+      out.write(": ");
+      writeString(out, value);
+    }
+  }
+
+  /**
+   * @param out
+   * @param value
+   * @throws IOException
+   */
+  private static void writeString(Writer out, String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '"':
+        out.write("\\\"");
+        break;
+      case '\\':
+        out.write("\\\\");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          out.write(String.format("\\u%04x", (int) c));
+        } else {
+          out.write(c);
+        }
+        break;
+      }
+    }
+    out.write('"');
+  }
+
+}
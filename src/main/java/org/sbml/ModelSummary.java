@@ -0,0 +1,475 @@
+/**
+ *
+ */
+package org.sbml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.swing.tree.TreeNode;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.sbml.jsbml.Annotation;
+import org.sbml.jsbml.CVTerm;
+import org.sbml.jsbml.CVTerm.Qualifier;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.SBase;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.ext.fbc.And;
+import org.sbml.jsbml.ext.fbc.Association;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.FBCSpeciesPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProductRef;
+import org.sbml.jsbml.ext.fbc.LogicalOperator;
+
+/**
+ * The parts of one SBML file that {@link SBMLCompare} compares: a
+ * {@link SpeciesSummary} of each species, a {@link ReactionSummary} of each
+ * reaction, and the resources of all {@link CVTerm}s by their qualifier.
+ * <p>
+ * A summary can either be created from a complete {@link SBMLDocument} or be
+ * extracted directly from the XML stream of a file. The latter neither builds
+ * the JSBML tree nor keeps anything else of the file in memory, so that even
+ * very large models can be compared with a small heap.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ModelSummary {
+
+  private static final String SBML_NAMESPACE_PREFIX = "http://www.sbml.org/sbml/level";
+
+  /** The file from which this summary has been read. */
+  private final File file;
+
+  /** All species by their identifier, in the order of the file. */
+  private final Map<String, SpeciesSummary> species = new LinkedHashMap<String, SpeciesSummary>();
+
+  /** All reactions by their identifier, in the order of the file. */
+  private final Map<String, ReactionSummary> reactions = new LinkedHashMap<String, ReactionSummary>();
+
+  /** Resources of all controlled vocabulary terms by their qualifier. */
+  private final Map<Qualifier, Set<String>> resources = new EnumMap<Qualifier, Set<String>>(Qualifier.class);
+
+  /**
+   * @param file
+   */
+  private ModelSummary(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the complete document with {@link SBMLReader}.
+   *
+   * @param file
+   * @return the summary of the given file.
+   * @throws XMLStreamException
+   * @throws IOException
+   */
+  public static ModelSummary read(File file) throws XMLStreamException, IOException {
+    SBMLDocument doc = SBMLReader.read(file);
+    ModelSummary summary = new ModelSummary(file);
+    if (doc.isSetModel()) {
+      Model m = doc.getModel();
+      for (Species s : m.getListOfSpecies()) {
+        summary.addSpecies(s);
+      }
+      for (Reaction r : m.getListOfReactions()) {
+        summary.addReaction(r);
+      }
+    }
+    summary.addCVTerms(doc);
+    return summary;
+  }
+
+  /**
+   * @param s
+   */
+  private void addSpecies(Species s) {
+    String formula = null, charge = s.isSetCharge() ? Integer.toString(s.getCharge()) : null;
+    FBCSpeciesPlugin splug = (FBCSpeciesPlugin) s.getExtension(FBCConstants.shortLabel);
+    if (splug != null) {
+      formula = splug.isSetChemicalFormula() ? splug.getChemicalFormula() : null;
+      charge = splug.isSetCharge() ? Integer.toString(splug.getCharge()) : charge;
+    }
+    species.put(s.getId(), new SpeciesSummary(s.getId(), s.isSetName() ? s.getName() : null,
+      s.isSetCompartment() ? s.getCompartment() : null, formula, charge));
+  }
+
+  /**
+   * @param r
+   */
+  private void addReaction(Reaction r) {
+    ReactionSummary reaction = new ReactionSummary(r.getId());
+    reaction.setReversible(r.getReversible());
+    for (SpeciesReference sr : r.getListOfReactants()) {
+      reaction.addParticipant(sr.getSpecies(), sr.isSetStoichiometry() ? sr.getStoichiometry() : 1d, false);
+    }
+    for (SpeciesReference sr : r.getListOfProducts()) {
+      reaction.addParticipant(sr.getSpecies(), sr.isSetStoichiometry() ? sr.getStoichiometry() : 1d, true);
+    }
+    FBCReactionPlugin rplug = (FBCReactionPlugin) r.getExtension(FBCConstants.shortLabel);
+    if (rplug != null) {
+      reaction.setBounds(rplug.isSetLowerFluxBoundInstance() ? rplug.getLowerFluxBoundInstance().getValue() : Double.NaN,
+        rplug.isSetUpperFluxBoundInstance() ? rplug.getUpperFluxBoundInstance().getValue() : Double.NaN);
+      if (rplug.isSetGeneProductAssociation() && rplug.getGeneProductAssociation().isSetAssociation()) {
+        reaction.setGPR(toString(rplug.getGeneProductAssociation().getAssociation()));
+      }
+    }
+    if (r.isSetAnnotation()) {
+      for (CVTerm term : r.getCVTerms()) {
+        for (String resource : term.getResources()) {
+          reaction.addAnnotation(term.getQualifier(), resource);
+        }
+      }
+    }
+    reactions.put(reaction.getId(), reaction);
+  }
+
+  /**
+   * @param association
+   * @return the canonical form of the given association.
+   */
+  private static String toString(Association association) {
+    if (association instanceof GeneProductRef) {
+      return ((GeneProductRef) association).getGeneProduct();
+    }
+    List<String> operands = new ArrayList<String>();
+    if (association instanceof LogicalOperator) {
+      for (Association child : ((LogicalOperator) association).getListOfAssociations()) {
+        operands.add(toString(child));
+      }
+    }
+    if (operands.isEmpty()) {
+      return "";
+    }
+    return association instanceof And ? ReactionSummary.and(operands) : ReactionSummary.or(operands);
+  }
+
+  /**
+   * Extracts the summary from the XML stream of the given file without
+   * building the JSBML tree.
+   *
+   * @param file
+   * @return the summary of the given file.
+   * @throws XMLStreamException
+   * @throws IOException
+   */
+  public static ModelSummary stream(File file) throws XMLStreamException, IOException {
+    ModelSummary summary = new ModelSummary(file);
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        // The qualifier element that is currently open and its depth
+        Qualifier qualifier = null;
+        int qualifierDepth = -1;
+        int depth = 0;
+        // The reaction that is currently open, its depth, and its parts
+        ReactionSummary reaction = null;
+        int reactionDepth = -1;
+        boolean products = false;
+        boolean reactionAnnotation = false;
+        Deque<List<String>> operands = new ArrayDeque<List<String>>();
+        Map<String, Double> parameters = new HashMap<String, Double>();
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+            String namespace = reader.getNamespaceURI();
+            if (namespace == null) {
+              continue;
+            }
+            String name = reader.getLocalName();
+            if (namespace.equals(CVTerm.URI_BIOMODELS_NET_BIOLOGY_QUALIFIERS)) {
+              qualifier = Qualifier.getBiologicalQualifierFor(name);
+              qualifierDepth = depth;
+            } else if (namespace.equals(CVTerm.URI_BIOMODELS_NET_MODEL_QUALIFIERS)) {
+              qualifier = Qualifier.getModelQualifierFor(name);
+              qualifierDepth = depth;
+            } else if ((qualifier != null) && name.equals("li") && namespace.equals(Annotation.URI_RDF_SYNTAX_NS)) {
+              String resource = reader.getAttributeValue(Annotation.URI_RDF_SYNTAX_NS, "resource");
+              if (resource != null) {
+                summary.addResource(qualifier, resource);
+                if (reactionAnnotation) {
+                  reaction.addAnnotation(qualifier, resource);
+                }
+              }
+            } else if (isCore(namespace)) {
+              if (name.equals("species")) {
+                String id = reader.getAttributeValue(null, "id");
+                if (id != null) {
+                  // The charge is an attribute of SBML Level 2 or of the flux balance constraints package.
+                  summary.species.put(id, new SpeciesSummary(id, reader.getAttributeValue(null, "name"),
+                    reader.getAttributeValue(null, "compartment"), getAttribute(reader, "chemicalFormula"),
+                    getAttribute(reader, "charge")));
+                }
+              } else if (name.equals("parameter")) {
+                String id = reader.getAttributeValue(null, "id");
+                if (id != null) {
+                  parameters.put(id, parseDouble(reader.getAttributeValue(null, "value")));
+                }
+              } else if (name.equals("reaction")) {
+                reaction = new ReactionSummary(reader.getAttributeValue(null, "id"));
+                reactionDepth = depth;
+                String reversible = reader.getAttributeValue(null, "reversible");
+                // The default of SBML Level 2 is reversible.
+                reaction.setReversible((reversible == null) || reversible.equals("true") || reversible.equals("1"));
+                reaction.lowerBoundId = getAttribute(reader, "lowerFluxBound");
+                reaction.upperBoundId = getAttribute(reader, "upperFluxBound");
+                summary.reactions.put(reaction.getId(), reaction);
+              } else if (reaction != null) {
+                if (name.equals("listOfReactants") || name.equals("listOfProducts")) {
+                  products = name.equals("listOfProducts");
+                } else if (name.equals("speciesReference")) {
+                  String stoichiometry = reader.getAttributeValue(null, "stoichiometry");
+                  reaction.addParticipant(reader.getAttributeValue(null, "species"),
+                    stoichiometry == null ? 1d : parseDouble(stoichiometry), products);
+                } else if (name.equals("annotation")) {
+                  reactionAnnotation = depth == reactionDepth + 1;
+                }
+              }
+            } else if ((reaction != null) && isFBC(namespace)) {
+              if (name.equals("geneProductAssociation") || name.equals("and") || name.equals("or")) {
+                operands.push(new ArrayList<String>());
+              } else if (name.equals("geneProductRef") && !operands.isEmpty()) {
+                operands.peek().add(getAttribute(reader, "geneProduct"));
+              }
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            if (depth == qualifierDepth) {
+              qualifier = null;
+              qualifierDepth = -1;
+            }
+            if (reaction != null) {
+              String name = reader.getLocalName();
+              String namespace = reader.getNamespaceURI();
+              if (depth == reactionDepth) {
+                reaction = null;
+                reactionDepth = -1;
+              } else if ((namespace != null) && isFBC(namespace) && !operands.isEmpty()) {
+                if (name.equals("and") || name.equals("or")) {
+                  List<String> list = operands.pop();
+                  if (!list.isEmpty() && !operands.isEmpty()) {
+                    operands.peek().add(name.equals("and") ? ReactionSummary.and(list) : ReactionSummary.or(list));
+                  }
+                } else if (name.equals("geneProductAssociation")) {
+                  List<String> list = operands.pop();
+                  if (!list.isEmpty()) {
+                    reaction.setGPR(list.get(0));
+                  }
+                }
+              } else if (name.equals("annotation")) {
+                reactionAnnotation = false;
+              }
+            }
+            depth--;
+          }
+        }
+        for (ReactionSummary r : summary.reactions.values()) {
+          r.setBounds(getValue(parameters, r.lowerBoundId), getValue(parameters, r.upperBoundId));
+          r.lowerBoundId = r.upperBoundId = null;
+        }
+      } finally {
+        reader.close();
+      }
+    } finally {
+      in.close();
+    }
+    return summary;
+  }
+
+  /**
+   * @param namespace
+   * @return {@code true} if the given namespace is the one of SBML core.
+   */
+  private static boolean isCore(String namespace) {
+    // Level 1 and 2 do not have packages.
+    return namespace.startsWith(SBML_NAMESPACE_PREFIX)
+        && (namespace.endsWith("/core") || !namespace.startsWith(SBML_NAMESPACE_PREFIX + '3'));
+  }
+
+  /**
+   * @param namespace
+   * @return {@code true} if the given namespace is the one of the flux
+   *         balance constraints package.
+   */
+  private static boolean isFBC(String namespace) {
+    return namespace.startsWith(SBML_NAMESPACE_PREFIX) && namespace.contains("/fbc/");
+  }
+
+  /**
+   * @param reader
+   * @param localName
+   * @return the value of the attribute with the given name in any namespace
+   *         or {@code null}.
+   */
+  private static String getAttribute(XMLStreamReader reader, String localName) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (reader.getAttributeLocalName(i).equals(localName)) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param value
+   *        a number in the notation of XML Schema
+   * @return the number or {@link Double#NaN} if the value is missing.
+   */
+  private static double parseDouble(String value) {
+    if (value == null) {
+      return Double.NaN;
+    }
+    value = value.trim();
+    if (value.equals("INF")) {
+      return Double.POSITIVE_INFINITY;
+    } else if (value.equals("-INF")) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    return Double.parseDouble(value);
+  }
+
+  /**
+   * @param parameters
+   * @param id
+   * @return the value of the parameter with the given identifier or
+   *         {@link Double#NaN}.
+   */
+  private static double getValue(Map<String, Double> parameters, String id) {
+    Double value = id == null ? null : parameters.get(id);
+    return value == null ? Double.NaN : value.doubleValue();
+  }
+
+  /**
+   * Adds the resources of the given element and of all its descendants.
+   *
+   * @param node
+   */
+  private void addCVTerms(TreeNode node) {
+    if ((node instanceof SBase) && ((SBase) node).isSetAnnotation()) {
+      for (CVTerm term : ((SBase) node).getCVTerms()) {
+        for (String resource : term.getResources()) {
+          addResource(term.getQualifier(), resource);
+        }
+      }
+    }
+    for (Enumeration<?> children = node.children(); children.hasMoreElements();) {
+      Object child = children.nextElement();
+      if (child instanceof TreeNode) {
+        addCVTerms((TreeNode) child);
+      }
+    }
+  }
+
+  /**
+   * @param qualifier
+   * @param resource
+   */
+  private void addResource(Qualifier qualifier, String resource) {
+    Set<String> uris = resources.get(qualifier);
+    if (uris == null) {
+      uris = new HashSet<String>();
+      resources.put(qualifier, uris);
+    }
+    uris.add(resource);
+  }
+
+  /**
+   * @return the file from which this summary has been read.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return the identifiers of all species.
+   */
+  public Set<String> getSpeciesIds() {
+    return Collections.unmodifiableSet(species.keySet());
+  }
+
+  /**
+   * @return all species in the order of the file.
+   */
+  public Collection<SpeciesSummary> getSpecies() {
+    return Collections.unmodifiableCollection(species.values());
+  }
+
+  /**
+   * @param id
+   * @return the species with the given identifier or {@code null}.
+   */
+  public SpeciesSummary getSpecies(String id) {
+    return species.get(id);
+  }
+
+  /**
+   * @return all reactions in the order of the file.
+   */
+  public Collection<ReactionSummary> getReactions() {
+    return Collections.unmodifiableCollection(reactions.values());
+  }
+
+  /**
+   * @param id
+   * @return the reaction with the given identifier or {@code null}.
+   */
+  public ReactionSummary getReaction(String id) {
+    return reactions.get(id);
+  }
+
+  /**
+   * @param qualifier
+   * @return all resources with the given qualifier.
+   */
+  public Set<String> getResources(Qualifier qualifier) {
+    Set<String> uris = resources.get(qualifier);
+    return uris == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(uris);
+  }
+
+  /**
+   * @param qualifier
+   * @param regex
+   * @return all resources with the given qualifier that match the given
+   *         regular expression.
+   */
+  public Set<String> filterResources(Qualifier qualifier, String regex) {
+    Pattern pattern = Pattern.compile(regex);
+    Set<String> uris = new HashSet<String>();
+    for (String resource : getResources(qualifier)) {
+      if (pattern.matcher(resource).matches()) {
+        uris.add(resource);
+      }
+    }
+    return uris;
+  }
+
+}
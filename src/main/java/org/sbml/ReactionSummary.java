@@ -0,0 +1,293 @@
+/**
+ *
+ */
+package org.sbml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.sbml.jsbml.CVTerm.Qualifier;
+
+/**
+ * The parts of one reaction that {@link ModelDiff} compares, each in a
+ * canonical text form that does not depend on the order of the elements in
+ * the file: stoichiometry, reversibility, flux bounds, gene-protein-reaction
+ * rule, and annotations. The signature is a 64 bit hash value of all these
+ * fields, but not of the identifier, so that the same reaction can also be
+ * found under another identifier.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ReactionSummary {
+
+  /**
+   * The compared fields in the order of their appearance in reports.
+   */
+  public enum Field {
+    REVERSIBLE("reversible"),
+    REACTANTS("reactants"),
+    PRODUCTS("products"),
+    LOWER_BOUND("lowerBound"),
+    UPPER_BOUND("upperBound"),
+    GPR("gpr"),
+    ANNOTATIONS("annotations");
+
+    private final String label;
+
+    /**
+     * @param label
+     */
+    private Field(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private final String id;
+
+  private boolean reversible;
+
+  /** Stoichiometric coefficients by species identifier. */
+  private final Map<String, Double> reactants = new TreeMap<String, Double>();
+  private final Map<String, Double> products = new TreeMap<String, Double>();
+
+  private double lowerBound = Double.NaN;
+  private double upperBound = Double.NaN;
+
+  /** Identifiers of the bound parameters until their values are known. */
+  String lowerBoundId, upperBoundId;
+
+  /** The rule in canonical form or the empty string. */
+  private String gpr = "";
+
+  /** All resources, each preceded by its qualifier. */
+  private final Set<String> annotations = new TreeSet<String>();
+
+  /** Cached signature, see {@link #getSignature()}. */
+  private long signature;
+  private boolean hashed;
+
+  /**
+   * @param id
+   */
+  ReactionSummary(String id) {
+    this.id = id;
+  }
+
+  /**
+   * @return the identifier of the reaction.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @param reversible
+   */
+  void setReversible(boolean reversible) {
+    this.reversible = reversible;
+  }
+
+  /**
+   * @param speciesId
+   * @param stoichiometry
+   * @param product
+   *        whether the species is a product or a reactant
+   */
+  void addParticipant(String speciesId, double stoichiometry, boolean product) {
+    Map<String, Double> participants = product ? products : reactants;
+    Double previous = participants.get(speciesId);
+    participants.put(speciesId, previous == null ? stoichiometry : previous.doubleValue() + stoichiometry);
+  }
+
+  /**
+   * @param lowerBound
+   * @param upperBound
+   */
+  void setBounds(double lowerBound, double upperBound) {
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  /**
+   * @param gpr
+   *        the rule in canonical form, see {@link #and(List)} and
+   *        {@link #or(List)}
+   */
+  void setGPR(String gpr) {
+    this.gpr = gpr;
+  }
+
+  /**
+   * @param qualifier
+   * @param resource
+   */
+  void addAnnotation(Qualifier qualifier, String resource) {
+    annotations.add(qualifier.getElementNameEquivalent() + ' ' + resource);
+  }
+
+  /**
+   * @param operands
+   *        canonical forms of the operands
+   * @return the canonical form of the conjunction of the given operands.
+   */
+  static String and(List<String> operands) {
+    return join(operands, " and ");
+  }
+
+  /**
+   * @param operands
+   *        canonical forms of the operands
+   * @return the canonical form of the disjunction of the given operands.
+   */
+  static String or(List<String> operands) {
+    return join(operands, " or ");
+  }
+
+  /**
+   * @param operands
+   * @param operator
+   * @return the sorted operands, joined by the given operator and enclosed
+   *         in parentheses if there is more than one.
+   */
+  private static String join(List<String> operands, String operator) {
+    if (operands.size() == 1) {
+      return operands.get(0);
+    }
+    List<String> sorted = new ArrayList<String>(operands);
+    Collections.sort(sorted);
+    StringBuilder sb = new StringBuilder();
+    sb.append('(');
+    for (int i = 0; i < sorted.size(); i++) {
+      if (i > 0) {
+        sb.append(operator);
+      }
+      sb.append(sorted.get(i));
+    }
+    sb.append(')');
+    return sb.toString();
+  }
+
+  /**
+   * @param field
+   * @return the canonical text form of the given field.
+   */
+  public String get(Field field) {
+    switch (field) {
+    case REVERSIBLE:
+      return Boolean.toString(reversible);
+    case REACTANTS:
+      return toString(reactants);
+    case PRODUCTS:
+      return toString(products);
+    case LOWER_BOUND:
+      return toString(lowerBound);
+    case UPPER_BOUND:
+      return toString(upperBound);
+    case GPR:
+      return gpr;
+    default:
+      return toString(annotations);
+    }
+  }
+
+  /**
+   * @param participants
+   * @return the participants in the form {@code 2 A + B}.
+   */
+  private static String toString(Map<String, Double> participants) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Double> entry : participants.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(" + ");
+      }
+      if (entry.getValue().doubleValue() != 1d) {
+        sb.append(toString(entry.getValue().doubleValue()));
+        sb.append(' ');
+      }
+      sb.append(entry.getKey());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param value
+   * @return the value without a fractional part if it is an integer, the
+   *         empty string if it is undefined.
+   */
+  private static String toString(double value) {
+    if (Double.isNaN(value)) {
+      return "";
+    }
+    if ((value == Math.rint(value)) && !Double.isInfinite(value) && (Math.abs(value) < 1E15)) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  /**
+   * @param annotations
+   * @return the annotations separated by commas.
+   */
+  private static String toString(Set<String> annotations) {
+    StringBuilder sb = new StringBuilder();
+    for (String annotation : annotations) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(annotation);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return a 64 bit FNV-1a hash value of all fields except for the
+   *         identifier.
+   */
+  public long getSignature() {
+    if (!hashed) {
+      long h = 0xcbf29ce484222325L;
+      for (Field field : Field.values()) {
+        String value = get(field);
+        for (int i = 0; i < value.length(); i++) {
+          h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ 0xffff) * 0x100000001b3L;
+      }
+      signature = h;
+      hashed = true;
+    }
+    return signature;
+  }
+
+  /**
+   * @param other
+   * @return {@code true} if all fields except for the identifier are equal.
+   */
+  public boolean isEquivalent(ReactionSummary other) {
+    if (getSignature() != other.getSignature()) {
+      return false;
+    }
+    for (Field field : Field.values()) {
+      if (!get(field).equals(other.get(field))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return id;
+  }
+
+}
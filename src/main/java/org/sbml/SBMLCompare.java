@@ -5,36 +5,122 @@ package org.sbml;
 
 import static java.text.MessageFormat.format;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.sbml.jsbml.CVTerm.Qualifier;
-import org.sbml.jsbml.SBMLDocument;
-import org.sbml.jsbml.SBMLReader;
-import org.sbml.jsbml.Species;
 
 /**
+ * Compares the species and some annotations of two SBML files. Both files
+ * are read at the same time. With the option {@code --streaming}, only the
+ * compared parts are extracted from the XML stream (see
+ * {@link ModelSummary#stream(File)}) instead of reading the complete
+ * documents. With the option {@code --diff=PATH}, all differences between
+ * the species and reactions (see {@link ModelDiff}) are also written to the
+ * given file, in JSON if its name ends with {@code .json}, or as
+ * tab-separated values otherwise.
+ * <p>
+ * With more than two files or with the option {@code --matrix=PATH}, all
+ * files are read once in parallel into one {@link AnnotationIndex}. The
+ * sizes of the core, accessory, and unique sets are printed, and the
+ * presence/absence matrix is written to the given file.
+ *
  * @author Andreas Dr&auml;ger
  *
  */
 public class SBMLCompare {
 
-  private SBMLDocument doc1;
-  private SBMLDocument doc2;
+  private ModelSummary summary1;
+  private ModelSummary summary2;
   private File f1;
   private File f2;
 
   /**
    * @param args
+   *        {@code [--streaming] [--diff=PATH] file1 file2} or
+   *        {@code [--streaming] [--matrix=PATH] file1 file2 file3...}
    * @throws IOException
    * @throws XMLStreamException
    */
   public static void main(String[] args) throws XMLStreamException, IOException {
-    new SBMLCompare(new File(args[0]), new File(args[1]));
+    boolean streaming = false;
+    File report = null;
+    File matrix = null;
+    List<File> files = new ArrayList<File>(2);
+    for (String arg : args) {
+      if (arg.equals("--streaming")) {
+        streaming = true;
+      } else if (arg.startsWith("--diff=")) {
+        report = new File(arg.substring(arg.indexOf('=') + 1));
+      } else if (arg.startsWith("--matrix=")) {
+        matrix = new File(arg.substring(arg.indexOf('=') + 1));
+      } else {
+        files.add(new File(arg));
+      }
+    }
+    if (files.size() < 2) {
+      usage(format("Expected at least two files, but found {0,number,#}.", files.size()));
+      return;
+    }
+    if ((report != null) && ((files.size() != 2) || (matrix != null))) {
+      usage("The option --diff compares exactly two files and cannot be combined with --matrix.");
+      return;
+    }
+    if ((files.size() != 2) || (matrix != null)) {
+      AnnotationIndex index = index(streaming, files.toArray(new File[0]));
+      index.printSummary(System.out);
+      if (matrix != null) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(matrix), StandardCharsets.UTF_8));
+        try {
+          index.writeMatrix(out);
+        } finally {
+          out.close();
+        }
+      }
+      return;
+    }
+    SBMLCompare compare = new SBMLCompare(files.get(0), files.get(1), streaming);
+    if (report != null) {
+      ModelDiff diff = compare.diff();
+      Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8));
+      try {
+        if (report.getName().toLowerCase().endsWith(".json")) {
+          diff.writeJSON(out);
+        } else {
+          diff.writeTSV(out);
+        }
+      } finally {
+        out.close();
+      }
+      System.out.println(format("\nWrote {0,number,#} differences to {1}", diff.getDifferences().size(), report));
+    }
+  }
+
+  /**
+   * Prints the given error and the usage, and exits with code 1.
+   *
+   * @param error
+   */
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println("Usage: SBMLCompare [--streaming] [--diff=PATH] file1 file2");
+    System.err.println("       SBMLCompare [--streaming] [--matrix=PATH] file1 file2 file3...");
+    System.exit(1);
   }
 
   /**
@@ -45,22 +131,28 @@ public class SBMLCompare {
    */
   public SBMLCompare(File f1, File f2)
       throws XMLStreamException, IOException {
+    this(f1, f2, false);
+  }
+
+  /**
+   * @param f1
+   * @param f2
+   * @param streaming
+   *        whether only the compared parts should be extracted from the
+   *        files instead of reading the complete documents
+   * @throws XMLStreamException
+   * @throws IOException
+   */
+  public SBMLCompare(File f1, File f2, boolean streaming)
+      throws XMLStreamException, IOException {
     this.f1 = f1;
     this.f2 = f2;
-    doc1 = SBMLReader.read(f1);
-    doc2 = SBMLReader.read(f2);
-
-    /*Map<String, Reaction> eco2rxn1 = new HashMap<String, Reaction>();
-    Map<String, Reaction> eco2rxn2 = new HashMap<String, Reaction>();*/
+    ModelSummary summaries[] = read(streaming, f1, f2);
+    summary1 = summaries[0];
+    summary2 = summaries[1];
 
-    Set<String> sids1 = new HashSet<String>();
-    Set<String> sids2 = new HashSet<String>();
-    for (Species s : doc1.getModel().getListOfSpecies()) {
-      sids1.add(s.getId());
-    }
-    for (Species s : doc2.getModel().getListOfSpecies()) {
-      sids2.add(s.getId());
-    }
+    Set<String> sids1 = new HashSet<String>(summary1.getSpeciesIds());
+    Set<String> sids2 = new HashSet<String>(summary2.getSpeciesIds());
     System.out.println("Total species count in " + f1.getName() + ": " + sids1.size());
     Set<String> intersect = new HashSet<String>(sids1);
     intersect.retainAll(sids2);
@@ -77,6 +169,81 @@ public class SBMLCompare {
     compare(Qualifier.BQB_IS_ENCODED_BY, "kegg.genes");
   }
 
+  /**
+   * Reads all given files at the same time and adds them to one index.
+   *
+   * @param streaming
+   *        whether to use {@link ModelSummary#stream(File)} instead of
+   *        {@link ModelSummary#read(File)}
+   * @param files
+   * @return the index of all files, whose models are numbered in the order
+   *         of the files.
+   * @throws XMLStreamException
+   * @throws IOException
+   */
+  public static AnnotationIndex index(boolean streaming, File... files)
+      throws XMLStreamException, IOException {
+    ModelSummary summaries[] = read(streaming, files);
+    AnnotationIndex index = new AnnotationIndex();
+    for (int i = 0; i < summaries.length; i++) {
+      index.add(summaries[i]);
+      summaries[i] = null;
+    }
+    return index;
+  }
+
+  /**
+   * Reads all given files at the same time.
+   *
+   * @param streaming
+   *        whether to use {@link ModelSummary#stream(File)} instead of
+   *        {@link ModelSummary#read(File)}
+   * @param files
+   * @return the summaries in the order of the files.
+   * @throws XMLStreamException
+   * @throws IOException
+   */
+  static ModelSummary[] read(final boolean streaming, File... files)
+      throws XMLStreamException, IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+    List<Future<ModelSummary>> futures = new ArrayList<Future<ModelSummary>>(files.length);
+    try {
+      for (final File file : files) {
+        futures.add(executor.submit(() -> streaming ? ModelSummary.stream(file) : ModelSummary.read(file)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    ModelSummary summaries[] = new ModelSummary[files.length];
+    for (int i = 0; i < files.length; i++) {
+      try {
+        summaries[i] = futures.get(i).get();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        throw new IOException(exc);
+      } catch (ExecutionException exc) {
+        Throwable cause = exc.getCause();
+        if (cause instanceof XMLStreamException) {
+          throw (XMLStreamException) cause;
+        } else if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+    return summaries;
+  }
+
+  /**
+   * @return the differences between the species and reactions of both
+   *         files.
+   */
+  public ModelDiff diff() {
+    return new ModelDiff(summary1, summary2);
+  }
+
   /**
    * @param qualifier
    * @param filterTerm
@@ -84,12 +251,12 @@ public class SBMLCompare {
   private void compare(Qualifier qualifier, String filterTerm) {
     Set<String> s1 = new HashSet<String>();
     Set<String> s2 = new HashSet<String>();
-    s1.addAll(doc1.filterCVTerms(qualifier, ".*" + filterTerm + ".*", true));
+    s1.addAll(summary1.filterResources(qualifier, ".*" + filterTerm + ".*"));
     if (qualifier == Qualifier.BQB_IS_ENCODED_BY) {
       // Hack!!!
       qualifier = Qualifier.BQB_IS;
     }
-    s2.addAll(doc2.filterCVTerms(qualifier, ".*" + filterTerm + ".*", true));
+    s2.addAll(summary2.filterResources(qualifier, ".*" + filterTerm + ".*"));
     Set<String> intersect = new HashSet<String>(s1);
     intersect.retainAll(s2);
 
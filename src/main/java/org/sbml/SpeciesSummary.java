@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package org.sbml;
+
+/**
+ * The parts of one species that {@link ModelDiff} compares: name,
+ * compartment, chemical formula, and charge, each as text. As for a
+ * {@link ReactionSummary}, the signature is a 64 bit hash value of all these
+ * fields, but not of the identifier.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class SpeciesSummary {
+
+  /**
+   * The compared fields in the order of their appearance in reports.
+   */
+  public enum Field {
+    NAME("name"),
+    COMPARTMENT("compartment"),
+    FORMULA("formula"),
+    CHARGE("charge");
+
+    private final String label;
+
+    /**
+     * @param label
+     */
+    private Field(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private final String id;
+
+  /** The values of all fields, the empty string if a field is not set. */
+  private final String values[] = new String[Field.values().length];
+
+  /** Cached signature, see {@link #getSignature()}. */
+  private long signature;
+  private boolean hashed;
+
+  /**
+   * @param id
+   * @param name
+   * @param compartment
+   * @param formula
+   * @param charge
+   *        each value or {@code null} if it is not set
+   */
+  SpeciesSummary(String id, String name, String compartment, String formula, String charge) {
+    this.id = id;
+    values[Field.NAME.ordinal()] = name;
+    values[Field.COMPARTMENT.ordinal()] = compartment;
+    values[Field.FORMULA.ordinal()] = formula;
+    values[Field.CHARGE.ordinal()] = charge;
+    for (int i = 0; i < values.length; i++) {
+      values[i] = values[i] == null ? "" : values[i].trim();
+    }
+  }
+
+  /**
+   * @return the identifier of the species.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @param field
+   * @return the value of the given field or the empty string.
+   */
+  public String get(Field field) {
+    return values[field.ordinal()];
+  }
+
+  /**
+   * @return a 64 bit FNV-1a hash value of all fields except for the
+   *         identifier.
+   */
+  public long getSignature() {
+    if (!hashed) {
+      long h = 0xcbf29ce484222325L;
+      for (String value : values) {
+        for (int i = 0; i < value.length(); i++) {
+          h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ 0xffff) * 0x100000001b3L;
+      }
+      signature = h;
+      hashed = true;
+    }
+    return signature;
+  }
+
+  /**
+   * @param other
+   * @return {@code true} if all fields except for the identifier are equal.
+   */
+  public boolean isEquivalent(SpeciesSummary other) {
+    if (getSignature() != other.getSignature()) {
+      return false;
+    }
+    for (int i = 0; i < values.length; i++) {
+      if (!values[i].equals(other.values[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return id;
+  }
+
+}
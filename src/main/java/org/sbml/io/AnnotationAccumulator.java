@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbml.jsbml.CVTerm;
+import org.sbml.jsbml.CVTerm.Qualifier;
+import org.sbml.jsbml.SBase;
+
+/**
+ * Collects the resources that annotate elements of the model and adds them
+ * in one step. Annotating an element directly requires searching its
+ * existing {@link CVTerm}s for the qualifier each time. This is expensive for
+ * gene products, which receive the same resource once for each reaction that
+ * lists the gene. Instead, all resources are collected per element and
+ * qualifier without duplicates, and {@link #flush()} adds one {@link CVTerm}
+ * per qualifier to each element, or adds the resources to the first existing
+ * {@link CVTerm} with the same qualifier.
+ * <p>
+ * Instances are not thread-safe and are meant to be used during the
+ * sequential phase of a conversion only.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class AnnotationAccumulator {
+
+  /** Resources by element and qualifier, in the order of their addition. */
+  private final Map<SBase, Map<Qualifier, Set<String>>> resources = new IdentityHashMap<SBase, Map<Qualifier, Set<String>>>();
+
+  /**
+   * Remembers one resource for the given element. The element must have a
+   * meta identifier before {@link #flush()} is called.
+   *
+   * @param sbase
+   * @param qualifier
+   * @param resource
+   *        a URI
+   */
+  public void add(SBase sbase, Qualifier qualifier, String resource) {
+    Map<Qualifier, Set<String>> byQualifier = resources.get(sbase);
+    if (byQualifier == null) {
+      byQualifier = new LinkedHashMap<Qualifier, Set<String>>(2);
+      resources.put(sbase, byQualifier);
+    }
+    Set<String> uris = byQualifier.get(qualifier);
+    if (uris == null) {
+      uris = new LinkedHashSet<String>(2);
+      byQualifier.put(qualifier, uris);
+    }
+    uris.add(resource);
+  }
+
+  /**
+   * @return the number of elements with resources that have not yet been
+   *         added.
+   */
+  public int size() {
+    return resources.size();
+  }
+
+  /**
+   * Adds all collected resources of the given element only.
+   *
+   * @param sbase
+   */
+  public void flush(SBase sbase) {
+    Map<Qualifier, Set<String>> byQualifier = resources.remove(sbase);
+    if (byQualifier != null) {
+      annotate(sbase, byQualifier);
+    }
+  }
+
+  /**
+   * Adds all collected resources to their elements and forgets them.
+   */
+  public void flush() {
+    for (Map.Entry<SBase, Map<Qualifier, Set<String>>> entry : resources.entrySet()) {
+      annotate(entry.getKey(), entry.getValue());
+    }
+    resources.clear();
+  }
+
+  /**
+   * @param sbase
+   * @param byQualifier
+   */
+  private static void annotate(SBase sbase, Map<Qualifier, Set<String>> byQualifier) {
+    for (Map.Entry<Qualifier, Set<String>> entry : byQualifier.entrySet()) {
+      String uris[] = entry.getValue().toArray(new String[0]);
+      CVTerm term = null;
+      if (sbase.isSetAnnotation()) {
+        for (CVTerm existing : sbase.getAnnotation().getListOfCVTerms()) {
+          if (existing.getQualifier() == entry.getKey()) {
+            term = existing;
+            break;
+          }
+        }
+      }
+      if (term == null) {
+        sbase.addCVTerm(new CVTerm(entry.getKey(), uris));
+      } else {
+        term.addResources(uris);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import org.sbml.io.Diagnostics.Category;
+import org.sbml.io.ParsedReaction.Participant;
+
+/**
+ * Checks whether reactions are balanced with respect to the chemical
+ * elements and the charge of their participants. The formula of each
+ * metabolite is parsed only once into a vector of element counts, and each
+ * reaction is turned into arrays of metabolite indices and signed
+ * coefficients, so that all reactions can then be checked in parallel with
+ * primitive arithmetic only.
+ * <p>
+ * Reactions are collected while they are added to the model and checked
+ * after the reaction table has been read. Reactions without reactants or
+ * without products, such as exchange reactions, and reactions with a
+ * metabolite without formula are skipped. Imbalanced reactions are recorded
+ * in the {@link Diagnostics} in table order together with the amount of each
+ * element and of the charge by which the products exceed the reactants.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class BalanceChecker {
+
+  /** Reactions up to this number are checked by one task without further splitting. */
+  private static final int THRESHOLD = 1024;
+
+  /** Residuals smaller than this are caused by rounding only. */
+  private static final double TOLERANCE = 1E-9;
+
+  private static final transient Logger logger = Logger.getLogger(BalanceChecker.class.getName());
+
+  /** Reactions to be checked, in table order. */
+  private final List<ParsedReaction> reactions = new ArrayList<ParsedReaction>();
+
+  /**
+   * @param reaction
+   *        a reaction that has been added to the model
+   */
+  void add(ParsedReaction reaction) {
+    reactions.add(reaction);
+  }
+
+  /**
+   * Checks all reactions that have been added since the last check and
+   * records the imbalanced ones.
+   *
+   * More than {@value #THRESHOLD} reactions are checked on the common
+   * fork-join pool, independently of the number of threads that parse the
+   * tables.
+   *
+   * @param context
+   *        provides the metabolite declarations and receives the problems
+   */
+  public void check(ConversionContext context) {
+    long time = System.currentTimeMillis();
+    SpeciesIndex index = context.getSpeciesIndex();
+
+    // Element vectors of all metabolites, one row per metabolite.
+    List<String> elements = new ArrayList<String>();
+    Map<String, Integer> elementIndex = new HashMap<String, Integer>();
+    Map<String, Integer> speciesIndex = new HashMap<String, Integer>();
+    List<int[]> species = new ArrayList<int[]>();
+
+    // Metabolite indices and signed coefficients of all reactions.
+    int n = reactions.size();
+    int participants[][] = new int[n][];
+    double coefficients[][] = new double[n][];
+    int skipped = 0;
+    for (int i = 0; i < n; i++) {
+      List<Participant> list = reactions.get(i).participants;
+      int p[] = new int[list.size()];
+      double c[] = new double[list.size()];
+      boolean reactants = false, products = false;
+      for (int j = 0; (p != null) && (j < p.length); j++) {
+        Participant participant = list.get(j);
+        Integer k = speciesIndex.get(participant.speciesId);
+        if (k == null) {
+          ParsedSpecies template = index.getTemplate(participant.speciesId);
+          int vector[] = template == null ? null : parseFormula(template, elements, elementIndex);
+          k = vector == null ? -1 : species.size();
+          if (vector != null) {
+            species.add(vector);
+          }
+          speciesIndex.put(participant.speciesId, k);
+        }
+        if (k.intValue() < 0) {
+          p = null;
+        } else {
+          p[j] = k.intValue();
+          c[j] = participant.product ? participant.coefficient : -participant.coefficient;
+          reactants |= !participant.product;
+          products |= participant.product;
+        }
+      }
+      if ((p == null) || !(reactants && products)) {
+        skipped++;
+      } else {
+        participants[i] = p;
+        coefficients[i] = c;
+      }
+    }
+
+    // Dense element matrix with the charge in the last column.
+    int width = elements.size() + 1;
+    int matrix[][] = new int[species.size()][];
+    for (int k = 0; k < matrix.length; k++) {
+      int sparse[] = species.get(k);
+      matrix[k] = new int[width];
+      for (int e = 0; e < sparse.length - 1; e += 2) {
+        matrix[k][sparse[e]] += sparse[e + 1];
+      }
+      matrix[k][width - 1] = sparse[sparse.length - 1];
+    }
+
+    double residuals[][] = new double[n][];
+    CheckTask task = new CheckTask(participants, coefficients, matrix, width, residuals, 0, n);
+    if (n <= THRESHOLD) {
+      task.compute();
+    } else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+
+    Diagnostics diagnostics = context.getDiagnostics();
+    int imbalanced = 0;
+    for (int i = 0; i < n; i++) {
+      if (residuals[i] != null) {
+        ParsedReaction r = reactions.get(i);
+        String residual = toString(residuals[i], elements);
+        diagnostics.record(Category.UNBALANCED_REACTION, r.row, r.id + ": " + residual);
+        if (diagnostics.isDetailed()) {
+          logger.warning(format("Reaction ''{0}'' is not balanced, products minus reactants: {1}", r.id, residual));
+        }
+        imbalanced++;
+      }
+    }
+    logger.info(format("Checked the balance of {0,number,#} reactions in {1,number,#} ms: {2,number,#} imbalanced, {3,number,#} skipped.",
+      n - skipped, System.currentTimeMillis() - time, imbalanced, skipped));
+    reactions.clear();
+  }
+
+  /**
+   * @param template
+   * @param elements
+   *        all elements found so far, to which new elements are added
+   * @param elementIndex
+   *        the position of each element in the list of elements
+   * @return pairs of element index and count followed by the charge or
+   *         {@code null} if the metabolite does not have a formula that can
+   *         be parsed.
+   */
+  private static int[] parseFormula(ParsedSpecies template, List<String> elements, Map<String, Integer> elementIndex) {
+    String formula = template.formula;
+    if ((formula == null) || (template.charge == null)) {
+      return null;
+    }
+    int vector[] = new int[2 * formula.length() + 1];
+    int size = 0;
+    int p = 0, length = formula.length();
+    while (p < length) {
+      int start = p;
+      if (!Character.isUpperCase(formula.charAt(p++))) {
+        return null;
+      }
+      while ((p < length) && Character.isLowerCase(formula.charAt(p))) {
+        p++;
+      }
+      String element = formula.substring(start, p);
+      int count = 0;
+      start = p;
+      while ((p < length) && Character.isDigit(formula.charAt(p))) {
+        count = 10 * count + formula.charAt(p++) - '0';
+      }
+      Integer e = elementIndex.get(element);
+      if (e == null) {
+        e = Integer.valueOf(elements.size());
+        elements.add(element);
+        elementIndex.put(element, e);
+      }
+      vector[size++] = e.intValue();
+      vector[size++] = p == start ? 1 : count;
+    }
+    vector[size++] = template.charge.intValue();
+    int result[] = new int[size];
+    System.arraycopy(vector, 0, result, 0, size);
+    return result;
+  }
+
+  /**
+   * @param residual
+   * @param elements
+   * @return the non-zero entries of the given residual, e.g.,
+   *         {@code H 2, charge 1}.
+   */
+  private static String toString(double residual[], List<String> elements) {
+    StringBuilder sb = new StringBuilder();
+    for (int e = 0; e < residual.length; e++) {
+      if (Math.abs(residual[e]) > TOLERANCE) {
+        if (sb.length() > 0) {
+          sb.append(", ");
+        }
+        sb.append(format("{0} {1,number,#.######}", e < elements.size() ? elements.get(e) : "charge", residual[e]));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Checks a contiguous range of reactions and writes the residuals of the
+   * imbalanced ones to the same positions of a shared array.
+   */
+  private static class CheckTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int participants[][];
+    private final double coefficients[][];
+    private final int matrix[][];
+    private final int width;
+    private final double residuals[][];
+    private final int from;
+    private final int to;
+
+    /**
+     * @param participants
+     *        metabolite indices of each reaction or {@code null} for
+     *        reactions to be skipped
+     * @param coefficients
+     *        coefficients of each reaction, negative for reactants
+     * @param matrix
+     *        element counts and charge of each metabolite
+     * @param width
+     *        number of elements plus one for the charge
+     * @param residuals
+     * @param from
+     *        first index (inclusive)
+     * @param to
+     *        last index (exclusive)
+     */
+    CheckTask(int participants[][], double coefficients[][], int matrix[][], int width, double residuals[][], int from, int to) {
+      this.participants = participants;
+      this.coefficients = coefficients;
+      this.matrix = matrix;
+      this.width = width;
+      this.residuals = residuals;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= THRESHOLD) {
+        double residual[] = new double[width];
+        for (int i = from; i < to; i++) {
+          int p[] = participants[i];
+          if (p == null) {
+            continue;
+          }
+          double c[] = coefficients[i];
+          for (int j = 0; j < p.length; j++) {
+            int row[] = matrix[p[j]];
+            for (int e = 0; e < width; e++) {
+              residual[e] += c[j] * row[e];
+            }
+          }
+          boolean balanced = true;
+          for (int e = 0; (e < width) && balanced; e++) {
+            balanced = Math.abs(residual[e]) <= TOLERANCE;
+          }
+          if (!balanced) {
+            residuals[i] = residual;
+            residual = new double[width];
+          } else {
+            Arrays.fill(residual, 0d);
+          }
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new CheckTask(participants, coefficients, matrix, width, residuals, from, middle),
+          new CheckTask(participants, coefficients, matrix, width, residuals, middle, to));
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,351 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Converts many models in one JVM. The conversions run concurrently, but at
+ * most {@link ConversionOptions#getJobs()} of them at the same time. Each
+ * conversion runs on a virtual thread if the JVM supports them and on a
+ * thread of a fixed pool otherwise. All conversions share one
+ * {@link IdentifierCache} and the empty model with all units from which
+ * every model starts. A failing conversion does not affect the others.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class BatchConverter {
+
+  /** Logger */
+  private static final transient Logger logger = Logger.getLogger(BatchConverter.class.getName());
+
+  /** Suffix of metabolite tables in a directory, before the extension. */
+  public static final String METABOLITES_SUFFIX = "_metabolites";
+
+  /** Suffix of reaction tables in a directory, before the extension. */
+  public static final String REACTIONS_SUFFIX = "_reactions";
+
+  /**
+   * The tables and the output file of one model.
+   */
+  public static class Job {
+
+    private final File metabolites;
+    private final File reactions;
+    private final File output;
+
+    /**
+     * @param metabolites
+     * @param reactions
+     * @param output
+     */
+    public Job(File metabolites, File reactions, File output) {
+      this.metabolites = metabolites;
+      this.reactions = reactions;
+      this.output = output;
+    }
+
+    /**
+     * @return the metabolites file.
+     */
+    public File getMetabolites() {
+      return metabolites;
+    }
+
+    /**
+     * @return the reactions file.
+     */
+    public File getReactions() {
+      return reactions;
+    }
+
+    /**
+     * @return the SBML output file.
+     */
+    public File getOutput() {
+      return output;
+    }
+
+    @Override
+    public String toString() {
+      return output.getName();
+    }
+
+  }
+
+  /**
+   * The outcome of one {@link Job}.
+   */
+  public static class Result {
+
+    private final Job job;
+    private final Throwable failure;
+    private final long time;
+
+    /**
+     * @param job
+     * @param failure
+     *        the reason why the conversion failed or {@code null}
+     * @param time
+     *        milliseconds needed for the conversion
+     */
+    Result(Job job, Throwable failure, long time) {
+      this.job = job;
+      this.failure = failure;
+      this.time = time;
+    }
+
+    /**
+     * @return the converted job.
+     */
+    public Job getJob() {
+      return job;
+    }
+
+    /**
+     * @return the reason why the conversion failed or {@code null} if it
+     *         succeeded.
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    /**
+     * @return the number of milliseconds needed for the conversion.
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * @return {@code true} if the model has been written.
+     */
+    public boolean isSuccess() {
+      return failure == null;
+    }
+
+  }
+
+  /** Settings for all conversions. */
+  private final ConversionOptions options;
+
+  /** Identifiers shared by all conversions. */
+  private final IdentifierCache identifierCache;
+
+  /**
+   * @param options
+   *        settings for all conversions
+   */
+  public BatchConverter(ConversionOptions options) {
+    this(options, new IdentifierCache());
+  }
+
+  /**
+   * @param options
+   *        settings for all conversions
+   * @param identifierCache
+   *        a cache of identifiers that can also be shared with other
+   *        conversions
+   */
+  public BatchConverter(ConversionOptions options, IdentifierCache identifierCache) {
+    this.options = options;
+    this.identifierCache = identifierCache;
+  }
+
+  /**
+   * @param path
+   *        a manifest file or a directory
+   * @return all jobs listed in the manifest or found in the directory.
+   * @throws IOException
+   * @see #readManifest(File)
+   * @see #scanDirectory(File)
+   */
+  public static List<Job> findJobs(File path) throws IOException {
+    return path.isDirectory() ? scanDirectory(path) : readManifest(path);
+  }
+
+  /**
+   * Reads a manifest file, in which each line gives the metabolites file, the
+   * reactions file, and the output file of one model, separated by tabs or,
+   * if there are no tabs, by white space. Relative paths are resolved against
+   * the directory of the manifest. Empty lines and lines starting with
+   * {@code #} are ignored.
+   *
+   * @param manifest
+   * @return the jobs in the order of the manifest.
+   * @throws IOException
+   *         if the file cannot be read or a line does not give exactly three
+   *         files.
+   */
+  public static List<Job> readManifest(File manifest) throws IOException {
+    File dir = manifest.getAbsoluteFile().getParentFile();
+    List<Job> jobs = new ArrayList<Job>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8));
+    try {
+      String line;
+      for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String files[] = line.split(line.indexOf('\t') < 0 ? "\\s+" : "\t");
+        if (files.length != 3) {
+          throw new IOException(format("Expected three files in line {0,number,#} of {1}, but found {2,number,#}.", lineNumber, manifest, files.length));
+        }
+        jobs.add(new Job(resolve(dir, files[0]), resolve(dir, files[1]), resolve(dir, files[2])));
+      }
+    } finally {
+      reader.close();
+    }
+    return jobs;
+  }
+
+  /**
+   * Finds all pairs of tables named {@code NAME_metabolites.EXT} and
+   * {@code NAME_reactions.EXT} in the given directory. The model of each pair
+   * is written to {@code NAME.xml} in the same directory.
+   *
+   * @param dir
+   * @return the jobs in alphabetical order of the model names.
+   * @throws IOException
+   *         if the directory cannot be read.
+   */
+  public static List<Job> scanDirectory(File dir) throws IOException {
+    File files[] = dir.listFiles();
+    if (files == null) {
+      throw new IOException(format("Cannot list the files in {0}.", dir));
+    }
+    Arrays.sort(files);
+    List<Job> jobs = new ArrayList<Job>();
+    for (File metabolites : files) {
+      String name = metabolites.getName();
+      int split = name.lastIndexOf(METABOLITES_SUFFIX + '.');
+      if (split <= 0) {
+        continue;
+      }
+      String model = name.substring(0, split);
+      File reactions = new File(dir, model + REACTIONS_SUFFIX + name.substring(split + METABOLITES_SUFFIX.length()));
+      if (reactions.isFile()) {
+        jobs.add(new Job(metabolites, reactions, new File(dir, model + ".xml")));
+      } else {
+        logger.warning(format("Skipping {0} because there is no {1}.", metabolites, reactions.getName()));
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * @param dir
+   * @param path
+   * @return the given path, resolved against the directory if it is relative.
+   */
+  private static File resolve(File dir, String path) {
+    File file = new File(path);
+    return file.isAbsolute() ? file : new File(dir, path);
+  }
+
+  /**
+   * Converts all given models and waits until all conversions have finished.
+   *
+   * @param jobs
+   * @return the results in the same order as the jobs.
+   */
+  public List<Result> convert(List<Job> jobs) {
+    // Let JSBML load its packages once before the conversions start.
+    Table2Model.createModelBuilder();
+    final Semaphore permits = new Semaphore(Math.max(1, options.getJobs()));
+    ExecutorService executor = newExecutor(Math.max(1, options.getJobs()));
+    List<Future<Result>> futures = new ArrayList<Future<Result>>(jobs.size());
+    try {
+      for (final Job job : jobs) {
+        futures.add(executor.submit(() -> {
+          permits.acquire();
+          try {
+            return convert(job);
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    List<Result> results = new ArrayList<Result>(jobs.size());
+    int failures = 0;
+    for (int i = 0; i < jobs.size(); i++) {
+      Result result;
+      try {
+        result = futures.get(i).get();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        result = new Result(jobs.get(i), exc, 0L);
+      } catch (ExecutionException exc) {
+        result = new Result(jobs.get(i), exc.getCause(), 0L);
+      }
+      if (!result.isSuccess()) {
+        failures++;
+      }
+      results.add(result);
+    }
+    logger.info(format("Converted {0,number,#} of {1,number,#} models. Identifiers: {2}", jobs.size() - failures, jobs.size(), identifierCache));
+    return results;
+  }
+
+  /**
+   * Converts one model and catches all problems, so that the other
+   * conversions can continue. This method is called concurrently for
+   * different jobs.
+   *
+   * @param job
+   * @return the result of the conversion.
+   */
+  Result convert(Job job) {
+    long time = System.currentTimeMillis();
+    try {
+      Table2Model.convert(job.getMetabolites(), job.getReactions(), job.getOutput(), options, identifierCache);
+      time = System.currentTimeMillis() - time;
+      logger.info(format("Converted {0} in {1,number,#} ms.", job, time));
+      return new Result(job, null, time);
+    } catch (Throwable exc) {
+      time = System.currentTimeMillis() - time;
+      logger.log(Level.SEVERE, format("Conversion of {0} failed: {1}", job, exc), exc);
+      return new Result(job, exc, time);
+    }
+  }
+
+  /**
+   * @param threads
+   *        number of threads if virtual threads are not available
+   * @return an executor that starts a new virtual thread for each task if the
+   *         JVM supports this, or a fixed thread pool otherwise.
+   */
+  private static ExecutorService newExecutor(int threads) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException exc) {
+      return Executors.newFixedThreadPool(threads);
+    }
+  }
+
+}
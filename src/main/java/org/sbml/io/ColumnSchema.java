@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * The positions of the columns of one table. By default, each column is
+ * expected at a fixed position. A schema can also be resolved once from the
+ * header row of a table, where columns are recognized by their usual names,
+ * and from a mapping file, so that tables with other column orders can be
+ * converted. Afterwards, the content of each column is looked up by its
+ * position only.
+ * <p>
+ * A mapping file is a properties file with one line per column, e.g.,
+ * {@code reactions.lower_bound=LB} or {@code metabolites.charge=3}. The key
+ * consists of the name of the table and of the column, the value is either
+ * the name of the column in the header row or its zero-based position. An
+ * empty value means that the table does not have this column. An optional
+ * column that is neither found in the header nor mapped causes a warning,
+ * and it is left empty in all rows.
+ *
+ * @param <C>
+ *        the columns of the table
+ * @author Andreas Dr&auml;ger
+ */
+public class ColumnSchema<C extends Enum<C> & ColumnSchema.Column> {
+
+  /**
+   * A column that a reader needs.
+   */
+  public interface Column {
+
+    /**
+     * @return the zero-based position of this column if the table is read
+     *         without a header.
+     */
+    int getDefaultPosition();
+
+    /**
+     * @return the names under which this column occurs in header rows,
+     *         normalized by {@link ColumnSchema#normalize(String)}.
+     */
+    String[] getNames();
+
+    /**
+     * @return {@code true} if no row can be converted without this column.
+     */
+    boolean isRequired();
+
+  }
+
+  private static final transient Logger logger = Logger.getLogger(ColumnSchema.class.getName());
+
+  private final Class<C> type;
+
+  /** Position of each column by its ordinal or -1 if the table does not have it. */
+  private final int positions[];
+
+  /**
+   * @param type
+   * @param positions
+   */
+  private ColumnSchema(Class<C> type, int positions[]) {
+    this.type = type;
+    this.positions = positions;
+  }
+
+  /**
+   * @param type
+   * @return a schema in which each column is at its default position.
+   */
+  public static <C extends Enum<C> & Column> ColumnSchema<C> defaults(Class<C> type) {
+    C columns[] = type.getEnumConstants();
+    int positions[] = new int[columns.length];
+    for (C column : columns) {
+      positions[column.ordinal()] = column.getDefaultPosition();
+    }
+    return new ColumnSchema<C>(type, positions);
+  }
+
+  /**
+   * Finds the columns of a table as requested by the options: at their
+   * default positions, by their names in the header row, or as given in the
+   * mapping file.
+   *
+   * @param type
+   * @param table
+   *        the name of the table in the mapping file, e.g.,
+   *        {@code reactions}
+   * @param header
+   *        the first row of the table
+   * @param options
+   * @return the positions of all columns.
+   * @throws IOException
+   *         if the mapping file cannot be read or if a required column
+   *         cannot be found.
+   */
+  public static <C extends Enum<C> & Column> ColumnSchema<C> resolve(Class<C> type, String table, TableRow header,
+    ConversionOptions options) throws IOException {
+    if (!options.isColumnsFromHeader()) {
+      return defaults(type);
+    }
+    Properties mapping = readMapping(options.getColumnMapping());
+    Map<String, Integer> names = new HashMap<String, Integer>();
+    for (int i = header.size() - 1; i >= 0; i--) {
+      // The first column of the same name wins.
+      names.put(normalize(header.get(i)), Integer.valueOf(i));
+    }
+    C columns[] = type.getEnumConstants();
+    int positions[] = new int[columns.length];
+    for (C column : columns) {
+      String key = table + '.' + column.name().toLowerCase();
+      String value = mapping.getProperty(key);
+      int position = -1;
+      if (value == null) {
+        for (String name : column.getNames()) {
+          Integer i = names.get(name);
+          if ((i != null) && (position < 0)) {
+            position = i.intValue();
+          }
+        }
+      } else if (!(value = value.trim()).isEmpty()) {
+        if (value.chars().allMatch(Character::isDigit)) {
+          position = Integer.parseInt(value);
+        } else {
+          Integer i = names.get(normalize(value));
+          if (i == null) {
+            throw new IOException(format("The header does not contain the column ''{0}'' given for {1}.", value, key));
+          }
+          position = i.intValue();
+        }
+      }
+      if ((position < 0) && column.isRequired()) {
+        throw new IOException(format("The header does not contain a column for {0}.", key));
+      } else if ((position < 0) && (value == null)) {
+        logger.warning(format("The header does not contain a column for {0}; it is left empty.", key));
+      }
+      positions[column.ordinal()] = position;
+    }
+    return new ColumnSchema<C>(type, positions);
+  }
+
+  /**
+   * @param file
+   *        a mapping file or {@code null}
+   * @return the content of the mapping file, which is empty if there is no
+   *         file.
+   * @throws IOException
+   */
+  private static Properties readMapping(File file) throws IOException {
+    Properties mapping = new Properties();
+    if (file != null) {
+      InputStream in = new FileInputStream(file);
+      try {
+        mapping.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    return mapping;
+  }
+
+  /**
+   * @param name
+   * @return the given column name in lower case without any characters other
+   *         than letters and digits.
+   */
+  public static String normalize(String name) {
+    StringBuilder sb = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param column
+   * @return the zero-based position of the given column or -1 if the table
+   *         does not have this column.
+   */
+  public int getPosition(C column) {
+    return positions[column.ordinal()];
+  }
+
+  /**
+   * @param row
+   * @param column
+   * @return {@code true} if the table or the given row does not have the
+   *         given column or if the column does not have any content.
+   */
+  public boolean isEmpty(TableRow row, C column) {
+    int position = positions[column.ordinal()];
+    return (position < 0) || row.isEmpty(position);
+  }
+
+  /**
+   * @param row
+   * @param column
+   * @return the content of the given column, which is empty if the table
+   *         does not have this column.
+   * @throws IndexOutOfBoundsException
+   *         if the row has fewer columns.
+   */
+  public String get(TableRow row, C column) {
+    int position = positions[column.ordinal()];
+    return position < 0 ? "" : row.get(position);
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (C column : type.getEnumConstants()) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(column.name().toLowerCase());
+      sb.append('=');
+      sb.append(positions[column.ordinal()]);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens input and output files that are compressed depending on the
+ * extension of their name. Tables can be compressed with GZIP ({@code .gz})
+ * or be the first file in a ZIP archive ({@code .zip}). Output files whose
+ * names end with {@code .gz} are compressed with a
+ * {@link ParallelGZIPOutputStream}. All other files are read and written as
+ * they are.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class Compression {
+
+  /** Extension of files compressed with GZIP. */
+  public static final String GZIP = ".gz";
+
+  /** Extension of ZIP archives. */
+  public static final String ZIP = ".zip";
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Utility class.
+   */
+  private Compression() {
+  }
+
+  /**
+   * @param file
+   * @return {@code true} if the given file is compressed according to its
+   *         name.
+   */
+  public static boolean isCompressed(File file) {
+    String name = file.getName().toLowerCase();
+    return name.endsWith(GZIP) || name.endsWith(ZIP);
+  }
+
+  /**
+   * @param name
+   * @return the given file name without the extension of a compression
+   *         format, e.g., {@code model.xml} for {@code model.xml.gz}.
+   */
+  public static String stripExtension(String name) {
+    String lowerCase = name.toLowerCase();
+    if (lowerCase.endsWith(GZIP)) {
+      return name.substring(0, name.length() - GZIP.length());
+    } else if (lowerCase.endsWith(ZIP)) {
+      return name.substring(0, name.length() - ZIP.length());
+    }
+    return name;
+  }
+
+  /**
+   * @param file
+   * @return a buffered stream of the decompressed content of the given file.
+   * @throws IOException
+   *         if the file cannot be read or if a ZIP archive does not contain
+   *         any file.
+   */
+  public static InputStream openInput(File file) throws IOException {
+    String name = file.getName().toLowerCase();
+    InputStream in = new FileInputStream(file);
+    try {
+      if (name.endsWith(GZIP)) {
+        return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+      } else if (name.endsWith(ZIP)) {
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        ZipEntry entry;
+        while (((entry = zip.getNextEntry()) != null) && entry.isDirectory()) {
+          // Skip directories
+        }
+        if (entry == null) {
+          zip.close();
+          throw new IOException(format("{0} does not contain any file.", file));
+        }
+        return zip;
+      }
+      return new BufferedInputStream(in, BUFFER_SIZE);
+    } catch (IOException exc) {
+      in.close();
+      throw exc;
+    }
+  }
+
+  /**
+   * @param file
+   * @return a buffered stream that writes to the given file and compresses
+   *         the data if the name of the file ends with {@link #GZIP}.
+   * @throws IOException
+   */
+  public static OutputStream openOutput(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    if (file.getName().toLowerCase().endsWith(GZIP)) {
+      return new BufferedOutputStream(new ParallelGZIPOutputStream(out), BUFFER_SIZE);
+    }
+    return new BufferedOutputStream(out, BUFFER_SIZE);
+  }
+
+}
@@ -0,0 +1,124 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+
+/**
+ * Sends the arguments of {@link Table2Model#main(String[])} to a running
+ * {@link ConversionDaemon} and prints its answer. This class does not use
+ * JSBML or any other class of the conversion, so that the JVM of the client
+ * starts quickly. The client authenticates itself with the token that the
+ * daemon has written to {@link #getTokenFile(int)}, so that only the owner of
+ * the daemon can send requests.
+ * <p>
+ * The exit code is 0 if the conversion has succeeded, 1 if it has failed,
+ * and 2 if there is no daemon on the port.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionClient {
+
+  /**
+   * @param port
+   * @return the file in which the daemon on the given port keeps the token
+   *         that clients have to send, in the directory {@code .table2model}
+   *         in the home directory of the user.
+   */
+  public static File getTokenFile(int port) {
+    return new File(new File(System.getProperty("user.home"), ".table2model"), "daemon-" + port + ".token");
+  }
+
+  /**
+   * @param args
+   *        optionally {@code --port=N}, followed by the arguments of
+   *        {@link Table2Model#main(String[])} or by {@code --shutdown} to
+   *        stop the daemon.
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    int port = ConversionDaemon.DEFAULT_PORT;
+    int first = 0;
+    if ((args.length > 0) && args[0].startsWith(ConversionDaemon.PORT_OPTION)) {
+      port = Integer.parseInt(args[0].substring(ConversionDaemon.PORT_OPTION.length()));
+      first = 1;
+    }
+    System.exit(send(port, Arrays.copyOfRange(args, first, args.length), new File("").getAbsoluteFile(), System.err));
+  }
+
+  /**
+   * Sends one request to the daemon and prints all messages of its answer.
+   *
+   * @param port
+   *        the port of the daemon
+   * @param args
+   *        the arguments of {@link Table2Model#main(String[])} or
+   *        {@code --shutdown}
+   * @param dir
+   *        the directory against which the daemon resolves relative paths
+   * @param err
+   *        to which the messages of the daemon are printed
+   * @return 0 if the conversion has succeeded, 1 if it has failed, and 2 if
+   *         there is no daemon on the port.
+   * @throws IOException
+   */
+  static int send(int port, String args[], File dir, PrintStream err) throws IOException {
+    String token;
+    try {
+      token = new String(Files.readAllBytes(getTokenFile(port).toPath()), StandardCharsets.UTF_8).trim();
+    } catch (NoSuchFileException exc) {
+      err.println("No conversion daemon on port " + port + "; start it with java -cp table2model.jar org.sbml.io.ConversionDaemon");
+      return 2;
+    }
+    Socket socket;
+    try {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    } catch (ConnectException exc) {
+      err.println("No conversion daemon on port " + port + "; start it with java -cp table2model.jar org.sbml.io.ConversionDaemon");
+      return 2;
+    }
+    boolean success = false;
+    try {
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      out.write(token);
+      out.write('\n');
+      out.write(dir.getPath());
+      out.write('\n');
+      for (String arg : args) {
+        out.write(arg);
+        out.write('\n');
+      }
+      out.write('\n');
+      out.flush();
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith(ConversionDaemon.LOG)) {
+          err.println(line.substring(ConversionDaemon.LOG.length()));
+        } else if (line.equals(ConversionDaemon.OK)) {
+          success = true;
+        } else if (line.startsWith(ConversionDaemon.ERROR)) {
+          err.println(line.substring(ConversionDaemon.ERROR.length()));
+        }
+      }
+    } finally {
+      socket.close();
+    }
+    return success ? 0 : 1;
+  }
+
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+/**
+ * State that is shared by all {@link RowReader}s of one conversion.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionContext {
+
+  /** Conversion of abbreviations to identifiers. */
+  private final IdentifierCache identifierCache;
+
+  /** Lookup of species and compartments used in reaction equations. */
+  private final SpeciesIndex speciesIndex;
+
+  /** Parsed gene-protein-reaction rules. */
+  private final GPRCache gprCache;
+
+  /** Resources to be added to the annotations of model elements. */
+  private final AnnotationAccumulator annotations;
+
+  /** Shared flux bound parameters or {@code null} if each reaction has its own. */
+  private final FluxBoundPool fluxBoundPool;
+
+  /** Generated identifiers and groups of subsystems. */
+  private final IdRegistry idRegistry;
+
+  /** Reactions whose balance is checked or {@code null} if no check is wanted. */
+  private final BalanceChecker balanceChecker;
+
+  /** Columns of the stoichiometric matrix or {@code null} if no matrix is wanted. */
+  private final StoichiometricMatrix.Builder stoichiometry;
+
+  /** Reactions whose topology is analyzed or {@code null} if no analysis is wanted. */
+  private final TopologyAnalysis topology;
+
+  /** Problems found in the tables. */
+  private final Diagnostics diagnostics;
+
+  /**
+   * Creates a context with its own {@link IdentifierCache} and without
+   * detailed diagnostic output.
+   */
+  public ConversionContext() {
+    this(new IdentifierCache(), new Diagnostics());
+  }
+
+  /**
+   * @param identifierCache
+   *        a cache of identifiers, which may also be shared with other
+   *        conversions
+   * @param diagnostics
+   *        collects the problems found in the tables
+   */
+  public ConversionContext(IdentifierCache identifierCache, Diagnostics diagnostics) {
+    this(identifierCache, new SpeciesIndex(), new GPRCache(), new AnnotationAccumulator(), null, new IdRegistry(), null, null, null, diagnostics);
+  }
+
+  /**
+   * Creates a context as requested by the given options.
+   *
+   * @param identifierCache
+   *        a cache of identifiers, which may also be shared with other
+   *        conversions
+   * @param options
+   *        decide about detailed diagnostic output, about pooling flux bound
+   *        parameters, about checking the balance of reactions, about
+   *        building the stoichiometric matrix, and about analyzing the
+   *        topology of the network
+   */
+  public ConversionContext(IdentifierCache identifierCache, ConversionOptions options) {
+    this(identifierCache, new SpeciesIndex(), new GPRCache(), new AnnotationAccumulator(),
+      options.isPoolFluxBounds() ? new FluxBoundPool(Table2Model.MMOL_PER_G_DW_PER_HR) : null, new IdRegistry(),
+      options.isCheckBalance() ? new BalanceChecker() : null,
+      options.getStoichiometry() != null ? new StoichiometricMatrix.Builder(identifierCache) : null,
+      options.getTopology() != null ? new TopologyAnalysis(options.getTopology(), identifierCache) : null,
+      new Diagnostics(options.isDetailed()));
+  }
+
+  /**
+   * @param identifierCache
+   * @param speciesIndex
+   * @param gprCache
+   * @param annotations
+   * @param fluxBoundPool
+   * @param idRegistry
+   * @param balanceChecker
+   * @param stoichiometry
+   * @param topology
+   * @param diagnostics
+   */
+  private ConversionContext(IdentifierCache identifierCache, SpeciesIndex speciesIndex, GPRCache gprCache,
+    AnnotationAccumulator annotations, FluxBoundPool fluxBoundPool, IdRegistry idRegistry,
+    BalanceChecker balanceChecker, StoichiometricMatrix.Builder stoichiometry, TopologyAnalysis topology,
+    Diagnostics diagnostics) {
+    this.identifierCache = identifierCache;
+    this.speciesIndex = speciesIndex;
+    this.gprCache = gprCache;
+    this.annotations = annotations;
+    this.fluxBoundPool = fluxBoundPool;
+    this.idRegistry = idRegistry;
+    this.balanceChecker = balanceChecker;
+    this.stoichiometry = stoichiometry;
+    this.topology = topology;
+    this.diagnostics = diagnostics;
+  }
+
+  /**
+   * @param diagnostics
+   * @return a context that shares identifiers, species, compartments,
+   *         gene-protein-reaction rules, annotations, flux bounds, groups,
+   *         the balance check, the stoichiometric matrix, and the topology
+   *         analysis with this context, but reports problems to the given collector.
+   */
+  ConversionContext withDiagnostics(Diagnostics diagnostics) {
+    return new ConversionContext(identifierCache, speciesIndex, gprCache, annotations, fluxBoundPool, idRegistry,
+      balanceChecker, stoichiometry, topology, diagnostics);
+  }
+
+  /**
+   * @return the collector of problems found in the tables.
+   */
+  public Diagnostics getDiagnostics() {
+    return diagnostics;
+  }
+
+  /**
+   * @return the cache of identifiers.
+   */
+  public IdentifierCache getIdentifierCache() {
+    return identifierCache;
+  }
+
+  /**
+   * @return the index of species and compartments.
+   */
+  public SpeciesIndex getSpeciesIndex() {
+    return speciesIndex;
+  }
+
+  /**
+   * @return the cache of parsed gene-protein-reaction rules.
+   */
+  public GPRCache getGPRCache() {
+    return gprCache;
+  }
+
+  /**
+   * @return the resources to be added to the annotations of model elements.
+   */
+  public AnnotationAccumulator getAnnotations() {
+    return annotations;
+  }
+
+  /**
+   * @return the shared flux bound parameters or {@code null} if each
+   *         reaction with a bound that is not a default bound has its own
+   *         parameters.
+   */
+  public FluxBoundPool getFluxBoundPool() {
+    return fluxBoundPool;
+  }
+
+  /**
+   * @return the generated identifiers and the groups of subsystems.
+   */
+  public IdRegistry getIdRegistry() {
+    return idRegistry;
+  }
+
+  /**
+   * @return the reactions whose balance is checked or {@code null} if no
+   *         check is wanted.
+   */
+  public BalanceChecker getBalanceChecker() {
+    return balanceChecker;
+  }
+
+  /**
+   * @return the columns of the stoichiometric matrix collected so far or
+   *         {@code null} if no matrix is wanted.
+   */
+  public StoichiometricMatrix.Builder getStoichiometry() {
+    return stoichiometry;
+  }
+
+  /**
+   * @return the stoichiometric matrix of all reactions collected so far,
+   *         without the blocked reactions and dead-end metabolites if these
+   *         are removed from the model, or {@code null} if no matrix is
+   *         wanted.
+   */
+  StoichiometricMatrix buildStoichiometricMatrix() {
+    if (stoichiometry == null) {
+      return null;
+    }
+    StoichiometricMatrix matrix = stoichiometry.build();
+    if ((topology != null) && (topology.getMode() == TopologyAnalysis.Mode.REMOVE)) {
+      matrix = topology.remove(matrix);
+    }
+    return matrix;
+  }
+
+  /**
+   * @return the reactions whose topology is analyzed or {@code null} if no
+   *         analysis is wanted.
+   */
+  public TopologyAnalysis getTopology() {
+    return topology;
+  }
+
+}
@@ -0,0 +1,446 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import de.zbit.util.logging.LogUtil;
+
+/**
+ * Converts tables on request of a {@link ConversionClient}, so that repeated
+ * conversions, e.g., after each edit of a table, neither start a new JVM nor
+ * load JSBML again and run with code that has already been compiled by the
+ * JIT. All conversions share the empty model with all units and one
+ * {@link IdentifierCache}, which is replaced by an empty one after a request
+ * once it holds more than {@value #MAX_IDENTIFIERS} identifiers. Before the daemon accepts requests,
+ * it converts a small model to load and compile the classes needed for a
+ * conversion.
+ * <p>
+ * The daemon only listens on the loopback address. Since it writes files
+ * with the permissions of its owner, it only accepts requests from clients
+ * that know a random token, which is written to a file that only the owner
+ * can read (see {@link ConversionClient#getTokenFile(int)}). A request
+ * consists of this token, the working directory of the client, and the
+ * command-line arguments of {@link Table2Model#main(String[])}, one per line,
+ * followed by an empty line. Relative paths are resolved against the working
+ * directory of the client. The daemon answers with the messages that the
+ * conversion logs on its thread and on all threads started by it, each line
+ * starting with {@value #LOG}, and finally with {@value #OK} or with
+ * {@value #ERROR} followed by the reason. The request {@value #SHUTDOWN}
+ * stops the daemon.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionDaemon {
+
+  /** Logger */
+  private static final transient Logger logger = Logger.getLogger(ConversionDaemon.class.getName());
+
+  /** Port on which the daemon listens by default. */
+  public static final int DEFAULT_PORT = 7767;
+
+  /** Option of the port, for both the daemon and the client. */
+  static final String PORT_OPTION = "--port=";
+
+  /** Request to stop the daemon. */
+  static final String SHUTDOWN = "--shutdown";
+
+  /** Start of each logged message in an answer. */
+  static final String LOG = "LOG ";
+
+  /** Answer to a successful request. */
+  static final String OK = "OK";
+
+  /** Start of the answer to a failed request. */
+  static final String ERROR = "ERROR ";
+
+  /** Number of identifiers above which the shared cache is replaced after a request. */
+  static final int MAX_IDENTIFIERS = 1 << 18;
+
+  /** The handler of the request to which the current thread belongs. */
+  private static final InheritableThreadLocal<Handler> request = new InheritableThreadLocal<Handler>();
+
+  /** Identifiers shared by all conversions. */
+  private volatile IdentifierCache identifierCache = new IdentifierCache();
+
+  private final int port;
+
+  private ServerSocket server;
+
+  /** The token that a client must send with each request. */
+  private byte token[];
+
+  /**
+   * @param port
+   */
+  public ConversionDaemon(int port) {
+    this.port = port;
+  }
+
+  /**
+   * Converts a small synthetic model, so that JSBML has loaded its packages
+   * and the JIT has compiled the code of a conversion before the first
+   * request.
+   *
+   * @throws IOException
+   */
+  public void warmUp() throws IOException {
+    long time = System.currentTimeMillis();
+    File dir = Files.createTempDirectory("table2model").toFile();
+    File metabolites = new File(dir, "warmup_metabolites.csv");
+    File reactions = new File(dir, "warmup_reactions.csv");
+    File output = new File(dir, "warmup.xml");
+    writeLines(metabolites,
+      "Abbreviation;Name;Formula;Formula2;Charge",
+      "glc-D;D-Glucose;C6H12O6;;0",
+      "g6p;D-Glucose 6-phosphate;C6H11O9P;;-2",
+      "atp;ATP;C10H12N5O13P3;;-4",
+      "adp;ADP;C10H12N5O10P2;;-3",
+      "h;H+;H;;1");
+    writeLines(reactions,
+      "Abbreviation;Name;Equation;GPR;Genes;Proteins;Subsystem;Reversible;LB;UB;Obj;Conf;EC;Notes;Ref",
+      "EX_glc;Glucose exchange;glc-D[e] <=> ;;;;Exchange;true;-10;1000;0;0;;;",
+      "GLCt;Glucose transport;glc-D[e] => glc-D[c];g1 or g2;g1 g2;P1 P2;Transport;false;0;1000;0;2;;;",
+      "HEX1;Hexokinase;atp[c] + glc-D[c] => adp[c] + g6p[c] + h[c];g3 and g4;g3 g4;P3 P4;Glycolysis;false;0;1000;0;4;2.7.1.1;;PMID:1234",
+      "ATPS;ATP synthase;adp[c] + h[c] <=> atp[c];g5;g5;P5;Energy;true;-1000;1000;0;3;;;",
+      "DM_g6p;Demand;g6p[c] => ;;;;Demand;false;0;1000;1;0;;;");
+    ConversionOptions options = new ConversionOptions();
+    options.setCharset(StandardCharsets.UTF_8);
+    Logger root = Logger.getLogger("");
+    Level level = root.getLevel();
+    root.setLevel(Level.WARNING);
+    try {
+      for (int i = 0; i < 3; i++) {
+        Table2Model.convert(metabolites, reactions, output, options, new IdentifierCache());
+      }
+    } catch (Exception exc) {
+      throw new IOException(format("Warm-up failed: {0}", exc), exc);
+    } finally {
+      root.setLevel(level);
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+    logger.info(format("Warm-up finished after {0,number,#} ms.", System.currentTimeMillis() - time));
+  }
+
+  /**
+   * @param file
+   * @param lines
+   * @throws IOException
+   */
+  private static void writeLines(File file, String... lines) throws IOException {
+    Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8);
+    try {
+      for (String line : lines) {
+        out.write(line);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Accepts requests until a client asks the daemon to stop. Each request is
+   * handled on its own thread, so that several conversions can run at the
+   * same time.
+   *
+   * @throws IOException
+   *         if the port cannot be opened.
+   */
+  public void run() throws IOException {
+    server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    File tokenFile = ConversionClient.getTokenFile(server.getLocalPort());
+    token = writeToken(tokenFile);
+    logger.info(format("Waiting for conversions on {0}:{1,number,#}.", server.getInetAddress().getHostAddress(), server.getLocalPort()));
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      while (!server.isClosed()) {
+        final Socket socket;
+        try {
+          socket = server.accept();
+        } catch (SocketException exc) {
+          // The server socket has been closed by a shutdown request.
+          break;
+        }
+        executor.execute(() -> handle(socket));
+      }
+    } finally {
+      executor.shutdown();
+      Files.deleteIfExists(tokenFile.toPath());
+    }
+    logger.info("Daemon stopped.");
+  }
+
+  /**
+   * Creates a new random token and writes it to the given file, which only
+   * the owner of the daemon can read. The directory of the file is restricted
+   * to its owner as well, also if it already exists.
+   *
+   * @param file
+   * @return the token.
+   * @throws IOException
+   */
+  private static byte[] writeToken(File file) throws IOException {
+    byte random[] = new byte[32];
+    new SecureRandom().nextBytes(random);
+    StringBuilder sb = new StringBuilder(2 * random.length);
+    for (byte b : random) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    byte token[] = sb.toString().getBytes(StandardCharsets.UTF_8);
+    Path path = file.toPath();
+    Files.deleteIfExists(path);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Set<PosixFilePermission> owner = PosixFilePermissions.fromString("rwx------");
+      Files.createDirectories(path.getParent(), PosixFilePermissions.asFileAttribute(owner));
+      Files.setPosixFilePermissions(path.getParent(), owner);
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else {
+      Files.createDirectories(path.getParent());
+      File dir = file.getParentFile();
+      if (!(dir.setReadable(false, false) && dir.setReadable(true, true) && dir.setWritable(false, false)
+          && dir.setWritable(true, true) && dir.setExecutable(false, false) && dir.setExecutable(true, true))) {
+        throw new IOException(format("Cannot restrict the access to {0}.", dir));
+      }
+      Files.createFile(path);
+      if (!(file.setReadable(false, false) && file.setReadable(true, true))) {
+        throw new IOException(format("Cannot restrict the access to {0}.", file));
+      }
+    }
+    Files.write(path, token);
+    return token;
+  }
+
+  /**
+   * Reads one request from the socket, runs it, and closes the socket.
+   *
+   * @param socket
+   */
+  private void handle(Socket socket) {
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      final Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      try {
+        String line = in.readLine();
+        if ((line == null) || !MessageDigest.isEqual(token, line.getBytes(StandardCharsets.UTF_8))) {
+          logger.warning("Rejected a request without the correct token.");
+          answer(out, ERROR + "Invalid token.");
+          return;
+        }
+        line = in.readLine();
+        File dir = new File(line == null ? "." : line);
+        List<String> args = new ArrayList<String>();
+        while (((line = in.readLine()) != null) && !line.isEmpty()) {
+          args.add(line);
+        }
+        if ((args.size() == 1) && args.get(0).equals(SHUTDOWN)) {
+          answer(out, OK);
+          server.close();
+          return;
+        }
+        Handler handler = new ForwardingHandler(out);
+        Logger root = Logger.getLogger("");
+        request.set(handler);
+        root.addHandler(handler);
+        long time = System.currentTimeMillis();
+        try {
+          convert(dir, args);
+          logger.info(format("Request finished after {0,number,#} ms.", System.currentTimeMillis() - time));
+        } finally {
+          root.removeHandler(handler);
+          request.remove();
+          limitIdentifierCache();
+        }
+        answer(out, OK);
+      } catch (Throwable exc) {
+        // Errors, e.g., if the heap is too small for a model, are answered as well.
+        logger.log(exc instanceof Exception ? Level.FINE : Level.SEVERE, exc.getMessage(), exc);
+        String message = exc.getMessage() == null ? exc.toString() : exc.getMessage();
+        answer(out, ERROR + message.replace('\n', ' '));
+      } finally {
+        socket.close();
+      }
+    } catch (IOException exc) {
+      logger.log(Level.WARNING, format("Cannot answer a request: {0}", exc.getMessage()), exc);
+    }
+  }
+
+  /**
+   * Runs one request like {@link Table2Model#main(String[])}.
+   *
+   * @param dir
+   *        the working directory of the client
+   * @param args
+   * @throws Exception
+   */
+  void convert(File dir, List<String> args) throws Exception {
+    IdentifierCache identifierCache = this.identifierCache;
+    ConversionOptions options = new ConversionOptions();
+    List<String> files = options.parse(args.toArray(new String[0]));
+    options.setColumnMapping(resolve(dir, options.getColumnMapping()));
+    options.setSnapshotDirectory(resolve(dir, options.getSnapshotDirectory()));
+    if (options.getBatch() != null) {
+      BatchConverter batch = new BatchConverter(options, identifierCache);
+      List<BatchConverter.Job> jobs = BatchConverter.findJobs(resolve(dir, options.getBatch()));
+      int failures = 0;
+      for (BatchConverter.Result result : batch.convert(jobs)) {
+        if (!result.isSuccess()) {
+          failures++;
+        }
+      }
+      if (failures > 0) {
+        throw new IOException(format("{0,number,#} of {1,number,#} conversions failed.", failures, jobs.size()));
+      }
+      return;
+    }
+    if (files.size() != 3) {
+      throw new IllegalArgumentException(format("Expected a metabolites file, a reactions file, and an output file, but found {0,number,#} files.", files.size()));
+    }
+    Table2Model.convert(resolve(dir, new File(files.get(0))), resolve(dir, new File(files.get(1))),
+      resolve(dir, new File(files.get(2))), options, identifierCache);
+  }
+
+  /**
+   * Replaces the shared identifier cache by an empty one if it has grown
+   * above {@value #MAX_IDENTIFIERS} identifiers. Conversions that are still
+   * running keep using the previous cache.
+   */
+  private void limitIdentifierCache() {
+    IdentifierCache cache = identifierCache;
+    if (cache.size() > MAX_IDENTIFIERS) {
+      identifierCache = new IdentifierCache();
+      logger.info(format("Cleared {0}.", cache));
+    }
+  }
+
+  /**
+   * @param dir
+   * @param file
+   *        a file or {@code null}
+   * @return the given file, resolved against the directory if it is relative.
+   */
+  private static File resolve(File dir, File file) {
+    return (file == null) || file.isAbsolute() ? file : new File(dir, file.getPath());
+  }
+
+  /**
+   * @param out
+   * @param line
+   * @throws IOException
+   */
+  private static void answer(Writer out, String line) throws IOException {
+    synchronized (out) {
+      out.write(line);
+      out.write('\n');
+      out.flush();
+    }
+  }
+
+  /**
+   * Sends the messages that are logged on the thread of one request, or on
+   * any thread started by it, e.g., to parse rows or to convert the models of
+   * a batch, to its client.
+   */
+  private static class ForwardingHandler extends Handler {
+
+    private final Writer out;
+
+    /**
+     * @param out
+     */
+    ForwardingHandler(Writer out) {
+      this.out = out;
+      setFormatter(new SimpleFormatter());
+      setLevel(Level.INFO);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+      if ((request.get() != this) || !isLoggable(record)) {
+        return;
+      }
+      String message = record.getLevel() + ": " + getFormatter().formatMessage(record);
+      try {
+        for (String line : message.split("\n")) {
+          answer(out, LOG + line);
+        }
+      } catch (IOException exc) {
+        reportError(exc.getMessage(), exc, 0);
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+  /**
+   * Starts the daemon.
+   *
+   * @param args
+   *        optionally {@code --port=N} and {@code --warm-up-only}, which
+   *        only converts the model of the warm-up and exits, e.g., to record
+   *        the loaded classes for class data sharing.
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    LogUtil.initializeLogging("io.sbml");
+    int port = DEFAULT_PORT;
+    boolean warmUpOnly = false;
+    for (String arg : args) {
+      if (arg.startsWith(PORT_OPTION)) {
+        port = Integer.parseInt(arg.substring(PORT_OPTION.length()));
+      } else if (arg.equals("--warm-up-only")) {
+        warmUpOnly = true;
+      } else {
+        throw new IllegalArgumentException("Unknown option " + arg);
+      }
+    }
+    ConversionDaemon daemon = new ConversionDaemon(port);
+    daemon.warmUp();
+    if (!warmUpOnly) {
+      daemon.run();
+    }
+  }
+
+}
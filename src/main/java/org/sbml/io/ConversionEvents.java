@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the phases and conversions of {@link ConversionMetrics} as events,
+ * e.g., for Flight Recorder. The implementation for Flight Recorder,
+ * {@code FlightRecorderEvents}, is kept in {@code src/main/java11}, because
+ * the package {@code jdk.jfr} only exists from Java 11 on, and it is only
+ * compiled by the profile {@code flight-recorder}, which is active when the
+ * project is built with Java 11 or newer.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+interface ConversionEvents {
+
+  /** Name of the implementation for Flight Recorder. */
+  String FLIGHT_RECORDER = "org.sbml.io.FlightRecorderEvents";
+
+  /**
+   * @return the events of Flight Recorder or {@code null} if they have not
+   *         been compiled or if the Java runtime does not provide the Flight
+   *         Recorder API.
+   */
+  static ConversionEvents load() {
+    try {
+      Class.forName("jdk.jfr.Event", false, ConversionEvents.class.getClassLoader());
+      return (ConversionEvents) Class.forName(FLIGHT_RECORDER).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError exc) {
+      Logger.getLogger(ConversionEvents.class.getName()).log(Level.FINE, "No Flight Recorder events", exc);
+      return null;
+    }
+  }
+
+  /**
+   * @return a started event of one phase or {@code null} if no recording
+   *         wants it.
+   */
+  Object beginPhase();
+
+  /**
+   * @param event
+   *        a started event or {@code null}
+   * @param phase
+   * @param name
+   *        the table or the model
+   * @param rows
+   * @param rowsPerSecond
+   * @param heapUsed
+   *        the heap memory in bytes used at the end of the phase
+   */
+  void commitPhase(Object event, String phase, String name, long rows, double rowsPerSecond, long heapUsed);
+
+  /**
+   * @return a started event of a whole conversion or {@code null} if no
+   *         recording wants it.
+   */
+  Object beginConversion();
+
+  /**
+   * @param event
+   *        a started event or {@code null}
+   * @param model
+   * @param rows
+   * @param identifierCacheHitRate
+   * @param gprCacheHitRate
+   * @param maxHeapUsed
+   *        the largest amount of heap memory in bytes used at the end of
+   *        any phase of this conversion
+   */
+  void commitConversion(Object event, String model, long rows, double identifierCacheHitRate,
+    double gprCacheHitRate, long maxHeapUsed);
+
+}
@@ -0,0 +1,380 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timings of the phases of all conversions in this JVM. The totals are
+ * available through JMX as {@value #OBJECT_NAME}, and each phase and each
+ * conversion is also written as a Flight Recorder event if a recording has
+ * enabled the events {@code org.sbml.io.ConversionPhase} and
+ * {@code org.sbml.io.Conversion} (see {@link ConversionEvents}). Otherwise,
+ * measuring a phase costs two calls of {@link System#nanoTime()} and one
+ * query of the heap usage.
+ * <p>
+ * The heap usage is a property of the whole JVM. Each phase reports the
+ * heap used at its end and each conversion the largest of these samples,
+ * which include the memory of other conversions at the same time. The peak
+ * of all heap memory pools is only available as a total through JMX.
+ * <p>
+ * Instances are thread-safe, so that the conversions of a batch can share
+ * the single instance.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+
+  /**
+   * The phases of a conversion.
+   */
+  public enum Phase {
+    /** Creating the unit definitions of the empty model. */
+    UNITS,
+    /** Reading the metabolite table. */
+    METABOLITES,
+    /** Reading the reaction table. */
+    REACTIONS,
+    /** Adding the collected annotations to the model. */
+    ANNOTATION,
+    /** Checking and removing elements after the reaction table. */
+    CLEANUP,
+    /** Writing the output files. */
+    WRITE;
+  }
+
+  /**
+   * Measures one phase.
+   */
+  public class Timer {
+
+    private final Conversion conversion;
+    private final Phase phase;
+    private final String name;
+    private final long start;
+    private final Object event;
+
+    /**
+     * @param conversion
+     *        the conversion to which this phase belongs or {@code null}
+     * @param phase
+     * @param name
+     *        the table or the model
+     */
+    private Timer(Conversion conversion, Phase phase, String name) {
+      this.conversion = conversion;
+      this.phase = phase;
+      this.name = name;
+      event = EVENTS != null ? EVENTS.beginPhase() : null;
+      start = System.nanoTime();
+    }
+
+    /**
+     * Ends a phase that does not read any rows.
+     */
+    public void stop() {
+      stop(0);
+    }
+
+    /**
+     * @param rows
+     *        the number of rows that have been read in this phase
+     */
+    public void stop(int rows) {
+      long time = System.nanoTime() - start;
+      long heapUsed = memory.getHeapMemoryUsage().getUsed();
+      record(phase, time, rows);
+      if (conversion != null) {
+        conversion.record(phase, time, rows, heapUsed);
+      }
+      double rowsPerSecond = rows == 0 ? 0d : rows / (time / 1E9);
+      if (EVENTS != null) {
+        EVENTS.commitPhase(event, phase.name(), name, rows, rowsPerSecond, heapUsed);
+      }
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine(format("{0} {1}: {2,number,#} ms, {3,number,#} rows", phase, name,
+          TimeUnit.NANOSECONDS.toMillis(time), rows));
+      }
+    }
+
+  }
+
+  /**
+   * Measures all phases of one conversion.
+   */
+  public class Conversion {
+
+    private final String model;
+    private final long times[] = new long[PHASES.length];
+    private long rows;
+    /** Largest heap usage at the end of a phase of this conversion. */
+    private long maxHeapUsed;
+    private final Object event;
+
+    /**
+     * @param model
+     */
+    private Conversion(String model) {
+      this.model = model;
+      event = EVENTS != null ? EVENTS.beginConversion() : null;
+    }
+
+    /**
+     * @param phase
+     * @param table
+     *        the name of the table or {@code null} for the model
+     * @return a running measurement of the given phase.
+     */
+    public Timer start(Phase phase, String table) {
+      return new Timer(this, phase, table == null ? model : table);
+    }
+
+    /**
+     * @param phase
+     * @param time
+     * @param rows
+     * @param heapUsed
+     *        the heap used at the end of the phase
+     */
+    private synchronized void record(Phase phase, long time, int rows, long heapUsed) {
+      times[phase.ordinal()] += time;
+      this.rows += rows;
+      maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+    }
+
+    /**
+     * Ends this conversion.
+     *
+     * @param context
+     *        provides the caches of the conversion
+     */
+    public void end(ConversionContext context) {
+      double identifierCacheHitRate = context.getIdentifierCache().getHitRate();
+      double gprCacheHitRate = context.getGPRCache().getHitRate();
+      long rows, maxHeapUsed;
+      synchronized (this) {
+        rows = this.rows;
+        maxHeapUsed = this.maxHeapUsed;
+        for (int i = 0; i < times.length; i++) {
+          lastPhaseTimes.set(i, times[i]);
+        }
+      }
+      lastIdentifierCacheHitRate = identifierCacheHitRate;
+      lastGPRCacheHitRate = gprCacheHitRate;
+      conversions.increment();
+      if (EVENTS != null) {
+        EVENTS.commitConversion(event, model, rows, identifierCacheHitRate, gprCacheHitRate, maxHeapUsed);
+      }
+    }
+
+  }
+
+  /** Name under which the metrics are registered with the platform MBean server. */
+  public static final String OBJECT_NAME = "org.sbml.io:type=ConversionMetrics";
+
+  private static final transient Logger logger = Logger.getLogger(ConversionMetrics.class.getName());
+
+  private static final Phase PHASES[] = Phase.values();
+
+  /** Flight Recorder events or {@code null} if they are not available. */
+  private static final ConversionEvents EVENTS = ConversionEvents.load();
+
+  private static final ConversionMetrics instance = register(new ConversionMetrics());
+
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  private final LongAdder conversions = new LongAdder();
+  private final LongAdder rows = new LongAdder();
+  private final AtomicLongArray phaseTimes = new AtomicLongArray(PHASES.length);
+  private final AtomicLongArray lastPhaseTimes = new AtomicLongArray(PHASES.length);
+  private volatile double lastIdentifierCacheHitRate = Double.NaN;
+  private volatile double lastGPRCacheHitRate = Double.NaN;
+
+  /**
+   * Use {@link #getInstance()}.
+   */
+  private ConversionMetrics() {
+  }
+
+  /**
+   * @return the metrics of all conversions in this JVM.
+   */
+  public static ConversionMetrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param metrics
+   * @return the given metrics after registering them with the platform MBean
+   *         server, if possible.
+   */
+  private static ConversionMetrics register(ConversionMetrics metrics) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+    } catch (JMException | SecurityException exc) {
+      logger.log(Level.FINE, format("Cannot register {0}.", OBJECT_NAME), exc);
+    }
+    return metrics;
+  }
+
+  /**
+   * @param model
+   *        the name of the model
+   * @return a new measurement of all phases of one conversion.
+   */
+  public Conversion begin(String model) {
+    return new Conversion(model);
+  }
+
+  /**
+   * @param phase
+   * @param name
+   * @return a running measurement of a phase that does not belong to any
+   *         single conversion.
+   */
+  public Timer start(Phase phase, String name) {
+    return new Timer(null, phase, name);
+  }
+
+  /**
+   * @param phase
+   * @param time
+   *        in nanoseconds
+   * @param rows
+   */
+  private void record(Phase phase, long time, int rows) {
+    phaseTimes.addAndGet(phase.ordinal(), time);
+    this.rows.add(rows);
+  }
+
+  /**
+   * @param times
+   *        in nanoseconds
+   * @return the given times in milliseconds by the name of their phase.
+   */
+  private static Map<String, Long> toMap(AtomicLongArray times) {
+    Map<String, Long> map = new LinkedHashMap<String, Long>();
+    for (Phase phase : PHASES) {
+      map.put(phase.name(), Long.valueOf(TimeUnit.NANOSECONDS.toMillis(times.get(phase.ordinal()))));
+    }
+    return map;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getConversionCount()
+   */
+  @Override
+  public long getConversionCount() {
+    return conversions.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getRowCount()
+   */
+  @Override
+  public long getRowCount() {
+    return rows.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getRowsPerSecond()
+   */
+  @Override
+  public double getRowsPerSecond() {
+    long time = phaseTimes.get(Phase.METABOLITES.ordinal()) + phaseTimes.get(Phase.REACTIONS.ordinal());
+    return time == 0L ? 0d : getRowCount() / (time / 1E9);
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getPhaseTimes()
+   */
+  @Override
+  public Map<String, Long> getPhaseTimes() {
+    return toMap(phaseTimes);
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getLastPhaseTimes()
+   */
+  @Override
+  public Map<String, Long> getLastPhaseTimes() {
+    return toMap(lastPhaseTimes);
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getIdentifierCacheHitRate()
+   */
+  @Override
+  public double getIdentifierCacheHitRate() {
+    return lastIdentifierCacheHitRate;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getGPRCacheHitRate()
+   */
+  @Override
+  public double getGPRCacheHitRate() {
+    return lastGPRCacheHitRate;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#getPeakHeapUsage()
+   */
+  @Override
+  public long getPeakHeapUsage() {
+    long peak = 0L;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if ((pool.getType() == MemoryType.HEAP) && pool.isValid()) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionMetricsMXBean#reset()
+   */
+  @Override
+  public void reset() {
+    conversions.reset();
+    rows.reset();
+    for (int i = 0; i < PHASES.length; i++) {
+      phaseTimes.set(i, 0L);
+      lastPhaseTimes.set(i, 0L);
+    }
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if ((pool.getType() == MemoryType.HEAP) && pool.isValid()) {
+        pool.resetPeakUsage();
+      }
+    }
+    lastIdentifierCacheHitRate = Double.NaN;
+    lastGPRCacheHitRate = Double.NaN;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return format("{0}[conversions={1,number,#}, rows={2,number,#}, rowsPerSecond={3,number,#}, phases={4}, peakHeapUsage={5,number,#}]",
+      getClass().getSimpleName(), getConversionCount(), getRowCount(), getRowsPerSecond(), getPhaseTimes(),
+      getPeakHeapUsage());
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link ConversionMetrics}, which is registered
+ * as {@value ConversionMetrics#OBJECT_NAME}.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public interface ConversionMetricsMXBean {
+
+  /**
+   * @return the number of conversions that have been finished.
+   */
+  long getConversionCount();
+
+  /**
+   * @return the number of table rows that have been read.
+   */
+  long getRowCount();
+
+  /**
+   * @return the number of table rows read per second of reading the tables.
+   */
+  double getRowsPerSecond();
+
+  /**
+   * @return the time in milliseconds spent in each phase of all conversions,
+   *         by the name of the phase.
+   */
+  Map<String, Long> getPhaseTimes();
+
+  /**
+   * @return the time in milliseconds spent in each phase of the last
+   *         conversion, by the name of the phase.
+   */
+  Map<String, Long> getLastPhaseTimes();
+
+  /**
+   * @return the fraction of identifiers that could be taken from the
+   *         {@link IdentifierCache} in the last conversion.
+   */
+  double getIdentifierCacheHitRate();
+
+  /**
+   * @return the fraction of gene-protein-reaction rules that could be taken
+   *         from the {@link GPRCache} in the last conversion.
+   */
+  double getGPRCacheHitRate();
+
+  /**
+   * @return the peak usage in bytes of all heap memory pools of the JVM
+   *         since its start or the last {@link #reset()}. This includes all
+   *         other work of the JVM, and since the pools reach their peaks at
+   *         different times, it can exceed the actual peak of the whole heap.
+   * @see java.lang.management.MemoryPoolMXBean#getPeakUsage()
+   */
+  long getPeakHeapUsage();
+
+  /**
+   * Sets all counters back to zero and the peak usage of the heap memory
+   * pools back to their current usage.
+   */
+  void reset();
+
+}
@@ -0,0 +1,434 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings that influence how {@link Table2Model} reads the tables and
+ * creates the model. All settings have defaults that reproduce the behavior
+ * of earlier versions.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionOptions {
+
+  /** Prefix of all options on the command line. */
+  private static final String OPTION_PREFIX = "--";
+
+  /**
+   * Number of worker threads used to parse table rows. Values smaller than
+   * two mean that all rows are parsed on the calling thread.
+   */
+  private int parallelism = 1;
+
+  /** The character that separates the columns of both tables. */
+  private char separator = ';';
+
+  /** The character set in which both tables are encoded. */
+  private Charset charset = Charset.defaultCharset();
+
+  /** Whether a message should be logged for each row and each problem. */
+  private boolean detailed = false;
+
+  /** Whether reactions should be written one at a time. */
+  private boolean streaming = false;
+
+  /** Whether reactions with the same flux bound share one parameter. */
+  private boolean poolFluxBounds = false;
+
+  /** Whether the balance of elements and charges should be checked. */
+  private boolean checkBalance = false;
+
+  /** Format of the stoichiometric matrix or {@code null} if none is written. */
+  private StoichiometricMatrix.Format stoichiometry = null;
+
+  /**
+   * Whether blocked reactions and dead-end metabolites are only reported
+   * ({@link TopologyAnalysis.Mode#REPORT}) or also removed together with all
+   * elements that are no longer used ({@link TopologyAnalysis.Mode#REMOVE}),
+   * or {@code null} if the topology of the network is not analyzed.
+   */
+  private TopologyAnalysis.Mode topology = null;
+
+  /** Whether only changed rows should be converted again. */
+  private boolean incremental = false;
+
+  /** Whether columns are found by their names in the header rows. */
+  private boolean columnsFromHeader = false;
+
+  /** File that maps columns to their names or positions or {@code null}. */
+  private File columnMapping = null;
+
+  /** Whether parsed tables should be kept in binary snapshots. */
+  private boolean snapshot = false;
+
+  /** Directory of the snapshots or {@code null} for the directory of each table. */
+  private File snapshotDirectory = null;
+
+  /** Manifest file or directory of a batch conversion or {@code null}. */
+  private File batch = null;
+
+  /** Number of models that are converted at the same time in a batch. */
+  private int jobs = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * @return the number of worker threads used to parse table rows.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism
+   *        the number of worker threads used to parse table rows; values
+   *        smaller than two switch to the sequential mode.
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return the character that separates the columns of both tables.
+   */
+  public char getSeparator() {
+    return separator;
+  }
+
+  /**
+   * @param separator
+   *        the character that separates the columns of both tables.
+   */
+  public void setSeparator(char separator) {
+    this.separator = separator;
+  }
+
+  /**
+   * @return the character set in which both tables are encoded.
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @param charset
+   *        the character set in which both tables are encoded.
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * @return {@code true} if a message should be logged for each row and each
+   *         problem instead of one summary at the end.
+   */
+  public boolean isDetailed() {
+    return detailed;
+  }
+
+  /**
+   * @param detailed
+   *        whether a message should be logged for each row and each problem
+   *        instead of one summary at the end.
+   */
+  public void setDetailed(boolean detailed) {
+    this.detailed = detailed;
+  }
+
+  /**
+   * @return {@code true} if the reactions are written one at a time while
+   *         reading the reaction table for a second time instead of keeping
+   *         the complete model in memory.
+   * @see StreamingModelWriter
+   */
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * @param streaming
+   *        whether the reactions are written one at a time while reading the
+   *        reaction table for a second time instead of keeping the complete
+   *        model in memory.
+   */
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * @return {@code true} if all reactions with the same flux bound share one
+   *         parameter instead of one parameter per reaction and bound.
+   * @see FluxBoundPool
+   */
+  public boolean isPoolFluxBounds() {
+    return poolFluxBounds;
+  }
+
+  /**
+   * @param poolFluxBounds
+   *        whether all reactions with the same flux bound share one parameter
+   *        instead of one parameter per reaction and bound.
+   */
+  public void setPoolFluxBounds(boolean poolFluxBounds) {
+    this.poolFluxBounds = poolFluxBounds;
+  }
+
+  /**
+   * @return {@code true} if each reaction is checked for being balanced with
+   *         respect to the chemical elements and charges of its participants.
+   * @see BalanceChecker
+   */
+  public boolean isCheckBalance() {
+    return checkBalance;
+  }
+
+  /**
+   * @param checkBalance
+   *        whether each reaction is checked for being balanced with respect
+   *        to the chemical elements and charges of its participants.
+   */
+  public void setCheckBalance(boolean checkBalance) {
+    this.checkBalance = checkBalance;
+  }
+
+  /**
+   * @return the format in which the stoichiometric matrix is written next to
+   *         the SBML file or {@code null} if no matrix is written.
+   * @see StoichiometricMatrix
+   */
+  public StoichiometricMatrix.Format getStoichiometry() {
+    return stoichiometry;
+  }
+
+  /**
+   * @param stoichiometry
+   *        the format in which the stoichiometric matrix is written next to
+   *        the SBML file or {@code null} if no matrix is written.
+   */
+  public void setStoichiometry(StoichiometricMatrix.Format stoichiometry) {
+    this.stoichiometry = stoichiometry;
+  }
+
+  /**
+   * @return what happens with blocked reactions and dead-end metabolites or
+   *         {@code null} if the topology of the network is not analyzed.
+   * @see TopologyAnalysis
+   */
+  public TopologyAnalysis.Mode getTopology() {
+    return topology;
+  }
+
+  /**
+   * @param topology
+   *        what happens with blocked reactions and dead-end metabolites or
+   *        {@code null} if the topology of the network is not analyzed.
+   */
+  public void setTopology(TopologyAnalysis.Mode topology) {
+    this.topology = topology;
+  }
+
+  /**
+   * @return {@code true} if an existing output file should only be updated
+   *         with the rows that have changed since its last conversion.
+   * @see IncrementalConverter
+   */
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * @param incremental
+   *        whether an existing output file should only be updated with the
+   *        rows that have changed since its last conversion.
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * @return {@code true} if the columns of both tables are found by their
+   *         names in the header rows instead of at fixed positions.
+   * @see ColumnSchema
+   */
+  public boolean isColumnsFromHeader() {
+    return columnsFromHeader;
+  }
+
+  /**
+   * @param columnsFromHeader
+   *        whether the columns of both tables are found by their names in the
+   *        header rows instead of at fixed positions.
+   */
+  public void setColumnsFromHeader(boolean columnsFromHeader) {
+    this.columnsFromHeader = columnsFromHeader;
+  }
+
+  /**
+   * @return the file that gives the names or positions of columns whose
+   *         names are not recognized in the header rows or {@code null}.
+   */
+  public File getColumnMapping() {
+    return columnMapping;
+  }
+
+  /**
+   * @param columnMapping
+   *        the file that gives the names or positions of columns whose names
+   *        are not recognized in the header rows or {@code null}.
+   */
+  public void setColumnMapping(File columnMapping) {
+    this.columnMapping = columnMapping;
+  }
+
+  /**
+   * @return {@code true} if the records parsed from each table are loaded
+   *         from a binary snapshot as long as the table has not changed.
+   * @see TableSnapshot
+   */
+  public boolean isSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @param snapshot
+   *        whether the records parsed from each table are loaded from a
+   *        binary snapshot as long as the table has not changed.
+   */
+  public void setSnapshot(boolean snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * @return the directory in which snapshots are kept or {@code null} if each
+   *         snapshot is kept next to its table.
+   */
+  public File getSnapshotDirectory() {
+    return snapshotDirectory;
+  }
+
+  /**
+   * @param snapshotDirectory
+   *        the directory in which snapshots are kept or {@code null} if each
+   *        snapshot is kept next to its table.
+   */
+  public void setSnapshotDirectory(File snapshotDirectory) {
+    this.snapshotDirectory = snapshotDirectory;
+  }
+
+  /**
+   * @return the manifest file or directory of table pairs to be converted or
+   *         {@code null} if only one model is to be converted.
+   * @see BatchConverter#findJobs(File)
+   */
+  public File getBatch() {
+    return batch;
+  }
+
+  /**
+   * @param batch
+   *        the manifest file or directory of table pairs to be converted or
+   *        {@code null} if only one model is to be converted.
+   */
+  public void setBatch(File batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * @return the number of models that are converted at the same time in a
+   *         batch.
+   */
+  public int getJobs() {
+    return jobs;
+  }
+
+  /**
+   * @param jobs
+   *        the number of models that are converted at the same time in a
+   *        batch.
+   */
+  public void setJobs(int jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * @return {@code true} if rows are parsed on more than one thread.
+   */
+  public boolean isParallel() {
+    return parallelism > 1;
+  }
+
+  /**
+   * Reads all options of the form {@code --name=value} from the given
+   * command-line arguments.
+   *
+   * @param args
+   * @return all remaining arguments that are not options, in the given order.
+   * @throws IllegalArgumentException
+   *         if an option is unknown or its value is invalid.
+   */
+  public List<String> parse(String args[]) {
+    List<String> remaining = new ArrayList<String>();
+    for (String arg : args) {
+      if (!arg.startsWith(OPTION_PREFIX)) {
+        remaining.add(arg);
+        continue;
+      }
+      int split = arg.indexOf('=');
+      String name = split < 0 ? arg.substring(OPTION_PREFIX.length()) : arg.substring(OPTION_PREFIX.length(), split);
+      String value = split < 0 ? "" : arg.substring(split + 1);
+      set(name, value);
+    }
+    return remaining;
+  }
+
+  /**
+   * @param name
+   * @param value
+   * @throws IllegalArgumentException
+   *         if the option is unknown or its value is invalid.
+   */
+  private void set(String name, String value) {
+    if (name.equals("parallelism")) {
+      setParallelism(value.isEmpty() ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(value));
+    } else if (name.equals("separator")) {
+      String separator = value.equals("\\t") ? "\t" : value;
+      if (separator.length() != 1) {
+        throw new IllegalArgumentException("The separator must be exactly one character: " + value);
+      }
+      setSeparator(separator.charAt(0));
+    } else if (name.equals("charset")) {
+      setCharset(Charset.forName(value));
+    } else if (name.equals("details")) {
+      setDetailed(value.isEmpty() || Boolean.parseBoolean(value));
+    } else if (name.equals("batch")) {
+      setBatch(new File(value));
+    } else if (name.equals("jobs")) {
+      setJobs(Integer.parseInt(value));
+    } else if (name.equals("streaming")) {
+      setStreaming(value.isEmpty() || Boolean.parseBoolean(value));
+    } else if (name.equals("pool-bounds")) {
+      setPoolFluxBounds(value.isEmpty() || Boolean.parseBoolean(value));
+    } else if (name.equals("check-balance")) {
+      setCheckBalance(value.isEmpty() || Boolean.parseBoolean(value));
+    } else if (name.equals("stoichiometry")) {
+      setStoichiometry(value.isEmpty() ? StoichiometricMatrix.Format.MTX : StoichiometricMatrix.Format.valueOf(value.toUpperCase()));
+    } else if (name.equals("topology")) {
+      setTopology(value.isEmpty() ? TopologyAnalysis.Mode.REPORT : TopologyAnalysis.Mode.valueOf(value.toUpperCase()));
+    } else if (name.equals("incremental")) {
+      setIncremental(value.isEmpty() || Boolean.parseBoolean(value));
+    } else if (name.equals("columns")) {
+      setColumnsFromHeader(true);
+      setColumnMapping(value.isEmpty() ? null : new File(value));
+    } else if (name.equals("snapshot")) {
+      setSnapshot(true);
+      setSnapshotDirectory(value.isEmpty() ? null : new File(value));
+    } else {
+      throw new IllegalArgumentException("Unknown option " + OPTION_PREFIX + name);
+    }
+  }
+
+}
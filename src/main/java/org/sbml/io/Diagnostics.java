@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects problems found in the tables during one conversion. Instead of
+ * logging every single occurrence, all problems are counted per
+ * {@link Category} together with a few sample rows and reported in one
+ * summary at the end. Detailed messages for each row are only wanted if
+ * {@link #isDetailed()} returns {@code true}, and callers should check this
+ * before building such messages.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class Diagnostics {
+
+  /**
+   * Kinds of problems that can occur in the tables.
+   */
+  public enum Category {
+    /** A reaction uses a metabolite that is not in the metabolite table. */
+    UNDECLARED_METABOLITE("metabolites used in reactions but not declared"),
+    /** The reversible flag does not match the arrow in the equation. */
+    REVERSIBILITY_CONFLICT("reversibility flags conflicting with the reaction equation"),
+    /** A gene in the gene column does not occur in any gene-protein-reaction rule. */
+    MISSING_GENE("genes not included in any gene-protein-reaction rule"),
+    /** A gene-protein-reaction rule cannot be parsed. */
+    INVALID_GPR("gene-protein-reaction rules that cannot be parsed"),
+    /** A chemical formula is not valid. */
+    INVALID_FORMULA("invalid chemical formulas"),
+    /** Notes cannot be added to a reaction. */
+    INVALID_NOTES("notes that cannot be added"),
+    /** The elements or charges of reactants and products differ. */
+    UNBALANCED_REACTION("reactions that are not balanced in mass or charge"),
+    /** A metabolite cannot be both produced and consumed. */
+    DEAD_END_METABOLITE("dead-end metabolites"),
+    /** A reaction cannot carry any flux at steady state. */
+    BLOCKED_REACTION("blocked reactions");
+
+    private final String description;
+
+    /**
+     * @param description
+     */
+    private Category(String description) {
+      this.description = description;
+    }
+
+    /**
+     * @return a human-readable description of this category.
+     */
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  /** Number of sample rows remembered for each category. */
+  public static final int MAX_SAMPLES = 5;
+
+  private final Map<Category, Integer> counts = new EnumMap<Category, Integer>(Category.class);
+  private final Map<Category, List<String>> samples = new EnumMap<Category, List<String>>(Category.class);
+
+  /** Whether detailed messages for each row should be logged. */
+  private final boolean detailed;
+
+  /**
+   * Creates a collector without detailed output.
+   */
+  public Diagnostics() {
+    this(false);
+  }
+
+  /**
+   * @param detailed
+   *        whether detailed messages for each row should be logged
+   */
+  public Diagnostics(boolean detailed) {
+    this.detailed = detailed;
+  }
+
+  /**
+   * @return {@code true} if detailed messages for each row should be logged.
+   */
+  public boolean isDetailed() {
+    return detailed;
+  }
+
+  /**
+   * Records one occurrence of a problem.
+   *
+   * @param category
+   * @param row
+   *        the number of the row in which the problem occurred or -1 if
+   *        unknown
+   * @param subject
+   *        the identifier or value that causes the problem
+   */
+  public synchronized void record(Category category, int row, String subject) {
+    Integer count = counts.get(category);
+    counts.put(category, count == null ? 1 : count + 1);
+    List<String> list = samples.get(category);
+    if (list == null) {
+      list = new ArrayList<String>(MAX_SAMPLES);
+      samples.put(category, list);
+    }
+    if (list.size() < MAX_SAMPLES) {
+      list.add(row < 0 ? subject : format("row {0,number,#}: {1}", row, subject));
+    }
+  }
+
+  /**
+   * @param category
+   * @return how often a problem of the given category has been recorded.
+   */
+  public synchronized int getCount(Category category) {
+    Integer count = counts.get(category);
+    return count == null ? 0 : count.intValue();
+  }
+
+  /**
+   * @return the total number of recorded problems.
+   */
+  public synchronized int getTotalCount() {
+    int total = 0;
+    for (Integer count : counts.values()) {
+      total += count.intValue();
+    }
+    return total;
+  }
+
+  /**
+   * @param category
+   * @return up to {@link #MAX_SAMPLES} descriptions of the first occurrences.
+   */
+  public synchronized List<String> getSamples(Category category) {
+    List<String> list = samples.get(category);
+    return list == null ? new ArrayList<String>() : new ArrayList<String>(list);
+  }
+
+  /**
+   * Logs one summary of all recorded problems.
+   *
+   * @param logger
+   */
+  public synchronized void logSummary(Logger logger) {
+    if (counts.isEmpty()) {
+      logger.info("No problems found in the tables.");
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(format("Found {0,number,#} problems in the tables:", getTotalCount()));
+    for (Map.Entry<Category, Integer> entry : counts.entrySet()) {
+      sb.append(format("\n  {0,number,#} {1}, e.g., {2}", entry.getValue(), entry.getKey().getDescription(), samples.get(entry.getKey())));
+    }
+    logger.log(Level.WARNING, sb.toString());
+  }
+
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.List;
+
+import org.sbml.io.ParsedReaction.Participant;
+import org.sbml.jsbml.util.StringTools;
+
+/**
+ * Splits reaction equations such as {@code 2 h2o[c] + o2[c] <=> 2 h2o2[c]}
+ * into their participants. Tokens are separated by white space as in
+ * {@link java.util.StringTokenizer}. Tokens that end with {@code ]} are
+ * species followed by their compartment in square brackets, a {@code +}
+ * separates participants, and reaction arrows separate the reactants from the
+ * products. Any other token is read as the stoichiometric coefficient of the
+ * next species.
+ * <p>
+ * The reversible arrows {@code <=>} and {@code <->} as well as the
+ * irreversible arrows {@code ->} and {@code =>} are recognized. Coefficients
+ * can be given in decimal or scientific notation.
+ * <p>
+ * The parser does not keep any state between calls and can be used by several
+ * threads at the same time.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+class EquationParser {
+
+  /** Exactly representable powers of ten. */
+  private static final double POWERS_OF_TEN[] = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+    1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /** Largest number of digits whose value is exactly representable. */
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private final IdentifierCache ids;
+
+  /**
+   * @param ids
+   *        used to derive the identifiers of all species
+   */
+  EquationParser(IdentifierCache ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * @param arrow
+   *        an arrow returned by {@link #parse(String, List, List)}
+   * @return {@code true} if the arrow denotes a reversible reaction.
+   */
+  static boolean isReversibleArrow(String arrow) {
+    return arrow.equals("<=>") || arrow.equals("<->");
+  }
+
+  /**
+   * @param eqn
+   *        the reaction equation
+   * @param arrows
+   *        receives all reaction arrows in order of appearance
+   * @param participants
+   *        receives all species tokens in order of appearance
+   */
+  void parse(String eqn, List<String> arrows, List<Participant> participants) {
+    int length = eqn.length();
+    boolean product = false;
+    double coeff = 1d;
+    int p = 0;
+    while (true) {
+      while ((p < length) && isDelimiter(eqn.charAt(p))) {
+        p++;
+      }
+      if (p >= length) {
+        break;
+      }
+      int start = p;
+      while ((p < length) && !isDelimiter(eqn.charAt(p))) {
+        p++;
+      }
+      int end = p;
+
+      String arrow = arrow(eqn, start, end);
+      if (arrow != null) {
+        product = true;
+        arrows.add(arrow);
+        // reset stoichiometric coefficient for the next species:
+        coeff = 1d;
+      } else if (eqn.charAt(end - 1) == ']') {
+        // species identifier followed by compartment abbreviation:
+        int split = eqn.indexOf('[', start);
+        if ((split < 0) || (split >= end)) {
+          throw new IllegalArgumentException("Missing compartment in reaction equation " + eqn);
+        }
+        String sId = ids.toID(eqn.substring(start, split), 'M');
+        String cId = ids.intern(eqn.substring(split + 1, end - 1));
+        participants.add(new Participant(sId, cId, coeff, product));
+        // reset stoichiometric coefficient for the next species:
+        coeff = 1d;
+      } else if ((end - start != 1) || (eqn.charAt(start) != '+')) {
+        // Stoichiometric coefficient
+        coeff = parseCoefficient(eqn, start, end);
+      }
+    }
+  }
+
+  /**
+   * @param eqn
+   * @param start
+   * @param end
+   * @return the canonical arrow if the token between start and end is a
+   *         reaction arrow, {@code null} otherwise.
+   */
+  private static String arrow(String eqn, int start, int end) {
+    switch (end - start) {
+    case 2:
+      if (eqn.startsWith("->", start)) {
+        return "->";
+      } else if (eqn.startsWith("=>", start)) {
+        return "=>";
+      }
+      break;
+    case 3:
+      if (eqn.startsWith("<=>", start)) {
+        return "<=>";
+      } else if (eqn.startsWith("<->", start)) {
+        return "<->";
+      }
+      break;
+    default:
+      break;
+    }
+    return null;
+  }
+
+  /**
+   * Reads a number in decimal or scientific notation. Numbers with few
+   * significant digits and small exponents are computed directly, which gives
+   * exactly the same result as {@link Double#parseDouble(String)}. All other
+   * tokens are passed to {@link StringTools#parseSBMLDouble(String)}.
+   *
+   * @param eqn
+   * @param start
+   * @param end
+   * @return the value of the token between start and end.
+   */
+  static double parseCoefficient(String eqn, int start, int end) {
+    long mantissa = 0L;
+    int digits = 0, exponent = 0, p = start;
+    for (; (p < end) && isDigit(eqn.charAt(p)); p++, digits++) {
+      mantissa = 10L * mantissa + (eqn.charAt(p) - '0');
+    }
+    if ((p < end) && (eqn.charAt(p) == '.')) {
+      for (p++; (p < end) && isDigit(eqn.charAt(p)); p++, digits++) {
+        mantissa = 10L * mantissa + (eqn.charAt(p) - '0');
+        exponent--;
+      }
+    }
+    if ((digits > 0) && (p < end) && ((eqn.charAt(p) == 'e') || (eqn.charAt(p) == 'E'))) {
+      p++;
+      boolean negative = (p < end) && (eqn.charAt(p) == '-');
+      if ((p < end) && ((eqn.charAt(p) == '-') || (eqn.charAt(p) == '+'))) {
+        p++;
+      }
+      int e = 0, expDigits = 0;
+      for (; (p < end) && isDigit(eqn.charAt(p)) && (expDigits < 4); p++, expDigits++) {
+        e = 10 * e + (eqn.charAt(p) - '0');
+      }
+      if (expDigits == 0) {
+        p = -1;
+      }
+      exponent += negative ? -e : e;
+    }
+    if ((p != end) || (digits == 0) || (digits > MAX_EXACT_DIGITS)
+        || (Math.abs(exponent) >= POWERS_OF_TEN.length)) {
+      return StringTools.parseSBMLDouble(eqn.substring(start, end));
+    }
+    return exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+  }
+
+  /**
+   * @param c
+   * @return {@code true} if c separates two tokens.
+   */
+  private static boolean isDelimiter(char c) {
+    return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == '\f');
+  }
+
+  /**
+   * @param c
+   * @return {@code true} if c is one of the ASCII digits.
+   */
+  private static boolean isDigit(char c) {
+    return (c >= '0') && (c <= '9');
+  }
+
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.math.BigDecimal;
+
+import org.sbml.jsbml.Parameter;
+
+/**
+ * Shares one flux bound parameter among all reactions with the same bound.
+ * By default, each reaction with a bound other than zero, &plusmn;1000, or
+ * &plusmn;infinity receives its own parameter. With a pool, there is only
+ * one parameter per distinct value, whose identifier is derived from the
+ * value, e.g., {@code flux_bound_minus_5_5} for -5.5. All parameters of one
+ * pool have the same unit.
+ * <p>
+ * Parameters are found by their value in an open-addressing hash table with
+ * primitive keys, so that no boxing is needed. Instances are not thread-safe
+ * and are meant to be used during the sequential phase of a conversion only.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class FluxBoundPool {
+
+  /** Prefix of the identifiers of all pooled parameters. */
+  public static final String PREFIX = "flux_bound_";
+
+  /** The unit of all parameters in this pool. */
+  private final String units;
+
+  /** Bit patterns of the values, see {@link Double#doubleToLongBits(double)}. */
+  private long keys[];
+
+  /** The parameters at the same positions as their values. */
+  private Parameter values[];
+
+  private int size;
+
+  /**
+   * @param units
+   *        the identifier of the unit of all parameters in this pool
+   */
+  public FluxBoundPool(String units) {
+    this.units = units;
+    keys = new long[16];
+    values = new Parameter[16];
+  }
+
+  /**
+   * @return the identifier of the unit of all parameters in this pool.
+   */
+  public String getUnits() {
+    return units;
+  }
+
+  /**
+   * @param value
+   * @return the parameter with the given value or {@code null}.
+   */
+  public Parameter get(double value) {
+    long key = Double.doubleToLongBits(value);
+    for (int i = index(key, keys.length); values[i] != null; i = (i + 1) & (keys.length - 1)) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param value
+   * @param p
+   *        the parameter with the given value
+   */
+  public void put(double value, Parameter p) {
+    if (2 * (size + 1) > keys.length) {
+      grow();
+    }
+    long key = Double.doubleToLongBits(value);
+    int i = index(key, keys.length);
+    while ((values[i] != null) && (keys[i] != key)) {
+      i = (i + 1) & (keys.length - 1);
+    }
+    if (values[i] == null) {
+      size++;
+    }
+    keys[i] = key;
+    values[i] = p;
+  }
+
+  /**
+   * @return the number of parameters in this pool.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Doubles the capacity of the table.
+   */
+  private void grow() {
+    long oldKeys[] = keys;
+    Parameter oldValues[] = values;
+    keys = new long[oldKeys.length * 2];
+    values = new Parameter[oldValues.length * 2];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldValues[j] != null) {
+        int i = index(oldKeys[j], keys.length);
+        while (values[i] != null) {
+          i = (i + 1) & (keys.length - 1);
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * @param key
+   * @param capacity
+   *        a power of two
+   * @return the first position at which the key is searched.
+   */
+  private static int index(long key, int capacity) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & (capacity - 1);
+  }
+
+  /**
+   * @param value
+   * @return the identifier of the pooled parameter with the given value, in
+   *         which the sign is written as {@code minus_} and the decimal point
+   *         as an underscore.
+   */
+  public static String toId(double value) {
+    String number = Double.isNaN(value) ? "NaN" : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    return PREFIX + number.replace("-", "minus_").replace('.', '_');
+  }
+
+}
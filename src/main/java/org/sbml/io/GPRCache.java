@@ -0,0 +1,228 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.UniqueNamedSBase;
+import org.sbml.jsbml.ext.fbc.Association;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProduct;
+import org.sbml.jsbml.ext.fbc.GeneProductAssociation;
+import org.sbml.jsbml.ext.fbc.GeneProductRef;
+import org.sbml.jsbml.ext.fbc.LogicalOperator;
+import org.sbml.jsbml.ext.fbc.converters.GPRParser;
+
+/**
+ * Parses each distinct gene-protein-reaction rule of one model only once.
+ * Many reactions share exactly the same rule, e.g., transporters encoded by
+ * the same complex or reactions catalyzed by the same set of isozymes. The
+ * first occurrence of a rule is parsed with {@link GPRParser}, which also
+ * creates all missing gene products. A copy of the resulting association,
+ * which does not belong to any reaction, is kept as a template, and all
+ * further reactions with the same rule receive a copy of this template.
+ * <p>
+ * Rules are compared after removing leading and trailing white space and
+ * replacing all other runs of white space by a single blank. All gene
+ * products that occur in parsed rules are also indexed by their label, i.e.,
+ * their identifier without the prefix {@code G_}, which is the name of the
+ * gene in the gene column of the reaction table. Instances are
+ * not thread-safe and are meant to be used during the sequential phase of a
+ * conversion only.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class GPRCache {
+
+  /**
+   * A parsed rule together with the identifiers of all gene products it
+   * refers to.
+   */
+  private static class Template {
+
+    private final Association association;
+    private final String geneProducts[];
+
+    /**
+     * @param association
+     *        the parsed rule or {@code null} if it cannot be parsed
+     * @param geneProducts
+     */
+    Template(Association association, String geneProducts[]) {
+      this.association = association;
+      this.geneProducts = geneProducts;
+    }
+
+  }
+
+  /** Marks rules that cannot be parsed. */
+  private static final Template INVALID = new Template(null, new String[0]);
+
+  /** Parsed rules by their normalized text. */
+  private final Map<String, Template> templates = new HashMap<String, Template>();
+
+  /** Prefix of the identifiers of all gene products. */
+  private static final String GENE_PRODUCT_PREFIX = "G_";
+
+  /** Identifiers of all gene products that exist in the model. */
+  private final Set<String> geneProducts = new HashSet<String>();
+
+  /** Gene products by their label. */
+  private final Map<String, GeneProduct> labels = new HashMap<String, GeneProduct>();
+
+  private int hits, misses;
+
+  /**
+   * Assigns the given rule to the reaction, which must already be part of a
+   * model.
+   *
+   * @param r
+   * @param gpr
+   *        a gene-protein-reaction rule
+   * @param warnings
+   *        whether {@link GPRParser} should log a warning for each gene
+   *        product that it creates
+   * @return the new association of the reaction or {@code null} if the rule
+   *         cannot be parsed.
+   */
+  public GeneProductAssociation parseGPR(Reaction r, String gpr, boolean warnings) {
+    String key = normalize(gpr);
+    Template template = templates.get(key);
+    if ((template != null) && exist(template.geneProducts)) {
+      hits++;
+      if (template == INVALID) {
+        return null;
+      }
+      FBCReactionPlugin rplug = (FBCReactionPlugin) r.getPlugin(FBCConstants.shortLabel);
+      GeneProductAssociation gpa = rplug.createGeneProductAssociation();
+      gpa.setAssociation((Association) template.association.clone());
+      return gpa;
+    }
+    misses++;
+    GeneProductAssociation gpa = GPRParser.parseGPR(r, gpr, false, warnings);
+    if (gpa == null) {
+      templates.put(key, INVALID);
+      return null;
+    }
+    Set<String> ids = new HashSet<String>();
+    collectGeneProducts(gpa.getAssociation(), ids);
+    for (String id : ids) {
+      if (geneProducts.add(id) && id.startsWith(GENE_PRODUCT_PREFIX)) {
+        UniqueNamedSBase gp = r.getModel().findUniqueNamedSBase(id);
+        if (gp instanceof GeneProduct) {
+          labels.put(id.substring(GENE_PRODUCT_PREFIX.length()), (GeneProduct) gp);
+        }
+      }
+    }
+    // A detached copy, so that the template does not keep the reaction and its model reachable.
+    templates.put(key, new Template((Association) gpa.getAssociation().clone(), ids.toArray(new String[0])));
+    return gpa;
+  }
+
+  /**
+   * @param gpr
+   * @return the association that is copied for the given rule or
+   *         {@code null} if the rule has not been parsed yet or cannot be
+   *         parsed.
+   */
+  Association getTemplate(String gpr) {
+    Template template = templates.get(normalize(gpr));
+    return template == null ? null : template.association;
+  }
+
+  /**
+   * @param m
+   * @param label
+   *        the name of a gene as given in the gene column
+   * @return the gene product with the identifier {@code G_label} or
+   *         {@code null} if the model does not contain such a gene product.
+   */
+  public GeneProduct getGeneProduct(Model m, String label) {
+    GeneProduct gp = labels.get(label);
+    if (gp == null) {
+      // Gene products that have not been created by this cache
+      UniqueNamedSBase sbase = m.findUniqueNamedSBase(GENE_PRODUCT_PREFIX + label);
+      if (sbase instanceof GeneProduct) {
+        gp = (GeneProduct) sbase;
+        labels.put(label, gp);
+      }
+    }
+    return gp;
+  }
+
+  /**
+   * @param ids
+   * @return {@code true} if gene products with all given identifiers have
+   *         been created or found by this cache.
+   */
+  private boolean exist(String ids[]) {
+    for (String id : ids) {
+      if (!geneProducts.contains(id)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param gpr
+   * @return the rule without leading, trailing, and repeated white space.
+   */
+  static String normalize(String gpr) {
+    StringBuilder sb = new StringBuilder(gpr.length());
+    boolean space = false;
+    for (int i = 0; i < gpr.length(); i++) {
+      char c = gpr.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param association
+   * @param geneProducts
+   *        to which the identifiers of all gene products in the association
+   *        are added
+   */
+  static void collectGeneProducts(Association association, Set<String> geneProducts) {
+    if (association instanceof GeneProductRef) {
+      geneProducts.add(((GeneProductRef) association).getGeneProduct());
+    } else if (association instanceof LogicalOperator) {
+      for (Association child : ((LogicalOperator) association).getListOfAssociations()) {
+        collectGeneProducts(child, geneProducts);
+      }
+    }
+  }
+
+  /**
+   * @return the fraction of all rules that could be copied from a previous
+   *         rule or {@link Double#NaN} if there were no rules yet.
+   */
+  public double getHitRate() {
+    int total = hits + misses;
+    return total == 0 ? Double.NaN : ((double) hits) / total;
+  }
+
+  @Override
+  public String toString() {
+    return format("{0}[rules={1,number,#}, hits={2,number,#}, misses={3,number,#}]", getClass().getSimpleName(), templates.size(), hits, misses);
+  }
+
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.ext.groups.Group;
+import org.sbml.jsbml.ext.groups.GroupsConstants;
+import org.sbml.jsbml.ext.groups.GroupsModelPlugin;
+
+/**
+ * Generates identifiers for elements that have no identifier in the tables
+ * and keeps the groups that represent subsystems by their name. Generated
+ * identifiers consist of a prefix and a number. One counter per prefix only
+ * ever increases, so that each identifier is checked against the model at
+ * most once; identifiers that are already taken, e.g., in a model read from
+ * a file, are skipped.
+ * <p>
+ * Instances are not thread-safe and are meant to be used during the
+ * sequential phase of a conversion only.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class IdRegistry {
+
+  /** Prefix of the identifiers of groups that represent subsystems. */
+  public static final String SUBSYSTEM_PREFIX = "subsystem_";
+
+  /** The last number used for each prefix. */
+  private final Map<String, Integer> counters = new HashMap<String, Integer>();
+
+  /** Groups of subsystems by their name. */
+  private final Map<String, Group> groups = new HashMap<String, Group>();
+
+  /**
+   * @param m
+   * @param prefix
+   * @return an identifier that starts with the given prefix and that does not
+   *         yet exist in the given model.
+   */
+  public String nextId(Model m, String prefix) {
+    Integer last = counters.get(prefix);
+    int n = last == null ? 0 : last.intValue();
+    String id;
+    do {
+      id = prefix + (++n);
+    } while (m.findUniqueNamedSBase(id) != null);
+    counters.put(prefix, Integer.valueOf(n));
+    return id;
+  }
+
+  /**
+   * @param name
+   *        the name of a subsystem
+   * @return the group of the subsystem or {@code null}.
+   */
+  public Group getGroup(String name) {
+    return groups.get(name);
+  }
+
+  /**
+   * Creates a new group for the given subsystem.
+   *
+   * @param m
+   * @param name
+   *        the name of a subsystem
+   * @return the new group.
+   */
+  public Group createGroup(Model m, String name) {
+    GroupsModelPlugin gmp = (GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel);
+    Group g = gmp.createGroup(nextId(m, SUBSYSTEM_PREFIX));
+    g.setSBOTerm(633);
+    g.setKind(Group.Kind.partonomy);
+    g.setName(name);
+    groups.put(name, g);
+    return g;
+  }
+
+  /**
+   * Makes the named groups that already exist in the given model known to
+   * this registry, so that reactions of the same subsystem become members of
+   * these groups instead of new ones. This is only needed for models that
+   * have not been created with this registry, e.g., read from a file.
+   *
+   * @param m
+   */
+  public void indexGroups(Model m) {
+    GroupsModelPlugin gmp = (GroupsModelPlugin) m.getExtension(GroupsConstants.shortLabel);
+    if ((gmp != null) && gmp.isSetListOfGroups()) {
+      for (Group g : gmp.getListOfGroups()) {
+        if (g.isSetName()) {
+          groups.put(g.getName(), g);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.zbit.sbml.util.SBMLtools;
+
+/**
+ * Remembers the SBML identifiers that have been derived from abbreviations in
+ * table cells, so that each abbreviation is converted only once per prefix.
+ * All identifiers handed out by this cache are canonical instances, i.e., the
+ * same identifier is always represented by the same {@link String} object.
+ * <p>
+ * Instances are thread-safe and can be shared by all {@link RowReader}s of one
+ * or several conversions.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class IdentifierCache {
+
+  /** Converted identifiers for each prefix, keyed by the abbreviation. */
+  private final ConcurrentMap<Character, ConcurrentMap<String, String>> ids = new ConcurrentHashMap<Character, ConcurrentMap<String, String>>();
+
+  /** Canonical instances of all identifiers. */
+  private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<String, String>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Converts an abbreviation to a valid SBML identifier that begins with the
+   * given prefix followed by an underscore.
+   *
+   * @param abbreviation
+   * @param prefix
+   * @return the canonical instance of the identifier.
+   * @see RowReader#toID(String, char)
+   */
+  public String toID(String abbreviation, char prefix) {
+    ConcurrentMap<String, String> byAbbreviation = ids.get(prefix);
+    if (byAbbreviation == null) {
+      ids.putIfAbsent(prefix, new ConcurrentHashMap<String, String>());
+      byAbbreviation = ids.get(prefix);
+    }
+    String id = byAbbreviation.get(abbreviation);
+    if (id != null) {
+      hits.increment();
+      return id;
+    }
+    misses.increment();
+    id = SBMLtools.toSId(abbreviation);
+    if (id.startsWith("_")) {
+      id = prefix + id;
+    } else {
+      id = prefix + "_" + id;
+    }
+    id = intern(id);
+    byAbbreviation.putIfAbsent(abbreviation, id);
+    return id;
+  }
+
+  /**
+   * @param id
+   *        an identifier
+   * @return the canonical instance of an identifier equal to the given one.
+   */
+  public String intern(String id) {
+    String canonical = pool.putIfAbsent(id, id);
+    return canonical != null ? canonical : id;
+  }
+
+  /**
+   * @return the number of distinct identifiers in this cache.
+   */
+  public int size() {
+    return pool.size();
+  }
+
+  /**
+   * @return how often an identifier could be taken from this cache.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * @return how often an identifier had to be derived from its abbreviation.
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the fraction of all requests that could be answered from this
+   *         cache or {@link Double#NaN} if there were no requests yet.
+   */
+  public double getHitRate() {
+    long h = getHitCount();
+    long total = h + getMissCount();
+    return total == 0L ? Double.NaN : ((double) h) / total;
+  }
+
+  @Override
+  public String toString() {
+    return format("{0}[hits={1,number,#}, misses={2,number,#}, identifiers={3,number,#}]", getClass().getSimpleName(), getHitCount(), getMissCount(), pool.size());
+  }
+
+}
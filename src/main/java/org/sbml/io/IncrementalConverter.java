@@ -0,0 +1,569 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.History;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.FluxObjective;
+import org.sbml.jsbml.ext.fbc.GeneProduct;
+import org.sbml.jsbml.ext.fbc.Objective;
+import org.sbml.jsbml.ext.groups.Group;
+import org.sbml.jsbml.ext.groups.GroupsConstants;
+import org.sbml.jsbml.ext.groups.GroupsModelPlugin;
+import org.sbml.jsbml.ext.groups.Member;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Updates a previously written SBML file with the rows that have been
+ * changed, added, or removed since the file has been written, instead of
+ * converting all rows again.
+ * <p>
+ * Each conversion writes a {@link RowIndex} next to the SBML file. On the
+ * next conversion, the SBML file is read again, the reactions of changed and
+ * removed rows are removed from the model, and the reactions of changed and
+ * added rows are built as in {@link Table2Model} at the position of their
+ * row. Species of changed metabolites are updated in place. Afterwards, all
+ * species, compartments, flux bound parameters, gene products, groups, and
+ * objectives that are no longer used by any reaction are removed.
+ * <p>
+ * All rows are converted if there is no valid index, e.g., because the SBML
+ * file has been modified by other means or because the tables have been read
+ * with different settings. The updated model contains the same elements as a
+ * complete conversion, but new elements appear at the end of their lists.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class IncrementalConverter {
+
+  /** Logger */
+  private static final transient Logger logger = Logger.getLogger(IncrementalConverter.class.getName());
+
+  /** SBO term of flux bound parameters. */
+  private static final int FLUX_BOUND = 625;
+
+  /** SBO term of default flux bound parameters. */
+  private static final int DEFAULT_FLUX_BOUND = 626;
+
+  /** Settings for the conversion. */
+  private final ConversionOptions options;
+
+  /** Conversion of abbreviations to identifiers. */
+  private final IdentifierCache identifierCache;
+
+  /**
+   * @param options
+   * @param identifierCache
+   *        a cache of identifiers that can be shared with other conversions
+   */
+  public IncrementalConverter(ConversionOptions options, IdentifierCache identifierCache) {
+    this.options = options;
+    this.identifierCache = identifierCache;
+  }
+
+  /**
+   * Updates the given SBML file with all rows that have changed since its
+   * last conversion, or converts all rows if this is not possible.
+   *
+   * @param metabolites
+   *        metabolites file (CSV format)
+   * @param reactions
+   *        reactions file (CSV format)
+   * @param sbmlFile
+   *        the SBML output file
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  public void convert(File metabolites, File reactions, File sbmlFile) throws IOException, XMLStreamException, SBMLException {
+    ConversionContext context = new ConversionContext(identifierCache, options);
+    SpeciesRowReader speciesReader = new SpeciesRowReader(context);
+    ReactionRowReader reactionReader = new ReactionRowReader(context);
+    List<TableRow> metaboliteRows = Table2Model.readRows(metabolites, speciesReader, options);
+    List<TableRow> reactionRows = Table2Model.readRows(reactions, reactionReader, options);
+    RowIndex current = RowIndex.create(metaboliteRows, speciesReader, reactionRows, reactionReader, options);
+    File indexFile = RowIndex.getFile(sbmlFile);
+    RowIndex previous = sbmlFile.isFile() ? RowIndex.read(indexFile) : null;
+
+    if ((current == null) || (previous == null) || !previous.isValid(current, sbmlFile)
+        || (options.getTopology() == TopologyAnalysis.Mode.REMOVE)) {
+      // Any change can block or unblock reactions in other rows.
+      logger.info(format("Converting all rows of {0} and {1}.", metabolites.getName(), reactions.getName()));
+      Table2Model.convertAll(metabolites, reactions, sbmlFile, options, identifierCache);
+    } else {
+      boolean changed = update(previous, current, speciesReader, metaboliteRows, reactionReader, reactionRows, sbmlFile);
+      if (options.getStoichiometry() != null) {
+        // The matrix needs all reactions, not only the changed ones.
+        StoichiometricMatrix.Builder stoichiometry = new StoichiometricMatrix.Builder(identifierCache);
+        for (TableRow row : reactionRows) {
+          stoichiometry.add(reactionReader.parseRow(row));
+        }
+        stoichiometry.build().write(sbmlFile, options.getStoichiometry());
+      }
+      if (options.getTopology() != null) {
+        TopologyAnalysis topology = new TopologyAnalysis(options.getTopology(), identifierCache);
+        for (TableRow row : reactionRows) {
+          topology.add(reactionReader.parseRow(row));
+        }
+        Diagnostics diagnostics = new Diagnostics(options.isDetailed());
+        topology.analyze(diagnostics);
+        diagnostics.logSummary(logger);
+      }
+      if (!changed) {
+        logger.info(format("{0} is up to date.", sbmlFile.getName()));
+        return;
+      }
+    }
+
+    if (current != null) {
+      current.write(indexFile, sbmlFile);
+    } else {
+      logger.warning("Identifiers occur more than once in the tables; the next conversion will convert all rows again.");
+      if (indexFile.exists() && !indexFile.delete()) {
+        throw new IOException(format("Cannot delete {0}.", indexFile));
+      }
+    }
+  }
+
+  /**
+   * Applies all changes between the two indices to the model in the given
+   * file.
+   *
+   * @param previous
+   * @param current
+   * @param speciesReader
+   *        a reader that has already received the header of the metabolite
+   *        table
+   * @param metaboliteRows
+   * @param reactionReader
+   *        a reader with the same context that has already received the
+   *        header of the reaction table
+   * @param reactionRows
+   * @param sbmlFile
+   * @return {@code false} if nothing has changed, so that the file has not
+   *         been written.
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  private boolean update(RowIndex previous, RowIndex current, SpeciesRowReader speciesReader, List<TableRow> metaboliteRows,
+    ReactionRowReader reactionReader, List<TableRow> reactionRows, File sbmlFile) throws IOException, XMLStreamException, SBMLException {
+    long time = System.currentTimeMillis();
+    Set<String> changedMetabolites = findChanges(previous.getMetabolites(), current.getMetabolites(), previous, current, true);
+    Set<String> changedReactions = findChanges(previous.getReactions(), current.getReactions(), previous, current, false);
+    if (changedMetabolites.isEmpty() && changedReactions.isEmpty()) {
+      return false;
+    }
+
+    SBMLDocument doc;
+    InputStream in = Compression.openInput(sbmlFile);
+    try {
+      doc = SBMLReader.read(in);
+    } finally {
+      in.close();
+    }
+    ModelBuilder builder = new ModelBuilder(doc);
+    Model m = doc.getModel();
+    ConversionContext context = speciesReader.getContext();
+    indexSpecies(m, context.getSpeciesIndex());
+    context.getIdRegistry().indexGroups(m);
+    ConversionMetrics.Conversion conversion = ConversionMetrics.getInstance().begin(m.getId());
+
+    // Metabolites: all templates are needed for species in new compartments.
+    ConversionMetrics.Timer timer = conversion.start(ConversionMetrics.Phase.METABOLITES, null);
+    for (TableRow row : metaboliteRows) {
+      speciesReader.readRow(row, builder);
+    }
+    SpeciesIndex index = context.getSpeciesIndex();
+    for (String id : changedMetabolites) {
+      for (Species s : index.get(id)) {
+        SpeciesRowReader.updateSpecies(s, index.getTemplate(id));
+      }
+    }
+    timer.stop(metaboliteRows.size());
+
+    // Reactions: remove the old ones, then build the new ones in table order.
+    timer = conversion.start(ConversionMetrics.Phase.REACTIONS, null);
+    Map<String, List<Member>> members = indexMembers(m);
+    int removed = 0, built = 0;
+    for (String id : changedReactions) {
+      if (current.getReactionHash(id) == null) {
+        removeReaction(m, id, members);
+        removed++;
+      }
+    }
+    ListOf<Reaction> listOfReactions = m.getListOfReactions();
+    Iterator<String> ids = current.getReactions().iterator();
+    String predecessor = null;
+    // A new formula or charge can change the balance of unchanged reactions.
+    BalanceChecker balanceChecker = changedMetabolites.isEmpty() ? null : context.getBalanceChecker();
+    for (TableRow row : reactionRows) {
+      String id = ids.next();
+      if (!changedReactions.contains(id) && (balanceChecker != null)) {
+        ParsedReaction parsed = reactionReader.parseRow(row);
+        if (usesAny(parsed, changedMetabolites)) {
+          balanceChecker.add(parsed);
+        }
+      }
+      if (changedReactions.contains(id)) {
+        int position = removeReaction(m, id, members);
+        if (position < 0) {
+          position = predecessor == null ? 0 : listOfReactions.indexOf(m.getReaction(predecessor)) + 1;
+        }
+        ParsedReaction parsed = reactionReader.parseRow(row);
+        Reaction r = reactionReader.buildReaction(parsed, builder);
+        listOfReactions.remove(listOfReactions.size() - 1);
+        listOfReactions.add(position, r);
+        reactionReader.linkReaction(parsed, r, builder);
+        built++;
+      }
+      predecessor = id;
+    }
+    timer.stop(built);
+    timer = conversion.start(ConversionMetrics.Phase.ANNOTATION, null);
+    if ((removed > 0) || (built > 0)) {
+      relinkGeneProducts(m, reactionReader, reactionRows);
+    }
+    context.getAnnotations().flush();
+    timer.stop();
+    timer = conversion.start(ConversionMetrics.Phase.CLEANUP, null);
+    if (context.getBalanceChecker() != null) {
+      context.getBalanceChecker().check(context);
+    }
+    removeUnused(m);
+    timer.stop();
+    logger.info(format("Updated {0,number,#} metabolites, removed {1,number,#} and built {2,number,#} reactions.",
+      changedMetabolites.size(), removed, built));
+    logger.info(format("Identifiers: {0}", context.getIdentifierCache()));
+    logger.info(format("Gene-protein-reaction rules: {0}", context.getGPRCache()));
+    context.getDiagnostics().logSummary(logger);
+
+    History history = m.getHistory();
+    while (history.getModifiedDateCount() > 0) {
+      history.removeModifiedDate(0);
+    }
+    history.setModifiedDate(Calendar.getInstance().getTime());
+    timer = conversion.start(ConversionMetrics.Phase.WRITE, sbmlFile.getName());
+    Table2Model.write(doc, sbmlFile);
+    timer.stop();
+    conversion.end(context);
+    logger.info(format("time needed: {0,number}", (System.currentTimeMillis() - time)));
+    return true;
+  }
+
+  /**
+   * Resets label, name, and annotation of all gene products to the state in
+   * which the rule parser creates them, and links them again to all rows in
+   * table order. A removed or changed row may have been the last row that
+   * listed a gene, so that neither keeping nor only overwriting what it gave
+   * to the gene product results in the same model as a complete conversion.
+   *
+   * @param m
+   * @param reactionReader
+   * @param reactionRows
+   */
+  private static void relinkGeneProducts(Model m, ReactionRowReader reactionReader, List<TableRow> reactionRows) {
+    FBCModelPlugin fbc = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
+    if (!fbc.isSetListOfGeneProducts()) {
+      return;
+    }
+    ListOf<GeneProduct> geneProducts = fbc.getListOfGeneProducts();
+    for (GeneProduct gp : geneProducts) {
+      gp.setLabel(gp.getId());
+      gp.unsetName();
+      gp.unsetAnnotation();
+    }
+    for (TableRow row : reactionRows) {
+      reactionReader.linkGeneProducts(reactionReader.parseRow(row), m, false);
+    }
+    // JSBML cannot unset the meta identifier of an element within a document,
+    // hence gene products that no row lists any more are replaced.
+    for (int i = 0; i < geneProducts.size(); i++) {
+      GeneProduct gp = geneProducts.get(i);
+      if (gp.isSetMetaId() && gp.getLabel().equals(gp.getId())) {
+        GeneProduct replacement = new GeneProduct(gp.getId(), gp.getLevel(), gp.getVersion());
+        replacement.setLabel(gp.getId());
+        geneProducts.remove(i);
+        geneProducts.add(i, replacement);
+      }
+    }
+  }
+
+  /**
+   * @param reaction
+   * @param metabolites
+   * @return {@code true} if the reaction has a participant among the given
+   *         metabolites.
+   */
+  private static boolean usesAny(ParsedReaction reaction, Set<String> metabolites) {
+    for (ParsedReaction.Participant participant : reaction.participants) {
+      if (metabolites.contains(participant.speciesId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param previousIds
+   * @param currentIds
+   * @param previous
+   * @param current
+   * @param metabolites
+   *        whether to compare metabolites or reactions
+   * @return the identifiers of all rows that have been changed, added, or
+   *         removed.
+   */
+  private static Set<String> findChanges(Set<String> previousIds, Set<String> currentIds, RowIndex previous,
+    RowIndex current, boolean metabolites) {
+    Set<String> changes = new HashSet<String>();
+    for (String id : previousIds) {
+      String hash = metabolites ? current.getMetaboliteHash(id) : current.getReactionHash(id);
+      if ((hash == null) || !hash.equals(metabolites ? previous.getMetaboliteHash(id) : previous.getReactionHash(id))) {
+        changes.add(id);
+      }
+    }
+    for (String id : currentIds) {
+      if (!previousIds.contains(id)) {
+        changes.add(id);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Adds all compartments and species of the model to the index. The
+   * identifier of each species is that of its metabolite followed by an
+   * underscore and the identifier of its compartment.
+   *
+   * @param m
+   * @param index
+   */
+  private static void indexSpecies(Model m, SpeciesIndex index) {
+    for (Compartment c : m.getListOfCompartments()) {
+      index.putCompartment(c);
+    }
+    for (Species s : m.getListOfSpecies()) {
+      String suffix = '_' + s.getCompartment();
+      if (s.getId().endsWith(suffix)) {
+        index.put(s.getId().substring(0, s.getId().length() - suffix.length()), s.getCompartment(), s);
+      }
+    }
+  }
+
+  /**
+   * @param m
+   * @return all members of groups by the identifier of the element they
+   *         refer to.
+   */
+  static Map<String, List<Member>> indexMembers(Model m) {
+    Map<String, List<Member>> members = new HashMap<String, List<Member>>();
+    GroupsModelPlugin gmp = (GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel);
+    if (gmp.isSetListOfGroups()) {
+      for (Group g : gmp.getListOfGroups()) {
+        for (Member member : g.getListOfMembers()) {
+          List<Member> list = members.get(member.getIdRef());
+          if (list == null) {
+            list = new ArrayList<Member>(1);
+            members.put(member.getIdRef(), list);
+          }
+          list.add(member);
+        }
+      }
+    }
+    return members;
+  }
+
+  /**
+   * Removes the reaction together with its group memberships, its flux
+   * objectives, and the flux bound parameters that belong to this reaction
+   * only. The references to the reaction are also removed if the model does
+   * not contain the reaction itself, as during streaming.
+   *
+   * @param m
+   * @param id
+   * @param members
+   * @return the former position of the reaction or -1 if there is no such
+   *         reaction.
+   */
+  static int removeReaction(Model m, String id, Map<String, List<Member>> members) {
+    List<Member> list = members.remove(id);
+    if (list != null) {
+      for (Member member : list) {
+        member.removeFromParent();
+      }
+    }
+    FBCModelPlugin fbc = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
+    if (fbc.isSetListOfObjectives()) {
+      for (Objective o : fbc.getListOfObjectives()) {
+        ListOf<FluxObjective> fluxObjectives = o.getListOfFluxObjectives();
+        for (int i = fluxObjectives.size() - 1; i >= 0; i--) {
+          if (id.equals(fluxObjectives.get(i).getReaction())) {
+            fluxObjectives.remove(i);
+          }
+        }
+      }
+    }
+    for (String pid : new String[] {id + "_lower_bound", id + "_upper_bound"}) {
+      if (m.getParameter(pid) != null) {
+        m.removeParameter(pid);
+      }
+    }
+    Reaction r = m.getReaction(id);
+    if (r == null) {
+      return -1;
+    }
+    int position = m.getListOfReactions().indexOf(r);
+    m.getListOfReactions().remove(position);
+    return position;
+  }
+
+  /**
+   * Removes all species, compartments, flux bound parameters, gene products,
+   * groups, and objectives that are no longer used by any reaction.
+   *
+   * @param m
+   */
+  static void removeUnused(Model m) {
+    Set<String> references = new HashSet<String>();
+    for (Reaction r : m.getListOfReactions()) {
+      collectReferences(r, references);
+    }
+    removeUnused(m, references);
+  }
+
+  /**
+   * @param r
+   * @param references
+   *        receives the identifiers of the species, flux bound parameters,
+   *        and gene products to which the given reaction refers
+   */
+  static void collectReferences(Reaction r, Set<String> references) {
+    for (SpeciesReference specRef : r.getListOfReactants()) {
+      references.add(specRef.getSpecies());
+    }
+    for (SpeciesReference specRef : r.getListOfProducts()) {
+      references.add(specRef.getSpecies());
+    }
+    FBCReactionPlugin rplug = (FBCReactionPlugin) r.getPlugin(FBCConstants.shortLabel);
+    if (rplug.isSetLowerFluxBound()) {
+      references.add(rplug.getLowerFluxBound());
+    }
+    if (rplug.isSetUpperFluxBound()) {
+      references.add(rplug.getUpperFluxBound());
+    }
+    if (rplug.isSetGeneProductAssociation()) {
+      GPRCache.collectGeneProducts(rplug.getGeneProductAssociation().getAssociation(), references);
+    }
+  }
+
+  /**
+   * Removes all species, compartments, flux bound parameters, gene products,
+   * groups, and objectives that are not used by the given references, e.g.,
+   * of reactions that are no longer in the model. Since all of these
+   * elements share the namespace of identifiers of the model, a single set
+   * suffices.
+   *
+   * @param m
+   * @param references
+   *        the identifiers of all elements to which the reactions refer, see
+   *        {@link #collectReferences(Reaction, Set)}
+   */
+  static void removeUnused(Model m, Set<String> references) {
+    Set<String> compartments = new HashSet<String>();
+    ListOf<Species> listOfSpecies = m.getListOfSpecies();
+    for (int i = listOfSpecies.size() - 1; i >= 0; i--) {
+      if (references.contains(listOfSpecies.get(i).getId())) {
+        compartments.add(listOfSpecies.get(i).getCompartment());
+      } else {
+        listOfSpecies.remove(i);
+      }
+    }
+    ListOf<Compartment> listOfCompartments = m.getListOfCompartments();
+    for (int i = listOfCompartments.size() - 1; i >= 0; i--) {
+      if (!compartments.contains(listOfCompartments.get(i).getId())) {
+        listOfCompartments.remove(i);
+      }
+    }
+    ListOf<Parameter> listOfParameters = m.getListOfParameters();
+    for (int i = listOfParameters.size() - 1; i >= 0; i--) {
+      Parameter p = listOfParameters.get(i);
+      if (((p.getSBOTerm() == FLUX_BOUND) || (p.getSBOTerm() == DEFAULT_FLUX_BOUND)) && !references.contains(p.getId())) {
+        listOfParameters.remove(i);
+      }
+    }
+
+    FBCModelPlugin fbc = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
+    if (fbc.isSetListOfGeneProducts()) {
+      for (int i = fbc.getGeneProductCount() - 1; i >= 0; i--) {
+        if (!references.contains(fbc.getGeneProduct(i).getId())) {
+          fbc.getListOfGeneProducts().remove(i);
+        }
+      }
+    }
+    removeEmpty(m);
+  }
+
+  /**
+   * Removes all groups without members and all objectives without flux
+   * objectives.
+   *
+   * @param m
+   */
+  static void removeEmpty(Model m) {
+    FBCModelPlugin fbc = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
+    if (fbc.isSetListOfObjectives()) {
+      ListOf<Objective> objectives = fbc.getListOfObjectives();
+      for (int i = objectives.size() - 1; i >= 0; i--) {
+        if (objectives.get(i).getFluxObjectiveCount() == 0) {
+          objectives.remove(i);
+        }
+      }
+      if (objectives.isEmpty()) {
+        fbc.unsetListOfObjectives();
+      }
+    }
+    GroupsModelPlugin gmp = (GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel);
+    if (gmp.isSetListOfGroups()) {
+      ListOf<Group> groups = gmp.getListOfGroups();
+      for (int i = groups.size() - 1; i >= 0; i--) {
+        if (groups.get(i).getMemberCount() == 0) {
+          groups.remove(i);
+        }
+      }
+      if (groups.isEmpty()) {
+        gmp.unsetListOfGroups();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes data in the GZIP format and compresses it on background threads.
+ * The data is cut into blocks that are compressed independently of each
+ * other and at the same time, while the caller continues to produce the next
+ * blocks. Each block is primed with the last 32 KiB of its predecessor and
+ * ends on a byte boundary, so that the concatenation of all compressed blocks
+ * is a single regular deflate stream, which every GZIP reader can read. The
+ * compression ratio is therefore close to the one of
+ * {@link java.util.zip.GZIPOutputStream}.
+ * <p>
+ * Compressed blocks are written to the underlying stream in their original
+ * order. At most two blocks per thread are waiting for compression, so that
+ * the memory needed does not depend on the size of the data.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+  /** Number of uncompressed bytes per block. */
+  private static final int BLOCK_SIZE = 1 << 17;
+
+  /** Maximal distance of back references in the deflate format. */
+  private static final int DICTIONARY_SIZE = 1 << 15;
+
+  /** The GZIP header without file name, time stamp, and operating system. */
+  private static final byte HEADER[] = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int maxPending;
+
+  /** Blocks that are being compressed, in the order of the data. */
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+  /** Checksum and length of all uncompressed data. */
+  private final CRC32 crc = new CRC32();
+  private long length;
+
+  /** The block that is currently filled and the previous block. */
+  private byte block[] = new byte[BLOCK_SIZE];
+  private byte previous[];
+  private int count;
+
+  private boolean closed;
+
+  /**
+   * Compresses on as many threads as there are processors.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public ParallelGZIPOutputStream(OutputStream out) throws IOException {
+    this(out, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param out
+   * @param threads
+   *        number of threads that compress blocks
+   * @throws IOException
+   */
+  public ParallelGZIPOutputStream(OutputStream out, int threads) throws IOException {
+    this.out = out;
+    threads = Math.max(1, threads);
+    maxPending = 2 * threads;
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, getClass().getSimpleName());
+      thread.setDaemon(true);
+      return thread;
+    });
+    out.write(HEADER);
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write(int b) throws IOException {
+    if (count == block.length) {
+      submit(false);
+    }
+    block[count++] = (byte) b;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte b[], int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == block.length) {
+        submit(false);
+      }
+      int n = Math.min(len, block.length - count);
+      System.arraycopy(b, off, block, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Hands the current block over to a background thread and writes the
+   * oldest compressed blocks if too many are waiting.
+   *
+   * @param last
+   *        whether this is the last block
+   * @throws IOException
+   */
+  private void submit(final boolean last) throws IOException {
+    crc.update(block, 0, count);
+    length += count;
+    final byte data[] = block;
+    final int size = count;
+    final byte dictionary[] = previous;
+    pending.add(executor.submit(() -> compress(data, size, dictionary, last)));
+    previous = block;
+    block = new byte[BLOCK_SIZE];
+    count = 0;
+    while (pending.size() > (last ? 0 : maxPending)) {
+      writeNext();
+    }
+  }
+
+  /**
+   * @param data
+   * @param size
+   *        number of bytes in the data
+   * @param dictionary
+   *        the previous block or {@code null}
+   * @param last
+   * @return the compressed block.
+   */
+  private static byte[] compress(byte data[], int size, byte dictionary[], boolean last) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+      }
+      deflater.setInput(data, 0, size);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(size / 2 + 64);
+      byte buffer[] = new byte[1 << 16];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        // A sync flush ends the block on a byte boundary without ending the stream.
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Waits for the oldest block and writes it.
+   *
+   * @throws IOException
+   */
+  private void writeNext() throws IOException {
+    try {
+      out.write(pending.poll().get());
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException exc) {
+      throw new IOException(exc.getCause());
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submit(true);
+      byte trailer[] = new byte[8];
+      writeInt(trailer, 0, crc.getValue());
+      writeInt(trailer, 4, length);
+      out.write(trailer);
+    } finally {
+      executor.shutdownNow();
+      out.close();
+    }
+  }
+
+  /**
+   * Stores the lower 32 bits of the given value in little-endian order.
+   *
+   * @param b
+   * @param off
+   * @param value
+   */
+  private static void writeInt(byte b[], int off, long value) {
+    for (int i = 0; i < 4; i++) {
+      b[off + i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+}
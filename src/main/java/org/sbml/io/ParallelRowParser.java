@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses many table rows on a fork-join pool. The resulting records are kept
+ * in table order, so that they can afterwards be applied to the model
+ * sequentially with exactly the same result as reading the table row by row.
+ *
+ * @param <R>
+ *        the type of the records produced by the {@link RowReader}
+ * @author Andreas Dr&auml;ger
+ */
+class ParallelRowParser<R> {
+
+  /** Rows up to this number are parsed by one task without further splitting. */
+  private static final int THRESHOLD = 256;
+
+  private final RowReader<R> reader;
+
+  /**
+   * @param reader
+   */
+  ParallelRowParser(RowReader<R> reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * @param rows
+   *        the rows of the table without header
+   * @param parallelism
+   *        the number of worker threads
+   * @return the parsed records in the same order as the given rows.
+   */
+  List<R> parse(List<TableRow> rows, int parallelism) {
+    @SuppressWarnings("unchecked")
+    R records[] = (R[]) new Object[rows.size()];
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new ParseTask(rows, records, 0, rows.size()));
+    } finally {
+      pool.shutdown();
+    }
+    return Arrays.asList(records);
+  }
+
+  /**
+   * Parses a contiguous range of rows and writes the results to the same
+   * positions of a shared array.
+   */
+  private class ParseTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<TableRow> rows;
+    private final R records[];
+    private final int from;
+    private final int to;
+
+    /**
+     * @param rows
+     * @param records
+     * @param from
+     *        first index (inclusive)
+     * @param to
+     *        last index (exclusive)
+     */
+    ParseTask(List<TableRow> rows, R records[], int from, int to) {
+      this.rows = rows;
+      this.records = records;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          records[i] = reader.parseRow(rows.get(i));
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ParseTask(rows, records, from, middle), new ParseTask(rows, records, middle, to));
+      }
+    }
+
+  }
+
+}
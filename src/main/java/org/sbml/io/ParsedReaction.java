@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable intermediate result of parsing one row of a reaction table.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+class ParsedReaction {
+
+  /**
+   * One species token of a reaction equation together with its stoichiometric
+   * coefficient.
+   */
+  static class Participant {
+
+    /** Identifier of the species without compartment suffix. */
+    final String speciesId;
+    /** Identifier of the compartment as given in the equation. */
+    final String compartmentId;
+    /** The stoichiometric coefficient. */
+    final double coefficient;
+    /** {@code true} if this participant is on the right side of the arrow. */
+    final boolean product;
+
+    /**
+     * @param speciesId
+     * @param compartmentId
+     * @param coefficient
+     * @param product
+     */
+    Participant(String speciesId, String compartmentId, double coefficient, boolean product) {
+      this.speciesId = speciesId;
+      this.compartmentId = compartmentId;
+      this.coefficient = coefficient;
+      this.product = product;
+    }
+
+  }
+
+  /** The number of the row from which this record has been parsed. */
+  final int row;
+  final String id;
+  final String name;
+  final boolean reversible;
+  /** The original reaction equation. */
+  final String equation;
+  /** All arrows found in the equation, in order of appearance. */
+  final List<String> arrows;
+  final List<Participant> participants;
+  /** The gene-protein-reaction rule or {@code null}. */
+  final String gpr;
+  /** Gene labels or {@code null} if neither genes nor proteins were given. */
+  final String genes[];
+  final String proteins[];
+  final String subsystem;
+  /** Lower flux bound or {@code null} if the column was empty. */
+  final Double lowerBound;
+  /** Upper flux bound or {@code null} if the column was empty. */
+  final Double upperBound;
+  final Integer objective;
+  final Integer confidence;
+  final String ecNumber;
+  /** Notes to be appended to the reaction, in order. */
+  final List<String> notes;
+
+  /**
+   * @param row
+   * @param id
+   * @param name
+   * @param reversible
+   * @param equation
+   * @param arrows
+   * @param participants
+   * @param gpr
+   * @param genes
+   * @param proteins
+   * @param subsystem
+   * @param lowerBound
+   * @param upperBound
+   * @param objective
+   * @param confidence
+   * @param ecNumber
+   * @param notes
+   */
+  ParsedReaction(int row, String id, String name, boolean reversible, String equation,
+    List<String> arrows, List<Participant> participants, String gpr,
+    String genes[], String proteins[], String subsystem, Double lowerBound,
+    Double upperBound, Integer objective, Integer confidence, String ecNumber,
+    List<String> notes) {
+    this.row = row;
+    this.id = id;
+    this.name = name;
+    this.reversible = reversible;
+    this.equation = equation;
+    this.arrows = Collections.unmodifiableList(arrows);
+    this.participants = Collections.unmodifiableList(participants);
+    this.gpr = gpr;
+    this.genes = genes;
+    this.proteins = proteins;
+    this.subsystem = subsystem;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+    this.objective = objective;
+    this.confidence = confidence;
+    this.ecNumber = ecNumber;
+    this.notes = Collections.unmodifiableList(notes);
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+/**
+ * Immutable intermediate result of parsing one row of a metabolite table. It
+ * also serves as the template for all compartmentalized species that are
+ * created for this metabolite.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+class ParsedSpecies {
+
+  /** The number of the row from which this record has been parsed. */
+  final int row;
+  /** The SBML identifier derived from the abbreviation. */
+  final String id;
+  /** The name, already trimmed. */
+  final String name;
+  /**
+   * The chemical formula or {@code null} if either formula or charge was not
+   * given or if the formula is invalid.
+   */
+  final String formula;
+  /** The charge or {@code null} if either formula or charge was not given. */
+  final Integer charge;
+
+  /**
+   * @param row
+   * @param id
+   * @param name
+   * @param formula
+   * @param charge
+   */
+  ParsedSpecies(int row, String id, String name, String formula, Integer charge) {
+    this.row = row;
+    this.id = id;
+    this.name = name;
+    this.formula = formula;
+    this.charge = charge;
+  }
+
+}
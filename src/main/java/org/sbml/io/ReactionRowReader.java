@@ -5,18 +5,19 @@ package org.sbml.io;
 
 import static java.text.MessageFormat.format;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.StringTokenizer;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLStreamException;
 
-import org.sbml.jsbml.CVTerm;
+import org.sbml.io.Diagnostics.Category;
+import org.sbml.io.ParsedReaction.Participant;
 import org.sbml.jsbml.CVTerm.Qualifier;
 import org.sbml.jsbml.Compartment;
-import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.Parameter;
 import org.sbml.jsbml.Reaction;
@@ -28,15 +29,10 @@ import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
 import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
 import org.sbml.jsbml.ext.fbc.GeneProduct;
 import org.sbml.jsbml.ext.fbc.Objective;
-import org.sbml.jsbml.ext.fbc.converters.GPRParser;
 import org.sbml.jsbml.ext.groups.Group;
-import org.sbml.jsbml.ext.groups.GroupsConstants;
-import org.sbml.jsbml.ext.groups.GroupsModelPlugin;
 import org.sbml.jsbml.util.ModelBuilder;
 import org.sbml.jsbml.util.StringTools;
 
-import de.zbit.sbml.util.SBMLtools;
-
 
 /**
  * This class reads one row from a reaction table and parses the information to
@@ -45,7 +41,64 @@ import de.zbit.sbml.util.SBMLtools;
  *
  * @author Andreas Dr&auml;ger
  */
-public class ReactionRowReader extends RowReader {
+public class ReactionRowReader extends RowReader<ParsedReaction> {
+
+  /**
+   * The columns of the reaction table.
+   */
+  public enum Column implements ColumnSchema.Column {
+    ID(0, true, "abbreviation", "id", "reactionid", "reaction"),
+    NAME(1, false, "name", "officialname", "reactionname", "description"),
+    EQUATION(2, true, "equation", "reactionequation", "formula", "reactionformula"),
+    GPR(3, false, "gpr", "generule", "geneassociation", "genereactionassociation"),
+    GENES(4, false, "genes"),
+    PROTEINS(5, false, "proteins"),
+    SUBSYSTEM(6, false, "subsystem", "pathway"),
+    REVERSIBLE(7, false, "reversible", "reversibility"),
+    LOWER_BOUND(8, false, "lb", "lowerbound"),
+    UPPER_BOUND(9, false, "ub", "upperbound"),
+    OBJECTIVE(10, false, "objective", "obj", "objectivecoefficient"),
+    CONFIDENCE(11, false, "confidence", "confidencescore", "conf"),
+    EC_NUMBER(12, false, "ec", "ecnumber"),
+    NOTES(13, false, "notes", "comment", "comments"),
+    REFERENCES(14, false, "references", "reference", "ref");
+
+    private final int defaultPosition;
+    private final boolean required;
+    private final String names[];
+
+    /**
+     * @param defaultPosition
+     * @param required
+     * @param names
+     */
+    private Column(int defaultPosition, boolean required, String... names) {
+      this.defaultPosition = defaultPosition;
+      this.required = required;
+      this.names = names;
+    }
+
+    @Override
+    public int getDefaultPosition() {
+      return defaultPosition;
+    }
+
+    @Override
+    public String[] getNames() {
+      return names;
+    }
+
+    @Override
+    public boolean isRequired() {
+      return required;
+    }
+  }
+
+  /** Name of the table in a column mapping file. */
+  static final String TABLE = "reactions";
+
+  /** Columns that are added to the notes of a reaction. */
+  private static final Column NOTE_COLUMNS[] = {Column.NOTES, Column.REFERENCES};
 
   private static final String MINUS_INF = "minus_inf";
   private static final String PLUS_INF = "plus_inf";
@@ -53,167 +106,312 @@ public class ReactionRowReader extends RowReader {
   private static final String COBRA_DEFAULT_LB = "cobra_default_lb";
   private static final String COBRA_DEFAULT_UB = "cobra_default_ub";
 
-  private static final String GROUPS_HASH = "GROUPS_HASH";
+  /** Identifier of the objective to which all flux objectives are added. */
+  static final String OBJECTIVE_ID = "obj";
 
   private static transient Logger logger = Logger.getLogger(ReactionRowReader.class.getName());
 
+  /** Splits reaction equations into their participants. */
+  private final EquationParser equationParser;
+
+  /** Positions of the columns, which are resolved once per table. */
+  private ColumnSchema<Column> schema = ColumnSchema.defaults(Column.class);
+
+  /**
+   * Creates a reader with its own {@link ConversionContext}.
+   */
+  public ReactionRowReader() {
+    this(new ConversionContext());
+  }
+
+  /**
+   * @param context
+   *        the state shared by all readers of one conversion
+   */
+  public ReactionRowReader(ConversionContext context) {
+    super(context);
+    equationParser = new EquationParser(context.getIdentifierCache());
+  }
+
+  /**
+   * @return the positions of the columns.
+   */
+  public ColumnSchema<Column> getSchema() {
+    return schema;
+  }
+
+  /**
+   * @param schema
+   *        the positions of the columns.
+   */
+  public void setSchema(ColumnSchema<Column> schema) {
+    this.schema = schema;
+  }
+
   @Override
-  public SBase readRow(String[] columns, ModelBuilder builder) {
-    Reaction r = builder.buildReaction(toID(columns[0], 'R'), columns[1].trim(), (Compartment) null, false, StringTools.parseSBMLBoolean(columns[7].trim()));
+  void readHeader(TableRow header, ConversionOptions options) throws IOException {
+    schema = ColumnSchema.resolve(Column.class, TABLE, header, options);
+  }
 
-    // read reaction equation
-    readRxnEqn(columns[2], r, builder);
+  /**
+   * @param columns
+   * @return the identifier of the reaction in the given row.
+   */
+  String getId(TableRow columns) {
+    return toID(schema.get(columns, Column.ID), 'R');
+  }
 
-    // GPRs
-    if (!columns[3].isEmpty()) {
-      GPRParser.parseGPR(r, columns[3], false, true);
+  @Override
+  protected ParsedReaction parseRow(TableRow columns) {
+    ColumnSchema<Column> schema = this.schema;
+    // read reaction equation
+    String eqn = schema.get(columns, Column.EQUATION);
+    List<String> arrows = new ArrayList<String>(1);
+    List<Participant> participants = new ArrayList<Participant>();
+    equationParser.parse(eqn, arrows, participants);
+
+    String genes[] = null, proteins[] = null;
+    if (!(schema.isEmpty(columns, Column.GENES) && schema.isEmpty(columns, Column.PROTEINS))) {
+      genes = schema.get(columns, Column.GENES).split(" ");
+      proteins = schema.get(columns, Column.PROTEINS).split(" ");
     }
 
-    // Protein annotation to genes
-    if (!(columns[4].isEmpty() && columns[5].isEmpty())) {
-      String genes[] = columns[4].split(" ");
-      String proteins[] = columns[5].split(" ");
-      FBCModelPlugin fbc = (FBCModelPlugin) builder.getModel().getPlugin(FBCConstants.shortLabel);
-      for (int i = 0; i < genes.length; i++) {
-        GeneProduct gp = fbc.getGeneProduct("G_" + genes[i]);
-        if (gp == null) {
-          logger.warning(format("Gene {0} is not included in model.", genes[i]));
-        } else {
-          if (!gp.isSetMetaId()) {
-            gp.setMetaId("meta_" + genes[i]);
-          }
-          // TODO: reference contains abbreviation for the organism -> change; also update with next JSBML release!
-          // gp.addResources(Qualifier.BQB_IS_ENCODED_BY, "https://identifiers.org/kegg.genes/cgb:" + genes[i]);
-          Table2Model.addResources(gp, Qualifier.BQB_IS_ENCODED_BY, "https://identifiers.org/kegg.genes/cgb:" + genes[i]);
-          gp.setLabel(genes[i]);
-          if (proteins.length > i) {
-            gp.setName(proteins[i]);
-          }
-        }
+    List<String> notes = new ArrayList<String>(2);
+    for (Column column : NOTE_COLUMNS) {
+      if (!schema.isEmpty(columns, column)) {
+        notes.add(schema.get(columns, column));
       }
     }
 
-    // Subsystems
-    readSubSystem(r, builder, columns[6]);
+    return new ParsedReaction(columns.getRowNumber(), getId(columns), schema.get(columns, Column.NAME).trim(),
+      StringTools.parseSBMLBoolean(schema.get(columns, Column.REVERSIBLE).trim()), eqn, arrows,
+      participants, schema.isEmpty(columns, Column.GPR) ? null : schema.get(columns, Column.GPR), genes, proteins,
+      schema.get(columns, Column.SUBSYSTEM),
+      schema.isEmpty(columns, Column.LOWER_BOUND) ? null : StringTools.parseSBMLDouble(schema.get(columns, Column.LOWER_BOUND)),
+      schema.isEmpty(columns, Column.UPPER_BOUND) ? null : StringTools.parseSBMLDouble(schema.get(columns, Column.UPPER_BOUND)),
+      schema.isEmpty(columns, Column.OBJECTIVE) ? null : StringTools.parseSBMLInt(schema.get(columns, Column.OBJECTIVE)),
+      schema.isEmpty(columns, Column.CONFIDENCE) ? null : StringTools.parseSBMLInt(schema.get(columns, Column.CONFIDENCE)),
+      schema.isEmpty(columns, Column.EC_NUMBER) ? null : schema.get(columns, Column.EC_NUMBER),
+      notes);
+  }
 
-    Model m = builder.getModel();
-    FBCReactionPlugin rplug = (FBCReactionPlugin) r.getPlugin(FBCConstants.shortLabel);
+  @Override
+  TableSnapshot.Codec<ParsedReaction> getSnapshotCodec() {
+    return TableSnapshot.REACTIONS;
+  }
 
-    // Flux Bounds
-    readFluxBounds(columns[8], columns[9], builder, r, m, rplug);
+  @Override
+  protected SBase applyRow(ParsedReaction row, ModelBuilder builder) {
+    Reaction r = buildReaction(row, builder);
+    linkReaction(row, r, builder);
+    if (getContext().getDiagnostics().isDetailed()) {
+      logger.info(format("Parsed {0}", r.toString()));
+    }
+    return r;
+  }
 
-    // Objective
-    if ((columns.length > 10) && !columns[10].isEmpty()) {
-      readObjective(StringTools.parseSBMLInt(columns[10]), r, m);
+  /**
+   * Creates the reaction together with everything that belongs to the
+   * reaction only: participants, gene-protein-reaction rule, references to
+   * the flux bounds, confidence score, EC number, and notes. Species,
+   * compartments, gene products, and flux bound parameters are reused if they
+   * already exist in the model.
+   *
+   * @param row
+   * @param builder
+   * @return the new reaction.
+   */
+  Reaction buildReaction(ParsedReaction row, ModelBuilder builder) {
+    Reaction r = builder.buildReaction(row.id, row.name, (Compartment) null, false, row.reversible);
+    Diagnostics diagnostics = getContext().getDiagnostics();
+
+    // read reaction equation
+    readRxnEqn(row, r, builder);
+
+    // GPRs
+    if (row.gpr != null) {
+      if (getContext().getGPRCache().parseGPR(r, row.gpr, diagnostics.isDetailed()) == null) {
+        diagnostics.record(Category.INVALID_GPR, row.row, row.gpr);
+      }
     }
 
+    // Flux Bounds
+    FBCReactionPlugin rplug = (FBCReactionPlugin) r.getPlugin(FBCConstants.shortLabel);
+    readFluxBounds(row.lowerBound, row.upperBound, builder, r, builder.getModel(), rplug);
+
     // Confidence Score
-    if ((columns.length > 11) && !columns[11].isEmpty()) {
-      readConfidenceScore(r, StringTools.parseSBMLInt(columns[11]));
+    if (row.confidence != null) {
+      readConfidenceScore(r, row.confidence.intValue());
     }
 
     // EC Number
-    if ((columns.length > 12) && !columns[12].isEmpty()) {
+    if (row.ecNumber != null) {
       r.setMetaId("meta_" + r.getId());
-      r.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "https://identifiers.org/ec-code/" + columns[12]));
+      getContext().getAnnotations().add(r, Qualifier.BQB_IS, "https://identifiers.org/ec-code/" + row.ecNumber);
     }
+    getContext().getAnnotations().flush(r);
 
     // Notes
-    if ((columns.length > 13) && !columns[13].isEmpty()) {
+    for (String note : row.notes) {
       try {
-        r.appendNotes(columns[13]);
+        r.appendNotes(note);
       } catch (XMLStreamException exc) {
-        logger.warning(exc.getMessage());
-      }
-    }
-    if ((columns.length > 14) && !columns[14].isEmpty()) {
-      try {
-        r.appendNotes(columns[14]);
-      } catch (XMLStreamException exc) {
-        logger.warning(exc.getMessage());
+        diagnostics.record(Category.INVALID_NOTES, row.row, r.getId());
+        if (diagnostics.isDetailed()) {
+          logger.warning(exc.getMessage());
+        }
       }
     }
-
-    logger.info(format("Parsed {0}", r.toString()));
     return r;
   }
 
   /**
-   * @param eqn
+   * Adds the given reaction to the model-wide structures that refer to it:
+   * annotations of its gene products, the group of its subsystem, and the
+   * objective function. These references remain valid after the reaction has
+   * been removed from the model again. The annotations of the gene products
+   * are only collected and must be added by
+   * {@link AnnotationAccumulator#flush()} after the last reaction, and the
+   * same holds for the {@link BalanceChecker}, the
+   * {@link StoichiometricMatrix}, and the {@link TopologyAnalysis} if there
+   * are any.
+   *
+   * @param row
    * @param r
+   * @param builder
    */
-  private void readRxnEqn(String eqn, Reaction r, ModelBuilder builder) {
-    StringTokenizer reqn = new StringTokenizer(eqn);
-    ListOf<SpeciesReference> participants = r.getListOfReactants();
-    Model m = builder.getModel();
-    Set<Compartment> rCompartments = new HashSet<Compartment>();
+  void linkReaction(ParsedReaction row, Reaction r, ModelBuilder builder) {
+    BalanceChecker balanceChecker = getContext().getBalanceChecker();
+    if (balanceChecker != null) {
+      balanceChecker.add(row);
+    }
+    StoichiometricMatrix.Builder stoichiometry = getContext().getStoichiometry();
+    if (stoichiometry != null) {
+      stoichiometry.add(row);
+    }
+    TopologyAnalysis topology = getContext().getTopology();
+    if (topology != null) {
+      topology.add(row);
+    }
+
+    // Protein annotation to genes
+    linkGeneProducts(row, builder.getModel(), true);
 
-    double coeff = 1d;
-    while (reqn.hasMoreElements()) {
-      String elem = reqn.nextElement().toString();
+    // Subsystems
+    readSubSystem(r, builder, row.subsystem);
 
-      // Current element is reaction arrow:
-      if (elem.equals("<=>") || elem.equals("->")) {
-        participants = r.getListOfProducts();
-        if ((elem.equals("<=>") && !r.isReversible()) || (elem.equals("->") && r.isReversible())) {
-          logger.warning(format("Reversibility flag ''{2}'' of reaction with id ''{0}'' conflicting with reaction equation ''{1}''.", r.getId(), eqn, r.getReversible()));
+    // Objective
+    if (row.objective != null) {
+      readObjective(row.objective.intValue(), r, builder.getModel());
+    }
+  }
+
+  /**
+   * Gives the gene product of each gene that the row lists the gene as
+   * label, the protein as name, and collects its annotation. Since each row
+   * overwrites label and name, these come from the last row that lists the
+   * gene.
+   *
+   * @param row
+   * @param m
+   * @param report
+   *        whether genes without gene product are recorded in the
+   *        diagnostics
+   */
+  void linkGeneProducts(ParsedReaction row, Model m, boolean report) {
+    if (row.genes == null) {
+      return;
+    }
+    Diagnostics diagnostics = getContext().getDiagnostics();
+    String genes[] = row.genes;
+    String proteins[] = row.proteins;
+    GPRCache gprCache = getContext().getGPRCache();
+    AnnotationAccumulator annotations = getContext().getAnnotations();
+    for (int i = 0; i < genes.length; i++) {
+      GeneProduct gp = gprCache.getGeneProduct(m, genes[i]);
+      if (gp == null) {
+        if (report) {
+          diagnostics.record(Category.MISSING_GENE, row.row, genes[i]);
+          if (diagnostics.isDetailed()) {
+            logger.warning(format("Gene {0} is not included in model.", genes[i]));
+          }
+        }
+      } else {
+        if (!gp.isSetMetaId()) {
+          gp.setMetaId("meta_" + genes[i]);
+        }
+        // TODO: reference contains abbreviation for the organism -> change; also update with next JSBML release!
+        annotations.add(gp, Qualifier.BQB_IS_ENCODED_BY, "https://identifiers.org/kegg.genes/cgb:" + genes[i]);
+        gp.setLabel(genes[i]);
+        if (proteins.length > i) {
+          gp.setName(proteins[i]);
         }
-        // reset stoichiometric coefficient for the next species:
-        coeff = 1d;
-        continue;
       }
+    }
+  }
 
-      // Current element is species identifier followed by compartment abbreviation:
-      if (elem.endsWith("]")) {
-        int split = elem.indexOf('[');
-        String sId = toID(elem.substring(0, split), 'M');
-        String cId = elem.substring(split + 1, elem.length() - 1);
+  /**
+   * @param row
+   * @param r
+   * @param builder
+   */
+  void readRxnEqn(ParsedReaction row, Reaction r, ModelBuilder builder) {
+    SpeciesIndex index = getContext().getSpeciesIndex();
+    Diagnostics diagnostics = getContext().getDiagnostics();
+    Set<Compartment> rCompartments = new HashSet<Compartment>();
 
-        Compartment c = m.getCompartment(cId);
-        if (c == null) {
-          c = builder.buildCompartment(cId, true, null, 3d, Double.NaN, (String) null);
-        }
-        rCompartments.add(c);
-
-        Species s = m.getSpecies(sId);
-        String sIdc = sId + '_' + cId;
-        if (s == null) {
-          s = builder.buildSpecies(sIdc, null, c, false, false, false, Double.NaN, (String) null);
-          logger.warning(format("Created species used in reaction but not declared as metabolite: {0}", s));
-        } else {
-          // Species exists, but in the default compartment
-          if (m.getSpecies(sIdc) == null) {
-            // Make sure to only add the compartmentalized species once.
-            s = s.clone();
-            s.setId(sIdc);
-            s.setCompartment(c);
-            m.addSpecies(s);
-          }
-          s = m.getSpecies(sIdc);
+    for (String arrow : row.arrows) {
+      if (EquationParser.isReversibleArrow(arrow) != r.isReversible()) {
+        diagnostics.record(Category.REVERSIBILITY_CONFLICT, row.row, r.getId());
+        if (diagnostics.isDetailed()) {
+          logger.warning(format("Reversibility flag ''{2}'' of reaction with id ''{0}'' conflicting with reaction equation ''{1}''.", r.getId(), row.equation, r.getReversible()));
         }
+      }
+    }
 
-        SpeciesReference specRef = new SpeciesReference(s);
-        specRef.setConstant(true);
-        specRef.setStoichiometry(coeff);
-        participants.add(specRef);
+    for (Participant participant : row.participants) {
+      String sId = participant.speciesId;
+      String cId = participant.compartmentId;
 
-        // reset stoichiometric coefficient for the next species:
-        coeff = 1d;
+      Compartment c = index.getCompartment(cId);
+      if (c == null) {
+        c = builder.buildCompartment(cId, true, null, 3d, Double.NaN, (String) null);
+        index.putCompartment(c);
+      }
+      rCompartments.add(c);
+
+      Species s = index.get(sId, cId);
+      if (s == null) {
+        String sIdc = getIdentifierCache().intern(sId + '_' + cId);
+        ParsedSpecies template = index.getTemplate(sId);
+        s = SpeciesRowReader.buildSpecies(template, sIdc, c, builder);
+        if (template == null) {
+          diagnostics.record(Category.UNDECLARED_METABOLITE, row.row, sIdc);
+          if (diagnostics.isDetailed()) {
+            logger.warning(format("Created species used in reaction but not declared as metabolite: {0}", s));
+          }
+        }
+        // Make sure to only add the compartmentalized species once.
+        index.put(sId, cId, s);
+      }
 
-      } else if (elem.equals("+")) {
-        continue;
+      SpeciesReference specRef = new SpeciesReference(s);
+      specRef.setConstant(true);
+      specRef.setStoichiometry(participant.coefficient);
+      if (participant.product) {
+        r.getListOfProducts().add(specRef);
       } else {
-        // Stoichiometric coefficient
-        coeff = StringTools.parseSBMLDouble(elem);
+        r.getListOfReactants().add(specRef);
       }
-
     }
 
     // Let's see if we can assign a compartment to the reaction:
     if (rCompartments.size() == 1) {
       // There is exactly one compartment in the set. Hence, all species are in the same compartment.
       r.setCompartment(rCompartments.iterator().next());
-      logger.info(format("Reaction with id ''{0}'' is located in the compartment with id ''{1}''.", r.getId(), r.getCompartment()));
+      if (diagnostics.isDetailed()) {
+        logger.info(format("Reaction with id ''{0}'' is located in the compartment with id ''{1}''.", r.getId(), r.getCompartment()));
+      }
     }
   }
 
@@ -225,9 +423,12 @@ public class ReactionRowReader extends RowReader {
   private void readObjective(int objective, Reaction r, Model m) {
     if (objective != 0) {
       FBCModelPlugin fbc = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
-      Objective o = fbc.createObjective("obj", null, Objective.Type.MAXIMIZE);
+      Objective o = fbc.isSetListOfObjectives() ? fbc.getListOfObjectives().get(OBJECTIVE_ID) : null;
+      if (o == null) {
+        o = fbc.createObjective(OBJECTIVE_ID, null, Objective.Type.MAXIMIZE);
+        fbc.setActiveObjective(o);
+      }
       o.createFluxObjective(null, null, objective, r);
-      fbc.setActiveObjective(o);
     }
   }
 
@@ -261,9 +462,10 @@ public class ReactionRowReader extends RowReader {
     // http://evidenceontology.org/browse/#ECO_<digits>
     if (ecoTerm != null) {
       String term = StringTools.leadingZeros(7, ecoTerm);
-      logger.info(format("Evidence Ontology Term: {0}", term));
-      // TODO: Update with next JSBML release:
-      Table2Model.addResources(r, Qualifier.BQB_IS, "https://identifiers.org/eco/ECO:" + term);
+      if (getContext().getDiagnostics().isDetailed()) {
+        logger.info(format("Evidence Ontology Term: {0}", term));
+      }
+      getContext().getAnnotations().add(r, Qualifier.BQB_IS, "https://identifiers.org/eco/ECO:" + term);
     }
   }
 
@@ -276,11 +478,12 @@ public class ReactionRowReader extends RowReader {
    * @param m
    * @param rplug
    */
-  private void readFluxBounds(String lowerBound, String upperBound, ModelBuilder builder,
+  void readFluxBounds(Double lowerBound, Double upperBound, ModelBuilder builder,
     Reaction r, Model m, FBCReactionPlugin rplug) {
+    FluxBoundPool pool = getContext().getFluxBoundPool();
     // Lower bound
-    if (!lowerBound.isEmpty()) {
-      double lb = StringTools.parseSBMLDouble(lowerBound);
+    if (lowerBound != null) {
+      double lb = lowerBound.doubleValue();
       Parameter p;
       String pid = r.getId() + "_lower_bound";
       int sbo = 626; // default flux bound
@@ -292,8 +495,11 @@ public class ReactionRowReader extends RowReader {
         pid = COBRA_DEFAULT_LB;
       } else {
         sbo = 625; // flux bound
+        if (pool != null) {
+          pid = null;
+        }
       }
-      p = m.getParameter(pid);
+      p = pid == null ? getPooledFluxBound(lb, pool, builder, m) : m.getParameter(pid);
       if (p == null) {
         // TODO: MMOL_PER_G_DW_PER_HR should become a static variable in ModelBuilder in next JSBML release
         p = builder.buildParameter(pid, null, lb, true, Table2Model.MMOL_PER_G_DW_PER_HR);
@@ -302,8 +508,8 @@ public class ReactionRowReader extends RowReader {
       rplug.setLowerFluxBound(p);
     }
     // Upper bound
-    if (!upperBound.isEmpty()) {
-      double ub = StringTools.parseSBMLDouble(upperBound);
+    if (upperBound != null) {
+      double ub = upperBound.doubleValue();
       Parameter p;
       String pid = r.getId() + "_upper_bound";
       int sbo = 626; // default flux bound
@@ -315,8 +521,11 @@ public class ReactionRowReader extends RowReader {
         pid = COBRA_DEFAULT_UB;
       } else {
         sbo = 625; // flux bound
+        if (pool != null) {
+          pid = null;
+        }
       }
-      p = m.getParameter(pid);
+      p = pid == null ? getPooledFluxBound(ub, pool, builder, m) : m.getParameter(pid);
       if (p == null) {
         // TODO: MMOL_PER_G_DW_PER_HR should become a static variable in ModelBuilder in next JSBML release
         p = builder.buildParameter(pid, null, ub, true, Table2Model.MMOL_PER_G_DW_PER_HR);
@@ -326,6 +535,30 @@ public class ReactionRowReader extends RowReader {
     }
   }
 
+  /**
+   * @param value
+   *        a flux bound that is not a default bound
+   * @param pool
+   * @param builder
+   * @param m
+   * @return the parameter with the given value from the pool, which is
+   *         created if needed.
+   */
+  private Parameter getPooledFluxBound(double value, FluxBoundPool pool, ModelBuilder builder, Model m) {
+    Parameter p = pool.get(value);
+    if (p == null) {
+      String pid = FluxBoundPool.toId(value);
+      // The model may have been read from a file that already contains this parameter.
+      p = m.getParameter(pid);
+      if (p == null) {
+        p = builder.buildParameter(pid, null, value, true, pool.getUnits());
+        p.setSBOTerm(625); // flux bound
+      }
+      pool.put(value, p);
+    }
+    return p;
+  }
+
   /**
    * @param r
    * @param builder
@@ -334,22 +567,15 @@ public class ReactionRowReader extends RowReader {
   private void readSubSystem(Reaction r, ModelBuilder builder,
     String groupName) {
     if (!groupName.isEmpty()) {
-      Model m = builder.getModel();
-      GroupsModelPlugin gmp = (GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel);
-      if (gmp.getUserObject(GROUPS_HASH) == null) {
-        gmp.putUserObject(GROUPS_HASH, new HashMap<String, Group>());
-      }
-      @SuppressWarnings("unchecked")
-      HashMap<String, Group> groups = (HashMap<String, Group>) gmp.getUserObject(GROUPS_HASH);
-      if (groups.get(groupName) == null) {
-        Group g = gmp.createGroup(SBMLtools.nextId(m));
-        g.setSBOTerm(633);
-        g.setKind(Group.Kind.partonomy);
-        g.setName(groupName);
-        groups.put(groupName, g);
-        logger.info(format("Created {0}", g));
+      IdRegistry registry = getContext().getIdRegistry();
+      Group g = registry.getGroup(groupName);
+      if (g == null) {
+        g = registry.createGroup(builder.getModel(), groupName);
+        if (getContext().getDiagnostics().isDetailed()) {
+          logger.info(format("Created {0}", g));
+        }
       }
-      groups.get(groupName).createMember(null, r);
+      g.createMember(null, r);
     }
   }
 
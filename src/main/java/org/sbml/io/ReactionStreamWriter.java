@@ -0,0 +1,403 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.sbml.jsbml.Annotation;
+import org.sbml.jsbml.CVTerm;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBase;
+import org.sbml.jsbml.SimpleSpeciesReference;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.ext.fbc.Association;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProductRef;
+import org.sbml.jsbml.ext.fbc.LogicalOperator;
+import org.sbml.jsbml.util.StringTools;
+import org.sbml.jsbml.xml.XMLNode;
+
+/**
+ * Writes a {@code listOfReactions} element one reaction at a time to an
+ * {@link XMLStreamWriter}, in the same form as
+ * {@link org.sbml.jsbml.TidySBMLWriter} would write it. This covers all
+ * elements that {@link ReactionRowReader} creates: notes, controlled
+ * vocabulary terms, gene-protein-reaction associations, flux bounds, and
+ * species references.
+ * <p>
+ * The written elements are meant to be embedded in a model element that
+ * already declares the SBML core namespace as default namespace and the
+ * prefix {@code fbc}. The {@code listOfReactions} element is opened with the
+ * first reaction, so that nothing is written without any reaction, as by
+ * {@link org.sbml.jsbml.TidySBMLWriter}.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+class ReactionStreamWriter {
+
+  private static final String INDENT = "  ";
+  private static final String FBC = FBCConstants.shortLabel;
+  private static final String FBC_NS = FBCConstants.namespaceURI_L3V1V2;
+  private static final String RDF = "rdf";
+  private static final String BQBIOL = "bqbiol";
+  private static final String BQMODEL = "bqmodel";
+
+  private final XMLStreamWriter writer;
+
+  /** Indentation depth of the {@code listOfReactions} element. */
+  private final int depth;
+
+  /** Whether the {@code listOfReactions} element has been opened. */
+  private boolean started;
+
+  /**
+   * @param writer
+   * @param depth
+   *        indentation depth of the {@code listOfReactions} element
+   */
+  ReactionStreamWriter(XMLStreamWriter writer, int depth) {
+    this.writer = writer;
+    this.depth = depth;
+  }
+
+  /**
+   * Opens the {@code listOfReactions} element.
+   *
+   * @throws XMLStreamException
+   */
+  private void writeStart() throws XMLStreamException {
+    started = true;
+    indent(depth);
+    writer.writeStartElement(ListOf.Type.listOfReactions.name());
+  }
+
+  /**
+   * Closes the {@code listOfReactions} element if any reaction has been
+   * written.
+   *
+   * @throws XMLStreamException
+   */
+  void writeEnd() throws XMLStreamException {
+    if (started) {
+      newLine(depth);
+      writer.writeEndElement();
+      writer.writeCharacters("\n");
+    }
+    writer.flush();
+  }
+
+  /**
+   * @param r
+   *        the reaction to be written next
+   * @throws XMLStreamException
+   */
+  @SuppressWarnings("deprecation")
+  void write(Reaction r) throws XMLStreamException {
+    if (!started) {
+      writeStart();
+    }
+    int d = depth + 1;
+    if ((r.getCVTermCount() > 0) && !r.isSetMetaId()) {
+      // as the SBMLWriter does for all annotated elements
+      r.setMetaId(r.getSBMLDocument().nextMetaId());
+    }
+    Map<String, String> attributes = new TreeMap<String, String>();
+    putSBaseAttributes(r, attributes);
+    attributes.put("id", r.getId());
+    if (r.isSetName()) {
+      attributes.put("name", r.getName());
+    }
+    if (r.isSetCompartment()) {
+      attributes.put("compartment", r.getCompartment());
+    }
+    // required in Level 3 Version 1 only
+    if (r.isSetFast()) {
+      attributes.put("fast", Boolean.toString(r.getFast()));
+    }
+    if (r.isSetReversible()) {
+      attributes.put("reversible", Boolean.toString(r.getReversible()));
+    }
+    FBCReactionPlugin rplug = (FBCReactionPlugin) r.getExtension(FBCConstants.shortLabel);
+    if (rplug != null) {
+      if (rplug.isSetLowerFluxBound()) {
+        attributes.put(FBC + ':' + FBCConstants.lowerFluxBound, rplug.getLowerFluxBound());
+      }
+      if (rplug.isSetUpperFluxBound()) {
+        attributes.put(FBC + ':' + FBCConstants.upperFluxBound, rplug.getUpperFluxBound());
+      }
+    }
+    newLine(d);
+    writer.writeStartElement("reaction");
+    writeAttributes(attributes);
+
+    if (r.isSetNotes()) {
+      newLine(d + 1);
+      writeNode(r.getNotes(), d + 1);
+    }
+    if (r.getCVTermCount() > 0) {
+      writeAnnotation(r, d + 1);
+    }
+    if ((rplug != null) && rplug.isSetGeneProductAssociation()) {
+      newLine(d + 1);
+      writer.writeStartElement(FBC, FBCConstants.geneProductAssociation, FBC_NS);
+      writer.writeNamespace(FBC, FBC_NS);
+      writeAssociation(rplug.getGeneProductAssociation().getAssociation(), d + 2);
+      newLine(d + 1);
+      writer.writeEndElement();
+    }
+    writeSpeciesReferences(r.isSetListOfReactants() ? r.getListOfReactants() : null, d + 1);
+    writeSpeciesReferences(r.isSetListOfProducts() ? r.getListOfProducts() : null, d + 1);
+    writeSpeciesReferences(r.isSetListOfModifiers() ? r.getListOfModifiers() : null, d + 1);
+    newLine(d);
+    writer.writeEndElement();
+  }
+
+  /**
+   * @param sbase
+   * @param attributes
+   *        receives the meta identifier and SBO term of the given element
+   */
+  private void putSBaseAttributes(SBase sbase, Map<String, String> attributes) {
+    if (sbase.isSetMetaId()) {
+      attributes.put("metaid", sbase.getMetaId());
+    }
+    if (sbase.isSetSBOTerm()) {
+      attributes.put("sboTerm", sbase.getSBOTermID());
+    }
+  }
+
+  /**
+   * Writes attributes in alphabetical order of their qualified names. Names
+   * with the prefix {@code fbc} belong to the flux balance constraints
+   * package, all others to SBML core.
+   *
+   * @param attributes
+   * @throws XMLStreamException
+   */
+  private void writeAttributes(Map<String, String> attributes) throws XMLStreamException {
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      String name = entry.getKey();
+      if (name.startsWith(FBC + ':')) {
+        writer.writeAttribute(FBC, FBC_NS, name.substring(FBC.length() + 1), entry.getValue());
+      } else {
+        writer.writeAttribute(name, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * @param listOf
+   *        a list of species references or {@code null}
+   * @param d
+   *        indentation depth of the list
+   * @throws XMLStreamException
+   */
+  private void writeSpeciesReferences(ListOf<? extends SimpleSpeciesReference> listOf, int d) throws XMLStreamException {
+    if ((listOf == null) || listOf.isEmpty()) {
+      return;
+    }
+    newLine(d);
+    writer.writeStartElement(listOf.getElementName());
+    for (SimpleSpeciesReference ref : listOf) {
+      Map<String, String> attributes = new TreeMap<String, String>();
+      putSBaseAttributes(ref, attributes);
+      if (ref.isSetId()) {
+        attributes.put("id", ref.getId());
+      }
+      if (ref.isSetName()) {
+        attributes.put("name", ref.getName());
+      }
+      attributes.put("species", ref.getSpecies());
+      if (ref instanceof SpeciesReference) {
+        SpeciesReference specRef = (SpeciesReference) ref;
+        if (specRef.isSetStoichiometry()) {
+          attributes.put("stoichiometry", StringTools.toString(Locale.ENGLISH, specRef.getStoichiometry()));
+        }
+        if (specRef.isSetConstant()) {
+          attributes.put("constant", Boolean.toString(specRef.getConstant()));
+        }
+      }
+      newLine(d + 1);
+      writer.writeEmptyElement(ref.getElementName());
+      writeAttributes(attributes);
+    }
+    newLine(d);
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes the controlled vocabulary terms of the given element as RDF.
+   *
+   * @param sbase
+   * @param d
+   *        indentation depth of the annotation element
+   * @throws XMLStreamException
+   */
+  private void writeAnnotation(SBase sbase, int d) throws XMLStreamException {
+    boolean biological = false, model = false;
+    for (CVTerm term : sbase.getCVTerms()) {
+      biological |= term.isBiologicalQualifier();
+      model |= term.isModelQualifier();
+    }
+    newLine(d);
+    writer.writeStartElement("annotation");
+    newLine(d + 1);
+    writer.writeStartElement(RDF, "RDF", Annotation.URI_RDF_SYNTAX_NS);
+    writer.writeNamespace(RDF, Annotation.URI_RDF_SYNTAX_NS);
+    if (biological) {
+      writer.writeNamespace(BQBIOL, CVTerm.URI_BIOMODELS_NET_BIOLOGY_QUALIFIERS);
+    }
+    if (model) {
+      writer.writeNamespace(BQMODEL, CVTerm.URI_BIOMODELS_NET_MODEL_QUALIFIERS);
+    }
+    newLine(d + 2);
+    writer.writeStartElement(RDF, "Description", Annotation.URI_RDF_SYNTAX_NS);
+    writer.writeAttribute(RDF, Annotation.URI_RDF_SYNTAX_NS, "about", '#' + sbase.getMetaId());
+    for (CVTerm term : sbase.getCVTerms()) {
+      newLine(d + 3);
+      if (term.isBiologicalQualifier()) {
+        writer.writeStartElement(BQBIOL, term.getQualifier().getElementNameEquivalent(), CVTerm.URI_BIOMODELS_NET_BIOLOGY_QUALIFIERS);
+      } else {
+        writer.writeStartElement(BQMODEL, term.getQualifier().getElementNameEquivalent(), CVTerm.URI_BIOMODELS_NET_MODEL_QUALIFIERS);
+      }
+      newLine(d + 4);
+      writer.writeStartElement(RDF, "Bag", Annotation.URI_RDF_SYNTAX_NS);
+      for (String resource : term.getResources()) {
+        newLine(d + 5);
+        writer.writeEmptyElement(RDF, "li", Annotation.URI_RDF_SYNTAX_NS);
+        writer.writeAttribute(RDF, Annotation.URI_RDF_SYNTAX_NS, "resource", resource);
+      }
+      newLine(d + 4);
+      writer.writeEndElement();
+      newLine(d + 3);
+      writer.writeEndElement();
+    }
+    for (int i = 2; i >= 0; i--) {
+      newLine(d + i);
+      writer.writeEndElement();
+    }
+  }
+
+  /**
+   * @param association
+   * @param d
+   *        indentation depth of the given association
+   * @throws XMLStreamException
+   */
+  private void writeAssociation(Association association, int d) throws XMLStreamException {
+    Map<String, String> attributes = new TreeMap<String, String>();
+    putSBaseAttributes(association, attributes);
+    newLine(d);
+    if (association instanceof GeneProductRef) {
+      attributes.put(FBC + ':' + FBCConstants.geneProduct, ((GeneProductRef) association).getGeneProduct());
+      writer.writeEmptyElement(FBC, association.getElementName(), FBC_NS);
+      writeAttributes(attributes);
+      return;
+    }
+    writer.writeStartElement(FBC, association.getElementName(), FBC_NS);
+    writeAttributes(attributes);
+    if (association instanceof LogicalOperator) {
+      for (Association child : ((LogicalOperator) association).getListOfAssociations()) {
+        writeAssociation(child, d + 1);
+      }
+    }
+    newLine(d);
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes an XML element such as the notes of an SBML element. Elements that
+   * contain text are written without further indentation.
+   *
+   * @param node
+   * @param d
+   *        indentation depth of the given node
+   * @throws XMLStreamException
+   */
+  private void writeNode(XMLNode node, int d) throws XMLStreamException {
+    if (node.isText()) {
+      writer.writeCharacters(node.getCharacters());
+      return;
+    }
+    boolean mixed = false, elements = false;
+    for (int i = 0; i < node.getChildCount(); i++) {
+      XMLNode child = node.getChildAt(i);
+      if (!child.isText()) {
+        elements = true;
+      } else if (child.getCharacters().trim().length() > 0) {
+        mixed = true;
+      }
+    }
+    String prefix = node.getPrefix() == null ? "" : node.getPrefix();
+    String uri = node.getURI() == null ? "" : node.getURI();
+    if (elements || mixed) {
+      writer.writeStartElement(prefix, node.getName(), uri);
+    } else {
+      writer.writeEmptyElement(prefix, node.getName(), uri);
+    }
+    for (int i = 0; i < node.getNamespacesLength(); i++) {
+      String nsPrefix = node.getNamespacePrefix(i);
+      if ((nsPrefix == null) || nsPrefix.isEmpty()) {
+        writer.writeDefaultNamespace(node.getNamespaceURI(i));
+      } else {
+        writer.writeNamespace(nsPrefix, node.getNamespaceURI(i));
+      }
+    }
+    for (int i = 0; i < node.getAttributesLength(); i++) {
+      String attrPrefix = node.getAttrPrefix(i);
+      if ((attrPrefix == null) || attrPrefix.isEmpty()) {
+        writer.writeAttribute(node.getAttrName(i), node.getAttrValue(i));
+      } else {
+        writer.writeAttribute(attrPrefix, node.getAttrURI(i), node.getAttrName(i), node.getAttrValue(i));
+      }
+    }
+    if (!(elements || mixed)) {
+      return;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      XMLNode child = node.getChildAt(i);
+      if (mixed) {
+        writeNode(child, d + 1);
+      } else if (!child.isText()) {
+        newLine(d + 1);
+        writeNode(child, d + 1);
+      }
+    }
+    if (!mixed) {
+      newLine(d);
+    }
+    writer.writeEndElement();
+  }
+
+  /**
+   * Starts a new line with the given indentation depth.
+   *
+   * @param d
+   * @throws XMLStreamException
+   */
+  private void newLine(int d) throws XMLStreamException {
+    writer.writeCharacters("\n");
+    indent(d);
+  }
+
+  /**
+   * @param d
+   * @throws XMLStreamException
+   */
+  private void indent(int d) throws XMLStreamException {
+    StringBuilder sb = new StringBuilder(d * INDENT.length());
+    for (int i = 0; i < d; i++) {
+      sb.append(INDENT);
+    }
+    writer.writeCharacters(sb.toString());
+  }
+
+}
@@ -0,0 +1,275 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash values of the content of all table rows, by the identifier of the
+ * element that each row produces. An index is kept in a file next to the
+ * SBML file, so that the next conversion can find out which rows have been
+ * changed, added, or removed since the SBML file has been written.
+ * <p>
+ * The index also records the settings that influence how the tables are
+ * read and converted as well as size and modification time of the SBML
+ * file. An index is only valid if all of these are still the same.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+class RowIndex {
+
+  /** Extension appended to the name of the SBML file. */
+  static final String SUFFIX = ".rows";
+
+  /** First line of each index file. */
+  private static final String HEADER = "# Table2Model row index 1";
+
+  private static final String SETTINGS = "settings";
+  private static final String OUTPUT = "output";
+  private static final String METABOLITE = "M";
+  private static final String REACTION = "R";
+
+  /** Hash values of metabolite rows by metabolite identifier, in table order. */
+  private final Map<String, String> metabolites = new LinkedHashMap<String, String>();
+
+  /** Hash values of reaction rows by reaction identifier, in table order. */
+  private final Map<String, String> reactions = new LinkedHashMap<String, String>();
+
+  /** Settings with which the tables have been read. */
+  private String settings;
+
+  /** Size of the SBML file when the index was written. */
+  private long length = -1L;
+
+  /** Modification time of the SBML file when the index was written. */
+  private long lastModified = -1L;
+
+  /**
+   * @param settings
+   */
+  private RowIndex(String settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * @param sbmlFile
+   * @return the file in which the index of the given SBML file is kept.
+   */
+  static File getFile(File sbmlFile) {
+    return new File(sbmlFile.getPath() + SUFFIX);
+  }
+
+  /**
+   * Computes the index of the given rows.
+   *
+   * @param metaboliteRows
+   * @param speciesReader
+   *        finds the identifier of each metabolite row
+   * @param reactionRows
+   * @param reactionReader
+   *        finds the identifier of each reaction row
+   * @param options
+   * @return the index or {@code null} if one of the tables contains the same
+   *         identifier more than once, so that rows cannot be matched.
+   */
+  static RowIndex create(List<TableRow> metaboliteRows, SpeciesRowReader speciesReader,
+    List<TableRow> reactionRows, ReactionRowReader reactionReader, ConversionOptions options) {
+    RowIndex index = new RowIndex(toString(options) + '\t' + speciesReader.getSchema() + '\t' + reactionReader.getSchema());
+    MessageDigest digest = newDigest();
+    for (TableRow row : metaboliteRows) {
+      if (index.metabolites.put(speciesReader.getId(row), hash(row, digest)) != null) {
+        return null;
+      }
+    }
+    for (TableRow row : reactionRows) {
+      if (index.reactions.put(reactionReader.getId(row), hash(row, digest)) != null) {
+        return null;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @param file
+   * @return the index stored in the given file or {@code null} if there is
+   *         no such file or if it has not been written by this class.
+   * @throws IOException
+   */
+  static RowIndex read(File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    RowIndex index = new RowIndex(null);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line = reader.readLine();
+      if (!HEADER.equals(line)) {
+        return null;
+      }
+      while ((line = reader.readLine()) != null) {
+        String fields[] = line.split("\t", 3);
+        if (fields.length != 3) {
+          return null;
+        }
+        if (fields[0].equals(SETTINGS)) {
+          index.settings = fields[1] + '\t' + fields[2];
+        } else if (fields[0].equals(OUTPUT)) {
+          index.length = Long.parseLong(fields[1]);
+          index.lastModified = Long.parseLong(fields[2]);
+        } else if (fields[0].equals(METABOLITE)) {
+          index.metabolites.put(fields[1], fields[2]);
+        } else if (fields[0].equals(REACTION)) {
+          index.reactions.put(fields[1], fields[2]);
+        } else {
+          return null;
+        }
+      }
+    } catch (NumberFormatException exc) {
+      return null;
+    } finally {
+      reader.close();
+    }
+    return index.settings == null ? null : index;
+  }
+
+  /**
+   * Writes this index together with the current size and modification time
+   * of the given SBML file.
+   *
+   * @param file
+   * @param sbmlFile
+   * @throws IOException
+   */
+  void write(File file, File sbmlFile) throws IOException {
+    length = sbmlFile.length();
+    lastModified = sbmlFile.lastModified();
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    try {
+      out.write(HEADER);
+      out.write('\n');
+      out.write(SETTINGS + '\t' + settings + '\n');
+      out.write(OUTPUT + '\t' + length + '\t' + lastModified + '\n');
+      write(out, METABOLITE, metabolites);
+      write(out, REACTION, reactions);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param out
+   * @param type
+   * @param hashes
+   * @throws IOException
+   */
+  private static void write(Writer out, String type, Map<String, String> hashes) throws IOException {
+    for (Map.Entry<String, String> entry : hashes.entrySet()) {
+      out.write(type);
+      out.write('\t');
+      out.write(entry.getKey());
+      out.write('\t');
+      out.write(entry.getValue());
+      out.write('\n');
+    }
+  }
+
+  /**
+   * @param current
+   *        the index of the tables as they are now
+   * @param sbmlFile
+   * @return {@code true} if this index has been written for the given SBML
+   *         file with the same settings and column positions as the current
+   *         index and if the file has not been modified since.
+   */
+  boolean isValid(RowIndex current, File sbmlFile) {
+    return current.settings.equals(settings) && (sbmlFile.length() == length)
+        && (sbmlFile.lastModified() == lastModified);
+  }
+
+  /**
+   * @return the identifiers of all metabolites in table order.
+   */
+  Set<String> getMetabolites() {
+    return metabolites.keySet();
+  }
+
+  /**
+   * @param id
+   * @return the hash value of the row of the given metabolite or {@code null}.
+   */
+  String getMetaboliteHash(String id) {
+    return metabolites.get(id);
+  }
+
+  /**
+   * @return the identifiers of all reactions in table order.
+   */
+  Set<String> getReactions() {
+    return reactions.keySet();
+  }
+
+  /**
+   * @param id
+   * @return the hash value of the row of the given reaction or {@code null}.
+   */
+  String getReactionHash(String id) {
+    return reactions.get(id);
+  }
+
+  /**
+   * @param options
+   * @return the settings that influence how the rows are read and converted.
+   */
+  private static String toString(ConversionOptions options) {
+    return Integer.toString(options.getSeparator()) + '\t' + options.getCharset().name() + '\t' + options.isPoolFluxBounds()
+      + '\t' + options.getTopology();
+  }
+
+  /**
+   * @return a new message digest for {@link #hash(TableRow, MessageDigest)}.
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException exc) {
+      // Every Java platform is required to support SHA-1.
+      throw new IllegalStateException(exc);
+    }
+  }
+
+  /**
+   * @param row
+   * @param digest
+   * @return the hexadecimal hash value of all columns of the given row.
+   */
+  private static String hash(TableRow row, MessageDigest digest) {
+    digest.reset();
+    for (int i = 0; i < row.size(); i++) {
+      digest.update(row.get(i).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    StringBuilder sb = new StringBuilder(40);
+    for (byte b : digest.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+}
@@ -3,17 +3,58 @@
  */
 package org.sbml.io;
 
+import java.io.IOException;
+
 import org.sbml.jsbml.SBase;
 import org.sbml.jsbml.util.ModelBuilder;
 
-import de.zbit.sbml.util.SBMLtools;
-
 /**
  * Abstract super class for all specific readers for table rows.
+ * <p>
+ * Reading a row happens in two phases: {@link #parseRow(TableRow)} turns the
+ * columns into an immutable intermediate record without touching the model,
+ * so that it can be called concurrently for many rows, and
+ * {@link #applyRow(Object, ModelBuilder)} adds the content of such a record to
+ * the model. The second phase must always be called sequentially and in table
+ * order.
  *
+ * @param <R>
+ *        the type of the intermediate records produced by this reader
  * @author Andreas Dr&auml;ger
  */
-public abstract class RowReader {
+public abstract class RowReader<R> {
+
+  /** State shared by all readers of one conversion. */
+  private final ConversionContext context;
+
+  /**
+   * Creates a reader with its own {@link ConversionContext}.
+   */
+  public RowReader() {
+    this(new ConversionContext());
+  }
+
+  /**
+   * @param context
+   *        the state shared by all readers of one conversion
+   */
+  public RowReader(ConversionContext context) {
+    this.context = context;
+  }
+
+  /**
+   * @return the state shared by all readers of the same conversion.
+   */
+  public ConversionContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the cache of identifiers used by this reader.
+   */
+  public IdentifierCache getIdentifierCache() {
+    return context.getIdentifierCache();
+  }
 
   /**
    * This method converts an abbreviation to a valid SBML identifier and takes a
@@ -30,13 +71,50 @@ public abstract class RowReader {
    *         abbreviation as possible.
    */
   protected String toID(String abbreviation, char prefix) {
-    String id = SBMLtools.toSId(abbreviation);
-    if (id.startsWith("_")) {
-      id = prefix + id;
-    } else {
-      id = prefix + "_" + id;
-    }
-    return id;
+    return getIdentifierCache().toID(abbreviation, prefix);
+  }
+
+  /**
+   * Parses the content of one row into an immutable record. Implementations
+   * must not access any model and must be safe to be called from several
+   * threads at the same time.
+   *
+   * @param columns
+   * @return a record holding all the information from the row.
+   */
+  protected abstract R parseRow(TableRow columns);
+
+  /**
+   * Adds the content of a previously parsed row to the model.
+   *
+   * @param row
+   *        a record obtained from {@link #parseRow(TableRow)}
+   * @param builder
+   * @return an SBML object containing all the information from the row or
+   *         {@code null} if the row only provides information that is used
+   *         by later rows.
+   */
+  protected abstract SBase applyRow(R row, ModelBuilder builder);
+
+  /**
+   * Receives the header row of the table before any other row, so that the
+   * columns can be found by their names. The default implementation ignores
+   * the header.
+   *
+   * @param header
+   * @param options
+   * @throws IOException
+   *         if required columns are missing.
+   */
+  void readHeader(TableRow header, ConversionOptions options) throws IOException {
+  }
+
+  /**
+   * @return the codec with which the records of this reader are stored in a
+   *         {@link TableSnapshot} or {@code null} if they cannot be stored.
+   */
+  TableSnapshot.Codec<R> getSnapshotCodec() {
+    return null;
   }
 
   /**
@@ -45,8 +123,26 @@ public abstract class RowReader {
    *
    * @param columns
    * @param builder
-   * @return an SBML object containing all the information from the row.
+   * @return an SBML object containing all the information from the row or
+   *         {@code null} if the row only provides information that is used
+   *         by later rows.
    */
-  public abstract SBase readRow(String columns[], ModelBuilder builder);
+  public SBase readRow(String columns[], ModelBuilder builder) {
+    return readRow(TableRow.of(-1, columns), builder);
+  }
+
+  /**
+   * Reads exactly one row from a table and parses all content into one
+   * instance of {@link SBase}.
+   *
+   * @param columns
+   * @param builder
+   * @return an SBML object containing all the information from the row or
+   *         {@code null} if the row only provides information that is used
+   *         by later rows.
+   */
+  public SBase readRow(TableRow columns, ModelBuilder builder) {
+    return applyRow(parseRow(columns), builder);
+  }
 
 }
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Species;
+
+/**
+ * Resolves the species and compartments that occur in reaction equations
+ * without searching the model. The metabolite table only provides templates;
+ * a {@link Species} is created for each compartment in which the template
+ * occurs in a reaction. Compartmentalized species are found by the
+ * identifier of their template and the identifier of their compartment.
+ * <p>
+ * Instances are not thread-safe and are meant to be used during the
+ * sequential phase of a conversion only.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class SpeciesIndex {
+
+  /** Species declared in the metabolite table, by their identifier. */
+  private final Map<String, ParsedSpecies> templates = new HashMap<String, ParsedSpecies>();
+
+  /** Compartmentalized species by the identifiers of template and compartment. */
+  private final Map<String, Map<String, Species>> species = new HashMap<String, Map<String, Species>>();
+
+  private final Map<String, Compartment> compartments = new HashMap<String, Compartment>();
+
+  /**
+   * @param compartmentId
+   * @return the compartment with the given identifier or {@code null}.
+   */
+  public Compartment getCompartment(String compartmentId) {
+    return compartments.get(compartmentId);
+  }
+
+  /**
+   * @param compartment
+   */
+  public void putCompartment(Compartment compartment) {
+    compartments.put(compartment.getId(), compartment);
+  }
+
+  /**
+   * @param speciesId
+   *        the identifier of a species from the metabolite table
+   * @return the declaration from the metabolite table or {@code null}.
+   */
+  ParsedSpecies getTemplate(String speciesId) {
+    return templates.get(speciesId);
+  }
+
+  /**
+   * @param template
+   *        a species declared in the metabolite table
+   */
+  void putTemplate(ParsedSpecies template) {
+    templates.put(template.id, template);
+  }
+
+  /**
+   * @param speciesId
+   *        the identifier of the species without compartment suffix
+   * @param compartmentId
+   * @return the species within the given compartment or {@code null}.
+   */
+  public Species get(String speciesId, String compartmentId) {
+    Map<String, Species> byCompartment = species.get(speciesId);
+    return byCompartment == null ? null : byCompartment.get(compartmentId);
+  }
+
+  /**
+   * @param speciesId
+   *        the identifier of the species without compartment suffix
+   * @return the species in all compartments, which may be empty.
+   */
+  public Collection<Species> get(String speciesId) {
+    Map<String, Species> byCompartment = species.get(speciesId);
+    return byCompartment == null ? Collections.<Species>emptyList() : byCompartment.values();
+  }
+
+  /**
+   * @param speciesId
+   *        the identifier of the species without compartment suffix
+   * @param compartmentId
+   * @param s
+   *        the species within the given compartment
+   */
+  public void put(String speciesId, String compartmentId, Species s) {
+    Map<String, Species> byCompartment = species.get(speciesId);
+    if (byCompartment == null) {
+      byCompartment = new HashMap<String, Species>(4);
+      species.put(speciesId, byCompartment);
+    }
+    byCompartment.put(compartmentId, s);
+  }
+
+}
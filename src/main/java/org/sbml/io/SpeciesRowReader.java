@@ -5,46 +5,207 @@ package org.sbml.io;
 
 import static java.text.MessageFormat.format;
 
+import java.io.IOException;
 import java.util.logging.Logger;
 
+import org.sbml.io.Diagnostics.Category;
+import org.sbml.jsbml.Compartment;
 import org.sbml.jsbml.SBase;
 import org.sbml.jsbml.Species;
 import org.sbml.jsbml.ext.fbc.FBCConstants;
 import org.sbml.jsbml.ext.fbc.FBCSpeciesPlugin;
 import org.sbml.jsbml.util.ModelBuilder;
+import org.sbml.jsbml.validator.SyntaxChecker;
 
 /**
  * @author Andreas Dr&auml;ger
  *
  */
-public class SpeciesRowReader extends RowReader {
+public class SpeciesRowReader extends RowReader<ParsedSpecies> {
 
+  /**
+   * The columns of the metabolite table.
+   */
+  public enum Column implements ColumnSchema.Column {
+    ID(0, true, "abbreviation", "id", "metaboliteid", "metabolite"),
+    NAME(1, false, "name", "officialname", "metabolitename", "description"),
+    /** The neutral formula, as in the column "Formula (neutral)" of <i>i</i>CW773, not the charged one. */
+    FORMULA(2, false, "formula", "formulaneutral", "neutralformula"),
+    CHARGE(4, false, "charge");
+
+    private final int defaultPosition;
+    private final boolean required;
+    private final String names[];
+
+    /**
+     * @param defaultPosition
+     * @param required
+     * @param names
+     */
+    private Column(int defaultPosition, boolean required, String... names) {
+      this.defaultPosition = defaultPosition;
+      this.required = required;
+      this.names = names;
+    }
+
+    @Override
+    public int getDefaultPosition() {
+      return defaultPosition;
+    }
+
+    @Override
+    public String[] getNames() {
+      return names;
+    }
+
+    @Override
+    public boolean isRequired() {
+      return required;
+    }
+  }
+
+  /** Name of the table in a column mapping file. */
+  static final String TABLE = "metabolites";
 
-  public static final String DEFAULT_COMPARTMENT_ID = "d";
   private static transient Logger logger = Logger.getLogger(SpeciesRowReader.class.getName());
 
+  /** Positions of the columns, which are resolved once per table. */
+  private ColumnSchema<Column> schema = ColumnSchema.defaults(Column.class);
+
+  /**
+   * Creates a reader with its own {@link ConversionContext}.
+   */
+  public SpeciesRowReader() {
+    super();
+  }
+
+  /**
+   * @param context
+   *        the state shared by all readers of one conversion
+   */
+  public SpeciesRowReader(ConversionContext context) {
+    super(context);
+  }
+
+  /**
+   * @return the positions of the columns.
+   */
+  public ColumnSchema<Column> getSchema() {
+    return schema;
+  }
+
+  /**
+   * @param schema
+   *        the positions of the columns.
+   */
+  public void setSchema(ColumnSchema<Column> schema) {
+    this.schema = schema;
+  }
+
   @Override
-  public SBase readRow(String columns[], ModelBuilder builder) {
-
-    String id = toID(columns[0], 'M');
-
-    Species s = builder.buildSpecies(id, columns[1].trim(), builder.getModel().getCompartment(DEFAULT_COMPARTMENT_ID), false, false, false, Double.NaN, (String) null);
-    if (!(columns[2].isEmpty() || columns[4].isEmpty())) {
-      FBCSpeciesPlugin fbcSpecies = (FBCSpeciesPlugin) s.getPlugin(FBCConstants.shortLabel);
-      if (!columns[2].isEmpty()) {
-        try {
-          fbcSpecies.setChemicalFormula(columns[2].trim());
-        } catch (IllegalArgumentException exc) {
-          logger.warning(exc.getMessage());
-        }
-      }
-      if (!columns[4].isEmpty()) {
-        fbcSpecies.setCharge(Integer.parseInt(columns[4].trim()));
+  void readHeader(TableRow header, ConversionOptions options) throws IOException {
+    schema = ColumnSchema.resolve(Column.class, TABLE, header, options);
+  }
+
+  /**
+   * @param columns
+   * @return the identifier of the metabolite in the given row.
+   */
+  String getId(TableRow columns) {
+    return toID(schema.get(columns, Column.ID), 'M');
+  }
+
+  @Override
+  protected ParsedSpecies parseRow(TableRow columns) {
+    ColumnSchema<Column> schema = this.schema;
+    String formula = null;
+    Integer charge = null;
+    if (!(schema.isEmpty(columns, Column.FORMULA) || schema.isEmpty(columns, Column.CHARGE))) {
+      formula = schema.get(columns, Column.FORMULA).trim();
+      charge = Integer.valueOf(Integer.parseInt(schema.get(columns, Column.CHARGE).trim()));
+    }
+    return new ParsedSpecies(columns.getRowNumber(), getId(columns), schema.get(columns, Column.NAME).trim(), formula, charge);
+  }
+
+  @Override
+  TableSnapshot.Codec<ParsedSpecies> getSnapshotCodec() {
+    return TableSnapshot.SPECIES;
+  }
+
+  /**
+   * Registers the metabolite as a template in the {@link SpeciesIndex}. The
+   * actual {@link Species} are only created for the compartments in which
+   * reactions use the metabolite.
+   *
+   * @return always {@code null}.
+   */
+  @Override
+  protected SBase applyRow(ParsedSpecies row, ModelBuilder builder) {
+    Diagnostics diagnostics = getContext().getDiagnostics();
+    if ((row.formula != null) && !SyntaxChecker.isValidChemicalFormula(row.formula)) {
+      diagnostics.record(Category.INVALID_FORMULA, row.row, row.formula);
+      if (diagnostics.isDetailed()) {
+        logger.warning(format("Invalid chemical formula ''{0}'' of metabolite {1}.", row.formula, row.id));
       }
+      row = new ParsedSpecies(row.row, row.id, row.name, null, row.charge);
     }
-    logger.info(format("Parsed {0}", s.toString()));
+    getContext().getSpeciesIndex().putTemplate(row);
+    if (diagnostics.isDetailed()) {
+      logger.info(format("Parsed metabolite {0}", row.id));
+    }
+    return null;
+  }
 
+  /**
+   * Creates a new species from a template.
+   *
+   * @param template
+   *        a metabolite declaration or {@code null}
+   * @param id
+   *        the identifier of the new species
+   * @param c
+   *        the compartment of the new species
+   * @param builder
+   * @return the new species.
+   */
+  static Species buildSpecies(ParsedSpecies template, String id, Compartment c, ModelBuilder builder) {
+    Species s = builder.buildSpecies(id, template == null ? null : template.name, c, false, false, false, Double.NaN, (String) null);
+    if (template != null) {
+      if (template.formula != null) {
+        ((FBCSpeciesPlugin) s.getPlugin(FBCConstants.shortLabel)).setChemicalFormula(template.formula);
+      }
+      if (template.charge != null) {
+        ((FBCSpeciesPlugin) s.getPlugin(FBCConstants.shortLabel)).setCharge(template.charge.intValue());
+      }
+    }
     return s;
   }
 
+  /**
+   * Updates an existing species after its declaration in the metabolite table
+   * has been changed, added, or removed.
+   *
+   * @param s
+   * @param template
+   *        the new metabolite declaration or {@code null}
+   */
+  static void updateSpecies(Species s, ParsedSpecies template) {
+    FBCSpeciesPlugin fbc = (FBCSpeciesPlugin) s.getPlugin(FBCConstants.shortLabel);
+    if ((template == null) || (template.name == null)) {
+      s.unsetName();
+    } else {
+      s.setName(template.name);
+    }
+    if ((template == null) || (template.formula == null)) {
+      fbc.unsetChemicalFormula();
+    } else {
+      fbc.setChemicalFormula(template.formula);
+    }
+    if ((template == null) || (template.charge == null)) {
+      fbc.unsetCharge();
+    } else {
+      fbc.setCharge(template.charge.intValue());
+    }
+  }
+
 }
@@ -0,0 +1,546 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbml.io.ParsedReaction.Participant;
+
+/**
+ * The stoichiometric matrix of a model together with the flux bounds and
+ * the objective coefficients of all reactions, as needed for flux balance
+ * analysis. The matrix is built directly from the parsed reactions, so that
+ * it does not need to be extracted from the SBML file again.
+ * <p>
+ * Rows are the compartmentalized species in the order of their first
+ * occurrence in the reaction table, columns are the reactions in table order.
+ * The matrix is stored in the compressed sparse column format: the entries of
+ * column {@code j} are at the positions {@code getColumnPointers()[j]} to
+ * {@code getColumnPointers()[j + 1] - 1} of {@link #getRowIndices()} and
+ * {@link #getValues()}, sorted by row. {@link #transpose()} returns the same
+ * arrays in the compressed sparse row format. Reactants have negative
+ * coefficients; a species on both sides of a reaction has one entry with the
+ * difference or none if it is zero. Missing flux bounds are infinite.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class StoichiometricMatrix {
+
+  /**
+   * The file formats in which the matrix can be written.
+   */
+  public enum Format {
+    /**
+     * The matrix in the MatrixMarket coordinate format ({@code NAME.mtx}),
+     * the species identifiers in {@code NAME_rows.txt}, and the reaction
+     * identifiers with bounds and objective in {@code NAME_columns.tsv}.
+     */
+    MTX(".mtx"),
+    /** Everything in one binary file ({@code NAME.smx}), see {@link StoichiometricMatrix#writeBinary(OutputStream)}. */
+    SMX(".smx");
+
+    private final String extension;
+
+    /**
+     * @param extension
+     */
+    private Format(String extension) {
+      this.extension = extension;
+    }
+
+    /**
+     * @return the extension of the main file.
+     */
+    public String getExtension() {
+      return extension;
+    }
+  }
+
+  /**
+   * Collects the columns of a matrix one reaction at a time.
+   */
+  public static class Builder {
+
+    private final IdentifierCache identifierCache;
+    private final Map<String, Integer> rows = new HashMap<String, Integer>();
+    private final List<String> rowIds = new ArrayList<String>();
+    private final List<String> columnIds = new ArrayList<String>();
+    private int columnPointers[] = new int[1025];
+    private int rowIndices[] = new int[4096];
+    private double values[] = new double[4096];
+    private double lowerBounds[] = new double[1024];
+    private double upperBounds[] = new double[1024];
+    private double objective[] = new double[1024];
+    private int nonZeros;
+
+    /**
+     * @param identifierCache
+     *        provides the same identifiers of compartmentalized species as
+     *        in the model
+     */
+    public Builder(IdentifierCache identifierCache) {
+      this.identifierCache = identifierCache;
+    }
+
+    /**
+     * Adds the reaction as the next column.
+     *
+     * @param reaction
+     */
+    void add(ParsedReaction reaction) {
+      int column = columnIds.size();
+      if (column + 1 >= columnPointers.length) {
+        int capacity = 2 * columnPointers.length;
+        columnPointers = Arrays.copyOf(columnPointers, capacity);
+        lowerBounds = Arrays.copyOf(lowerBounds, capacity);
+        upperBounds = Arrays.copyOf(upperBounds, capacity);
+        objective = Arrays.copyOf(objective, capacity);
+      }
+      columnIds.add(reaction.id);
+      lowerBounds[column] = reaction.lowerBound != null ? reaction.lowerBound.doubleValue() : Double.NEGATIVE_INFINITY;
+      upperBounds[column] = reaction.upperBound != null ? reaction.upperBound.doubleValue() : Double.POSITIVE_INFINITY;
+      objective[column] = reaction.objective != null ? reaction.objective.intValue() : 0d;
+
+      int start = nonZeros;
+      for (Participant participant : reaction.participants) {
+        String id = identifierCache.intern(participant.speciesId + '_' + participant.compartmentId);
+        Integer row = rows.get(id);
+        if (row == null) {
+          row = Integer.valueOf(rowIds.size());
+          rows.put(id, row);
+          rowIds.add(id);
+        }
+        double value = participant.product ? participant.coefficient : -participant.coefficient;
+        // Species that occur more than once in a reaction have one entry with the sum.
+        int k = start;
+        while ((k < nonZeros) && (rowIndices[k] != row.intValue())) {
+          k++;
+        }
+        if (k < nonZeros) {
+          values[k] += value;
+        } else {
+          if (nonZeros == rowIndices.length) {
+            rowIndices = Arrays.copyOf(rowIndices, 2 * nonZeros);
+            values = Arrays.copyOf(values, 2 * nonZeros);
+          }
+          rowIndices[nonZeros] = row.intValue();
+          values[nonZeros++] = value;
+        }
+      }
+      // Species that occur with the same amount on both sides do not change.
+      int end = start;
+      for (int k = start; k < nonZeros; k++) {
+        if (values[k] != 0d) {
+          rowIndices[end] = rowIndices[k];
+          values[end++] = values[k];
+        }
+      }
+      nonZeros = end;
+      sort(start, nonZeros);
+      columnPointers[column + 1] = nonZeros;
+    }
+
+    /**
+     * Sorts the entries of one column by their row with insertion sort,
+     * which is fast for the few entries of a reaction.
+     *
+     * @param from
+     * @param to
+     */
+    private void sort(int from, int to) {
+      for (int i = from + 1; i < to; i++) {
+        int row = rowIndices[i];
+        double value = values[i];
+        int j = i - 1;
+        while ((j >= from) && (rowIndices[j] > row)) {
+          rowIndices[j + 1] = rowIndices[j];
+          values[j + 1] = values[j];
+          j--;
+        }
+        rowIndices[j + 1] = row;
+        values[j + 1] = value;
+      }
+    }
+
+    /**
+     * @return the matrix of all reactions added so far.
+     */
+    public StoichiometricMatrix build() {
+      int n = columnIds.size();
+      return new StoichiometricMatrix(new ArrayList<String>(rowIds), new ArrayList<String>(columnIds),
+        Arrays.copyOf(columnPointers, n + 1), Arrays.copyOf(rowIndices, nonZeros), Arrays.copyOf(values, nonZeros),
+        Arrays.copyOf(lowerBounds, n), Arrays.copyOf(upperBounds, n), Arrays.copyOf(objective, n));
+    }
+
+  }
+
+  /** First four bytes of the binary format ("SMX1"). */
+  private static final int MAGIC = 0x534d5831;
+
+  private final List<String> rowIds;
+  private final List<String> columnIds;
+  private final int columnPointers[];
+  private final int rowIndices[];
+  private final double values[];
+  private final double lowerBounds[];
+  private final double upperBounds[];
+  private final double objective[];
+
+  /**
+   * @param rowIds
+   * @param columnIds
+   * @param columnPointers
+   * @param rowIndices
+   * @param values
+   * @param lowerBounds
+   * @param upperBounds
+   * @param objective
+   */
+  private StoichiometricMatrix(List<String> rowIds, List<String> columnIds, int columnPointers[], int rowIndices[],
+    double values[], double lowerBounds[], double upperBounds[], double objective[]) {
+    this.rowIds = Collections.unmodifiableList(rowIds);
+    this.columnIds = Collections.unmodifiableList(columnIds);
+    this.columnPointers = columnPointers;
+    this.rowIndices = rowIndices;
+    this.values = values;
+    this.lowerBounds = lowerBounds;
+    this.upperBounds = upperBounds;
+    this.objective = objective;
+  }
+
+  /**
+   * @return the identifiers of the species, one per row.
+   */
+  public List<String> getRowIds() {
+    return rowIds;
+  }
+
+  /**
+   * @return the identifiers of the reactions, one per column.
+   */
+  public List<String> getColumnIds() {
+    return columnIds;
+  }
+
+  /**
+   * @return the start of each column in {@link #getRowIndices()} followed by
+   *         the number of non-zero entries. The array must not be changed.
+   */
+  public int[] getColumnPointers() {
+    return columnPointers;
+  }
+
+  /**
+   * @return the row of each non-zero entry. The array must not be changed.
+   */
+  public int[] getRowIndices() {
+    return rowIndices;
+  }
+
+  /**
+   * @return the value of each non-zero entry. The array must not be changed.
+   */
+  public double[] getValues() {
+    return values;
+  }
+
+  /**
+   * @return the lower flux bound of each reaction. The array must not be
+   *         changed.
+   */
+  public double[] getLowerBounds() {
+    return lowerBounds;
+  }
+
+  /**
+   * @return the upper flux bound of each reaction. The array must not be
+   *         changed.
+   */
+  public double[] getUpperBounds() {
+    return upperBounds;
+  }
+
+  /**
+   * @return the objective coefficient of each reaction. The array must not
+   *         be changed.
+   */
+  public double[] getObjective() {
+    return objective;
+  }
+
+  /**
+   * @return the number of non-zero entries.
+   */
+  public int getNonZeroCount() {
+    return values.length;
+  }
+
+  /**
+   * @return the transposed matrix, whose arrays are the compressed sparse
+   *         row format of this matrix. Flux bounds and objective belong to
+   *         the rows of the transposed matrix.
+   */
+  public StoichiometricMatrix transpose() {
+    int m = rowIds.size();
+    int pointers[] = new int[m + 1];
+    for (int row : rowIndices) {
+      pointers[row + 1]++;
+    }
+    for (int i = 0; i < m; i++) {
+      pointers[i + 1] += pointers[i];
+    }
+    int next[] = Arrays.copyOf(pointers, m);
+    int columns[] = new int[values.length];
+    double transposed[] = new double[values.length];
+    for (int j = 0; j < columnIds.size(); j++) {
+      for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+        int position = next[rowIndices[k]]++;
+        columns[position] = j;
+        transposed[position] = values[k];
+      }
+    }
+    return new StoichiometricMatrix(new ArrayList<String>(columnIds), new ArrayList<String>(rowIds), pointers,
+      columns, transposed, lowerBounds, upperBounds, objective);
+  }
+
+  /**
+   * @param columns
+   *        identifiers of the reactions to leave out
+   * @param rows
+   *        identifiers of the species to leave out
+   * @return a matrix with the remaining reactions and species in the same
+   *         order.
+   */
+  StoichiometricMatrix without(Set<String> columns, Set<String> rows) {
+    int newRows[] = new int[rowIds.size()];
+    List<String> keptRowIds = new ArrayList<String>();
+    for (int i = 0; i < rowIds.size(); i++) {
+      newRows[i] = rows.contains(rowIds.get(i)) ? -1 : keptRowIds.size();
+      if (newRows[i] >= 0) {
+        keptRowIds.add(rowIds.get(i));
+      }
+    }
+    int n = columnIds.size();
+    List<String> keptColumnIds = new ArrayList<String>();
+    int pointers[] = new int[n + 1], indices[] = new int[values.length];
+    double kept[] = new double[values.length];
+    double lower[] = new double[n], upper[] = new double[n], coefficients[] = new double[n];
+    int nonZeros = 0;
+    for (int j = 0; j < n; j++) {
+      if (columns.contains(columnIds.get(j))) {
+        continue;
+      }
+      int column = keptColumnIds.size();
+      keptColumnIds.add(columnIds.get(j));
+      lower[column] = lowerBounds[j];
+      upper[column] = upperBounds[j];
+      coefficients[column] = objective[j];
+      for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+        if (newRows[rowIndices[k]] >= 0) {
+          indices[nonZeros] = newRows[rowIndices[k]];
+          kept[nonZeros++] = values[k];
+        }
+      }
+      pointers[column + 1] = nonZeros;
+    }
+    int columnCount = keptColumnIds.size();
+    return new StoichiometricMatrix(keptRowIds, keptColumnIds, Arrays.copyOf(pointers, columnCount + 1),
+      Arrays.copyOf(indices, nonZeros), Arrays.copyOf(kept, nonZeros), Arrays.copyOf(lower, columnCount),
+      Arrays.copyOf(upper, columnCount), Arrays.copyOf(coefficients, columnCount));
+  }
+
+  /**
+   * Writes the matrix next to the given SBML file in the given format. The
+   * files are named after the SBML file without its extensions.
+   *
+   * @param sbmlFile
+   * @param fileFormat
+   * @throws IOException
+   */
+  public void write(File sbmlFile, Format fileFormat) throws IOException {
+    String name = Compression.stripExtension(sbmlFile.getName());
+    int dot = name.lastIndexOf('.');
+    String base = dot < 0 ? name : name.substring(0, dot);
+    File directory = sbmlFile.getAbsoluteFile().getParentFile();
+    if (fileFormat == Format.SMX) {
+      OutputStream out = Compression.openOutput(new File(directory, base + Format.SMX.getExtension()));
+      try {
+        writeBinary(out);
+      } finally {
+        out.close();
+      }
+      return;
+    }
+    Writer out = openWriter(new File(directory, base + Format.MTX.getExtension()));
+    try {
+      writeMatrixMarket(out);
+    } finally {
+      out.close();
+    }
+    out = openWriter(new File(directory, base + "_rows.txt"));
+    try {
+      for (String id : rowIds) {
+        out.write(id);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+    out = openWriter(new File(directory, base + "_columns.tsv"));
+    try {
+      out.write("id\tlower_bound\tupper_bound\tobjective\n");
+      for (int j = 0; j < columnIds.size(); j++) {
+        out.write(columnIds.get(j));
+        out.write('\t');
+        out.write(Double.toString(lowerBounds[j]));
+        out.write('\t');
+        out.write(Double.toString(upperBounds[j]));
+        out.write('\t');
+        out.write(Double.toString(objective[j]));
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param file
+   * @return a buffered UTF-8 writer.
+   * @throws IOException
+   */
+  private static Writer openWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(Compression.openOutput(file), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Writes the matrix in the MatrixMarket coordinate format with one-based
+   * indices, column by column.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeMatrixMarket(Writer out) throws IOException {
+    out.write("%%MatrixMarket matrix coordinate real general\n");
+    out.write(format("% {0,number,#} species x {1,number,#} reactions\n", rowIds.size(), columnIds.size()));
+    out.write(rowIds.size() + " " + columnIds.size() + " " + values.length + "\n");
+    for (int j = 0; j < columnIds.size(); j++) {
+      for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+        out.write(Integer.toString(rowIndices[k] + 1));
+        out.write(' ');
+        out.write(Integer.toString(j + 1));
+        out.write(' ');
+        out.write(Double.toString(values[k]));
+        out.write('\n');
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the matrix in a binary format: the magic number {@code SMX1}, the
+   * number of rows, columns, and non-zero entries as integers, the arrays
+   * of column pointers, row indices, values, lower bounds, upper bounds, and
+   * objective coefficients, and finally the row and column identifiers in
+   * modified UTF-8, all in big-endian byte order as written by
+   * {@link DataOutputStream}.
+   *
+   * @param stream
+   * @throws IOException
+   * @see #readBinary(InputStream)
+   */
+  public void writeBinary(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeInt(rowIds.size());
+    out.writeInt(columnIds.size());
+    out.writeInt(values.length);
+    for (int pointer : columnPointers) {
+      out.writeInt(pointer);
+    }
+    for (int row : rowIndices) {
+      out.writeInt(row);
+    }
+    for (double[] array : new double[][] {values, lowerBounds, upperBounds, objective}) {
+      for (double value : array) {
+        out.writeDouble(value);
+      }
+    }
+    for (String id : rowIds) {
+      out.writeUTF(id);
+    }
+    for (String id : columnIds) {
+      out.writeUTF(id);
+    }
+    out.flush();
+  }
+
+  /**
+   * @param stream
+   * @return the matrix written by {@link #writeBinary(OutputStream)}.
+   * @throws IOException
+   *         if the stream does not contain a matrix in the binary format.
+   */
+  public static StoichiometricMatrix readBinary(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a binary stoichiometric matrix.");
+    }
+    int m = in.readInt(), n = in.readInt(), nonZeros = in.readInt();
+    int columnPointers[] = new int[n + 1];
+    for (int j = 0; j <= n; j++) {
+      columnPointers[j] = in.readInt();
+    }
+    int rowIndices[] = new int[nonZeros];
+    for (int k = 0; k < nonZeros; k++) {
+      rowIndices[k] = in.readInt();
+    }
+    double values[] = readDoubles(in, nonZeros);
+    double lowerBounds[] = readDoubles(in, n);
+    double upperBounds[] = readDoubles(in, n);
+    double objective[] = readDoubles(in, n);
+    List<String> rowIds = new ArrayList<String>(m);
+    for (int i = 0; i < m; i++) {
+      rowIds.add(in.readUTF());
+    }
+    List<String> columnIds = new ArrayList<String>(n);
+    for (int j = 0; j < n; j++) {
+      columnIds.add(in.readUTF());
+    }
+    return new StoichiometricMatrix(rowIds, columnIds, columnPointers, rowIndices, values, lowerBounds, upperBounds, objective);
+  }
+
+  /**
+   * @param in
+   * @param length
+   * @return the next numbers.
+   * @throws IOException
+   */
+  private static double[] readDoubles(DataInputStream in, int length) throws IOException {
+    double array[] = new double[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = in.readDouble();
+    }
+    return array;
+  }
+
+}
@@ -0,0 +1,422 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.SBase;
+import org.sbml.jsbml.TidySBMLWriter;
+import org.sbml.jsbml.util.ModelBuilder;
+
+/**
+ * Converts both tables to an SBML file without keeping all reactions in
+ * memory. The output is equivalent to writing the document of
+ * {@link Table2Model} with {@link TidySBMLWriter}.
+ * <p>
+ * The reaction table is read twice. The first pass creates everything that
+ * other elements refer to, i.e., compartments, species, flux bound
+ * parameters, gene products, groups, and the objective, and removes each
+ * reaction from the model right after it has been linked to these elements.
+ * This part of the model is written to a temporary file first and copied to
+ * the output up to the end of the model. The second pass builds one reaction
+ * at a time again, writes it with a {@link ReactionStreamWriter}, and removes
+ * it before the next row is read.
+ * <p>
+ * If blocked reactions are to be removed, the first pass also keeps the
+ * identifiers of the elements to which each reaction refers, so that the
+ * same unused elements as in {@link Table2Model} can be removed before the
+ * rest of the model is written. Blocked reactions are skipped by the second
+ * pass.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class StreamingModelWriter {
+
+  /** Logger */
+  private static final transient Logger logger = Logger.getLogger(StreamingModelWriter.class.getName());
+
+  /**
+   * Property of Woodstox, the StAX implementation used by JSBML, to write empty
+   * elements in the same way as {@link TidySBMLWriter}.
+   */
+  private static final String SPACE_AFTER_EMPTY_ELEMENT = "com.ctc.wstx.addSpaceAfterEmptyElem";
+
+  /** Closing tag of the model, before which the reactions are inserted. */
+  private static final String MODEL_END = "</model>";
+
+  /** Settings for the conversion. */
+  private final ConversionOptions options;
+
+  /** Conversion of abbreviations to identifiers. */
+  private final IdentifierCache identifierCache;
+
+  /**
+   * @param options
+   */
+  public StreamingModelWriter(ConversionOptions options) {
+    this(options, new IdentifierCache());
+  }
+
+  /**
+   * @param options
+   * @param identifierCache
+   *        a cache of identifiers that can be shared with other conversions
+   */
+  public StreamingModelWriter(ConversionOptions options, IdentifierCache identifierCache) {
+    this.options = options;
+    this.identifierCache = identifierCache;
+  }
+
+  /**
+   * @param metabolites
+   *        metabolites file (CSV format)
+   * @param reactions
+   *        reactions file (CSV format)
+   * @param modelId
+   *        identifier of the model
+   * @param sbmlFile
+   *        the SBML output file
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  public void write(File metabolites, File reactions, String modelId, File sbmlFile) throws IOException, XMLStreamException, SBMLException {
+    ConversionContext context = new ConversionContext(identifierCache, options);
+    ModelBuilder builder = Table2Model.createModelBuilder();
+    Model m = builder.getModel();
+
+    ConversionMetrics.Conversion conversion = ConversionMetrics.getInstance().begin(modelId);
+    ConversionMetrics.Timer timer = conversion.start(ConversionMetrics.Phase.METABOLITES, metabolites.getName());
+    timer.stop(Table2Model.readTable(metabolites, builder, new SpeciesRowReader(context), options));
+    timer = conversion.start(ConversionMetrics.Phase.REACTIONS, reactions.getName());
+    LinkingReader linkingReader = new LinkingReader(context);
+    timer.stop(Table2Model.readTable(reactions, builder, linkingReader, options));
+    timer = conversion.start(ConversionMetrics.Phase.ANNOTATION, null);
+    context.getAnnotations().flush();
+    timer.stop();
+    timer = conversion.start(ConversionMetrics.Phase.CLEANUP, null);
+    if (context.getBalanceChecker() != null) {
+      context.getBalanceChecker().check(context);
+    }
+    TopologyAnalysis topology = context.getTopology();
+    if (topology != null) {
+      topology.analyze(context.getDiagnostics());
+      if (topology.getMode() == TopologyAnalysis.Mode.REMOVE) {
+        topology.remove(m, linkingReader.getReferences());
+      }
+    }
+    timer.stop();
+    logger.info(format("Identifiers: {0}", context.getIdentifierCache()));
+    logger.info(format("Gene-protein-reaction rules: {0}", context.getGPRCache()));
+    context.getDiagnostics().logSummary(logger);
+
+    Table2Model.addModelHistory(m);
+    m.setId(modelId);
+    m.setMetaId("meta_" + m.getId());
+    m.unsetListOfReactions();
+
+    // The second pass over the reaction table is part of writing.
+    timer = conversion.start(ConversionMetrics.Phase.WRITE, sbmlFile.getName());
+    File skeleton = File.createTempFile("skeleton", ".xml");
+    try {
+      OutputStream skeletonOut = new BufferedOutputStream(new FileOutputStream(skeleton));
+      try {
+        TidySBMLWriter.write(builder.getSBMLDocument(), skeletonOut, ' ', (short) 2);
+      } finally {
+        skeletonOut.close();
+      }
+      writeModel(skeleton, reactions, builder, context, sbmlFile);
+    } finally {
+      if (!skeleton.delete()) {
+        logger.warning(format("Cannot delete {0}.", skeleton));
+      }
+    }
+    if (context.getStoichiometry() != null) {
+      context.buildStoichiometricMatrix().write(sbmlFile, options.getStoichiometry());
+    }
+    timer.stop();
+    conversion.end(context);
+  }
+
+  /**
+   * Copies the model without reactions from the given file to the output
+   * file, and inserts all reactions before the end of the model.
+   *
+   * @param skeleton
+   *        the written model without reactions
+   * @param reactions
+   *        reactions file (CSV format)
+   * @param builder
+   * @param context
+   * @param sbmlFile
+   *        the SBML output file
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   *         if the model does not end in the skeleton.
+   */
+  private void writeModel(File skeleton, File reactions, ModelBuilder builder, ConversionContext context, File sbmlFile) throws IOException, XMLStreamException, SBMLException {
+    RandomAccessFile in = new RandomAccessFile(skeleton, "r");
+    try {
+      long split = findLineOf(in, MODEL_END.getBytes(StandardCharsets.UTF_8));
+      if (split < 0L) {
+        throw new SBMLException(format("Missing {0} in the written model.", MODEL_END));
+      }
+      OutputStream stream = Compression.openOutput(sbmlFile);
+      Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+      try {
+        copy(in, 0L, split, stream);
+        XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        if (factory.isPropertySupported(SPACE_AFTER_EMPTY_ELEMENT)) {
+          factory.setProperty(SPACE_AFTER_EMPTY_ELEMENT, Boolean.TRUE);
+        }
+        XMLStreamWriter xmlWriter = factory.createXMLStreamWriter(out);
+        ReactionStreamWriter reactionWriter = new ReactionStreamWriter(xmlWriter, 2);
+        // All problems have already been reported by the first pass.
+        try {
+          Table2Model.readTable(reactions, builder, new WritingReader(context.withDiagnostics(new Diagnostics()), reactionWriter), options);
+        } catch (IllegalStateException exc) {
+          if (exc.getCause() instanceof XMLStreamException) {
+            throw (XMLStreamException) exc.getCause();
+          }
+          throw exc;
+        }
+        // Closing the stream writer would fail if all reactions were blocked,
+        // and the underlying writer is closed below.
+        reactionWriter.writeEnd();
+        xmlWriter.flush();
+        out.flush();
+        copy(in, split, in.length(), stream);
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param in
+   * @param text
+   *        bytes that do not contain a line break
+   * @return the position of the line in which the given bytes occur last or
+   *         -1 if they do not occur at all.
+   * @throws IOException
+   */
+  private static long findLineOf(RandomAccessFile in, byte text[]) throws IOException {
+    // The end of the model is close to the end of the file.
+    for (long length = 1L << 12; ; length *= 2L) {
+      long start = Math.max(0L, in.length() - length);
+      byte bytes[] = new byte[(int) (in.length() - start)];
+      in.seek(start);
+      in.readFully(bytes);
+      for (int i = bytes.length - text.length; i >= 0; i--) {
+        if (regionMatches(bytes, i, text)) {
+          int line = i;
+          while ((line > 0) && (bytes[line - 1] != '\n')) {
+            line--;
+          }
+          if ((line > 0) || (start == 0L)) {
+            return start + line;
+          }
+          // The beginning of the line is not within the bytes read.
+          break;
+        }
+      }
+      if (start == 0L) {
+        return -1L;
+      }
+    }
+  }
+
+  /**
+   * @param bytes
+   * @param offset
+   * @param text
+   * @return {@code true} if the bytes at the given offset equal the text.
+   */
+  private static boolean regionMatches(byte bytes[], int offset, byte text[]) {
+    for (int i = 0; i < text.length; i++) {
+      if (bytes[offset + i] != text[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param in
+   * @param from
+   *        the position of the first byte to copy
+   * @param to
+   *        the position after the last byte to copy
+   * @param out
+   * @throws IOException
+   */
+  private static void copy(RandomAccessFile in, long from, long to, OutputStream out) throws IOException {
+    byte buffer[] = new byte[1 << 16];
+    in.seek(from);
+    for (long remaining = to - from; remaining > 0L; ) {
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (n < 0) {
+        throw new EOFException();
+      }
+      out.write(buffer, 0, n);
+      remaining -= n;
+    }
+  }
+
+  /**
+   * First pass: links each reaction to all model-wide elements and removes
+   * it from the model again.
+   */
+  private static class LinkingReader extends RowReader<ParsedReaction> {
+
+    private final ReactionRowReader reader;
+
+    /**
+     * Identifiers of all reactions in table order and of the elements to
+     * which each of them refers, or {@code null} if blocked reactions are
+     * not removed.
+     */
+    private final List<String> reactionIds;
+    private final List<String[]> references;
+
+    /**
+     * @param context
+     */
+    LinkingReader(ConversionContext context) {
+      super(context);
+      reader = new ReactionRowReader(context);
+      TopologyAnalysis topology = context.getTopology();
+      boolean remove = (topology != null) && (topology.getMode() == TopologyAnalysis.Mode.REMOVE);
+      reactionIds = remove ? new ArrayList<String>() : null;
+      references = remove ? new ArrayList<String[]>() : null;
+    }
+
+    /**
+     * @return the identifiers of all elements to which the reactions that
+     *         are not blocked refer.
+     */
+    Set<String> getReferences() {
+      TopologyAnalysis topology = getContext().getTopology();
+      Set<String> used = new HashSet<String>();
+      for (int i = 0; i < reactionIds.size(); i++) {
+        if (!topology.isBlocked(reactionIds.get(i))) {
+          for (String id : references.get(i)) {
+            used.add(id);
+          }
+        }
+      }
+      return used;
+    }
+
+    @Override
+    protected ParsedReaction parseRow(TableRow columns) {
+      return reader.parseRow(columns);
+    }
+
+    @Override
+    void readHeader(TableRow header, ConversionOptions options) throws IOException {
+      reader.readHeader(header, options);
+    }
+
+    @Override
+    TableSnapshot.Codec<ParsedReaction> getSnapshotCodec() {
+      return reader.getSnapshotCodec();
+    }
+
+    @Override
+    protected SBase applyRow(ParsedReaction row, ModelBuilder builder) {
+      Reaction r = (Reaction) reader.applyRow(row, builder);
+      if (references != null) {
+        Set<String> ids = new HashSet<String>();
+        IncrementalConverter.collectReferences(r, ids);
+        reactionIds.add(row.id);
+        references.add(ids.toArray(new String[ids.size()]));
+      }
+      builder.getModel().removeReaction(r);
+      return null;
+    }
+
+  }
+
+  /**
+   * Second pass: builds each reaction, writes it, and removes it from the
+   * model again.
+   */
+  private static class WritingReader extends RowReader<ParsedReaction> {
+
+    private final ReactionRowReader reader;
+    private final ReactionStreamWriter writer;
+
+    /**
+     * @param context
+     * @param writer
+     */
+    WritingReader(ConversionContext context, ReactionStreamWriter writer) {
+      super(context);
+      reader = new ReactionRowReader(context);
+      this.writer = writer;
+    }
+
+    @Override
+    protected ParsedReaction parseRow(TableRow columns) {
+      return reader.parseRow(columns);
+    }
+
+    @Override
+    void readHeader(TableRow header, ConversionOptions options) throws IOException {
+      reader.readHeader(header, options);
+    }
+
+    @Override
+    TableSnapshot.Codec<ParsedReaction> getSnapshotCodec() {
+      return reader.getSnapshotCodec();
+    }
+
+    @Override
+    protected SBase applyRow(ParsedReaction row, ModelBuilder builder) {
+      TopologyAnalysis topology = getContext().getTopology();
+      if ((topology != null) && (topology.getMode() == TopologyAnalysis.Mode.REMOVE) && topology.isBlocked(row.id)) {
+        return null;
+      }
+      Reaction r = reader.buildReaction(row, builder);
+      try {
+        writer.write(r);
+      } catch (XMLStreamException exc) {
+        throw new IllegalStateException(exc);
+      } finally {
+        builder.getModel().removeReaction(r);
+      }
+      return null;
+    }
+
+  }
+
+}
@@ -5,11 +5,11 @@ package org.sbml.io;
 
 import static java.text.MessageFormat.format;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.logging.Logger;
@@ -25,7 +25,6 @@ import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLException;
 import org.sbml.jsbml.SBase;
-import org.sbml.jsbml.Species;
 import org.sbml.jsbml.TidySBMLWriter;
 import org.sbml.jsbml.Unit;
 import org.sbml.jsbml.UnitDefinition;
@@ -47,33 +46,141 @@ public class Table2Model {
   // TODO: This will become a constant within ModelBuilder with the next JSBML release
   public static final String MMOL_PER_G_DW_PER_HR = "mmol_per_gDW_per_hr";
 
+  /**
+   * Empty model with all units, which is copied for each conversion. It is
+   * created once per JVM, so that JSBML loads its packages only once even if
+   * several conversions run at the same time.
+   */
+  private static SBMLDocument template;
+
   private SBMLDocument doc;
 
+  /** Settings for this conversion. */
+  private ConversionOptions options;
+
+  /** State shared by all readers of this conversion. */
+  private ConversionContext context;
+
+  /**
+   * Reads both tables with the default {@link ConversionOptions}.
+   *
+   * @param metabolites
+   * @param reactions
+   * @throws IOException
+   */
   public Table2Model(File metabolites, File reactions) throws IOException {
-    char separator = ';';
+    this(metabolites, reactions, new ConversionOptions());
+  }
+
+  /**
+   * @param metabolites
+   * @param reactions
+   * @param options
+   * @throws IOException
+   */
+  public Table2Model(File metabolites, File reactions, ConversionOptions options) throws IOException {
+    this(metabolites, reactions, options, new IdentifierCache());
+  }
+
+  /**
+   * @param metabolites
+   * @param reactions
+   * @param options
+   * @param identifierCache
+   *        a cache of identifiers that can be shared with other conversions
+   * @throws IOException
+   */
+  public Table2Model(File metabolites, File reactions, ConversionOptions options, IdentifierCache identifierCache) throws IOException {
+    this(metabolites, reactions, options, identifierCache, null);
+  }
+
+  /**
+   * @param metabolites
+   * @param reactions
+   * @param options
+   * @param identifierCache
+   *        a cache of identifiers that can be shared with other conversions
+   * @param conversion
+   *        the measurement of a conversion that continues after this
+   *        constructor or {@code null} to measure only this constructor
+   * @throws IOException
+   */
+  Table2Model(File metabolites, File reactions, ConversionOptions options, IdentifierCache identifierCache,
+    ConversionMetrics.Conversion conversion) throws IOException {
+    this.options = options;
+    context = new ConversionContext(identifierCache, options);
+    ConversionMetrics.Conversion metrics = conversion != null ? conversion : ConversionMetrics.getInstance().begin(reactions.getName());
+    ModelBuilder builder = createModelBuilder();
+
+    ConversionMetrics.Timer timer = metrics.start(ConversionMetrics.Phase.METABOLITES, metabolites.getName());
+    timer.stop(readTable(metabolites, builder, new SpeciesRowReader(context), options));
+    timer = metrics.start(ConversionMetrics.Phase.REACTIONS, reactions.getName());
+    timer.stop(readTable(reactions, builder, new ReactionRowReader(context), options));
+    timer = metrics.start(ConversionMetrics.Phase.ANNOTATION, null);
+    context.getAnnotations().flush();
+    timer.stop();
+    timer = metrics.start(ConversionMetrics.Phase.CLEANUP, null);
+    if (context.getBalanceChecker() != null) {
+      context.getBalanceChecker().check(context);
+    }
+    TopologyAnalysis topology = context.getTopology();
+    if (topology != null) {
+      topology.analyze(context.getDiagnostics());
+      if (topology.getMode() == TopologyAnalysis.Mode.REMOVE) {
+        topology.remove(builder.getModel(), null);
+      }
+    }
+    timer.stop();
+    logger.info(format("Identifiers: {0}", context.getIdentifierCache()));
+    logger.info(format("Gene-protein-reaction rules: {0}", context.getGPRCache()));
+    context.getDiagnostics().logSummary(logger);
+
+    addModelHistory(builder.getModel());
+    doc = builder.getSBMLDocument();
+    if (conversion == null) {
+      metrics.end(context);
+    }
+  }
+
+  /**
+   * @return a builder for a new SBML Level 3 Version 1 document that
+   *         contains an empty model with strict flux balance constraints and
+   *         the units of constraint-based models.
+   */
+  static ModelBuilder createModelBuilder() {
+    SBMLDocument copy;
+    synchronized (Table2Model.class) {
+      if (template == null) {
+        template = createTemplate();
+      }
+      copy = template.clone();
+    }
+    return new ModelBuilder(copy);
+  }
+
+  /**
+   * @return a new document with an empty model and all units.
+   */
+  private static SBMLDocument createTemplate() {
     ModelBuilder builder = new ModelBuilder(new SBMLDocument(3, 1));
-    builder.buildCompartment("d", false, "default", 3d, Double.NaN, (String) null);
     Model m = builder.getModel();
     FBCModelPlugin fbcPlugin = (FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel);
     fbcPlugin.setStrict(true);
 
     //TODO! Change with the next JSBML release! Units
     //builder.buildCBMunits();
+    ConversionMetrics.Timer timer = ConversionMetrics.getInstance().start(ConversionMetrics.Phase.UNITS, null);
     buildCBMunits(builder);
+    timer.stop();
+    return builder.getSBMLDocument();
+  }
 
-    readTable(metabolites, builder, separator, new SpeciesRowReader());
-    readTable(reactions, builder, separator, new ReactionRowReader());
-
-    // tidy up unnecessary species and delete the default compartment:
-    for (int i = m.getSpeciesCount() - 1; i >= 0; i--) {
-      Species s = m.getSpecies(i);
-      if (s.getCompartment().equals(SpeciesRowReader.DEFAULT_COMPARTMENT_ID)) {
-        s = m.removeSpecies(i);
-        logger.info(format("Removed species with id ''{0}'' because it has only a default compartment assigned.", s.getId()));
-      }
-    }
-    m.removeCompartment(SpeciesRowReader.DEFAULT_COMPARTMENT_ID);
-
+  /**
+   * Adds authors, dates, publication, and taxon to the given model.
+   *
+   * @param m
+   */
+  static void addModelHistory(Model m) {
     // TODO: Hard-coded model history and taxon annotation!
     String authors[] = {
       "Yu Zhang", "CAS Key Laboratory of Pathogenic Microbiology and Immunology, Institute of Microbiology, Chinese Academy of Sciences, Beijing 100101",
@@ -102,14 +209,18 @@ public class Table2Model {
     //TODO: The following lines will become available with a newer release of JSBML
     //m.addResources(Qualifier.BQB_IS_DESCRIBED_BY, "https://identifiers.org/pubmed/28680478");
     //m.addResources(Qualifier.BQB_HAS_TAXON, "https://identifiers.org/taxonomy/196627");
-    addResources(m, Qualifier.BQB_IS_DESCRIBED_BY, "https://identifiers.org/pubmed/28680478");
-    addResources(m, Qualifier.BQB_HAS_TAXON, "https://identifiers.org/taxonomy/196627");
-    doc = builder.getSBMLDocument();
+    m.addCVTerm(new CVTerm(Qualifier.BQB_IS_DESCRIBED_BY, "https://identifiers.org/pubmed/28680478"));
+    m.addCVTerm(new CVTerm(Qualifier.BQB_HAS_TAXON, "https://identifiers.org/taxonomy/196627"));
   }
 
   /**
    * TODO: Delete this method the next update of JSBML!
+   *
+   * @deprecated Collect the resources with an {@link AnnotationAccumulator}
+   *             instead, which searches the existing terms only once per
+   *             element and qualifier.
    */
+  @Deprecated
   public static boolean addResources(SBase sbase, CVTerm.Qualifier qualifier, String... resources) {
     Annotation a = sbase.getAnnotation();
     List<CVTerm> listOfTerms = a.filterCVTerms(qualifier);
@@ -120,7 +231,7 @@ public class Table2Model {
   }
 
   // TODO: Delete this method with the next release of JSBML!
-  private void buildCBMunits(ModelBuilder builder) {
+  static void buildCBMunits(ModelBuilder builder) {
     String HOUR = "hour";
     String F_L = "fL";
     String MMOL_PER_G_DW = "mmol_per_gDW";
@@ -144,22 +255,129 @@ public class Table2Model {
   }
 
   /**
+   * Reads all rows except for the header and empty lines. If the options ask
+   * for more than one worker thread, all rows are first parsed in parallel and
+   * then applied to the model in table order.
+   *
    * @param inFile
    * @param builder
-   * @param separator
+   * @param reader
+   * @param options
+   *        provide separator, character set, and the number of worker threads
+   * @return the number of rows that have been read.
+   * @throws FileNotFoundException
+   * @throws IOException
+   */
+  static <R> int readTable(File inFile, ModelBuilder builder,
+    RowReader<R> reader, ConversionOptions options) throws FileNotFoundException, IOException {
+    int count = 0;
+    TableSnapshot.Codec<R> codec = reader.getSnapshotCodec();
+    if (options.isSnapshot() && (codec != null)) {
+      for (R record : TableSnapshot.read(inFile, reader, codec, options)) {
+        reader.applyRow(record, builder);
+        count++;
+      }
+      return count;
+    }
+    if (options.isParallel()) {
+      for (R record : new ParallelRowParser<R>(reader).parse(readRows(inFile, reader, options), options.getParallelism())) {
+        reader.applyRow(record, builder);
+        count++;
+      }
+      return count;
+    }
+    TableRow row;
+    TableTokenizer tokenizer = new TableTokenizer(inFile, options.getSeparator(), options.getCharset());
+    try {
+      while ((row = tokenizer.next()) != null) {
+        if (row.getRowNumber() == 0) {
+          readHeader(inFile, row, reader, options);
+        } else if (!isBlank(row)) {
+          reader.readRow(row, builder);
+          count++;
+        }
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return count;
+  }
+
+  /**
+   * @param inFile
+   * @param reader
+   *        receives the header row
+   * @param options
+   *        provide separator and character set
+   * @return all rows except for the header and empty lines, in table order.
    * @throws FileNotFoundException
    * @throws IOException
+   *         if the file cannot be read or if the header lacks a required
+   *         column.
    */
-  private void readTable(File inFile, ModelBuilder builder,
-    char separator, RowReader reader) throws FileNotFoundException, IOException {
-    String line;
-    BufferedReader bfMetabolites = new BufferedReader(new FileReader(inFile));
-    for (int row = 0; (line = bfMetabolites.readLine()) != null; row++) {
-      if (row > 0) {
-        reader.readRow(line.split(String.valueOf(separator)), builder);
+  static List<TableRow> readRows(File inFile, RowReader<?> reader, ConversionOptions options) throws FileNotFoundException, IOException {
+    List<TableRow> rows = new ArrayList<TableRow>();
+    TableRow row;
+    TableTokenizer tokenizer = new TableTokenizer(inFile, options.getSeparator(), options.getCharset());
+    try {
+      while ((row = tokenizer.next()) != null) {
+        if (row.getRowNumber() == 0) {
+          readHeader(inFile, row, reader, options);
+        } else if (!isBlank(row)) {
+          rows.add(row);
+        }
       }
+    } finally {
+      tokenizer.close();
+    }
+    return rows;
+  }
+
+  /**
+   * @param inFile
+   * @param header
+   * @param reader
+   * @param options
+   * @throws IOException
+   *         if the header lacks a required column.
+   */
+  private static void readHeader(File inFile, TableRow header, RowReader<?> reader, ConversionOptions options) throws IOException {
+    try {
+      reader.readHeader(header, options);
+    } catch (IOException exc) {
+      throw new IOException(format("{0}: {1}", inFile.getName(), exc.getMessage()), exc);
     }
-    bfMetabolites.close();
+  }
+
+  /**
+   * @param row
+   * @return {@code true} if the given row consists of one empty column only.
+   */
+  private static boolean isBlank(TableRow row) {
+    return (row.size() == 1) && row.isEmpty(0);
+  }
+
+  /**
+   * @return the cache of identifiers that has been used by all readers of
+   *         this conversion.
+   */
+  public IdentifierCache getIdentifierCache() {
+    return context.getIdentifierCache();
+  }
+
+  /**
+   * @return the stoichiometric matrix of the model or {@code null} if the
+   *         options do not ask for it.
+   */
+  public StoichiometricMatrix getStoichiometricMatrix() {
+    return context.buildStoichiometricMatrix();
+  }
+
+  /**
+   * @return the problems that have been found in the tables.
+   */
+  public Diagnostics getDiagnostics() {
+    return context.getDiagnostics();
   }
 
   /**
@@ -172,21 +390,120 @@ public class Table2Model {
   }
 
   /**
-   * @param args metabolites file (CSV format), reactions file (CSV format), SBML output file
+   * Converts both tables and writes the model to the given file. The
+   * identifier of the model is the name of the output file without
+   * extension. If the options ask for it, the stoichiometric matrix is
+   * written next to the model. In the incremental mode, only the rows that have changed
+   * since the last conversion are converted, see {@link IncrementalConverter}.
+   *
+   * @param metabolites
+   *        metabolites file (CSV format)
+   * @param reactions
+   *        reactions file (CSV format)
+   * @param sbmlFile
+   *        SBML output file
+   * @param options
+   * @param identifierCache
+   *        a cache of identifiers that can be shared with other conversions
    * @throws IOException
    * @throws XMLStreamException
    * @throws SBMLException
    */
-  public static void main(String[] args) throws IOException, SBMLException, XMLStreamException {
-    LogUtil.initializeLogging("io.sbml");
+  public static void convert(File metabolites, File reactions, File sbmlFile, ConversionOptions options,
+    IdentifierCache identifierCache) throws IOException, SBMLException, XMLStreamException {
+    if (options.isIncremental()) {
+      new IncrementalConverter(options, identifierCache).convert(metabolites, reactions, sbmlFile);
+    } else {
+      convertAll(metabolites, reactions, sbmlFile, options, identifierCache);
+    }
+  }
+
+  /**
+   * Converts all rows of both tables and writes the model to the given file.
+   *
+   * @param metabolites
+   * @param reactions
+   * @param sbmlFile
+   * @param options
+   * @param identifierCache
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   * @see #convert(File, File, File, ConversionOptions, IdentifierCache)
+   */
+  static void convertAll(File metabolites, File reactions, File sbmlFile, ConversionOptions options,
+    IdentifierCache identifierCache) throws IOException, SBMLException, XMLStreamException {
     long time = System.currentTimeMillis();
-    Table2Model converter = new Table2Model(new File(args[0]), new File(args[1]));
+    String name = Compression.stripExtension(sbmlFile.getName());
+    String modelId = name.substring(0, name.lastIndexOf('.'));
+    if (options.isStreaming()) {
+      new StreamingModelWriter(options, identifierCache).write(metabolites, reactions, modelId, sbmlFile);
+      logger.info(format("time needed: {0,number}", (System.currentTimeMillis() - time)));
+      return;
+    }
+    ConversionMetrics.Conversion conversion = ConversionMetrics.getInstance().begin(modelId);
+    Table2Model converter = new Table2Model(metabolites, reactions, options, identifierCache, conversion);
     SBMLDocument doc = converter.getSBMLDocument();
     Model m = doc.getModel();
-    m.setId(args[2].substring(args[2].lastIndexOf('/') + 1, args[2].lastIndexOf('.')));
+    m.setId(modelId);
     m.setMetaId("meta_" + m.getId());
+    ConversionMetrics.Timer timer = conversion.start(ConversionMetrics.Phase.WRITE, sbmlFile.getName());
+    write(doc, sbmlFile);
+    if (options.getStoichiometry() != null) {
+      converter.getStoichiometricMatrix().write(sbmlFile, options.getStoichiometry());
+    }
+    timer.stop();
+    conversion.end(converter.context);
     logger.info(format("time needed: {0,number}", (System.currentTimeMillis() - time)));
-    TidySBMLWriter.write(doc, new File(args[2]), ' ', (short) 2);
+  }
+
+  /**
+   * Writes the given document and compresses it if the name of the file ends
+   * with {@link Compression#GZIP}.
+   *
+   * @param doc
+   * @param sbmlFile
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  static void write(SBMLDocument doc, File sbmlFile) throws IOException, SBMLException, XMLStreamException {
+    OutputStream out = Compression.openOutput(sbmlFile);
+    try {
+      TidySBMLWriter.write(doc, out, ' ', (short) 2);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param args metabolites file (CSV format), reactions file (CSV format), SBML output file;
+   *        optionally preceded by options of the form {@code --name=value},
+   *        e.g., {@code --parallelism=4}, {@code --separator=;},
+   *        {@code --charset=UTF-8}, {@code --streaming}, or
+   *        {@code --incremental}. With the option
+   *        {@code --batch=PATH}, all models listed in a manifest file or
+   *        found in a directory are converted instead, see
+   *        {@link BatchConverter}.
+   * @throws IOException
+   * @throws XMLStreamException
+   * @throws SBMLException
+   */
+  public static void main(String[] args) throws IOException, SBMLException, XMLStreamException {
+    LogUtil.initializeLogging("io.sbml");
+    ConversionOptions options = new ConversionOptions();
+    args = options.parse(args).toArray(new String[0]);
+    if (options.getBatch() != null) {
+      BatchConverter batch = new BatchConverter(options);
+      List<BatchConverter.Result> results = batch.convert(BatchConverter.findJobs(options.getBatch()));
+      for (BatchConverter.Result result : results) {
+        if (!result.isSuccess()) {
+          System.exit(1);
+        }
+      }
+      return;
+    }
+    convert(new File(args[0]), new File(args[1]), new File(args[2]), options, new IdentifierCache());
   }
 
 }
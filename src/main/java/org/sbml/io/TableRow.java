@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import java.util.Arrays;
+
+/**
+ * One row of a table. Depending on the source, the content of a column may
+ * only be converted to a {@link String} when it is requested by
+ * {@link #get(int)}, so that callers should ask {@link #isEmpty(int)} first
+ * whenever they only need to know if a column has any content.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public abstract class TableRow {
+
+  /**
+   * Wraps an array of columns that have already been split.
+   *
+   * @param rowNumber
+   * @param columns
+   * @return a row that returns the given columns.
+   */
+  public static TableRow of(int rowNumber, String... columns) {
+    return new ArrayRow(rowNumber, columns);
+  }
+
+  /**
+   * Zero-based number of this row within its table (the header has number 0)
+   * or -1 if unknown.
+   */
+  private final int rowNumber;
+
+  /**
+   * @param rowNumber
+   */
+  protected TableRow(int rowNumber) {
+    this.rowNumber = rowNumber;
+  }
+
+  /**
+   * @return the zero-based number of this row within its table, where the
+   *         header row has number 0, or -1 if the number is unknown.
+   */
+  public int getRowNumber() {
+    return rowNumber;
+  }
+
+  /**
+   * @return the number of columns in this row.
+   */
+  public abstract int size();
+
+  /**
+   * @param column
+   *        zero-based column index
+   * @return the content of the given column.
+   * @throws IndexOutOfBoundsException
+   *         if the row has fewer columns.
+   */
+  public abstract String get(int column);
+
+  /**
+   * @param column
+   *        zero-based column index
+   * @return {@code true} if the row does not have the given column or if the
+   *         column does not have any content.
+   */
+  public boolean isEmpty(int column) {
+    return (column >= size()) || get(column).isEmpty();
+  }
+
+  /**
+   * @return all columns as strings.
+   */
+  public String[] toArray() {
+    String columns[] = new String[size()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = get(i);
+    }
+    return columns;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+
+  /**
+   * A row whose columns are already available as strings.
+   */
+  private static class ArrayRow extends TableRow {
+
+    private final String columns[];
+
+    /**
+     * @param rowNumber
+     * @param columns
+     */
+    ArrayRow(int rowNumber, String columns[]) {
+      super(rowNumber);
+      this.columns = columns;
+    }
+
+    @Override
+    public int size() {
+      return columns.length;
+    }
+
+    @Override
+    public String get(int column) {
+      return columns[column];
+    }
+
+    @Override
+    public String[] toArray() {
+      return columns.clone();
+    }
+
+  }
+
+}
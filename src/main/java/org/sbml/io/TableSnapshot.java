@@ -0,0 +1,708 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.sbml.io.ParsedReaction.Participant;
+
+/**
+ * A binary file with all records parsed from one table, so that later
+ * conversions of the same table do not need to parse it again. The snapshot
+ * is only used if the SHA-1 hash value of the table, the separator, the
+ * character set, and the way columns are found (including the content of a
+ * column mapping file) are the same as when it was written; otherwise, the table is
+ * parsed and the snapshot is replaced.
+ * <p>
+ * All strings are stored once in a dictionary at the beginning of the file
+ * and referred to by their position. The records are stored column by
+ * column: one array per field with one entry per record, e.g., all
+ * identifiers, then all names. Reaction equations are stored in their parsed
+ * form, i.e., species, compartments, and coefficients of all participants.
+ * Coefficients and flux bounds are stored as primitive numbers. Snapshots are
+ * mapped into memory for reading.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class TableSnapshot {
+
+  /**
+   * Writes and reads the records of one type of table column by column.
+   *
+   * @param <R>
+   *        the type of the records
+   */
+  interface Codec<R> {
+
+    /**
+     * @return a character that identifies the type of the records.
+     */
+    char getType();
+
+    /**
+     * @param records
+     * @param out
+     * @throws IOException
+     */
+    void write(List<R> records, Encoder out) throws IOException;
+
+    /**
+     * @param in
+     * @return the records in the order in which they have been written.
+     */
+    List<R> read(Decoder in);
+
+  }
+
+  /**
+   * Writes the columns and collects all strings in a dictionary.
+   */
+  static class Encoder {
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * @param s
+     *        a string or {@code null}
+     * @throws IOException
+     */
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        out.writeInt(-1);
+        return;
+      }
+      Integer index = dictionary.get(s);
+      if (index == null) {
+        index = Integer.valueOf(strings.size());
+        dictionary.put(s, index);
+        strings.add(s);
+      }
+      out.writeInt(index.intValue());
+    }
+
+    /**
+     * @param value
+     * @throws IOException
+     */
+    void writeInt(int value) throws IOException {
+      out.writeInt(value);
+    }
+
+    /**
+     * @param value
+     * @throws IOException
+     */
+    void writeDouble(double value) throws IOException {
+      out.writeDouble(value);
+    }
+
+    /**
+     * @param value
+     * @throws IOException
+     */
+    void writeByte(int value) throws IOException {
+      out.writeByte(value);
+    }
+
+  }
+
+  /**
+   * Reads the columns from a buffer and resolves strings in the dictionary.
+   */
+  static class Decoder {
+
+    private final ByteBuffer buffer;
+    private final String strings[];
+
+    /**
+     * @param buffer
+     *        positioned at the beginning of the dictionary
+     */
+    Decoder(ByteBuffer buffer) {
+      this.buffer = buffer;
+      strings = new String[readCount(4)];
+      byte bytes[] = new byte[256];
+      for (int i = 0; i < strings.length; i++) {
+        int length = buffer.getInt();
+        if (length > bytes.length) {
+          bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        buffer.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    }
+
+    /**
+     * @param size
+     *        the minimal number of bytes of each element
+     * @return the next number of elements.
+     * @throws BufferUnderflowException
+     *         if the remaining bytes cannot contain that many elements.
+     */
+    int readCount(int size) {
+      int count = buffer.getInt();
+      checkCount(count, size);
+      return count;
+    }
+
+    /**
+     * Checks a number of elements before arrays are allocated for them, so
+     * that a damaged snapshot cannot exhaust the heap.
+     *
+     * @param count
+     * @param size
+     *        the minimal number of bytes of each element
+     * @throws BufferUnderflowException
+     *         if the remaining bytes cannot contain that many elements.
+     */
+    void checkCount(long count, int size) {
+      if ((count < 0L) || (count * size > buffer.remaining())) {
+        throw new BufferUnderflowException();
+      }
+    }
+
+    /**
+     * @return the next string or {@code null}.
+     */
+    String readString() {
+      int index = buffer.getInt();
+      return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * @return the next integer.
+     */
+    int readInt() {
+      return buffer.getInt();
+    }
+
+    /**
+     * @return the next number.
+     */
+    double readDouble() {
+      return buffer.getDouble();
+    }
+
+    /**
+     * @return the next byte.
+     */
+    byte readByte() {
+      return buffer.get();
+    }
+
+  }
+
+  /** Extension appended to the name of the table. */
+  public static final String SUFFIX = ".snapshot";
+
+  /** The first eight bytes of each snapshot ("T2MSNAP" and the format version). */
+  private static final long MAGIC = 0x54324d534e415001L;
+
+  private static final transient Logger logger = Logger.getLogger(TableSnapshot.class.getName());
+
+  /**
+   * Utility class.
+   */
+  private TableSnapshot() {
+  }
+
+  /**
+   * @param table
+   * @param directory
+   *        the directory of the snapshot or {@code null} for the directory
+   *        of the table
+   * @return the file in which the snapshot of the given table is kept.
+   */
+  public static File getFile(File table, File directory) {
+    return new File(directory == null ? table.getAbsoluteFile().getParentFile() : directory, table.getName() + SUFFIX);
+  }
+
+  /**
+   * Loads all records of the given table from its snapshot if the snapshot
+   * is up to date, or parses the table and writes a new snapshot otherwise.
+   * The directory of the snapshot is created if needed. If the snapshot
+   * cannot be written, a warning is logged and the parsed records are
+   * returned anyway.
+   *
+   * @param table
+   * @param reader
+   *        parses the rows if needed
+   * @param codec
+   * @param options
+   *        provide separator, character set, number of worker threads, and
+   *        the directory of the snapshot
+   * @return all records of the table in table order.
+   * @throws IOException
+   */
+  static <R> List<R> read(File table, RowReader<R> reader, Codec<R> codec, ConversionOptions options) throws IOException {
+    File file = getFile(table, options.getSnapshotDirectory());
+    byte header[] = createHeader(table, codec, options);
+    if (file.isFile()) {
+      try {
+        List<R> records = read(file, header, codec);
+        if (records != null) {
+          logger.info(format("Loaded {0,number,#} records of {1} from {2}.", records.size(), table.getName(), file));
+          return records;
+        }
+      } catch (RuntimeException exc) {
+        // Any damage to the data is ignored, since the table is parsed again.
+        logger.warning(format("Ignoring damaged snapshot {0}: {1}", file, exc));
+      }
+    }
+    List<R> records = new ParallelRowParser<R>(reader).parse(Table2Model.readRows(table, reader, options), Math.max(1, options.getParallelism()));
+    try {
+      File directory = file.getParentFile();
+      if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException(format("Cannot create the directory {0}.", directory));
+      }
+      write(file, header, codec, records);
+    } catch (IOException exc) {
+      // The snapshot is only a cache, so the conversion continues without it.
+      logger.warning(format("Cannot write snapshot {0}: {1}", file, exc.getMessage()));
+      file.delete();
+    }
+    return records;
+  }
+
+  /**
+   * @param file
+   * @param header
+   *        the expected header
+   * @param codec
+   * @return the records or {@code null} if the snapshot has another header.
+   * @throws IOException
+   */
+  private static <R> List<R> read(File file, byte header[], Codec<R> codec) throws IOException {
+    // The header is compared before the file is mapped, so that an outdated snapshot can be replaced.
+    byte actual[] = new byte[header.length];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(actual);
+    } catch (IOException exc) {
+      return null;
+    } finally {
+      in.close();
+    }
+    if (!Arrays.equals(header, actual)) {
+      return null;
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, header.length, channel.size() - header.length);
+      return codec.read(new Decoder(buffer));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * @param file
+   * @param header
+   * @param codec
+   * @param records
+   * @throws IOException
+   */
+  private static <R> void write(File file, byte header[], Codec<R> codec, List<R> records) throws IOException {
+    Encoder encoder = new Encoder();
+    codec.write(records, encoder);
+    encoder.out.flush();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      out.write(header);
+      out.writeInt(encoder.strings.size());
+      for (String s : encoder.strings) {
+        byte bytes[] = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      encoder.bytes.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param table
+   * @param codec
+   * @param options
+   * @return the beginning of the snapshot of the given table in its current
+   *         state.
+   * @throws IOException
+   */
+  private static byte[] createHeader(File table, Codec<?> codec, ConversionOptions options) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(MAGIC);
+    out.writeChar(codec.getType());
+    out.writeChar(options.getSeparator());
+    out.writeUTF(options.getCharset().name());
+    out.writeBoolean(options.isColumnsFromHeader());
+    out.write(hash(table));
+    if (options.getColumnMapping() != null) {
+      out.write(hash(options.getColumnMapping()));
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param file
+   * @return the SHA-1 hash value of the content of the given file.
+   * @throws IOException
+   */
+  private static byte[] hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException exc) {
+      // Every Java platform is required to support SHA-1.
+      throw new IllegalStateException(exc);
+    }
+    InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+    try {
+      byte buffer[] = new byte[1 << 16];
+      while (in.read(buffer) >= 0) {
+        // Only the digest is needed.
+      }
+    } finally {
+      in.close();
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Stores the records of the metabolite table.
+   */
+  static final Codec<ParsedSpecies> SPECIES = new Codec<ParsedSpecies>() {
+
+    @Override
+    public char getType() {
+      return 'M';
+    }
+
+    @Override
+    public void write(List<ParsedSpecies> records, Encoder out) throws IOException {
+      out.writeInt(records.size());
+      for (ParsedSpecies s : records) {
+        out.writeInt(s.row);
+      }
+      for (ParsedSpecies s : records) {
+        out.writeString(s.id);
+      }
+      for (ParsedSpecies s : records) {
+        out.writeString(s.name);
+      }
+      for (ParsedSpecies s : records) {
+        out.writeString(s.formula);
+      }
+      for (ParsedSpecies s : records) {
+        out.writeByte(s.charge == null ? 0 : 1);
+      }
+      for (ParsedSpecies s : records) {
+        out.writeInt(s.charge == null ? 0 : s.charge.intValue());
+      }
+    }
+
+    @Override
+    public List<ParsedSpecies> read(Decoder in) {
+      int n = in.readCount(4);
+      int rows[] = new int[n];
+      String ids[] = new String[n], names[] = new String[n], formulas[] = new String[n];
+      boolean hasCharge[] = new boolean[n];
+      for (int i = 0; i < n; i++) {
+        rows[i] = in.readInt();
+      }
+      for (int i = 0; i < n; i++) {
+        ids[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        names[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        formulas[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        hasCharge[i] = in.readByte() != 0;
+      }
+      List<ParsedSpecies> records = new ArrayList<ParsedSpecies>(n);
+      for (int i = 0; i < n; i++) {
+        int charge = in.readInt();
+        records.add(new ParsedSpecies(rows[i], ids[i], names[i], formulas[i], hasCharge[i] ? Integer.valueOf(charge) : null));
+      }
+      return records;
+    }
+
+  };
+
+  /** Flags of the optional numbers of a reaction. */
+  private static final int LOWER_BOUND = 1, UPPER_BOUND = 2, OBJECTIVE = 4, CONFIDENCE = 8, REVERSIBLE = 16;
+
+  /**
+   * Stores the records of the reaction table.
+   */
+  static final Codec<ParsedReaction> REACTIONS = new Codec<ParsedReaction>() {
+
+    @Override
+    public char getType() {
+      return 'R';
+    }
+
+    @Override
+    public void write(List<ParsedReaction> records, Encoder out) throws IOException {
+      out.writeInt(records.size());
+      for (ParsedReaction r : records) {
+        out.writeInt(r.row);
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.id);
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.name);
+      }
+      for (ParsedReaction r : records) {
+        int flags = r.reversible ? REVERSIBLE : 0;
+        flags |= r.lowerBound != null ? LOWER_BOUND : 0;
+        flags |= r.upperBound != null ? UPPER_BOUND : 0;
+        flags |= r.objective != null ? OBJECTIVE : 0;
+        flags |= r.confidence != null ? CONFIDENCE : 0;
+        out.writeByte(flags);
+      }
+      for (ParsedReaction r : records) {
+        out.writeDouble(r.lowerBound != null ? r.lowerBound.doubleValue() : 0d);
+      }
+      for (ParsedReaction r : records) {
+        out.writeDouble(r.upperBound != null ? r.upperBound.doubleValue() : 0d);
+      }
+      for (ParsedReaction r : records) {
+        out.writeInt(r.objective != null ? r.objective.intValue() : 0);
+      }
+      for (ParsedReaction r : records) {
+        out.writeInt(r.confidence != null ? r.confidence.intValue() : 0);
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.equation);
+      }
+      for (ParsedReaction r : records) {
+        writeStrings(r.arrows, out);
+      }
+      // Participants
+      for (ParsedReaction r : records) {
+        out.writeInt(r.participants.size());
+      }
+      for (ParsedReaction r : records) {
+        for (Participant p : r.participants) {
+          out.writeString(p.speciesId);
+        }
+      }
+      for (ParsedReaction r : records) {
+        for (Participant p : r.participants) {
+          out.writeString(p.compartmentId);
+        }
+      }
+      for (ParsedReaction r : records) {
+        for (Participant p : r.participants) {
+          out.writeDouble(p.coefficient);
+        }
+      }
+      for (ParsedReaction r : records) {
+        for (Participant p : r.participants) {
+          out.writeByte(p.product ? 1 : 0);
+        }
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.gpr);
+      }
+      for (ParsedReaction r : records) {
+        writeStrings(r.genes == null ? null : Arrays.asList(r.genes), out);
+      }
+      for (ParsedReaction r : records) {
+        writeStrings(r.proteins == null ? null : Arrays.asList(r.proteins), out);
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.subsystem);
+      }
+      for (ParsedReaction r : records) {
+        out.writeString(r.ecNumber);
+      }
+      for (ParsedReaction r : records) {
+        writeStrings(r.notes, out);
+      }
+    }
+
+    @Override
+    public List<ParsedReaction> read(Decoder in) {
+      int n = in.readCount(4);
+      int rows[] = new int[n];
+      String ids[] = new String[n], names[] = new String[n], equations[] = new String[n];
+      byte flags[] = new byte[n];
+      double lowerBounds[] = new double[n], upperBounds[] = new double[n];
+      int objectives[] = new int[n], confidences[] = new int[n];
+      for (int i = 0; i < n; i++) {
+        rows[i] = in.readInt();
+      }
+      for (int i = 0; i < n; i++) {
+        ids[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        names[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        flags[i] = in.readByte();
+      }
+      for (int i = 0; i < n; i++) {
+        lowerBounds[i] = in.readDouble();
+      }
+      for (int i = 0; i < n; i++) {
+        upperBounds[i] = in.readDouble();
+      }
+      for (int i = 0; i < n; i++) {
+        objectives[i] = in.readInt();
+      }
+      for (int i = 0; i < n; i++) {
+        confidences[i] = in.readInt();
+      }
+      for (int i = 0; i < n; i++) {
+        equations[i] = in.readString();
+      }
+      List<List<String>> arrows = readStrings(in, n);
+
+      // Participants
+      int counts[] = new int[n];
+      long total = 0L;
+      for (int i = 0; i < n; i++) {
+        counts[i] = in.readInt();
+        total += counts[i];
+      }
+      in.checkCount(total, 4);
+      String species[] = new String[(int) total], compartments[] = new String[(int) total];
+      double coefficients[] = new double[(int) total];
+      for (int j = 0; j < total; j++) {
+        species[j] = in.readString();
+      }
+      for (int j = 0; j < total; j++) {
+        compartments[j] = in.readString();
+      }
+      for (int j = 0; j < total; j++) {
+        coefficients[j] = in.readDouble();
+      }
+      List<List<Participant>> participants = new ArrayList<List<Participant>>(n);
+      for (int i = 0, j = 0; i < n; i++) {
+        List<Participant> list = new ArrayList<Participant>(counts[i]);
+        for (int k = 0; k < counts[i]; k++, j++) {
+          list.add(new Participant(species[j], compartments[j], coefficients[j], in.readByte() != 0));
+        }
+        participants.add(list);
+      }
+
+      String gprs[] = new String[n];
+      for (int i = 0; i < n; i++) {
+        gprs[i] = in.readString();
+      }
+      List<List<String>> genes = readStrings(in, n);
+      List<List<String>> proteins = readStrings(in, n);
+      String subsystems[] = new String[n], ecNumbers[] = new String[n];
+      for (int i = 0; i < n; i++) {
+        subsystems[i] = in.readString();
+      }
+      for (int i = 0; i < n; i++) {
+        ecNumbers[i] = in.readString();
+      }
+      List<List<String>> notes = readStrings(in, n);
+
+      List<ParsedReaction> records = new ArrayList<ParsedReaction>(n);
+      for (int i = 0; i < n; i++) {
+        records.add(new ParsedReaction(rows[i], ids[i], names[i], (flags[i] & REVERSIBLE) != 0, equations[i],
+          arrows.get(i), participants.get(i), gprs[i], toArray(genes.get(i)), toArray(proteins.get(i)), subsystems[i],
+          (flags[i] & LOWER_BOUND) != 0 ? Double.valueOf(lowerBounds[i]) : null,
+          (flags[i] & UPPER_BOUND) != 0 ? Double.valueOf(upperBounds[i]) : null,
+          (flags[i] & OBJECTIVE) != 0 ? Integer.valueOf(objectives[i]) : null,
+          (flags[i] & CONFIDENCE) != 0 ? Integer.valueOf(confidences[i]) : null,
+          ecNumbers[i], notes.get(i)));
+      }
+      return records;
+    }
+
+  };
+
+  /**
+   * Writes the number of strings, or -1 for {@code null}, followed by the
+   * strings.
+   *
+   * @param strings
+   * @param out
+   * @throws IOException
+   */
+  private static void writeStrings(List<String> strings, Encoder out) throws IOException {
+    if (strings == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(strings.size());
+    for (String s : strings) {
+      out.writeString(s);
+    }
+  }
+
+  /**
+   * @param in
+   * @param n
+   *        number of records
+   * @return one list per record, which is {@code null} where no list has
+   *         been given.
+   */
+  private static List<List<String>> readStrings(Decoder in, int n) {
+    List<List<String>> lists = new ArrayList<List<String>>(n);
+    for (int i = 0; i < n; i++) {
+      int size = in.readInt();
+      if (size < 0) {
+        lists.add(null);
+      } else {
+        in.checkCount(size, 4);
+        List<String> list = new ArrayList<String>(size);
+        for (int j = 0; j < size; j++) {
+          list.add(in.readString());
+        }
+        lists.add(list);
+      }
+    }
+    return lists;
+  }
+
+  /**
+   * @param list
+   * @return the strings of the given list or {@code null}.
+   */
+  private static String[] toArray(List<String> list) {
+    return list == null ? null : list.toArray(new String[0]);
+  }
+
+}
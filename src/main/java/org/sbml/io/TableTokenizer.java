@@ -0,0 +1,488 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Splits a character-separated table into rows and columns without creating
+ * any strings. The file is mapped into memory and only the boundaries of all
+ * columns are recorded for each row. The content of a column is decoded in
+ * the given {@link Charset} when {@link TableRow#get(int)} is called.
+ * <p>
+ * Columns can be enclosed in double quotes, in which case they may contain
+ * the separator or line breaks, and a double quote within such a column is
+ * written as two double quotes. Lines can be terminated by {@code \n},
+ * {@code \r\n}, or {@code \r}. A UTF-8 byte order mark at the beginning of the
+ * file is ignored.
+ * <p>
+ * Compressed files (see {@link Compression}) are decompressed in chunks of
+ * {@value #CHUNK_SIZE} bytes instead of being mapped, so that their size is
+ * not limited by the available memory. Only the chunks that still contain
+ * columns of rows in use are kept in memory.
+ * <p>
+ * The separator, the quote character, and the line terminators are searched
+ * byte-wise, and only the content of each column is decoded. Therefore, only
+ * character sets are supported in which these characters are encoded as
+ * single ASCII bytes that cannot be part of any other character. This holds
+ * for UTF-8, US-ASCII, and the ISO-8859 family, and, for the usual
+ * separators, also for multi-byte character sets such as GBK, GB18030, Big5,
+ * Shift_JIS, or EUC-JP, but not for UTF-16 or ISO-2022-JP.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class TableTokenizer implements Closeable {
+
+  /** The quote character. */
+  private static final byte QUOTE = '"';
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+
+  /**
+   * Maximal number of bytes mapped at once. Files that are larger are mapped
+   * in several consecutive windows.
+   */
+  private static final long WINDOW_SIZE = 1L << 28;
+
+  /**
+   * Number of bytes of a compressed file that are decompressed at once. A
+   * chunk grows up to {@link #WINDOW_SIZE} if a single row is longer.
+   */
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  /** Whether a multi-byte character set can be split byte-wise, by its name and separator. */
+  private static final ConcurrentMap<String, Boolean> searchable = new ConcurrentHashMap<String, Boolean>();
+
+  /** The file and its channel or {@code null} for a compressed file. */
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long fileSize;
+  /** The decompressed content of a compressed file or {@code null}. */
+  private final InputStream in;
+  /** Whether the end of the decompressed content has been read. */
+  private boolean endOfStream;
+  private final byte separator;
+  private final Charset charset;
+  /** See {@link #WINDOW_SIZE} and {@link #CHUNK_SIZE}. */
+  private final long windowSize;
+  private final int chunkSize;
+
+  /** The currently mapped or decompressed part of the file. */
+  private ByteBuffer buffer;
+  /** Position of the current window within the file. */
+  private long windowStart;
+  /** Position of the next row within the current window. */
+  private int position;
+  /** Number of the next row. */
+  private int rowNumber;
+  /** Reused storage for the boundaries of the columns of the current row. */
+  private int bounds[] = new int[32];
+
+  /**
+   * @param inFile
+   * @param separator
+   * @param charset
+   * @throws IOException
+   * @throws IllegalArgumentException
+   *         if the separator cannot be searched byte-wise in the given
+   *         character set.
+   */
+  public TableTokenizer(File inFile, char separator, Charset charset) throws IOException {
+    this(inFile, separator, charset, WINDOW_SIZE, CHUNK_SIZE);
+  }
+
+  /**
+   * @param inFile
+   * @param separator
+   * @param charset
+   * @param windowSize
+   *        the maximal number of bytes mapped at once
+   * @param chunkSize
+   *        the number of bytes of a compressed file decompressed at once
+   * @throws IOException
+   * @see #TableTokenizer(File, char, Charset)
+   */
+  TableTokenizer(File inFile, char separator, Charset charset, long windowSize, int chunkSize) throws IOException {
+    this.windowSize = windowSize;
+    this.chunkSize = chunkSize;
+    this.separator = toByte(separator, charset);
+    this.charset = charset;
+    if (Compression.isCompressed(inFile)) {
+      file = null;
+      channel = null;
+      fileSize = -1L;
+      in = Compression.openInput(inFile);
+      try {
+        buffer = ByteBuffer.allocate(0);
+        fill(chunkSize);
+      } catch (IOException exc) {
+        in.close();
+        throw exc;
+      }
+    } else {
+      in = null;
+      file = new RandomAccessFile(inFile, "r");
+      channel = file.getChannel();
+      fileSize = channel.size();
+      map(0L);
+    }
+    if (startsWithByteOrderMark()) {
+      position = 3;
+    }
+  }
+
+  /**
+   * @param c
+   * @param charset
+   * @return the only byte that represents the given character in the given
+   *         character set.
+   * @throws IllegalArgumentException
+   *         if the character set cannot be processed byte-wise.
+   */
+  private static byte toByte(char c, Charset charset) {
+    for (char delimiter : new char[] {(char) QUOTE, (char) CR, (char) LF}) {
+      if (!isSingleByte(delimiter, charset)) {
+        throw new IllegalArgumentException(format("Character set {0} is not supported.", charset));
+      }
+    }
+    if ((c > 127) || !isSingleByte(c, charset)) {
+      throw new IllegalArgumentException(format("Separator ''{0}'' cannot be used with character set {1}.", c, charset));
+    }
+    CharsetEncoder encoder = charset.newEncoder();
+    if (!charset.equals(StandardCharsets.UTF_8) && (encoder.maxBytesPerChar() > 1f)
+        && !Boolean.TRUE.equals(searchable.computeIfAbsent(charset.name() + ' ' + c, key -> isSearchable(c, charset)))) {
+      throw new IllegalArgumentException(format("Separator ''{0}'' cannot be used with character set {1}.", c, charset));
+    }
+    return (byte) c;
+  }
+
+  /**
+   * @param c
+   * @param charset
+   * @return {@code true} if the given character is encoded as the single
+   *         byte of the same value.
+   */
+  private static boolean isSingleByte(char c, Charset charset) {
+    byte bytes[] = String.valueOf(c).getBytes(charset);
+    return (bytes.length == 1) && (bytes[0] == c);
+  }
+
+  /**
+   * Encodes every character of the basic multilingual plane on its own to
+   * find out if the bytes of the separator, the quote character, or the line
+   * terminators occur within any other character of a multi-byte character
+   * set.
+   *
+   * @param separator
+   * @param charset
+   * @return {@code true} if the table can be split byte-wise.
+   */
+  private static boolean isSearchable(char separator, Charset charset) {
+    CharsetEncoder encoder = charset.newEncoder();
+    CharBuffer in = CharBuffer.allocate(1);
+    ByteBuffer out = ByteBuffer.allocate(64);
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      char ch = (char) c;
+      if ((ch == separator) || (ch == QUOTE) || (ch == CR) || (ch == LF) || Character.isSurrogate(ch) || !encoder.canEncode(ch)) {
+        continue;
+      }
+      in.clear();
+      in.put(ch).flip();
+      out.clear();
+      encoder.reset();
+      encoder.encode(in, out, true);
+      encoder.flush(out);
+      out.flip();
+      while (out.hasRemaining()) {
+        byte b = out.get();
+        if ((b == separator) || (b == QUOTE) || (b == CR) || (b == LF)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the file begins with a UTF-8 byte order mark.
+   */
+  private boolean startsWithByteOrderMark() {
+    return (buffer.limit() >= 3) && ((buffer.get(0) & 0xff) == 0xef)
+        && ((buffer.get(1) & 0xff) == 0xbb) && ((buffer.get(2) & 0xff) == 0xbf);
+  }
+
+  /**
+   * Maps the window of the file that begins at the given offset.
+   *
+   * @param offset
+   * @throws IOException
+   */
+  private void map(long offset) throws IOException {
+    windowStart = offset;
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, fileSize - offset));
+    position = 0;
+  }
+
+  /**
+   * Decompresses the next chunk of a compressed file into a new buffer, which
+   * begins with the bytes of the current buffer after the current position.
+   * The current buffer is not changed, because the rows that have already
+   * been returned still refer to it.
+   *
+   * @param size
+   *        the size of the new buffer, which is increased if the remaining
+   *        bytes of the current buffer would leave less than a chunk free
+   * @throws IOException
+   */
+  private void fill(int size) throws IOException {
+    int remaining = buffer.limit() - position;
+    byte bytes[] = new byte[(int) Math.min(Math.max(size, (long) remaining + chunkSize), windowSize)];
+    ByteBuffer b = buffer.duplicate();
+    b.position(position);
+    b.get(bytes, 0, remaining);
+    int length = remaining;
+    int n = 0;
+    while ((length < bytes.length) && ((n = in.read(bytes, length, bytes.length - length)) >= 0)) {
+      length += n;
+    }
+    endOfStream = n < 0;
+    windowStart += position;
+    buffer = ByteBuffer.wrap(bytes, 0, length);
+    position = 0;
+  }
+
+  /**
+   * Continues with the part of the file that begins at the current position.
+   *
+   * @throws IOException
+   *         if the current row does not fit into a window.
+   */
+  private void advance() throws IOException {
+    if (channel != null) {
+      if (position == 0) {
+        throw new IOException(format("Row {0} is longer than {1} bytes.", rowNumber, windowSize));
+      }
+      map(windowStart + position);
+    } else if (position > 0) {
+      fill(chunkSize);
+    } else if (buffer.limit() < windowSize) {
+      // The current row fills the whole buffer.
+      fill((int) Math.min(2L * Math.max(buffer.limit(), chunkSize), windowSize));
+    } else {
+      throw new IOException(format("Row {0} is longer than {1} bytes.", rowNumber, windowSize));
+    }
+  }
+
+  /**
+   * @return {@code true} if the current window reaches the end of the file.
+   */
+  private boolean isLastWindow() {
+    return channel == null ? endOfStream : windowStart + buffer.limit() >= fileSize;
+  }
+
+  /**
+   * @return the next row or {@code null} if the end of the file has been
+   *         reached.
+   * @throws IOException
+   */
+  public TableRow next() throws IOException {
+    if (position >= buffer.limit()) {
+      if (isLastWindow()) {
+        return null;
+      }
+      advance();
+      if ((position >= buffer.limit()) && isLastWindow()) {
+        return null;
+      }
+    }
+    int count;
+    while ((count = scan()) < 0) {
+      // The row is not completely within the current window.
+      advance();
+    }
+    return new MappedRow(rowNumber++, buffer, Arrays.copyOf(bounds, 2 * count), charset);
+  }
+
+  /**
+   * Finds the boundaries of all columns of the row that begins at the current
+   * position and moves the position to the beginning of the next row.
+   *
+   * @return the number of columns or -1 if the row exceeds the current window
+   *         and more than the current window needs to be mapped.
+   */
+  private int scan() {
+    ByteBuffer b = buffer;
+    int limit = b.limit();
+    boolean eof = isLastWindow();
+    int p = position;
+    int count = 0;
+    while (true) {
+      int start = p, end;
+      boolean quoted = (p < limit) && (b.get(p) == QUOTE);
+      if (quoted) {
+        p++;
+        while (true) {
+          if (p >= limit) {
+            if (!eof) {
+              return -1;
+            }
+            end = p;
+            break;
+          }
+          if (b.get(p) == QUOTE) {
+            if (p + 1 >= limit && !eof) {
+              return -1;
+            }
+            if ((p + 1 < limit) && (b.get(p + 1) == QUOTE)) {
+              p += 2;
+              continue;
+            }
+            end = p++;
+            break;
+          }
+          p++;
+        }
+        // Skip anything between the closing quote and the next separator.
+        while ((p < limit) && !isDelimiter(b.get(p))) {
+          p++;
+        }
+      } else {
+        while ((p < limit) && !isDelimiter(b.get(p))) {
+          p++;
+        }
+        end = p;
+      }
+      if (2 * count + 2 > bounds.length) {
+        bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+      }
+      // Quoted columns are marked by a negative start position.
+      bounds[2 * count] = quoted ? -(start + 2) : start;
+      bounds[2 * count + 1] = end;
+      count++;
+      if (p >= limit) {
+        if (!eof) {
+          return -1;
+        }
+        break;
+      }
+      byte c = b.get(p++);
+      if (c == separator) {
+        continue;
+      }
+      if (c == CR) {
+        if (p >= limit && !eof) {
+          return -1;
+        }
+        if ((p < limit) && (b.get(p) == LF)) {
+          p++;
+        }
+      }
+      break;
+    }
+    position = p;
+    return count;
+  }
+
+  /**
+   * @param c
+   * @return {@code true} if the given byte ends a column.
+   */
+  private boolean isDelimiter(byte c) {
+    return (c == separator) || (c == LF) || (c == CR);
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      file.close();
+    } else {
+      in.close();
+    }
+  }
+
+  /**
+   * A row that only knows the boundaries of its columns within a buffer.
+   */
+  private static class MappedRow extends TableRow {
+
+    private final ByteBuffer buffer;
+    /**
+     * Start (inclusive) and end (exclusive) of each column. For a quoted
+     * column whose opening quote is at position {@code q}, the start is stored
+     * as {@code -(q + 2)}, and the end points to the closing quote.
+     */
+    private final int bounds[];
+    private final Charset charset;
+
+    /**
+     * @param rowNumber
+     * @param buffer
+     * @param bounds
+     * @param charset
+     */
+    MappedRow(int rowNumber, ByteBuffer buffer, int bounds[], Charset charset) {
+      super(rowNumber);
+      this.buffer = buffer;
+      this.bounds = bounds;
+      this.charset = charset;
+    }
+
+    @Override
+    public int size() {
+      return bounds.length / 2;
+    }
+
+    @Override
+    public boolean isEmpty(int column) {
+      if (column >= size()) {
+        return true;
+      }
+      int start = bounds[2 * column];
+      return (start < 0 ? -start - 1 : start) >= bounds[2 * column + 1];
+    }
+
+    @Override
+    public String get(int column) {
+      if (column >= size()) {
+        throw new IndexOutOfBoundsException(format("Row {0} has only {1} columns.", getRowNumber(), size()));
+      }
+      int start = bounds[2 * column];
+      int end = bounds[2 * column + 1];
+      boolean quoted = start < 0;
+      if (quoted) {
+        start = -start - 1;
+      }
+      if (start >= end) {
+        return "";
+      }
+      byte bytes[] = new byte[end - start];
+      ByteBuffer b = buffer.duplicate();
+      b.position(start);
+      b.get(bytes);
+      String value = new String(bytes, charset);
+      return quoted ? value.replace("\"\"", "\"") : value;
+    }
+
+  }
+
+}
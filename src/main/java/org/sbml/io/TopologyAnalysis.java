@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.sbml.io.Diagnostics.Category;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.ext.groups.Member;
+
+/**
+ * Finds dead-end metabolites and blocked reactions from the topology of the
+ * network alone. A metabolite is a dead end if it cannot be both produced
+ * and consumed by two or more reactions that can still carry flux. Every
+ * reaction that involves a dead end is blocked, because the metabolite
+ * could not be at steady state otherwise, and every metabolite that loses
+ * its last producer or consumer this way becomes a dead end in turn.
+ * <p>
+ * The network is kept as a bipartite graph in the arrays of a
+ * {@link StoichiometricMatrix} (reactions to metabolites) and of its
+ * transpose (metabolites to reactions). Dead ends are pruned with a work
+ * queue and counters of producing, consuming, and all active reactions per
+ * metabolite, so that each reaction and each metabolite is visited only
+ * once when it is removed and the analysis needs linear time in the number
+ * of non-zero entries of the matrix.
+ * <p>
+ * The directions in which a reaction can carry flux are taken from its flux
+ * bounds. Without lower bound, a reaction can only run backwards if it is
+ * reversible.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class TopologyAnalysis {
+
+  /**
+   * What happens with the affected elements.
+   */
+  public enum Mode {
+    /** Blocked reactions and dead-end metabolites are only reported. */
+    REPORT,
+    /** Blocked reactions and dead-end metabolites are not written. */
+    REMOVE;
+  }
+
+  private static final transient Logger logger = Logger.getLogger(TopologyAnalysis.class.getName());
+
+  private final Mode mode;
+  private final StoichiometricMatrix.Builder builder;
+
+  /** Row numbers and reversibility of all reactions, by column. */
+  private final List<Integer> rows = new ArrayList<Integer>();
+  private final BitSet reversible = new BitSet();
+
+  private final Set<String> blockedReactions = new HashSet<String>();
+  private final List<String> deadEnds = new ArrayList<String>();
+
+  /**
+   * @param mode
+   * @param identifierCache
+   *        provides the same identifiers of compartmentalized species as in
+   *        the model
+   */
+  public TopologyAnalysis(Mode mode, IdentifierCache identifierCache) {
+    this.mode = mode;
+    builder = new StoichiometricMatrix.Builder(identifierCache);
+  }
+
+  /**
+   * @return what happens with the affected elements.
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * @param reaction
+   *        a reaction that has been added to the model
+   */
+  void add(ParsedReaction reaction) {
+    reversible.set(rows.size(), reaction.reversible);
+    rows.add(Integer.valueOf(reaction.row));
+    builder.add(reaction);
+  }
+
+  /**
+   * Finds the blocked reactions and dead-end metabolites among all reactions
+   * added so far and records them in table order.
+   *
+   * @param diagnostics
+   */
+  public void analyze(Diagnostics diagnostics) {
+    long time = System.currentTimeMillis();
+    StoichiometricMatrix matrix = builder.build();
+    StoichiometricMatrix transposed = matrix.transpose();
+    int m = matrix.getRowIds().size(), n = matrix.getColumnIds().size();
+    int columnPointers[] = matrix.getColumnPointers(), rowIndices[] = matrix.getRowIndices();
+    double values[] = matrix.getValues();
+    int rowPointers[] = transposed.getColumnPointers(), columnIndices[] = transposed.getRowIndices();
+
+    // Directions in which each reaction can carry flux.
+    boolean forward[] = new boolean[n], backward[] = new boolean[n], blocked[] = new boolean[n];
+    double lowerBounds[] = matrix.getLowerBounds(), upperBounds[] = matrix.getUpperBounds();
+    for (int j = 0; j < n; j++) {
+      forward[j] = upperBounds[j] > 0d;
+      backward[j] = (lowerBounds[j] < 0d) && (reversible.get(j) || !Double.isInfinite(lowerBounds[j]));
+      blocked[j] = !(forward[j] || backward[j]);
+    }
+
+    // Active producers, consumers, and reactions of each metabolite.
+    int producers[] = new int[m], consumers[] = new int[m], degree[] = new int[m];
+    for (int j = 0; j < n; j++) {
+      if (!blocked[j]) {
+        for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+          count(rowIndices[k], values[k], forward[j], backward[j], 1, producers, consumers, degree);
+        }
+      }
+    }
+
+    boolean dead[] = new boolean[m];
+    int queue[] = new int[m];
+    int head = 0, tail = 0;
+    for (int i = 0; i < m; i++) {
+      if (isDeadEnd(i, producers, consumers, degree)) {
+        dead[i] = true;
+        queue[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      int i = queue[head++];
+      for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+        int j = columnIndices[k];
+        if (blocked[j]) {
+          continue;
+        }
+        blocked[j] = true;
+        for (int l = columnPointers[j]; l < columnPointers[j + 1]; l++) {
+          int other = rowIndices[l];
+          if (!dead[other]) {
+            count(other, values[l], forward[j], backward[j], -1, producers, consumers, degree);
+            if (isDeadEnd(other, producers, consumers, degree)) {
+              dead[other] = true;
+              queue[tail++] = other;
+            }
+          }
+        }
+      }
+    }
+
+    blockedReactions.clear();
+    deadEnds.clear();
+    List<String> rowIds = matrix.getRowIds(), columnIds = matrix.getColumnIds();
+    for (int j = 0; j < n; j++) {
+      if (blocked[j]) {
+        blockedReactions.add(columnIds.get(j));
+        diagnostics.record(Category.BLOCKED_REACTION, rows.get(j).intValue(), columnIds.get(j));
+      }
+    }
+    for (int i = 0; i < m; i++) {
+      if (dead[i]) {
+        deadEnds.add(rowIds.get(i));
+        diagnostics.record(Category.DEAD_END_METABOLITE, -1, rowIds.get(i));
+      }
+    }
+    logger.info(format("Found {0,number,#} blocked reactions and {1,number,#} dead-end metabolites in {2,number,#} ms.",
+      blockedReactions.size(), deadEnds.size(), System.currentTimeMillis() - time));
+  }
+
+  /**
+   * Removes the blocked reactions and dead-end species found by the last
+   * analysis from the model, together with the group memberships, flux
+   * objectives, and flux bound parameters of the reactions, and afterwards
+   * all other elements that are no longer used by any reaction.
+   *
+   * @param m
+   * @param references
+   *        the identifiers of all elements to which the reactions that are
+   *        not blocked refer, or {@code null} to take them from the reactions
+   *        in the model
+   */
+  void remove(Model m, Set<String> references) {
+    Map<String, List<Member>> members = IncrementalConverter.indexMembers(m);
+    for (String id : blockedReactions) {
+      IncrementalConverter.removeReaction(m, id, members);
+    }
+    for (String id : deadEnds) {
+      if (m.getSpecies(id) != null) {
+        m.removeSpecies(id);
+      }
+    }
+    if (references == null) {
+      IncrementalConverter.removeUnused(m);
+    } else {
+      IncrementalConverter.removeUnused(m, references);
+    }
+    logger.info(format("Removed {0,number,#} blocked reactions and {1,number,#} dead-end metabolites.",
+      blockedReactions.size(), deadEnds.size()));
+  }
+
+  /**
+   * @param matrix
+   *        the matrix of all reactions
+   * @return the matrix without the blocked reactions and dead-end species
+   *         found by the last analysis.
+   */
+  StoichiometricMatrix remove(StoichiometricMatrix matrix) {
+    return matrix.without(blockedReactions, new HashSet<String>(deadEnds));
+  }
+
+  /**
+   * Adds or removes one reaction to or from the counters of one metabolite.
+   *
+   * @param i
+   *        the metabolite
+   * @param value
+   *        its coefficient in the reaction
+   * @param forward
+   *        whether the reaction can run forwards
+   * @param backward
+   *        whether the reaction can run backwards
+   * @param delta
+   *        1 to add, -1 to remove the reaction
+   * @param producers
+   * @param consumers
+   * @param degree
+   */
+  private static void count(int i, double value, boolean forward, boolean backward, int delta, int producers[],
+    int consumers[], int degree[]) {
+    degree[i] += delta;
+    if ((value > 0d) ? forward : backward) {
+      producers[i] += delta;
+    }
+    if ((value < 0d) ? forward : backward) {
+      consumers[i] += delta;
+    }
+  }
+
+  /**
+   * @param i
+   * @param producers
+   * @param consumers
+   * @param degree
+   * @return {@code true} if the metabolite cannot be at steady state with a
+   *         flux other than zero through any of its reactions.
+   */
+  private static boolean isDeadEnd(int i, int producers[], int consumers[], int degree[]) {
+    return (producers[i] == 0) || (consumers[i] == 0) || (degree[i] < 2);
+  }
+
+  /**
+   * @param reactionId
+   * @return {@code true} if the last analysis found that the given reaction
+   *         cannot carry any flux.
+   */
+  public boolean isBlocked(String reactionId) {
+    return blockedReactions.contains(reactionId);
+  }
+
+  /**
+   * @return the identifiers of all blocked reactions.
+   */
+  public Set<String> getBlockedReactions() {
+    return Collections.unmodifiableSet(blockedReactions);
+  }
+
+  /**
+   * @return the identifiers of all dead-end species in the order of their
+   *         first occurrence in the reaction table.
+   */
+  public List<String> getDeadEnds() {
+    return Collections.unmodifiableList(deadEnds);
+  }
+
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events of {@link ConversionMetrics}. This class is only
+ * loaded if the Java runtime provides the Flight Recorder API, and the events
+ * are only written if a recording has enabled them, e.g., with
+ * {@code -XX:StartFlightRecording}.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+final class FlightRecorderEvents implements ConversionEvents {
+
+  /**
+   * One phase of a conversion.
+   */
+  @Name("org.sbml.io.ConversionPhase")
+  @Label("Conversion Phase")
+  @Category("Table2Model")
+  @Description("Unit setup, reading a table, cleanup, annotation, or writing")
+  static class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Name")
+    @Description("The table or the model")
+    String name;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Rows per Second")
+    double rowsPerSecond;
+
+    @Label("Heap Used")
+    @Description("Heap memory used by the JVM at the end of the phase")
+    @DataAmount
+    long heapUsed;
+
+  }
+
+  /**
+   * A whole conversion.
+   */
+  @Name("org.sbml.io.Conversion")
+  @Label("Conversion")
+  @Category("Table2Model")
+  @Description("Conversion of both tables to one model")
+  static class ConversionEvent extends Event {
+
+    @Label("Model")
+    String model;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Identifier Cache Hit Rate")
+    double identifierCacheHitRate;
+
+    @Label("GPR Cache Hit Rate")
+    double gprCacheHitRate;
+
+    @Label("Max Heap Used")
+    @Description("Largest heap memory used by the JVM at the end of a phase of this conversion, including other conversions at the same time")
+    @DataAmount
+    long maxHeapUsed;
+
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionEvents#beginPhase()
+   */
+  @Override
+  public Object beginPhase() {
+    PhaseEvent event = new PhaseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionEvents#commitPhase(java.lang.Object, java.lang.String, java.lang.String, long, double, long)
+   */
+  @Override
+  public void commitPhase(Object event, String phase, String name, long rows, double rowsPerSecond, long heapUsed) {
+    if (event == null) {
+      return;
+    }
+    PhaseEvent e = (PhaseEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.phase = phase;
+      e.name = name;
+      e.rows = rows;
+      e.rowsPerSecond = rowsPerSecond;
+      e.heapUsed = heapUsed;
+      e.commit();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionEvents#beginConversion()
+   */
+  @Override
+  public Object beginConversion() {
+    ConversionEvent event = new ConversionEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  /* (non-Javadoc)
+   * @see org.sbml.io.ConversionEvents#commitConversion(java.lang.Object, java.lang.String, long, double, double, long)
+   */
+  @Override
+  public void commitConversion(Object event, String model, long rows, double identifierCacheHitRate,
+    double gprCacheHitRate, long maxHeapUsed) {
+    if (event == null) {
+      return;
+    }
+    ConversionEvent e = (ConversionEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.model = model;
+      e.rows = rows;
+      e.identifierCacheHitRate = identifierCacheHitRate;
+      e.gprCacheHitRate = gprCacheHitRate;
+      e.maxHeapUsed = maxHeapUsed;
+      e.commit();
+    }
+  }
+
+}
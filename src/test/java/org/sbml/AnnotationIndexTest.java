@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package org.sbml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.AnnotationIndex.Category;
+import org.sbml.AnnotationIndex.Distribution;
+import org.sbml.io.ConversionOptions;
+import org.sbml.io.IdentifierCache;
+import org.sbml.io.Table2Model;
+
+/**
+ * Converts three small models with known overlaps and checks how
+ * {@link AnnotationIndex} divides their species, EC codes and genes into
+ * core, accessory and unique sets.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class AnnotationIndexTest {
+
+  private static final String METABOLITES_HEADER = "Abbreviation;Name;Formula;Formula2;Charge";
+
+  private static final String REACTIONS_HEADER = "Abbreviation;Name;Equation;GPR;Genes;Proteins;Subsystem;Reversible;LB;UB;Obj;Conf;EC;Notes;Ref";
+
+  private static final String EC = "https://identifiers.org/ec-code/";
+
+  private static final String GENE = "https://identifiers.org/kegg.genes/cgb:";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File models[];
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    String r1 = "R1;;A[c] -> B[c];g1;g1;P1;;false;0;1000;;;1.1.1.1;;";
+    String r2 = "R2;;B[c] -> C[c];g2;g2;P2;;false;0;1000;;;2.2.2.2;;";
+    models = new File[] {
+      convert("m1", r1, r2),
+      convert("m2", r1, "R3;;B[c] -> D[c];g3;g3;P3;;false;0;1000;;;3.3.3.3;;"),
+      convert("m3", r1, r2, "R4;;C[c] -> ;g4;g4;P4;;false;0;1000;;;;;")
+    };
+  }
+
+  /**
+   * @param name
+   *        the name of the model
+   * @param reactions
+   * @return the converted model.
+   * @throws Exception
+   */
+  private File convert(String name, String... reactions) throws Exception {
+    File dir = folder.newFolder(name);
+    File metaboliteFile = new File(dir, "metabolites.csv");
+    File reactionFile = new File(dir, "reactions.csv");
+    Files.write(metaboliteFile.toPath(), Arrays.asList(METABOLITES_HEADER, "A;A;;x;", "B;B;;x;", "C;C;;x;",
+      "D;D;;x;"), StandardCharsets.UTF_8);
+    List<String> lines = new ArrayList<String>();
+    lines.add(REACTIONS_HEADER);
+    lines.addAll(Arrays.asList(reactions));
+    Files.write(reactionFile.toPath(), lines, StandardCharsets.UTF_8);
+    ConversionOptions options = new ConversionOptions();
+    options.setCharset(StandardCharsets.UTF_8);
+    File model = new File(dir, name + ".xml");
+    Table2Model.convert(metaboliteFile, reactionFile, model, options, new IdentifierCache());
+    return model;
+  }
+
+  /**
+   * @param bits
+   * @return the indices of the set bits.
+   */
+  private static BitSet bits(int... bits) {
+    BitSet set = new BitSet();
+    for (int bit : bits) {
+      set.set(bit);
+    }
+    return set;
+  }
+
+  /**
+   * @param index
+   * @param category
+   * @param feature
+   * @param distribution
+   * @param models
+   */
+  private static void assertFeature(AnnotationIndex index, Category category, String feature,
+    Distribution distribution, int... models) {
+    BitSet bits = index.get(category, feature);
+    assertEquals(feature, bits(models), bits);
+    assertEquals(feature, distribution, index.classify(bits));
+  }
+
+  /**
+   * Reading or streaming the models results in the same index.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSets() throws Exception {
+    for (boolean streaming : new boolean[] {false, true}) {
+      AnnotationIndex index = SBMLCompare.index(streaming, models);
+      assertEquals(3, index.getModelCount());
+      assertFeature(index, Category.SPECIES, "M_A_c", Distribution.CORE, 0, 1, 2);
+      assertFeature(index, Category.SPECIES, "M_C_c", Distribution.ACCESSORY, 0, 2);
+      assertFeature(index, Category.SPECIES, "M_D_c", Distribution.UNIQUE, 1);
+      assertNull(index.get(Category.SPECIES, "M_E_c"));
+      assertFeature(index, Category.EC_CODE, EC + "1.1.1.1", Distribution.CORE, 0, 1, 2);
+      assertFeature(index, Category.EC_CODE, EC + "2.2.2.2", Distribution.ACCESSORY, 0, 2);
+      assertFeature(index, Category.EC_CODE, EC + "3.3.3.3", Distribution.UNIQUE, 1);
+      assertFeature(index, Category.GENE, GENE + "g1", Distribution.CORE, 0, 1, 2);
+      assertFeature(index, Category.GENE, GENE + "g2", Distribution.ACCESSORY, 0, 2);
+      assertFeature(index, Category.GENE, GENE + "g3", Distribution.UNIQUE, 1);
+      assertFeature(index, Category.GENE, GENE + "g4", Distribution.UNIQUE, 2);
+    }
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testMatrix() throws Exception {
+    StringWriter matrix = new StringWriter();
+    SBMLCompare.index(false, models).writeMatrix(matrix);
+    assertEquals(Arrays.asList(
+      "category\tfeature\tset\tm1.xml\tm2.xml\tm3.xml",
+      "species\tM_A_c\tcore\t1\t1\t1",
+      "species\tM_B_c\tcore\t1\t1\t1",
+      "species\tM_C_c\taccessory\t1\t0\t1",
+      "species\tM_D_c\tunique\t0\t1\t0",
+      "ec-code\t" + EC + "1.1.1.1\tcore\t1\t1\t1",
+      "ec-code\t" + EC + "2.2.2.2\taccessory\t1\t0\t1",
+      "ec-code\t" + EC + "3.3.3.3\tunique\t0\t1\t0",
+      "gene\t" + GENE + "g1\tcore\t1\t1\t1",
+      "gene\t" + GENE + "g2\taccessory\t1\t0\t1",
+      "gene\t" + GENE + "g3\tunique\t0\t1\t0",
+      "gene\t" + GENE + "g4\tunique\t0\t0\t1"), Arrays.asList(matrix.toString().split("\n")));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testSummary() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintStream print = new PrintStream(out, true, "UTF-8");
+    SBMLCompare.index(true, models).printSummary(print);
+    String summary = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(summary, summary.contains("species in 3 models: 2 core, 1 accessory, 1 unique\n"
+        + "Unique:\t0\tm1.xml\nUnique:\t1\tm2.xml\nUnique:\t0\tm3.xml\n"));
+    assertTrue(summary, summary.contains("gene in 3 models: 1 core, 1 accessory, 2 unique\n"
+        + "Unique:\t0\tm1.xml\nUnique:\t1\tm2.xml\nUnique:\t1\tm3.xml\n"));
+  }
+
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package org.sbml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.ModelDiff.Difference;
+import org.sbml.io.ConversionOptions;
+import org.sbml.io.IdentifierCache;
+import org.sbml.io.Table2Model;
+
+/**
+ * Converts two versions of a small pair of tables and checks the differences
+ * that {@link ModelDiff} finds between both models, whether their summaries
+ * are read or streamed.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ModelDiffTest {
+
+  private static final String METABOLITES_HEADER = "Abbreviation;Name;Formula;Formula2;Charge";
+
+  private static final String REACTIONS_HEADER = "Abbreviation;Name;Equation;GPR;Genes;Proteins;Subsystem;Reversible;LB;UB;Obj;Conf;EC;Notes;Ref";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File model1;
+
+  private File model2;
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    model1 = convert("v1",
+      Arrays.asList("A;A;C6H12O6;x;0", "B;B;C3H4O3;x;-1", "C;C;CO2;x;0", "D;D;H2O;x;0", "F;Nitrogen;N2;x;0"),
+      Arrays.asList(
+        "R1;R1;A[c] -> 2 B[c];g1;g1;P1;;false;0;1000;1;;;;",
+        "R2;R2;B[c] <=> C[c];g2 and g3;g2 g3;P2 P3;;true;-1000;1000;;;;;",
+        "R3;R3;C[c] -> D[c];;;;;false;0;1000;;;;;",
+        "R4;R4;D[c] <=> A[c];g1 or g2;g1 g2;P1 P2;;true;-10;10;;;;;",
+        "R6;R6;F[c] -> ;;;;;false;0;1000;;;;;"));
+    model2 = convert("v2",
+      Arrays.asList("A;A;C6H12O6;x;0", "B;Pyruvate;C3H3O3;x;-2", "C;C;CO2;x;0", "E;E;O2;x;0", "N2;Nitrogen;N2;x;0"),
+      Arrays.asList(
+        "R1;R1;A[c] -> 2 B[c];g1;g1;P1;;false;0;500;1;;;;",
+        "R2b;R2;B[c] <=> C[c];g2 and g3;g2 g3;P2 P3;;true;-1000;1000;;;;;",
+        "R4;R4;C[c] <=> A[c];g1 or g2;g1 g2;P1 P2;;true;-10;10;;;;;",
+        "R5;R5;A[c] -> E[c];g4;g4;P4;;false;0;1000;;;;;",
+        "R6;R6;N2[c] -> ;;;;;false;0;1000;;;;;"));
+  }
+
+  /**
+   * @param name
+   *        the name of the model
+   * @param metabolites
+   * @param reactions
+   * @return the converted model.
+   * @throws Exception
+   */
+  private File convert(String name, List<String> metabolites, List<String> reactions) throws Exception {
+    File dir = folder.newFolder(name);
+    File metaboliteFile = new File(dir, "metabolites.csv");
+    File reactionFile = new File(dir, "reactions.csv");
+    List<String> lines = new ArrayList<String>();
+    lines.add(METABOLITES_HEADER);
+    lines.addAll(metabolites);
+    Files.write(metaboliteFile.toPath(), lines, StandardCharsets.UTF_8);
+    lines.clear();
+    lines.add(REACTIONS_HEADER);
+    lines.addAll(reactions);
+    Files.write(reactionFile.toPath(), lines, StandardCharsets.UTF_8);
+    ConversionOptions options = new ConversionOptions();
+    options.setCharset(StandardCharsets.UTF_8);
+    File model = new File(dir, "model.xml");
+    Table2Model.convert(metaboliteFile, reactionFile, model, options, new IdentifierCache());
+    return model;
+  }
+
+  /**
+   * @param diff
+   * @return one line per difference with its kind, element, identifier,
+   *         field, and values.
+   */
+  private static List<String> toLines(ModelDiff diff) {
+    List<String> lines = new ArrayList<String>();
+    for (Difference d : diff.getDifferences()) {
+      lines.add(d.getKind() + " " + d.getElement() + " " + d.getId() + " " + d.getField() + " " + d.getOldValue()
+        + " " + d.getNewValue());
+    }
+    return lines;
+  }
+
+  /**
+   * Species are compared like reactions, and a species that has only got
+   * another identifier is found by its attributes.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDifferences() throws Exception {
+    List<String> expected = Arrays.asList(
+      "changed species M_B_c name B Pyruvate",
+      "changed species M_B_c formula C3H4O3 C3H3O3",
+      "changed species M_B_c charge -1 -2",
+      "removed species M_D_c null null null",
+      "renamed species M_F_c id M_F_c M_N2_c",
+      "added species M_E_c null null null",
+      "changed reaction R_R1 upperBound 1000 500",
+      "changed reaction R_R4 reactants M_D_c M_C_c",
+      "changed reaction R_R6 reactants M_F_c M_N2_c",
+      "renamed reaction R_R2 id R_R2 R_R2b",
+      "removed reaction R_R3 null null null",
+      "added reaction R_R5 null null null");
+    assertEquals(expected, toLines(new ModelDiff(ModelSummary.read(model1), ModelSummary.read(model2))));
+    assertEquals(expected, toLines(new ModelDiff(ModelSummary.stream(model1), ModelSummary.stream(model2))));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testNoDifferences() throws Exception {
+    ModelDiff diff = new ModelDiff(ModelSummary.read(model1), ModelSummary.stream(model1));
+    assertTrue(diff.getDifferences().isEmpty());
+    StringWriter json = new StringWriter();
+    diff.writeJSON(json);
+    assertEquals("{\n  \"model1\": \"model.xml\",\n  \"model2\": \"model.xml\",\n  \"differences\": []\n}\n",
+      json.toString());
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testTSV() throws Exception {
+    StringWriter tsv = new StringWriter();
+    new ModelDiff(ModelSummary.stream(model1), ModelSummary.stream(model2)).writeTSV(tsv);
+    String lines[] = tsv.toString().split("\n");
+    assertEquals("kind\telement\tid\tfield\told\tnew", lines[0]);
+    assertEquals("changed\tspecies\tM_B_c\tcharge\t-1\t-2", lines[3]);
+    assertEquals("changed\treaction\tR_R1\tupperBound\t1000\t500", lines[7]);
+    assertEquals(13, lines.length);
+  }
+
+}
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.jsbml.CVTerm;
+import org.sbml.jsbml.CVTerm.Qualifier;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.Species;
+
+/**
+ * Checks which {@link CVTerm}s {@link AnnotationAccumulator} adds and when.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class AnnotationAccumulatorTest {
+
+  private static final String ATP = "https://identifiers.org/chebi/CHEBI:15422";
+  private static final String ATP_KEGG = "https://identifiers.org/kegg.compound/C00002";
+  private static final String ADP = "https://identifiers.org/chebi/CHEBI:16761";
+  private static final String PUBMED = "https://identifiers.org/pubmed/1234";
+
+  private Species atp;
+
+  private Species adp;
+
+  /**
+   * Creates two species with meta identifiers.
+   */
+  @Before
+  public void setUp() {
+    Model m = new SBMLDocument(3, 1).createModel("m");
+    atp = m.createSpecies("M_atp_c");
+    atp.setMetaId("meta_M_atp_c");
+    adp = m.createSpecies("M_adp_c");
+    adp.setMetaId("meta_M_adp_c");
+  }
+
+  /**
+   * @param term
+   * @return the resources of the given term.
+   */
+  private static Object[] resources(CVTerm term) {
+    return term.getResources().toArray();
+  }
+
+  /**
+   * Each qualifier results in one term, in which each resource occurs once.
+   */
+  @Test
+  public void testDuplicates() {
+    AnnotationAccumulator annotations = new AnnotationAccumulator();
+    annotations.add(atp, Qualifier.BQB_IS, ATP);
+    annotations.add(atp, Qualifier.BQB_IS_DESCRIBED_BY, PUBMED);
+    annotations.add(atp, Qualifier.BQB_IS, ATP_KEGG);
+    annotations.add(atp, Qualifier.BQB_IS, ATP);
+    assertFalse(atp.isSetAnnotation());
+    annotations.flush();
+    assertEquals(0, annotations.size());
+    assertEquals(2, atp.getCVTermCount());
+    assertEquals(Qualifier.BQB_IS, atp.getCVTerm(0).getQualifier());
+    assertEquals(Arrays.asList(ATP, ATP_KEGG), Arrays.asList(resources(atp.getCVTerm(0))));
+    assertEquals(Qualifier.BQB_IS_DESCRIBED_BY, atp.getCVTerm(1).getQualifier());
+    assertEquals(Arrays.asList(PUBMED), Arrays.asList(resources(atp.getCVTerm(1))));
+  }
+
+  /**
+   * Resources are added to an existing term with the same qualifier.
+   */
+  @Test
+  public void testExistingTerm() {
+    atp.addCVTerm(new CVTerm(Qualifier.BQB_IS, ATP));
+    AnnotationAccumulator annotations = new AnnotationAccumulator();
+    annotations.add(atp, Qualifier.BQB_IS, ATP_KEGG);
+    annotations.flush();
+    assertEquals(1, atp.getCVTermCount());
+    assertEquals(Arrays.asList(ATP, ATP_KEGG), Arrays.asList(resources(atp.getCVTerm(0))));
+  }
+
+  /**
+   * {@link AnnotationAccumulator#flush(org.sbml.jsbml.SBase)} only annotates
+   * the given element, and {@link AnnotationAccumulator#flush()} all others.
+   */
+  @Test
+  public void testFlush() {
+    AnnotationAccumulator annotations = new AnnotationAccumulator();
+    annotations.add(atp, Qualifier.BQB_IS, ATP);
+    annotations.add(adp, Qualifier.BQB_IS, ADP);
+    assertEquals(2, annotations.size());
+
+    annotations.flush(adp);
+    assertEquals(1, annotations.size());
+    assertFalse(atp.isSetAnnotation());
+    assertEquals(1, adp.getCVTermCount());
+    assertEquals(Arrays.asList(ADP), Arrays.asList(resources(adp.getCVTerm(0))));
+
+    // Flushing an element again adds nothing.
+    annotations.flush(adp);
+    annotations.flush();
+    assertEquals(0, annotations.size());
+    assertEquals(1, adp.getCVTermCount());
+    assertEquals(1, adp.getCVTerm(0).getResourceCount());
+    assertEquals(Arrays.asList(ATP), Arrays.asList(resources(atp.getCVTerm(0))));
+
+    annotations.flush();
+    assertEquals(1, atp.getCVTermCount());
+    assertEquals(1, atp.getCVTerm(0).getResourceCount());
+  }
+
+}
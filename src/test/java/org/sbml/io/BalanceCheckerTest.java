@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.io.Diagnostics.Category;
+
+/**
+ * Checks which reactions {@link BalanceChecker} reports as imbalanced, both
+ * for few reactions, which are checked on the calling thread, and for many,
+ * which are checked on the common fork-join pool.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class BalanceCheckerTest {
+
+  private static final List<String> METABOLITES = Arrays.asList(
+    TestTables.METABOLITES_HEADER,
+    "A;Ethylene;C2H4;x;0",
+    "W;Water;H2O;x;0",
+    "E;Ethanol;C2H6O;x;0",
+    "P;Proton;H;x;1",
+    "H2;Hydrogen;H2;x;0",
+    "O2;Oxygen;O2;x;0",
+    "N;Unknown;;x;0");
+
+  /** Balanced, missing hydrogen and oxygen, missing charge, balanced, exchange, and without formula. */
+  private static final String EQUATIONS[] = {
+    "A[c] + W[c] -> E[c]",
+    "E[c] -> A[c]",
+    "P[c] -> 0.5 H2[c]",
+    "2 H2[c] + O2[c] -> 2 W[c]",
+    "A[c] -> ",
+    "N[c] -> A[c]"
+  };
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param n
+   *        the number of reactions, whose equations repeat
+   *        {@link #EQUATIONS}
+   * @return the problems found in the tables.
+   * @throws Exception
+   */
+  private Diagnostics check(int n) throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.writeLines(metabolites, METABOLITES);
+    List<String> lines = new ArrayList<String>();
+    lines.add(TestTables.REACTIONS_HEADER);
+    for (int i = 0; i < n; i++) {
+      lines.add("R" + i + ";;" + EQUATIONS[i % EQUATIONS.length] + ";;;;;false;0;1000;;;;;");
+    }
+    TestTables.writeLines(reactions, lines);
+    ConversionOptions options = TestTables.options();
+    options.setCheckBalance(true);
+    return new Table2Model(metabolites, reactions, options).getDiagnostics();
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testFewReactions() throws Exception {
+    TestTables.MessageLog log = new TestTables.MessageLog(BalanceChecker.class);
+    Diagnostics diagnostics;
+    try {
+      diagnostics = check(EQUATIONS.length);
+    } finally {
+      log.close();
+    }
+    assertEquals(2, diagnostics.getCount(Category.UNBALANCED_REACTION));
+    assertEquals(Arrays.asList("row 2: R_R1: H -2, O -1", "row 3: R_R2: charge -1"),
+      diagnostics.getSamples(Category.UNBALANCED_REACTION));
+    assertTrue(log.getMessages().toString(), log.getMessages().get(0).endsWith(": 2 imbalanced, 2 skipped."));
+  }
+
+  /**
+   * The imbalanced reactions are reported in table order, although they are
+   * checked in parallel.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testManyReactions() throws Exception {
+    int n = 600 * EQUATIONS.length;
+    TestTables.MessageLog log = new TestTables.MessageLog(BalanceChecker.class);
+    Diagnostics diagnostics;
+    try {
+      diagnostics = check(n);
+    } finally {
+      log.close();
+    }
+    assertEquals(1200, diagnostics.getCount(Category.UNBALANCED_REACTION));
+    assertEquals(Arrays.asList("row 2: R_R1: H -2, O -1", "row 3: R_R2: charge -1", "row 8: R_R7: H -2, O -1",
+      "row 9: R_R8: charge -1", "row 14: R_R13: H -2, O -1"), diagnostics.getSamples(Category.UNBALANCED_REACTION));
+    assertTrue(log.getMessages().toString(), log.getMessages().get(0).startsWith("Checked the balance of 2400 reactions"));
+    assertTrue(log.getMessages().toString(), log.getMessages().get(0).endsWith(": 1200 imbalanced, 1200 skipped."));
+  }
+
+  /**
+   * A changed formula is checked again in the reactions of the metabolite,
+   * although their rows have not changed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testIncremental() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.writeLines(metabolites, METABOLITES);
+    List<String> lines = new ArrayList<String>();
+    lines.add(TestTables.REACTIONS_HEADER);
+    for (int i = 0; i < 4; i++) {
+      lines.add("R" + i + ";;" + EQUATIONS[i] + ";;;;;false;0;1000;;;;;");
+    }
+    TestTables.writeLines(reactions, lines);
+    ConversionOptions options = TestTables.options();
+    options.setCheckBalance(true);
+    options.setDetailed(true);
+    options.setIncremental(true);
+    File output = new File(folder.getRoot(), "model.xml");
+    TestTables.convert(metabolites, reactions, output, options);
+
+    lines = new ArrayList<String>(METABOLITES);
+    lines.set(lines.indexOf("E;Ethanol;C2H6O;x;0"), "E;Ethanol;C2H5O;x;-1");
+    TestTables.writeLines(metabolites, lines);
+    TestTables.MessageLog log = new TestTables.MessageLog(BalanceChecker.class);
+    TestTables.MessageLog updates = new TestTables.MessageLog(IncrementalConverter.class);
+    try {
+      TestTables.convert(metabolites, reactions, output, options);
+    } finally {
+      log.close();
+      updates.close();
+    }
+    assertTrue(updates.getMessages().toString(),
+      updates.getMessages().contains("Updated 1 metabolites, removed 0 and built 0 reactions."));
+    List<String> messages = log.getMessages();
+    assertEquals(messages.toString(), 3, messages.size());
+    assertEquals("Reaction 'R_R0' is not balanced, products minus reactants: H -1, charge -1", messages.get(0));
+    assertEquals("Reaction 'R_R1' is not balanced, products minus reactants: H -1, O -1, charge 1", messages.get(1));
+    assertTrue(messages.get(2), messages.get(2).startsWith("Checked the balance of 2 reactions"));
+    assertTrue(messages.get(2), messages.get(2).endsWith(": 2 imbalanced, 0 skipped."));
+  }
+
+}
@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks how {@link BatchConverter} finds its jobs and that it runs them
+ * concurrently, but independently of each other.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class BatchConverterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * A converter that remembers how many jobs run at most at the same time.
+   */
+  private static class CountingConverter extends BatchConverter {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * @param options
+     */
+    CountingConverter(ConversionOptions options) {
+      super(options);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sbml.io.BatchConverter#convert(org.sbml.io.BatchConverter.Job)
+     */
+    @Override
+    Result convert(Job job) {
+      int n = running.incrementAndGet();
+      maxRunning.accumulateAndGet(n, Math::max);
+      try {
+        // Give the other jobs time to start if they are allowed to.
+        Thread.sleep(100L);
+        return super.convert(job);
+      } catch (InterruptedException exc) {
+        throw new IllegalStateException(exc);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+  }
+
+  /**
+   * Writes the tables of a small model.
+   *
+   * @param metabolites
+   * @param reactions
+   * @param seed
+   * @throws IOException
+   */
+  private static void write(File metabolites, File reactions, long seed) throws IOException {
+    TestTables.write(metabolites, reactions, 20, seed);
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testManifest() throws IOException {
+    File dir = folder.newFolder("manifest");
+    File manifest = new File(dir, "models.tsv");
+    File absolute = new File(folder.getRoot(), "other.xml");
+    TestTables.writeLines(manifest, Arrays.asList(
+      "# metabolites\treactions\toutput",
+      "a_met.csv\ta_rxn.csv\tout/a.xml",
+      "",
+      "  b met.csv\tb_rxn.csv.gz\t" + absolute.getAbsolutePath(),
+      "c_met.csv  c_rxn.csv   c.xml"));
+    List<BatchConverter.Job> jobs = BatchConverter.findJobs(manifest);
+    assertEquals(3, jobs.size());
+    assertEquals(new File(dir, "a_met.csv"), jobs.get(0).getMetabolites());
+    assertEquals(new File(dir, "a_rxn.csv"), jobs.get(0).getReactions());
+    assertEquals(new File(dir, "out/a.xml"), jobs.get(0).getOutput());
+    assertEquals(new File(dir, "b met.csv"), jobs.get(1).getMetabolites());
+    assertEquals(new File(dir, "b_rxn.csv.gz"), jobs.get(1).getReactions());
+    assertEquals(absolute, jobs.get(1).getOutput());
+    assertEquals(new File(dir, "c.xml"), jobs.get(2).getOutput());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IOException.class)
+  public void testInvalidManifest() throws IOException {
+    File manifest = folder.newFile("models.tsv");
+    TestTables.writeLines(manifest, Arrays.asList("a_met.csv\ta_rxn.csv\ta.xml", "b_met.csv\tb.xml"));
+    BatchConverter.readManifest(manifest);
+  }
+
+  /**
+   * Pairs of tables are found by their names, and tables without partner are
+   * skipped.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testDirectory() throws IOException {
+    File dir = folder.newFolder("tables");
+    for (String name : new String[] {"b_metabolites.csv", "b_reactions.csv", "a_metabolites.tsv.gz",
+        "a_reactions.tsv.gz", "c_metabolites.csv", "c_reactions.tsv", "notes.txt"}) {
+      new File(dir, name).createNewFile();
+    }
+    List<BatchConverter.Job> jobs = BatchConverter.findJobs(dir);
+    assertEquals(2, jobs.size());
+    assertEquals(new File(dir, "a_metabolites.tsv.gz"), jobs.get(0).getMetabolites());
+    assertEquals(new File(dir, "a_reactions.tsv.gz"), jobs.get(0).getReactions());
+    assertEquals(new File(dir, "a.xml"), jobs.get(0).getOutput());
+    assertEquals(new File(dir, "b_reactions.csv"), jobs.get(1).getReactions());
+    assertEquals(new File(dir, "b.xml"), jobs.get(1).getOutput());
+  }
+
+  /**
+   * At most as many conversions as jobs are allowed run at the same time,
+   * and a failing conversion does not stop the others.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testConvert() throws IOException {
+    File dir = folder.newFolder("batch");
+    List<BatchConverter.Job> jobs = new ArrayList<BatchConverter.Job>();
+    for (int i = 0; i < 6; i++) {
+      File metabolites = new File(dir, "m" + i + BatchConverter.METABOLITES_SUFFIX + ".csv");
+      File reactions = new File(dir, "m" + i + BatchConverter.REACTIONS_SUFFIX + ".csv");
+      if (i != 2) {
+        write(metabolites, reactions, i);
+      }
+      jobs.add(new BatchConverter.Job(metabolites, reactions, new File(dir, "m" + i + ".xml")));
+    }
+    ConversionOptions options = TestTables.options();
+    options.setJobs(2);
+    CountingConverter converter = new CountingConverter(options);
+    List<BatchConverter.Result> results = converter.convert(jobs);
+
+    assertEquals(2, converter.maxRunning.get());
+    assertEquals(jobs.size(), results.size());
+    for (int i = 0; i < jobs.size(); i++) {
+      BatchConverter.Result result = results.get(i);
+      assertEquals(jobs.get(i), result.getJob());
+      if (i == 2) {
+        assertFalse(result.isSuccess());
+        assertTrue(String.valueOf(result.getFailure()), result.getFailure() instanceof IOException);
+        assertFalse(jobs.get(i).getOutput().exists());
+      } else {
+        assertNull(String.valueOf(result.getFailure()), result.getFailure());
+        assertTrue(jobs.get(i).getOutput().length() > 0L);
+      }
+    }
+  }
+
+  /**
+   * Models converted in a batch equal those converted one by one.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLikeSingleConversion() throws Exception {
+    File dir = folder.newFolder("single");
+    File metabolites = new File(dir, "model" + BatchConverter.METABOLITES_SUFFIX + ".csv");
+    File reactions = new File(dir, "model" + BatchConverter.REACTIONS_SUFFIX + ".csv");
+    TestTables.write(metabolites, reactions, 100, 5L);
+    String expected = TestTables.convert(metabolites, reactions, new File(folder.newFolder("expected"), "model.xml"),
+      TestTables.options());
+    ConversionOptions options = TestTables.options();
+    options.setJobs(1);
+    List<BatchConverter.Result> results = new BatchConverter(options).convert(BatchConverter.findJobs(dir));
+    assertEquals(1, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertEquals(expected, TestTables.normalize(TestTables.read(new File(dir, "model.xml"))));
+  }
+
+}
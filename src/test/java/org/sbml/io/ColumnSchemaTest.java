@@ -0,0 +1,215 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks how {@link ColumnSchema} finds columns by their names in the header
+ * row and in a mapping file, and that tables with other column orders are
+ * converted to the same model.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ColumnSchemaTest {
+
+  /** Header rows of the <i>i</i>CW773 tables. */
+  private static final String ICW773_METABOLITES = "Abbreviation;Officialname;Formula (neutral);Formula (charged);Charge;KEGG ID";
+  private static final String ICW773_REACTIONS = "Abbreviation;Officialname;Equation;GPR;Genes;Proteins;Subsystem;Reversible;Lower bound;Upper bound;Objective;Confidence Score;EC Number;Notes;References";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param header
+   * @return the header as a row.
+   */
+  private static TableRow header(String header) {
+    return TableRow.of(0, header.split(";", -1));
+  }
+
+  /**
+   * @param mapping
+   *        lines of a mapping file, if any
+   * @return options that find columns by their names.
+   * @throws IOException
+   */
+  private ConversionOptions options(String... mapping) throws IOException {
+    ConversionOptions options = TestTables.options();
+    options.setColumnsFromHeader(true);
+    if (mapping.length > 0) {
+      File file = folder.newFile();
+      TestTables.writeLines(file, Arrays.asList(mapping));
+      options.setColumnMapping(file);
+    }
+    return options;
+  }
+
+  /**
+   * The columns of the <i>i</i>CW773 tables are found at their default
+   * positions.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testICW773() throws IOException {
+    TestTables.MessageLog log = new TestTables.MessageLog(ColumnSchema.class);
+    try {
+      ColumnSchema<SpeciesRowReader.Column> species = ColumnSchema.resolve(SpeciesRowReader.Column.class,
+        "metabolites", header(ICW773_METABOLITES), options());
+      for (SpeciesRowReader.Column column : SpeciesRowReader.Column.values()) {
+        assertEquals(column.name(), column.getDefaultPosition(), species.getPosition(column));
+      }
+      ColumnSchema<ReactionRowReader.Column> reactions = ColumnSchema.resolve(ReactionRowReader.Column.class,
+        "reactions", header(ICW773_REACTIONS), options());
+      for (ReactionRowReader.Column column : ReactionRowReader.Column.values()) {
+        assertEquals(column.name(), column.getDefaultPosition(), reactions.getPosition(column));
+      }
+    } finally {
+      log.close();
+    }
+    assertEquals(Collections.emptyList(), log.getMessages());
+  }
+
+  /**
+   * Without the option, the header is not looked at.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testDefaults() throws IOException {
+    ColumnSchema<SpeciesRowReader.Column> schema = ColumnSchema.resolve(SpeciesRowReader.Column.class,
+      "metabolites", header("Charge;Abbreviation"), TestTables.options());
+    assertEquals(0, schema.getPosition(SpeciesRowReader.Column.ID));
+    assertEquals(4, schema.getPosition(SpeciesRowReader.Column.CHARGE));
+  }
+
+  @Test
+  public void testNormalize() {
+    assertEquals("formulaneutral", ColumnSchema.normalize("Formula (neutral)"));
+    assertEquals("lowerbound", ColumnSchema.normalize(" Lower_Bound "));
+  }
+
+  /**
+   * Columns can be mapped by name or position, or be declared as missing;
+   * other missing optional columns cause a warning.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testMapping() throws IOException {
+    TestTables.MessageLog log = new TestTables.MessageLog(ColumnSchema.class);
+    ColumnSchema<SpeciesRowReader.Column> schema;
+    try {
+      schema = ColumnSchema.resolve(SpeciesRowReader.Column.class, "metabolites",
+        header("Charge;Label;Key;Formula"), options("metabolites.id=key", "metabolites.formula=", "metabolites.name=1"));
+    } finally {
+      log.close();
+    }
+    assertEquals(2, schema.getPosition(SpeciesRowReader.Column.ID));
+    assertEquals(1, schema.getPosition(SpeciesRowReader.Column.NAME));
+    assertEquals(-1, schema.getPosition(SpeciesRowReader.Column.FORMULA));
+    assertEquals(0, schema.getPosition(SpeciesRowReader.Column.CHARGE));
+    assertEquals(Collections.emptyList(), log.getMessages());
+
+    TableRow row = TableRow.of(1, "-1", "Pyruvate", "pyr", "C3H3O3");
+    assertEquals("pyr", schema.get(row, SpeciesRowReader.Column.ID));
+    assertEquals("", schema.get(row, SpeciesRowReader.Column.FORMULA));
+    assertTrue(schema.isEmpty(row, SpeciesRowReader.Column.FORMULA));
+
+    log = new TestTables.MessageLog(ColumnSchema.class);
+    try {
+      ColumnSchema.resolve(SpeciesRowReader.Column.class, "metabolites", header("ID;Name"), options());
+    } finally {
+      log.close();
+    }
+    assertEquals(Arrays.asList("The header does not contain a column for metabolites.formula; it is left empty.",
+      "The header does not contain a column for metabolites.charge; it is left empty."), log.getMessages());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IOException.class)
+  public void testMissingRequiredColumn() throws IOException {
+    ColumnSchema.resolve(ReactionRowReader.Column.class, "reactions", header("Abbreviation;Name"),
+      options());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IOException.class)
+  public void testMappedColumnNotInHeader() throws IOException {
+    ColumnSchema.resolve(SpeciesRowReader.Column.class, "metabolites", header("Abbreviation;Name"),
+      options("metabolites.name=Label"));
+  }
+
+  /**
+   * Reverses the order of all columns of both tables, renames one column
+   * that is then mapped, and adds a column that is not used.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReorderedTables() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 100, 3L);
+    String expected = TestTables.convert(metabolites, reactions, new File(folder.newFolder("default"), "model.xml"),
+      TestTables.options());
+
+    File dir = folder.newFolder("reordered");
+    File reorderedMetabolites = new File(dir, metabolites.getName());
+    File reorderedReactions = new File(dir, reactions.getName());
+    reverse(metabolites, reorderedMetabolites, ICW773_METABOLITES);
+    reverse(reactions, reorderedReactions, ICW773_REACTIONS.replace("Lower bound", "Min flux"));
+    String model = TestTables.convert(reorderedMetabolites, reorderedReactions, new File(dir, "model.xml"),
+      options("reactions.lower_bound=Min flux"));
+    assertEquals(expected, model);
+  }
+
+  /**
+   * @param in
+   * @param out
+   * @param header
+   *        the new header row, which may have more columns than the table
+   * @throws IOException
+   */
+  private static void reverse(File in, File out, String header) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    TableTokenizer tokenizer = new TableTokenizer(in, ';', StandardCharsets.UTF_8);
+    try {
+      List<String> names = Arrays.asList(header.split(";", -1));
+      TableRow row = tokenizer.next();
+      while (row != null) {
+        List<String> columns = new ArrayList<String>();
+        for (int i = 0; i < names.size(); i++) {
+          String column = row.getRowNumber() == 0 ? names.get(i) : i < row.size() ? row.get(i) : "";
+          columns.add(column.contains(";") || column.contains("\"") ? '"' + column.replace("\"", "\"\"") + '"' : column);
+        }
+        Collections.reverse(columns);
+        lines.add(String.join(";", columns));
+        row = tokenizer.next();
+      }
+    } finally {
+      tokenizer.close();
+    }
+    TestTables.writeLines(out, lines);
+  }
+
+}
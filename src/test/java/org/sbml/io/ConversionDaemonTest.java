@@ -0,0 +1,305 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Starts a {@link ConversionDaemon} and sends requests to it, with and
+ * without the {@link ConversionClient}.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionDaemonTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /** The home directory of the user before the test. */
+  private String home;
+
+  private int port;
+
+  private Thread daemon;
+
+  /** Messages that the client has printed. */
+  private ByteArrayOutputStream messages;
+
+  /**
+   * Starts a daemon on a free port, which keeps its token in a temporary home
+   * directory.
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    home = System.getProperty("user.home");
+    System.setProperty("user.home", folder.newFolder("home").getPath());
+    port = getFreePort();
+    daemon = start(new ConversionDaemon(port), port);
+    messages = new ByteArrayOutputStream();
+  }
+
+  /**
+   * @return a port on which nothing listens.
+   * @throws IOException
+   */
+  private static int getFreePort() throws IOException {
+    ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * @param conversionDaemon
+   * @param port
+   *        the port of the daemon
+   * @return the thread of the daemon, which has written its token.
+   * @throws InterruptedException
+   */
+  private static Thread start(final ConversionDaemon conversionDaemon, int port) throws InterruptedException {
+    Thread thread = new Thread(() -> {
+      try {
+        conversionDaemon.run();
+      } catch (IOException exc) {
+        throw new IllegalStateException(exc);
+      }
+    });
+    thread.start();
+    File tokenFile = ConversionClient.getTokenFile(port);
+    for (int i = 0; (i < 500) && !(tokenFile.isFile() && (tokenFile.length() > 0L)); i++) {
+      Thread.sleep(10L);
+    }
+    assertTrue(tokenFile.isFile());
+    return thread;
+  }
+
+  /**
+   * Stops the daemon on the given port.
+   *
+   * @param port
+   * @param thread
+   *        the thread of the daemon
+   * @throws Exception
+   */
+  private void stop(int port, Thread thread) throws Exception {
+    assertEquals(0, ConversionClient.send(port, new String[] {ConversionDaemon.SHUTDOWN}, folder.getRoot(),
+      new PrintStream(messages, true, "UTF-8")));
+    thread.join(10000L);
+    assertFalse(thread.isAlive());
+  }
+
+  /**
+   * Stops the daemon, which removes its token.
+   *
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    try {
+      stop(port, daemon);
+      assertFalse(ConversionClient.getTokenFile(port).exists());
+    } finally {
+      System.setProperty("user.home", home);
+    }
+  }
+
+  /**
+   * @param args
+   * @return the exit code of the client.
+   * @throws IOException
+   */
+  private int send(String... args) throws IOException {
+    return ConversionClient.send(port, args, folder.getRoot(), new PrintStream(messages, true, "UTF-8"));
+  }
+
+  /**
+   * Sends a request without the client.
+   *
+   * @param lines
+   *        all lines of the request
+   * @return all lines of the answer.
+   * @throws IOException
+   */
+  private List<String> request(String... lines) throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    try {
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      for (String line : lines) {
+        out.write(line);
+        out.write('\n');
+      }
+      out.flush();
+      socket.shutdownOutput();
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      List<String> answer = new ArrayList<String>();
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        answer.add(line);
+      }
+      return answer;
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * The token can only be read by the owner of the daemon.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testTokenFile() throws IOException {
+    File tokenFile = ConversionClient.getTokenFile(port);
+    assertEquals(64, tokenFile.length());
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+      assertEquals("rwx------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.getParentFile().toPath())));
+    }
+  }
+
+  /**
+   * Relative paths are resolved against the directory of the client, and the
+   * model equals that of a conversion without daemon.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 100, 9L);
+    String expected = TestTables.convert(metabolites, reactions, new File(folder.newFolder("expected"), "model.xml"),
+      TestTables.options());
+    for (int i = 0; i < 2; i++) {
+      File output = new File(folder.getRoot(), "model.xml");
+      output.delete();
+      assertEquals(messages.toString("UTF-8"), 0,
+        send("--charset=UTF-8", metabolites.getName(), reactions.getName(), output.getName()));
+      assertEquals(expected, TestTables.normalize(TestTables.read(output)));
+    }
+  }
+
+  /**
+   * A failing conversion is reported to the client.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFailure() throws Exception {
+    assertEquals(1, send("missing_metabolites.csv", "missing_reactions.csv", "model.xml"));
+    assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains("missing_metabolites.csv"));
+    assertEquals(1, send("--unknown", "a", "b", "c"));
+    assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains("Unknown option --unknown"));
+    assertFalse(new File(folder.getRoot(), "model.xml").exists());
+  }
+
+  /**
+   * Requests with a wrong token or without any are rejected before they are
+   * run.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testInvalidToken() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 20, 9L);
+    String token = new String(Files.readAllBytes(ConversionClient.getTokenFile(port).toPath()), StandardCharsets.UTF_8);
+    String wrong = (token.charAt(0) == '0' ? '1' : '0') + token.substring(1);
+    String dir = folder.getRoot().getPath();
+    List<String> invalid = new ArrayList<String>();
+    invalid.add(ConversionDaemon.ERROR + "Invalid token.");
+    assertEquals(invalid, request(wrong, dir, metabolites.getName(), reactions.getName(), "model.xml", ""));
+    assertEquals(invalid, request(token.substring(1), dir, ConversionDaemon.SHUTDOWN, ""));
+    assertEquals(invalid, request(dir, metabolites.getName(), reactions.getName(), "model.xml", ""));
+    assertEquals(invalid, request());
+    assertFalse(new File(folder.getRoot(), "model.xml").exists());
+    // The daemon is still running.
+    assertEquals(0, send("--charset=UTF-8", metabolites.getName(), reactions.getName(), "model.xml"));
+    assertTrue(new File(folder.getRoot(), "model.xml").isFile());
+  }
+
+  /**
+   * The directory of the tokens is restricted to its owner again when the
+   * next daemon starts.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDirectoryPermissions() throws Exception {
+    if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      return;
+    }
+    Path dir = ConversionClient.getTokenFile(port).getParentFile().toPath();
+    Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxr-xr-x"));
+    int otherPort = getFreePort();
+    Thread other = start(new ConversionDaemon(otherPort), otherPort);
+    try {
+      assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+    } finally {
+      stop(otherPort, other);
+    }
+  }
+
+  /**
+   * Errors, not only exceptions, are reported to the client, and the daemon
+   * keeps running.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testError() throws Exception {
+    int otherPort = getFreePort();
+    ConversionDaemon failing = new ConversionDaemon(otherPort) {
+      /* (non-Javadoc)
+       * @see org.sbml.io.ConversionDaemon#convert(java.io.File, java.util.List)
+       */
+      @Override
+      void convert(File dir, List<String> args) throws Exception {
+        throw new OutOfMemoryError("Java heap space");
+      }
+    };
+    Thread other = start(failing, otherPort);
+    try {
+      PrintStream print = new PrintStream(messages, true, "UTF-8");
+      assertEquals(1, ConversionClient.send(otherPort, new String[] {"a", "b", "c"}, folder.getRoot(), print));
+      assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains("Java heap space"));
+      assertEquals(1, ConversionClient.send(otherPort, new String[] {"a", "b", "c"}, folder.getRoot(), print));
+    } finally {
+      stop(otherPort, other);
+    }
+  }
+
+}
@@ -0,0 +1,310 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that all ways to convert the same tables write the same model as the
+ * sequential conversion of the whole document.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionEquivalenceTest {
+
+  /** Name of all written models, which determines the identifier of the model. */
+  private static final String MODEL = "model.xml";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File metabolites;
+
+  private File reactions;
+
+  private String expected;
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    metabolites = new File(folder.getRoot(), "metabolites.csv");
+    reactions = new File(folder.getRoot(), "reactions.csv");
+    TestTables.write(metabolites, reactions, 300, 42L);
+    expected = convert("sequential", TestTables.options());
+    assertTrue(expected.contains("id=\"R_RXN299\""));
+  }
+
+  /**
+   * @param name
+   *        the directory of the model
+   * @param options
+   * @return the normalized model.
+   * @throws Exception
+   */
+  private String convert(String name, ConversionOptions options) throws Exception {
+    File output = new File(TestTables.newDirectory(folder.getRoot(), name), MODEL);
+    return TestTables.convert(metabolites, reactions, output, options);
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testParallel() throws Exception {
+    ConversionOptions options = TestTables.options();
+    options.setParallelism(4);
+    assertEquals(expected, convert("parallel", options));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testStreaming() throws Exception {
+    ConversionOptions options = TestTables.options();
+    options.setStreaming(true);
+    assertEquals(expected, convert("streaming", options));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testParallelStreaming() throws Exception {
+    ConversionOptions options = TestTables.options();
+    options.setStreaming(true);
+    options.setParallelism(4);
+    assertEquals(expected, convert("parallel-streaming", options));
+  }
+
+  /**
+   * Converts the tables incrementally, changes, removes, and adds rows of
+   * both tables, and updates the model, which must then contain the same
+   * elements as a complete conversion of the changed tables. Removing rows
+   * also removes the labels and names that they gave to gene products.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testIncremental() throws Exception {
+    ConversionOptions options = TestTables.options();
+    options.setIncremental(true);
+    File output = new File(TestTables.newDirectory(folder.getRoot(), "incremental"), MODEL);
+    String model = TestTables.convert(metabolites, reactions, output, options);
+    TestTables.assertEquivalent(expected, model);
+
+    List<String> lines = TestTables.readLines(reactions);
+    for (int i = lines.size() - 1; i > 0; i--) {
+      String columns[] = lines.get(i).split(";", -1);
+      if (columns[0].equals("RXN5")) {
+        columns[3] = "cg1 and cg99";
+        columns[4] = "cg1 cg99";
+        columns[5] = "Pcg1 Pcg99";
+        columns[9] = "33";
+        lines.set(i, String.join(";", columns));
+      } else if (columns[0].equals("RXN10") || columns[0].equals("TR_met2")) {
+        lines.remove(i);
+      }
+    }
+    lines.add("RXN_NEW;New reaction;met1[q] -> 2 met2[q];cg98;cg98;Pcg98;Glycolysis;false;0;33;;2;1.1.1.1;;");
+    TestTables.writeLines(reactions, lines);
+    lines = TestTables.readLines(metabolites);
+    lines.set(2, "met1;Glucose;C6H12O6;x;0");
+    lines.remove(4);
+    TestTables.writeLines(metabolites, lines);
+
+    // Only the changed rows are converted again.
+    TestTables.MessageLog log = new TestTables.MessageLog(IncrementalConverter.class);
+    try {
+      model = TestTables.convert(metabolites, reactions, output, options);
+    } finally {
+      log.close();
+    }
+    assertTrue(log.getMessages().toString(), log.getMessages().contains("Updated 2 metabolites, removed 2 and built 2 reactions."));
+    TestTables.assertEquivalent(convert("complete", TestTables.options()), model);
+
+    // Label, name, and annotation of a gene product come from the last row that still lists its gene.
+    lines = TestTables.readLines(reactions);
+    lines.add("RXN_A;A;met1[c] -> met2[c];cg95 or cg1;cg1;Other;;false;0;1000;;;;;");
+    lines.add("RXN_B;B;met2[c] -> met1[c];cg95;cg95;Pcg95;;false;0;1000;;;;;");
+    for (int i = 0; i < 3; i++) {
+      TestTables.writeLines(reactions, lines);
+      model = TestTables.convert(metabolites, reactions, output, options);
+      TestTables.assertEquivalent(convert("complete" + i, TestTables.options()), model);
+      lines.remove(lines.size() - 1);
+    }
+  }
+
+  /**
+   * Streaming and incremental conversions report and remove the same blocked
+   * reactions and dead-end metabolites as the conversion of the whole
+   * document.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testTopology() throws Exception {
+    for (TopologyAnalysis.Mode mode : TopologyAnalysis.Mode.values()) {
+      ConversionOptions options = TestTables.options();
+      options.setTopology(mode);
+      String model = convert(mode + "-sequential", options);
+      if (mode == TopologyAnalysis.Mode.REPORT) {
+        assertEquals(expected, model);
+      } else {
+        assertTrue(model.length() < expected.length());
+      }
+      options.setStreaming(true);
+      assertEquals(mode.toString(), model, convert(mode + "-streaming", options));
+      options.setStreaming(false);
+      options.setIncremental(true);
+      TestTables.assertEquivalent(model, convert(mode + "-incremental", options));
+    }
+  }
+
+  /**
+   * Reads both tables compressed with gzip and writes a compressed model.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testCompressed() throws Exception {
+    File dir = TestTables.newDirectory(folder.getRoot(), "compressed");
+    File gzMetabolites = new File(dir, metabolites.getName() + ".gz");
+    File gzReactions = new File(dir, reactions.getName() + ".gz");
+    TestTables.writeLines(gzMetabolites, TestTables.readLines(metabolites));
+    TestTables.writeLines(gzReactions, TestTables.readLines(reactions));
+    assertEquals(expected, TestTables.convert(gzMetabolites, gzReactions, new File(dir, MODEL), TestTables.options()));
+    assertEquals(expected, TestTables.convert(gzMetabolites, gzReactions, new File(dir, MODEL + ".gz"), TestTables.options()));
+    ConversionOptions options = TestTables.options();
+    options.setStreaming(true);
+    assertEquals(expected, TestTables.convert(gzMetabolites, gzReactions, new File(dir, MODEL), options));
+  }
+
+  /**
+   * Writes snapshots into a directory that does not exist yet, loads them in
+   * the next conversion, and parses the table again after it has changed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    File snapshots = new File(folder.getRoot(), "snapshots/tables");
+    ConversionOptions options = TestTables.options();
+    options.setSnapshot(true);
+    options.setSnapshotDirectory(snapshots);
+    assertEquals(expected, convert("snapshot1", options));
+    assertTrue(TableSnapshot.getFile(metabolites, snapshots).isFile());
+    assertTrue(TableSnapshot.getFile(reactions, snapshots).isFile());
+
+    TestTables.MessageLog log = new TestTables.MessageLog(TableSnapshot.class);
+    try {
+      assertEquals(expected, convert("snapshot2", options));
+      options.setStreaming(true);
+      assertEquals(expected, convert("snapshot3", options));
+    } finally {
+      log.close();
+    }
+    // Streaming reads the reaction table twice.
+    assertEquals(log.getMessages().toString(), 5, count(log.getMessages(), "Loaded "));
+
+    List<String> lines = TestTables.readLines(reactions);
+    lines.set(1, lines.get(1).replace(";-10;", ";-20;"));
+    TestTables.writeLines(reactions, lines);
+    options.setStreaming(false);
+    log = new TestTables.MessageLog(TableSnapshot.class);
+    String model;
+    try {
+      model = convert("snapshot4", options);
+    } finally {
+      log.close();
+    }
+    assertEquals(log.getMessages().toString(), 1, count(log.getMessages(), "Loaded "));
+    assertEquals(convert("complete", TestTables.options()), model);
+  }
+
+  /**
+   * Damaged snapshots are ignored and replaced, even if their counts would
+   * not fit into the heap.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDamagedSnapshot() throws Exception {
+    File snapshots = folder.newFolder("snapshots");
+    ConversionOptions options = TestTables.options();
+    options.setSnapshot(true);
+    options.setSnapshotDirectory(snapshots);
+    assertEquals(expected, convert("snapshot1", options));
+    // Magic number, type, separator, character set, columns from header, and SHA-1 hash value of the table.
+    int header = 8 + 2 + 2 + 2 + options.getCharset().name().length() + 1 + 20;
+    int counts[] = {Integer.MAX_VALUE, -2};
+    File tables[] = {metabolites, reactions};
+    for (int i = 0; i < tables.length; i++) {
+      RandomAccessFile snapshot = new RandomAccessFile(TableSnapshot.getFile(tables[i], snapshots), "rw");
+      try {
+        snapshot.seek(header);
+        snapshot.writeInt(counts[i]);
+      } finally {
+        snapshot.close();
+      }
+    }
+
+    TestTables.MessageLog log = new TestTables.MessageLog(TableSnapshot.class);
+    try {
+      assertEquals(expected, convert("snapshot2", options));
+      assertEquals(expected, convert("snapshot3", options));
+    } finally {
+      log.close();
+    }
+    assertEquals(log.getMessages().toString(), 2, count(log.getMessages(), "Ignoring damaged snapshot "));
+    assertEquals(log.getMessages().toString(), 2, count(log.getMessages(), "Loaded "));
+  }
+
+  /**
+   * A snapshot that cannot be written does not affect the conversion.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSnapshotNotWritable() throws Exception {
+    ConversionOptions options = TestTables.options();
+    options.setSnapshot(true);
+    options.setSnapshotDirectory(new File(folder.newFile("file"), "snapshots"));
+    TestTables.MessageLog log = new TestTables.MessageLog(TableSnapshot.class);
+    try {
+      assertEquals(expected, convert("snapshot", options));
+    } finally {
+      log.close();
+    }
+    assertEquals(log.getMessages().toString(), 2, count(log.getMessages(), "Cannot write snapshot "));
+  }
+
+  /**
+   * @param messages
+   * @param prefix
+   * @return the number of messages that begin with the given prefix.
+   */
+  private static int count(List<String> messages, String prefix) {
+    int count = 0;
+    for (String message : messages) {
+      if (message.startsWith(prefix)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
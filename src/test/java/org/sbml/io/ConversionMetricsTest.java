@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs conversions and checks what {@link ConversionMetrics} reports about
+ * them, directly and through JMX.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class ConversionMetricsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File metabolites;
+
+  private File reactions;
+
+  /** Number of rows in both tables. */
+  private int rows;
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    metabolites = folder.newFile("metabolites.csv");
+    reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 600, 7L);
+    rows = TestTables.readLines(metabolites).size() + TestTables.readLines(reactions).size() - 2;
+    ConversionMetrics.getInstance().reset();
+  }
+
+  /**
+   * @param name
+   * @param options
+   * @throws Exception
+   */
+  private void convert(String name, ConversionOptions options) throws Exception {
+    TestTables.convert(metabolites, reactions, new File(folder.newFolder(name), "model.xml"), options);
+  }
+
+  /**
+   * @return the fraction of rules in the reaction table that are equal to a
+   *         rule in a previous row.
+   * @throws IOException
+   */
+  private double getGPRHitRate() throws IOException {
+    List<String> rules = new ArrayList<String>();
+    TableTokenizer tokenizer = new TableTokenizer(reactions, ';', StandardCharsets.UTF_8);
+    try {
+      tokenizer.next();
+      for (TableRow row = tokenizer.next(); row != null; row = tokenizer.next()) {
+        if (!row.get(3).trim().isEmpty()) {
+          rules.add(GPRCache.normalize(row.get(3)));
+        }
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return ((double) rules.size() - new HashSet<String>(rules).size()) / rules.size();
+  }
+
+  /**
+   * Each conversion adds its rows and the times of its phases, and the hit
+   * rates of its caches replace those of the previous conversion.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testConversions() throws Exception {
+    ConversionMetrics metrics = ConversionMetrics.getInstance();
+    assertEquals(0L, metrics.getConversionCount());
+    assertTrue(Double.isNaN(metrics.getIdentifierCacheHitRate()));
+
+    convert("dom", TestTables.options());
+    assertEquals(1L, metrics.getConversionCount());
+    assertEquals(rows, metrics.getRowCount());
+    Map<String, Long> times = metrics.getLastPhaseTimes();
+    assertEquals(Arrays.asList("UNITS", "METABOLITES", "REACTIONS", "ANNOTATION", "CLEANUP", "WRITE"),
+      Arrays.asList(times.keySet().toArray()));
+    assertTrue(times.toString(), times.get("REACTIONS") > 0L);
+    assertTrue(times.toString(), times.get("WRITE") > 0L);
+    assertTrue(metrics.getRowsPerSecond() > 0d);
+    double identifierCacheHitRate = metrics.getIdentifierCacheHitRate();
+    // Most metabolites occur in several reactions.
+    assertTrue(String.valueOf(identifierCacheHitRate), (identifierCacheHitRate > 0.5d) && (identifierCacheHitRate < 1d));
+    assertEquals(getGPRHitRate(), metrics.getGPRCacheHitRate(), 0d);
+
+    ConversionOptions options = TestTables.options();
+    options.setStreaming(true);
+    convert("streaming", options);
+    assertEquals(2L, metrics.getConversionCount());
+    assertEquals(2L * rows, metrics.getRowCount());
+    // Streaming reads the reaction table twice with the same cache.
+    assertTrue(metrics.getIdentifierCacheHitRate() > identifierCacheHitRate);
+    for (Map.Entry<String, Long> entry : metrics.getPhaseTimes().entrySet()) {
+      assertTrue(entry.getKey(), entry.getValue() >= metrics.getLastPhaseTimes().get(entry.getKey()));
+    }
+
+    metrics.reset();
+    assertEquals(0L, metrics.getConversionCount());
+    assertEquals(0L, metrics.getRowCount());
+    assertEquals(0L, metrics.getPhaseTimes().get("REACTIONS").longValue());
+  }
+
+  /**
+   * The metrics are registered with the platform MBean server.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testMBean() throws Exception {
+    convert("jmx", TestTables.options());
+    ConversionMetrics metrics = ConversionMetrics.getInstance();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(ConversionMetrics.OBJECT_NAME);
+    assertEquals(1L, server.getAttribute(name, "ConversionCount"));
+    assertEquals(Long.valueOf(rows), server.getAttribute(name, "RowCount"));
+    assertEquals(metrics.getGPRCacheHitRate(), (Double) server.getAttribute(name, "GPRCacheHitRate"), 0d);
+    TabularData times = (TabularData) server.getAttribute(name, "LastPhaseTimes");
+    assertEquals(ConversionMetrics.Phase.values().length, times.size());
+    assertTrue(((Long) server.getAttribute(name, "PeakHeapUsage")) > 0L);
+    server.invoke(name, "reset", null, null);
+    assertEquals(0L, metrics.getConversionCount());
+  }
+
+}
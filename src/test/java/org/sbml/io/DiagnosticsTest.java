@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.io.Diagnostics.Category;
+
+/**
+ * Checks that {@link Diagnostics} counts problems with a few samples and that
+ * conversions only log per-row messages if details are wanted.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class DiagnosticsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Only the first samples of each category are kept.
+   */
+  @Test
+  public void testCounts() {
+    Diagnostics diagnostics = new Diagnostics();
+    assertEquals(0, diagnostics.getTotalCount());
+    assertEquals(Collections.emptyList(), diagnostics.getSamples(Category.MISSING_GENE));
+    for (int i = 1; i <= Diagnostics.MAX_SAMPLES + 2; i++) {
+      diagnostics.record(Category.MISSING_GENE, i, "g" + i);
+    }
+    diagnostics.record(Category.UNDECLARED_METABOLITE, -1, "M_x_c");
+    assertEquals(Diagnostics.MAX_SAMPLES + 2, diagnostics.getCount(Category.MISSING_GENE));
+    assertEquals(1, diagnostics.getCount(Category.UNDECLARED_METABOLITE));
+    assertEquals(0, diagnostics.getCount(Category.INVALID_GPR));
+    assertEquals(Diagnostics.MAX_SAMPLES + 3, diagnostics.getTotalCount());
+    assertEquals(Arrays.asList("row 1: g1", "row 2: g2", "row 3: g3", "row 4: g4", "row 5: g5"),
+      diagnostics.getSamples(Category.MISSING_GENE));
+    assertEquals(Arrays.asList("M_x_c"), diagnostics.getSamples(Category.UNDECLARED_METABOLITE));
+  }
+
+  /**
+   * All categories are reported in one message.
+   */
+  @Test
+  public void testSummary() {
+    Logger logger = Logger.getLogger(DiagnosticsTest.class.getName());
+    TestTables.MessageLog log = new TestTables.MessageLog(DiagnosticsTest.class);
+    try {
+      Diagnostics diagnostics = new Diagnostics();
+      diagnostics.logSummary(logger);
+      diagnostics.record(Category.UNDECLARED_METABOLITE, 12, "M_x_c");
+      diagnostics.record(Category.INVALID_GPR, 3, "g1 and");
+      diagnostics.record(Category.UNDECLARED_METABOLITE, 14, "M_y_c");
+      diagnostics.logSummary(logger);
+    } finally {
+      log.close();
+    }
+    assertEquals(Arrays.asList("No problems found in the tables.",
+      "Found 3 problems in the tables:"
+          + "\n  2 " + Category.UNDECLARED_METABOLITE.getDescription() + ", e.g., [row 12: M_x_c, row 14: M_y_c]"
+          + "\n  1 " + Category.INVALID_GPR.getDescription() + ", e.g., [row 3: g1 and]"), log.getMessages());
+  }
+
+  /**
+   * @param detailed
+   * @param log
+   *        collects the messages of the conversion
+   * @return the problems in tables that contain one problem of each kind.
+   * @throws Exception
+   */
+  private Diagnostics convert(boolean detailed, TestTables.MessageLog log) throws Exception {
+    File metabolites = folder.newFile();
+    File reactions = folder.newFile();
+    TestTables.writeLines(metabolites, Arrays.asList(TestTables.METABOLITES_HEADER,
+      "A;A;C2H4;x;0", "B;B;C2H4;x;0", "C;C;C2H4 2+;x;0"));
+    TestTables.writeLines(reactions, Arrays.asList(TestTables.REACTIONS_HEADER,
+      "R1;;A[c] -> B[c];g1;g1 g2;P1 P2;;false;0;1000;;;;;",
+      "R2;;B[c] <=> C[c];;;;;false;0;1000;;;;;",
+      "R3;;C[c] -> X[c];g3 and (g4;g3 g4;P3 P4;;false;0;1000;;;;;"));
+    ConversionOptions options = TestTables.options();
+    options.setDetailed(detailed);
+    try {
+      return new Table2Model(metabolites, reactions, options).getDiagnostics();
+    } finally {
+      log.close();
+    }
+  }
+
+  /**
+   * Without details, a conversion only logs the summary of the problems.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testConversion() throws Exception {
+    TestTables.MessageLog log = new TestTables.MessageLog(ReactionRowReader.class);
+    Diagnostics diagnostics = convert(false, log);
+    assertEquals(Collections.emptyList(), log.getMessages());
+    assertEquals(Arrays.asList("row 1: g2", "row 3: g3", "row 3: g4"), diagnostics.getSamples(Category.MISSING_GENE));
+    assertEquals(Arrays.asList("row 2: R_R2"), diagnostics.getSamples(Category.REVERSIBILITY_CONFLICT));
+    assertEquals(Arrays.asList("row 3: g3 and (g4"), diagnostics.getSamples(Category.INVALID_GPR));
+    assertEquals(Arrays.asList("row 3: M_X_c"), diagnostics.getSamples(Category.UNDECLARED_METABOLITE));
+    assertEquals(Arrays.asList("row 3: C2H4 2+"), diagnostics.getSamples(Category.INVALID_FORMULA));
+    // The genes of a rule that cannot be parsed are missing as well.
+    assertEquals(7, diagnostics.getTotalCount());
+  }
+
+  /**
+   * With details, each problem is also logged when it occurs.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDetailed() throws Exception {
+    TestTables.MessageLog log = new TestTables.MessageLog(ReactionRowReader.class);
+    Diagnostics diagnostics = convert(true, log);
+    List<String> messages = log.getMessages();
+    assertTrue(messages.toString(), messages.contains("Gene g2 is not included in model."));
+    assertTrue(messages.toString(), messages.size() >= diagnostics.getTotalCount());
+  }
+
+}
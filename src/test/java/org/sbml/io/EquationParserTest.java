@@ -0,0 +1,173 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.io.ParsedReaction.Participant;
+
+/**
+ * Checks that {@link EquationParser} splits reaction equations into the right
+ * participants and that its fast path for stoichiometric coefficients gives
+ * exactly the same values as {@link Double#parseDouble(String)}.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class EquationParserTest {
+
+  private IdentifierCache ids;
+
+  private EquationParser parser;
+
+  private List<String> arrows;
+
+  private List<Participant> participants;
+
+  @Before
+  public void setUp() {
+    ids = new IdentifierCache();
+    parser = new EquationParser(ids);
+    arrows = new ArrayList<String>();
+    participants = new ArrayList<Participant>();
+  }
+
+  /**
+   * @param token
+   * @return the coefficient parsed from the given token in the middle of a
+   *         longer string.
+   */
+  private static double parseCoefficient(String token) {
+    String eqn = "x " + token + " y";
+    return EquationParser.parseCoefficient(eqn, 2, 2 + token.length());
+  }
+
+  /**
+   * @param token
+   */
+  private static void assertSameAsJava(String token) {
+    assertEquals(token, Double.doubleToLongBits(Double.parseDouble(token)),
+      Double.doubleToLongBits(parseCoefficient(token)));
+  }
+
+  /**
+   * Numbers with up to 15 digits and exponents up to 22 are computed by the
+   * fast path; all others by the fallback.
+   */
+  @Test
+  public void testCoefficientsLikeJava() {
+    Random random = new Random(7L);
+    for (int i = 0; i < 100000; i++) {
+      int digits = 1 + random.nextInt(18);
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < digits; j++) {
+        sb.append((char) ('0' + random.nextInt(10)));
+      }
+      if (random.nextBoolean()) {
+        sb.insert(random.nextInt(digits + 1), '.');
+        if (sb.charAt(0) == '.' && random.nextBoolean()) {
+          sb.insert(0, '0');
+        }
+      }
+      if (random.nextInt(3) == 0) {
+        sb.append(random.nextBoolean() ? 'e' : 'E');
+        int e = random.nextInt(61) - 30;
+        sb.append(e < 0 ? "-" : random.nextBoolean() ? "+" : "").append(Math.abs(e));
+      }
+      assertSameAsJava(sb.toString());
+    }
+  }
+
+  @Test
+  public void testCoefficientBoundaries() {
+    for (String token : new String[] {"1", "0", "0.5", ".5", "5.", "2e0", "1.5E2", "1e-3", "123456789012345",
+        "1234567890123456", "0.1234567890123456789", "9007199254740993", "1e22", "1e23", "1e-22", "1e-23",
+        "4.35e-22", "1.7976931348623157e308", "4.9e-324", "1e0400"}) {
+      assertSameAsJava(token);
+    }
+  }
+
+  @Test
+  public void testSpecialCoefficients() {
+    assertTrue(Double.isInfinite(parseCoefficient("inf")));
+    assertTrue(Double.isNaN(parseCoefficient("NaN")));
+  }
+
+  @Test
+  public void testReversibleEquation() {
+    parser.parse("0.5 glc-D[e]  +\t2 h2o[c] <=> 1e-3 pyr[c]", arrows, participants);
+    assertEquals(Arrays.asList("<=>"), arrows);
+    assertTrue(EquationParser.isReversibleArrow(arrows.get(0)));
+    assertEquals(3, participants.size());
+    assertParticipant(participants.get(0), ids.toID("glc-D", 'M'), "e", 0.5d, false);
+    assertParticipant(participants.get(1), ids.toID("h2o", 'M'), "c", 2d, false);
+    assertParticipant(participants.get(2), ids.toID("pyr", 'M'), "c", 1e-3, true);
+    // Identifiers are taken from the cache.
+    assertSame(ids.toID("h2o", 'M'), participants.get(1).speciesId);
+    assertSame(ids.intern("c"), participants.get(1).compartmentId);
+  }
+
+  @Test
+  public void testArrows() {
+    for (String arrow : new String[] {"->", "=>", "<->", "<=>"}) {
+      arrows.clear();
+      participants.clear();
+      parser.parse("a[c] " + arrow + " b[c]", arrows, participants);
+      assertEquals(Arrays.asList(arrow), arrows);
+      assertEquals(arrow.startsWith("<"), EquationParser.isReversibleArrow(arrow));
+      assertFalse(participants.get(0).product);
+      assertTrue(participants.get(1).product);
+    }
+  }
+
+  /**
+   * Exchange reactions have no products, and the coefficient of a species
+   * does not carry over to the next one.
+   */
+  @Test
+  public void testExchange() {
+    parser.parse("3 a[e] + b[e] -> ", arrows, participants);
+    assertEquals(Arrays.asList("->"), arrows);
+    assertEquals(2, participants.size());
+    assertEquals(3d, participants.get(0).coefficient, 0d);
+    assertEquals(1d, participants.get(1).coefficient, 0d);
+  }
+
+  @Test
+  public void testSeveralArrows() {
+    parser.parse("a[c] -> b[c] <=> c[c]", arrows, participants);
+    assertEquals(Arrays.asList("->", "<=>"), arrows);
+    assertEquals(3, participants.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingCompartment() {
+    parser.parse("a] -> b[c]", arrows, participants);
+  }
+
+  /**
+   * @param participant
+   * @param speciesId
+   * @param compartmentId
+   * @param coefficient
+   * @param product
+   */
+  private static void assertParticipant(Participant participant, String speciesId, String compartmentId,
+    double coefficient, boolean product) {
+    assertEquals(speciesId, participant.speciesId);
+    assertEquals(compartmentId, participant.compartmentId);
+    assertEquals(coefficient, participant.coefficient, 0d);
+    assertEquals(product, participant.product);
+  }
+
+}
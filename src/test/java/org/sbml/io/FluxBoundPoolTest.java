@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.jsbml.Parameter;
+
+/**
+ * Checks the hash table of {@link FluxBoundPool} and the identifiers of
+ * pooled parameters.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class FluxBoundPoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Compares the pool with a {@link HashMap} while it grows from its initial
+   * capacity to several thousand values, many of which are put twice.
+   */
+  @Test
+  public void testLikeHashMap() {
+    FluxBoundPool pool = new FluxBoundPool("mmol_per_gDW_per_hr");
+    Map<Double, Parameter> expected = new HashMap<Double, Parameter>();
+    Random random = new Random(13L);
+    for (int i = 0; i < 5000; i++) {
+      double value = random.nextInt(3) == 0 ? random.nextInt(100) : random.nextGaussian() * 1000d;
+      Parameter p = new Parameter("p" + i);
+      pool.put(value, p);
+      expected.put(value, p);
+      assertEquals(expected.size(), pool.size());
+    }
+    for (Map.Entry<Double, Parameter> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), pool.get(entry.getKey()));
+    }
+    for (int i = 0; i < 1000; i++) {
+      double value = 0.5d + random.nextInt(1000);
+      if (!expected.containsKey(value)) {
+        assertNull(pool.get(value));
+      }
+    }
+  }
+
+  /**
+   * Puts as many values as the initial table holds, which all collide at its
+   * last position, so that the probes wrap around.
+   */
+  @Test
+  public void testCollisions() {
+    FluxBoundPool pool = new FluxBoundPool("mmol_per_gDW_per_hr");
+    Map<Double, Parameter> expected = new HashMap<Double, Parameter>();
+    // All values are searched first at the last position of the initial table.
+    for (int i = 1; expected.size() < 7; i++) {
+      double value = -i;
+      long h = Double.doubleToLongBits(value) * 0x9E3779B97F4A7C15L;
+      if ((((int) (h ^ (h >>> 32))) & 15) == 15) {
+        Parameter p = new Parameter("p" + i);
+        pool.put(value, p);
+        expected.put(value, p);
+      }
+    }
+    assertEquals(expected.size(), pool.size());
+    for (Map.Entry<Double, Parameter> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), pool.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void testReplace() {
+    FluxBoundPool pool = new FluxBoundPool("mmol_per_gDW_per_hr");
+    Parameter p = new Parameter("p"), q = new Parameter("q");
+    pool.put(-5.5d, p);
+    pool.put(-5.5d, q);
+    assertEquals(1, pool.size());
+    assertSame(q, pool.get(-5.5d));
+  }
+
+  /**
+   * Values are compared by their bit patterns, so that NaN can be found and
+   * negative zero is distinct from zero.
+   */
+  @Test
+  public void testSpecialValues() {
+    FluxBoundPool pool = new FluxBoundPool("mmol_per_gDW_per_hr");
+    Parameter nan = new Parameter("nan"), zero = new Parameter("zero");
+    pool.put(Double.NaN, nan);
+    pool.put(0d, zero);
+    assertSame(nan, pool.get(Double.NaN));
+    assertSame(zero, pool.get(0d));
+    assertNull(pool.get(-0d));
+  }
+
+  @Test
+  public void testToId() {
+    assertEquals("flux_bound_minus_5_5", FluxBoundPool.toId(-5.5d));
+    assertEquals("flux_bound_10", FluxBoundPool.toId(10d));
+    assertEquals("flux_bound_0_001", FluxBoundPool.toId(1e-3));
+    assertEquals("flux_bound_2_5", FluxBoundPool.toId(2.50d));
+    assertEquals("flux_bound_minus_1500000", FluxBoundPool.toId(-1.5e6));
+    assertEquals("flux_bound_NaN", FluxBoundPool.toId(Double.NaN));
+  }
+
+  /**
+   * With a pool, reactions do not receive parameters of their own.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testPooledModel() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 100, 5L);
+    ConversionOptions options = TestTables.options();
+    String model = TestTables.convert(metabolites, reactions, new File(folder.getRoot(), "single.xml"), options);
+    assertTrue(model.contains("_lower_bound\""));
+    options.setPoolFluxBounds(true);
+    model = TestTables.convert(metabolites, reactions, new File(folder.getRoot(), "pooled.xml"), options);
+    assertFalse(model.contains("_lower_bound\""));
+    assertFalse(model.contains("_upper_bound\""));
+    assertTrue(model.contains("id=\"flux_bound_minus_10\""));
+    assertTrue(model.contains("id=\"flux_bound_10\""));
+  }
+
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.fbc.Association;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProduct;
+import org.sbml.jsbml.ext.fbc.GeneProductAssociation;
+import org.sbml.jsbml.ext.fbc.LogicalOperator;
+
+/**
+ * Checks that {@link GPRCache} parses each rule once and gives all further
+ * reactions with the same rule an equal association.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class GPRCacheTest {
+
+  private Model m;
+
+  /**
+   * Creates an empty model.
+   */
+  @Before
+  public void setUp() {
+    m = new SBMLDocument(3, 1).createModel("m");
+    ((FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel)).setStrict(true);
+  }
+
+  /**
+   * @param gpa
+   * @return the identifiers of all gene products in the association.
+   */
+  private static Set<String> geneProducts(GeneProductAssociation gpa) {
+    Set<String> ids = new TreeSet<String>();
+    GPRCache.collectGeneProducts(gpa.getAssociation(), ids);
+    return ids;
+  }
+
+  /**
+   * @return the number of gene products in the model.
+   */
+  private int getGeneProductCount() {
+    return ((FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel)).getGeneProductCount();
+  }
+
+  /**
+   * White space is collapsed and trimmed.
+   */
+  @Test
+  public void testNormalize() {
+    assertEquals("(g1 and g2) or g3", GPRCache.normalize("  (g1  and\tg2)\n or g3 "));
+    assertEquals("", GPRCache.normalize(" \t"));
+  }
+
+  /**
+   * The same rule with other white space is copied from the first reaction.
+   */
+  @Test
+  public void testHits() {
+    GPRCache cache = new GPRCache();
+    assertTrue(Double.isNaN(cache.getHitRate()));
+    Reaction r1 = m.createReaction("R_1");
+    GeneProductAssociation gpa1 = cache.parseGPR(r1, "(g1 and g2) or g3", false);
+    assertNotNull(gpa1);
+    assertEquals(3, getGeneProductCount());
+
+    Reaction r2 = m.createReaction("R_2");
+    GeneProductAssociation gpa2 = cache.parseGPR(r2, " (g1 and  g2) or g3", false);
+    assertNotSame(gpa1.getAssociation(), gpa2.getAssociation());
+    assertEquals(gpa1.getAssociation().toString(), gpa2.getAssociation().toString());
+    assertEquals(geneProducts(gpa1), geneProducts(gpa2));
+    assertSame(r2, gpa2.getParent());
+    assertEquals(3, getGeneProductCount());
+    assertEquals(0.5d, cache.getHitRate(), 0d);
+
+    cache.parseGPR(m.createReaction("R_3"), "g1 or g4", false);
+    assertEquals(4, getGeneProductCount());
+    assertEquals(1d / 3d, cache.getHitRate(), 0d);
+  }
+
+  /**
+   * A rule that cannot be parsed is only tried once.
+   */
+  @Test
+  public void testInvalid() {
+    GPRCache cache = new GPRCache();
+    assertNull(cache.parseGPR(m.createReaction("R_1"), "g1 and (g2", false));
+    assertNull(cache.parseGPR(m.createReaction("R_2"), "g1  and (g2", false));
+    assertEquals(0.5d, cache.getHitRate(), 0d);
+    assertNull(cache.getTemplate("g1 and (g2"));
+  }
+
+  /**
+   * The template does not belong to the first reaction, so that this
+   * reaction does not stay reachable through the cache and changes to its
+   * association do not reach later reactions.
+   */
+  @Test
+  public void testDetachedTemplate() {
+    GPRCache cache = new GPRCache();
+    Reaction r1 = m.createReaction("R_1");
+    GeneProductAssociation gpa1 = cache.parseGPR(r1, "g1 and g2", false);
+    String rule = gpa1.getAssociation().toString();
+    Association template = cache.getTemplate("g1  and g2");
+    assertNotSame(gpa1.getAssociation(), template);
+    assertNull(template.getParent());
+    assertEquals(rule, template.toString());
+
+    ((LogicalOperator) gpa1.getAssociation()).getListOfAssociations().remove(1);
+    m.removeReaction(r1);
+    GeneProductAssociation gpa2 = cache.parseGPR(m.createReaction("R_2"), "g1 and g2", false);
+    assertEquals(rule, gpa2.getAssociation().toString());
+    assertEquals(geneProducts(gpa2).toString(), 2, geneProducts(gpa2).size());
+    assertNull(template.getParent());
+  }
+
+  /**
+   * Gene products are found by their label.
+   */
+  @Test
+  public void testGeneProducts() {
+    GPRCache cache = new GPRCache();
+    cache.parseGPR(m.createReaction("R_1"), "g1 and g2", false);
+    GeneProduct g1 = cache.getGeneProduct(m, "g1");
+    assertNotNull(g1);
+    assertEquals("G_g1", g1.getId());
+    assertNull(cache.getGeneProduct(m, "g5"));
+    GeneProduct g5 = ((FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel)).createGeneProduct("G_g5");
+    assertSame(g5, cache.getGeneProduct(m, "g5"));
+  }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.groups.Group;
+import org.sbml.jsbml.ext.groups.GroupsConstants;
+import org.sbml.jsbml.ext.groups.GroupsModelPlugin;
+
+/**
+ * Checks the identifiers that {@link IdRegistry} generates and the groups it
+ * keeps by subsystem.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class IdRegistryTest {
+
+  /**
+   * @return an empty model.
+   */
+  private static Model createModel() {
+    return new SBMLDocument(3, 1).createModel("m");
+  }
+
+  /**
+   * Identifiers that already exist in the model are skipped, and the counter
+   * never goes back.
+   */
+  @Test
+  public void testCollisions() {
+    Model m = createModel();
+    m.createSpecies("s2");
+    m.createParameter("s3");
+    IdRegistry registry = new IdRegistry();
+    assertEquals("s1", registry.nextId(m, "s"));
+    assertEquals("s4", registry.nextId(m, "s"));
+    assertEquals("p1", registry.nextId(m, "p"));
+    // s1 is still free, since nextId does not add anything to the model.
+    assertEquals("s5", registry.nextId(m, "s"));
+    m.createSpecies("s6");
+    assertEquals("s7", registry.nextId(m, "s"));
+  }
+
+  /**
+   * Groups of subsystems are created once and found by their name.
+   */
+  @Test
+  public void testGroups() {
+    Model m = createModel();
+    m.createSpecies(IdRegistry.SUBSYSTEM_PREFIX + 1);
+    IdRegistry registry = new IdRegistry();
+    assertNull(registry.getGroup("Glycolysis"));
+    Group glycolysis = registry.createGroup(m, "Glycolysis");
+    assertEquals(IdRegistry.SUBSYSTEM_PREFIX + 2, glycolysis.getId());
+    assertEquals("Glycolysis", glycolysis.getName());
+    assertEquals(633, glycolysis.getSBOTerm());
+    assertEquals(Group.Kind.partonomy, glycolysis.getKind());
+    assertSame(glycolysis, registry.getGroup("Glycolysis"));
+    Group transport = registry.createGroup(m, "Transport");
+    assertEquals(IdRegistry.SUBSYSTEM_PREFIX + 3, transport.getId());
+    assertEquals(2, ((GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel)).getGroupCount());
+  }
+
+  /**
+   * A new registry finds the groups of a model that it has not created and
+   * does not reuse their identifiers.
+   */
+  @Test
+  public void testIndexGroups() {
+    Model m = createModel();
+    IdRegistry first = new IdRegistry();
+    Group glycolysis = first.createGroup(m, "Glycolysis");
+    ((GroupsModelPlugin) m.getPlugin(GroupsConstants.shortLabel)).createGroup("unnamed");
+
+    IdRegistry registry = new IdRegistry();
+    registry.indexGroups(m);
+    assertSame(glycolysis, registry.getGroup("Glycolysis"));
+    assertEquals(IdRegistry.SUBSYSTEM_PREFIX + 2, registry.createGroup(m, "Transport").getId());
+  }
+
+}
@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link IdentifierCache} converts each abbreviation only once
+ * per prefix and hands out canonical identifiers.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class IdentifierCacheTest {
+
+  /**
+   * Repeated requests are answered from the cache with the same instance.
+   */
+  @Test
+  public void testHits() {
+    IdentifierCache cache = new IdentifierCache();
+    assertTrue(Double.isNaN(cache.getHitRate()));
+    String id = cache.toID("glc-D", 'M');
+    assertEquals("M_glc_D", id);
+    assertSame(id, cache.toID("glc-D", 'M'));
+    assertSame(id, cache.toID(new String("glc-D"), 'M'));
+    assertEquals(2L, cache.getHitCount());
+    assertEquals(1L, cache.getMissCount());
+    assertEquals(2d / 3d, cache.getHitRate(), 0d);
+  }
+
+  /**
+   * The same abbreviation results in different identifiers for different
+   * prefixes, and identifiers that start with an underscore get no second
+   * one.
+   */
+  @Test
+  public void testPrefixes() {
+    IdentifierCache cache = new IdentifierCache();
+    assertEquals("M_atp", cache.toID("atp", 'M'));
+    assertEquals("R_atp", cache.toID("atp", 'R'));
+    assertEquals(2L, cache.getMissCount());
+    String id = cache.toID("13dpg", 'M');
+    assertTrue(id, id.startsWith("M_") && !id.startsWith("M__"));
+    assertEquals(3, cache.size());
+  }
+
+  /**
+   * Identifiers that are built elsewhere are replaced by the instance in the
+   * cache.
+   */
+  @Test
+  public void testIntern() {
+    IdentifierCache cache = new IdentifierCache();
+    String id = cache.toID("pyr", 'M');
+    assertSame(id, cache.intern(new StringBuilder("M_").append("pyr").toString()));
+    String other = new String("M_other");
+    assertSame(other, cache.intern(other));
+    assertSame(other, cache.intern(new String("M_other")));
+    assertEquals(2, cache.size());
+    assertEquals(0L, cache.getHitCount());
+  }
+
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCSpeciesPlugin;
+
+/**
+ * Checks that species are only created in the compartments in which the
+ * reactions use them, based on the templates from the metabolite table that
+ * {@link SpeciesIndex} keeps.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class SpeciesIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Species are found by metabolite and compartment.
+   */
+  @Test
+  public void testIndex() {
+    Model m = new SBMLDocument(3, 1).createModel("m");
+    SpeciesIndex index = new SpeciesIndex();
+    assertTrue(index.get("M_atp").isEmpty());
+    Compartment c = m.createCompartment("c");
+    index.putCompartment(c);
+    assertSame(c, index.getCompartment("c"));
+    assertNull(index.getCompartment("e"));
+    Species atpC = m.createSpecies("M_atp_c", c);
+    Species atpE = m.createSpecies("M_atp_e");
+    index.put("M_atp", "c", atpC);
+    index.put("M_atp", "e", atpE);
+    assertSame(atpC, index.get("M_atp", "c"));
+    assertSame(atpE, index.get("M_atp", "e"));
+    assertNull(index.get("M_atp", "m"));
+    assertNull(index.get("M_adp", "c"));
+    assertEquals(new HashSet<Species>(Arrays.asList(atpC, atpE)), new HashSet<Species>(index.get("M_atp")));
+  }
+
+  /**
+   * Unused metabolites do not become species, and no species or compartment
+   * remains in the default compartment.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testTemplates() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.writeLines(metabolites, Arrays.asList(TestTables.METABOLITES_HEADER,
+      "glc;Glucose;C6H12O6;x;0", "g6p;Glucose 6-phosphate;C6H11O9P;x;-2", "unused;Unused;H2O;x;0"));
+    TestTables.writeLines(reactions, Arrays.asList(TestTables.REACTIONS_HEADER,
+      "GLCt;;glc[e] <=> glc[c];;;;;true;-1000;1000;;;;;",
+      "HEX;;glc[c] -> g6p[c];;;;;false;0;1000;;;;;"));
+    Model m = new Table2Model(metabolites, reactions, TestTables.options()).getSBMLDocument().getModel();
+
+    List<String> ids = new ArrayList<String>();
+    for (Species s : m.getListOfSpecies()) {
+      ids.add(s.getId());
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("M_glc_e", "M_glc_c", "M_g6p_c")), new HashSet<String>(ids));
+    ids.clear();
+    for (Compartment c : m.getListOfCompartments()) {
+      ids.add(c.getId());
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("c", "e")), new HashSet<String>(ids));
+
+    for (String id : new String[] {"M_glc_e", "M_glc_c"}) {
+      Species glc = m.getSpecies(id);
+      assertEquals("Glucose", glc.getName());
+      assertEquals("C6H12O6", ((FBCSpeciesPlugin) glc.getPlugin(FBCConstants.shortLabel)).getChemicalFormula());
+      assertEquals(id.substring(id.length() - 1), glc.getCompartment());
+    }
+    Species g6p = m.getSpecies("M_g6p_c");
+    assertEquals(-2, ((FBCSpeciesPlugin) g6p.getPlugin(FBCConstants.shortLabel)).getCharge());
+  }
+
+}
@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SpeciesReference;
+
+/**
+ * Checks that {@link StoichiometricMatrix} agrees with the converted model
+ * and that it is exported without loss.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class StoichiometricMatrixTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param metabolites
+   * @param reactions
+   * @return a conversion that builds the stoichiometric matrix.
+   * @throws IOException
+   */
+  private static Table2Model convert(File metabolites, File reactions) throws IOException {
+    ConversionOptions options = TestTables.options();
+    options.setStoichiometry(StoichiometricMatrix.Format.SMX);
+    return new Table2Model(metabolites, reactions, options);
+  }
+
+  /**
+   * @return the matrix of a few reactions, in which species occur on both
+   *         sides or twice on one side.
+   * @throws IOException
+   */
+  private StoichiometricMatrix small() throws IOException {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.writeLines(metabolites, Arrays.asList(TestTables.METABOLITES_HEADER, "A;A;;x;", "B;B;;x;",
+      "C;C;;x;", "D;D;;x;"));
+    TestTables.writeLines(reactions, Arrays.asList(TestTables.REACTIONS_HEADER,
+      "R1;;A[c] + 2 B[c] -> C[c];;;;;false;0;10;1;;;;",
+      "R2;;C[c] <=> A[c] + A[c];;;;;true;-1000;1000;;;;;",
+      "R3;;B[c] + C[c] -> B[c] + 0.5 D[e];;;;;false;;;;;;;",
+      "R4;;D[e] <=> ;;;;;true;-10;inf;;;;;"));
+    return convert(metabolites, reactions).getStoichiometricMatrix();
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testSmall() throws IOException {
+    StoichiometricMatrix matrix = small();
+    assertEquals(Arrays.asList("M_A_c", "M_B_c", "M_C_c", "M_D_e"), matrix.getRowIds());
+    assertEquals(Arrays.asList("R_R1", "R_R2", "R_R3", "R_R4"), matrix.getColumnIds());
+    assertArrayEquals(new int[] {0, 3, 5, 7, 8}, matrix.getColumnPointers());
+    assertArrayEquals(new int[] {0, 1, 2, 0, 2, 2, 3, 3}, matrix.getRowIndices());
+    assertArrayEquals(new double[] {-1d, -2d, 1d, 2d, -1d, -1d, 0.5d, -1d}, matrix.getValues(), 0d);
+    assertEquals(8, matrix.getNonZeroCount());
+    assertArrayEquals(new double[] {0d, -1000d, Double.NEGATIVE_INFINITY, -10d}, matrix.getLowerBounds(), 0d);
+    assertArrayEquals(new double[] {10d, 1000d, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY},
+      matrix.getUpperBounds(), 0d);
+    assertArrayEquals(new double[] {1d, 0d, 0d, 0d}, matrix.getObjective(), 0d);
+
+    StringWriter mtx = new StringWriter();
+    matrix.writeMatrixMarket(mtx);
+    assertEquals("%%MatrixMarket matrix coordinate real general\n% 4 species x 4 reactions\n4 4 8\n"
+        + "1 1 -1.0\n2 1 -2.0\n3 1 1.0\n1 2 2.0\n3 2 -1.0\n3 3 -1.0\n4 3 0.5\n4 4 -1.0\n", mtx.toString());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testTranspose() throws IOException {
+    StoichiometricMatrix matrix = small();
+    StoichiometricMatrix transposed = matrix.transpose();
+    assertEquals(matrix.getColumnIds(), transposed.getRowIds());
+    assertArrayEquals(new int[] {0, 2, 3, 6, 8}, transposed.getColumnPointers());
+    assertArrayEquals(new int[] {0, 1, 0, 0, 1, 2, 2, 3}, transposed.getRowIndices());
+    assertArrayEquals(new double[] {-1d, 2d, -2d, 1d, -1d, -1d, 0.5d, -1d}, transposed.getValues(), 0d);
+    assertMatrixEquals(matrix, transposed.transpose());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testBinary() throws IOException {
+    StoichiometricMatrix matrix = small();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    matrix.writeBinary(out);
+    assertMatrixEquals(matrix, StoichiometricMatrix.readBinary(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IOException.class)
+  public void testNotBinary() throws IOException {
+    StoichiometricMatrix.readBinary(new ByteArrayInputStream(new byte[] {'S', 'M', 'X', '0', 0, 0, 0, 0}));
+  }
+
+  /**
+   * Each column contains the same net coefficients as the reaction in the
+   * model.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testLikeModel() throws IOException {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 300, 11L);
+    Table2Model converter = convert(metabolites, reactions);
+    Model model = converter.getSBMLDocument().getModel();
+    StoichiometricMatrix matrix = converter.getStoichiometricMatrix();
+    assertEquals(model.getReactionCount(), matrix.getColumnIds().size());
+    for (int j = 0; j < model.getReactionCount(); j++) {
+      Reaction r = model.getReaction(j);
+      assertEquals(r.getId(), matrix.getColumnIds().get(j));
+      Map<String, Double> expected = new TreeMap<String, Double>();
+      for (SpeciesReference specRef : r.getListOfReactants()) {
+        expected.merge(specRef.getSpecies(), -specRef.getStoichiometry(), Double::sum);
+      }
+      for (SpeciesReference specRef : r.getListOfProducts()) {
+        expected.merge(specRef.getSpecies(), specRef.getStoichiometry(), Double::sum);
+      }
+      expected.values().removeIf(value -> value.doubleValue() == 0d);
+      Map<String, Double> actual = new TreeMap<String, Double>();
+      for (int k = matrix.getColumnPointers()[j]; k < matrix.getColumnPointers()[j + 1]; k++) {
+        actual.put(matrix.getRowIds().get(matrix.getRowIndices()[k]), matrix.getValues()[k]);
+      }
+      assertEquals(r.getId(), expected, actual);
+    }
+  }
+
+  /**
+   * Streaming writes the same matrix.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testStreaming() throws Exception {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 300, 11L);
+    ConversionOptions options = TestTables.options();
+    options.setStoichiometry(StoichiometricMatrix.Format.SMX);
+    File dom = new File(folder.newFolder("dom"), "model.xml");
+    TestTables.convert(metabolites, reactions, dom, options);
+    options.setStreaming(true);
+    File streaming = new File(folder.newFolder("streaming"), "model.xml.gz");
+    TestTables.convert(metabolites, reactions, streaming, options);
+    assertMatrixEquals(read(new File(dom.getParentFile(), "model.smx")), read(new File(streaming.getParentFile(), "model.smx")));
+  }
+
+  /**
+   * @param file
+   * @return the matrix in the given binary file.
+   * @throws IOException
+   */
+  private static StoichiometricMatrix read(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      return StoichiometricMatrix.readBinary(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param expected
+   * @param actual
+   */
+  private static void assertMatrixEquals(StoichiometricMatrix expected, StoichiometricMatrix actual) {
+    assertEquals(expected.getRowIds(), actual.getRowIds());
+    assertEquals(expected.getColumnIds(), actual.getColumnIds());
+    assertArrayEquals(expected.getColumnPointers(), actual.getColumnPointers());
+    assertArrayEquals(expected.getRowIndices(), actual.getRowIndices());
+    assertArrayEquals(expected.getValues(), actual.getValues(), 0d);
+    assertArrayEquals(expected.getLowerBounds(), actual.getLowerBounds(), 0d);
+    assertArrayEquals(expected.getUpperBounds(), actual.getUpperBounds(), 0d);
+    assertArrayEquals(expected.getObjective(), actual.getObjective(), 0d);
+  }
+
+}
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks quoting, line terminators, byte order marks, and character sets of
+ * {@link TableTokenizer}, and that rows are split in the same way wherever the
+ * boundaries of the mapped windows or decompressed chunks fall.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class TableTokenizerTest {
+
+  /** The rows of the sample table, which are written with several line terminators. */
+  private static final String ROWS[][] = {
+    {"Abbreviation", "Name", "Formula"},
+    {"glc", "D-Glucose", "C6H12O6"},
+    {"a;b", "say \"hi\"", ""},
+    {"multi\nline", "Glucöse", "ü"},
+    {"", "", ""},
+    {"crlf\r\nwithin", "\"", "end"},
+    {"last"}
+  };
+
+  private static final byte BYTE_ORDER_MARK[] = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param lineTerminator
+   * @param trailing
+   *        whether the last row is terminated
+   * @return the sample table, in which all columns that contain a separator,
+   *         quote, or line break are quoted, and the first column of the
+   *         second row is quoted without need.
+   */
+  private static String format(String lineTerminator, boolean trailing) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < ROWS.length; i++) {
+      for (int j = 0; j < ROWS[i].length; j++) {
+        if (j > 0) {
+          sb.append(';');
+        }
+        String column = ROWS[i][j];
+        if ((i == 1 && j == 0) || column.matches("(?s).*[;\"\r\n].*")) {
+          sb.append('"').append(column.replace("\"", "\"\"")).append('"');
+        } else {
+          sb.append(column);
+        }
+      }
+      if (trailing || (i < ROWS.length - 1)) {
+        sb.append(lineTerminator);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param name
+   * @param bom
+   *        whether the file begins with a UTF-8 byte order mark
+   * @param content
+   * @param charset
+   * @return a new file, which is compressed if its name ends with
+   *         {@code .gz} or {@code .zip}.
+   * @throws IOException
+   */
+  private File write(String name, boolean bom, String content, Charset charset) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    OutputStream out;
+    if (name.endsWith(".zip")) {
+      ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+      zip.putNextEntry(new ZipEntry(Compression.stripExtension(name)));
+      out = zip;
+    } else {
+      out = Compression.openOutput(file);
+    }
+    try {
+      if (bom) {
+        out.write(BYTE_ORDER_MARK);
+      }
+      out.write(content.getBytes(charset));
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * @param tokenizer
+   * @return all rows of the given tokenizer, which is closed afterwards.
+   * @throws IOException
+   */
+  private static List<String[]> readAll(TableTokenizer tokenizer) throws IOException {
+    List<String[]> rows = new ArrayList<String[]>();
+    try {
+      TableRow row;
+      while ((row = tokenizer.next()) != null) {
+        assertEquals(rows.size(), row.getRowNumber());
+        String columns[] = new String[row.size()];
+        for (int i = 0; i < columns.length; i++) {
+          columns[i] = row.get(i);
+          assertEquals(columns[i].isEmpty(), row.isEmpty(i));
+        }
+        rows.add(columns);
+      }
+      // The end of the table is reported again.
+      assertNull(tokenizer.next());
+    } finally {
+      tokenizer.close();
+    }
+    return rows;
+  }
+
+  /**
+   * @param message
+   * @param rows
+   */
+  private static void assertRows(String message, List<String[]> rows) {
+    assertEquals(message, ROWS.length, rows.size());
+    for (int i = 0; i < ROWS.length; i++) {
+      assertArrayEquals(message + ", row " + i, ROWS[i], rows.get(i));
+    }
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testQuotingAndLineTerminators() throws IOException {
+    for (String lineTerminator : new String[] {"\n", "\r\n", "\r"}) {
+      for (boolean trailing : new boolean[] {true, false}) {
+        for (boolean bom : new boolean[] {true, false}) {
+          String message = Arrays.asList(lineTerminator.replace("\r", "CR").replace("\n", "LF"), trailing, bom).toString();
+          File file = write("table.csv", bom, format(lineTerminator, trailing), StandardCharsets.UTF_8);
+          assertRows(message, readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps the table in windows of every size from the longest row to the
+   * whole file.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testWindowBoundaries() throws IOException {
+    for (String lineTerminator : new String[] {"\n", "\r\n", "\r"}) {
+      String content = format(lineTerminator, true);
+      File file = write("table.csv", true, content, StandardCharsets.UTF_8);
+      long length = file.length();
+      for (long windowSize = 32; windowSize <= length; windowSize++) {
+        assertRows("window " + windowSize, readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8, windowSize, 1)));
+      }
+    }
+  }
+
+  /**
+   * Decompresses the table in chunks of every size up to the whole file,
+   * including chunks that are shorter than a single row.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testChunkBoundaries() throws IOException {
+    for (String name : new String[] {"table.csv.gz", "table.csv.zip"}) {
+      for (String lineTerminator : new String[] {"\n", "\r\n", "\r"}) {
+        String content = format(lineTerminator, false);
+        File file = write(name, true, content, StandardCharsets.UTF_8);
+        for (int chunkSize = 3; chunkSize <= content.length() + 3; chunkSize++) {
+          assertRows(name + ", chunk " + chunkSize,
+            readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8, 1L << 16, chunkSize)));
+        }
+      }
+    }
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IOException.class)
+  public void testRowLongerThanWindow() throws IOException {
+    File file = write("table.csv", false, format("\n", true), StandardCharsets.UTF_8);
+    readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8, 8, 1));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testEmptyFile() throws IOException {
+    File file = write("empty.csv", false, "", StandardCharsets.UTF_8);
+    assertTrue(readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8)).isEmpty());
+    file = write("empty.csv.gz", true, "", StandardCharsets.UTF_8);
+    assertTrue(readAll(new TableTokenizer(file, ';', StandardCharsets.UTF_8)).isEmpty());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testMultiByteCharset() throws IOException {
+    Charset gbk = Charset.forName("GBK");
+    File file = write("gbk.csv", false, format("\n", true).replace("Glucöse", "葡萄糖"), gbk);
+    List<String[]> rows = readAll(new TableTokenizer(file, ';', gbk));
+    assertEquals(ROWS.length, rows.size());
+    assertEquals("葡萄糖", rows.get(3)[1]);
+    assertEquals("say \"hi\"", rows.get(2)[1]);
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedCharset() throws IOException {
+    File file = write("utf16.csv", false, format("\n", true), StandardCharsets.UTF_16);
+    new TableTokenizer(file, ';', StandardCharsets.UTF_16).close();
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonAsciiSeparator() throws IOException {
+    File file = write("table.csv", false, format("\n", true), StandardCharsets.UTF_8);
+    new TableTokenizer(file, '§', StandardCharsets.UTF_8).close();
+  }
+
+}
@@ -0,0 +1,404 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Writes small metabolite and reaction tables in the layout of the
+ * <i>i</i>CW773 tables and converts them, so that the models of different
+ * conversion modes can be compared. The tables are random but reproducible,
+ * and they contain exchange and transport reactions that can carry flux as
+ * well as reactions that are blocked by dead-end metabolites, shared flux
+ * bounds, repeated gene-protein-reaction rules, and quoted notes.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+final class TestTables {
+
+  static final String METABOLITES_HEADER = "Abbreviation;Name;Formula;Formula2;Charge";
+
+  static final String REACTIONS_HEADER = "Abbreviation;Name;Equation;GPR;Genes;Proteins;Subsystem;Reversible;LB;UB;Obj;Conf;EC;Notes;Ref";
+
+  private static final String FORMULAS[] = {"C6H12O6", "H2O", "C3H4O3", "CO2", "H", "C10H12N5O13P3", "O2", ""};
+  private static final String CHARGES[] = {"0", "0", "-1", "0", "1", "-4", "0", ""};
+  private static final String SUBSYSTEMS[] = {"Glycolysis", "TCA cycle", "Transport", ""};
+  private static final String COEFFICIENTS[] = {"", "", "2 ", "0.5 ", "1e-3 ", "1.5E2 "};
+  private static final String BOUNDS[] = {"-1000", "-10", "-5.5", "0", ""};
+
+  /**
+   * Collects the messages of one logger from its creation until it is
+   * closed.
+   */
+  static class MessageLog extends Handler {
+
+    private final Logger logger;
+    private final Level level;
+    private final List<String> messages = new ArrayList<String>();
+
+    /**
+     * @param type
+     *        the class whose logger is observed
+     */
+    MessageLog(Class<?> type) {
+      logger = Logger.getLogger(type.getName());
+      level = logger.getLevel();
+      logger.setLevel(Level.INFO);
+      logger.addHandler(this);
+    }
+
+    /**
+     * @return all messages so far, not formatted.
+     */
+    List<String> getMessages() {
+      return messages;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.logging.Handler#publish(java.util.logging.LogRecord)
+     */
+    @Override
+    public synchronized void publish(LogRecord record) {
+      messages.add(record.getMessage());
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.logging.Handler#flush()
+     */
+    @Override
+    public void flush() {
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.logging.Handler#close()
+     */
+    @Override
+    public void close() {
+      logger.removeHandler(this);
+      logger.setLevel(level);
+    }
+
+  }
+
+  /**
+   * Utility class.
+   */
+  private TestTables() {
+  }
+
+  /**
+   * @param metabolites
+   * @param reactions
+   * @param n
+   *        the number of internal reactions
+   * @param seed
+   * @throws IOException
+   */
+  static void write(File metabolites, File reactions, int n, long seed) throws IOException {
+    Random random = new Random(seed);
+    int m = Math.max(20, n / 2);
+    List<String> lines = new ArrayList<String>();
+    lines.add(METABOLITES_HEADER);
+    for (int i = 0; i < m; i++) {
+      int k = random.nextInt(FORMULAS.length);
+      lines.add("met" + i + ";Metabolite " + i + ";" + FORMULAS[k] + ";x;" + CHARGES[k]);
+    }
+    writeLines(metabolites, lines);
+
+    lines.clear();
+    lines.add(REACTIONS_HEADER);
+    int exchanged = m / 4;
+    for (int i = 0; i < exchanged; i++) {
+      lines.add(row("EX_met" + i, "met" + i + "[e] <=> ", "", "Exchange", true, "-10", "1000", ""));
+      lines.add(row("TR_met" + i, "met" + i + "[e] <=> met" + i + "[c]", gpr(random), "Transport", true, "-1000", "1000", ""));
+    }
+    for (int i = 0; i < n; i++) {
+      boolean reversible = random.nextBoolean();
+      StringBuilder eqn = new StringBuilder();
+      appendSide(eqn, random, m, 1 + random.nextInt(2));
+      eqn.append(reversible ? " <=> " : " -> ");
+      appendSide(eqn, random, m, 1 + random.nextInt(2));
+      String lb = reversible ? BOUNDS[random.nextInt(BOUNDS.length)] : "0";
+      String ub = random.nextInt(10) == 0 ? "0" : random.nextBoolean() ? "1000" : "10";
+      lines.add(row("RXN" + i, eqn.toString(), gpr(random), SUBSYSTEMS[random.nextInt(SUBSYSTEMS.length)],
+        reversible, lb, ub, i == n / 2 ? "1" : ""));
+    }
+    writeLines(reactions, lines);
+  }
+
+  /**
+   * @param eqn
+   * @param random
+   * @param m
+   * @param count
+   */
+  private static void appendSide(StringBuilder eqn, Random random, int m, int count) {
+    for (int j = 0; j < count; j++) {
+      if (j > 0) {
+        eqn.append(" + ");
+      }
+      // A few metabolites beyond the table are dead ends that are not declared.
+      int k = random.nextInt(m + 3);
+      eqn.append(COEFFICIENTS[random.nextInt(COEFFICIENTS.length)]).append("met").append(k).append("[c]");
+    }
+  }
+
+  /**
+   * @param random
+   * @return a rule of up to three genes out of a small set, so that rules
+   *         repeat.
+   */
+  private static String gpr(Random random) {
+    int count = random.nextInt(4);
+    if (count == 0) {
+      return "";
+    }
+    List<String> genes = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      String gene = "cg" + random.nextInt(12);
+      if (!genes.contains(gene)) {
+        genes.add(gene);
+      }
+    }
+    if (genes.size() == 3) {
+      return "(" + genes.get(0) + " and " + genes.get(1) + ") or " + genes.get(2);
+    }
+    return String.join(random.nextBoolean() ? " and " : " or ", genes);
+  }
+
+  /**
+   * @return one row of the reaction table.
+   */
+  private static String row(String id, String eqn, String gpr, String subsystem, boolean reversible, String lb,
+    String ub, String objective) {
+    List<String> genes = new ArrayList<String>();
+    for (String token : gpr.replace("(", "").replace(")", "").split(" ")) {
+      if (token.startsWith("cg")) {
+        genes.add(token);
+      }
+    }
+    List<String> proteins = new ArrayList<String>();
+    for (String gene : genes) {
+      proteins.add("P" + gene);
+    }
+    String notes = (id.hashCode() % 3 == 0) ? "\"see \"\"notes\"\"; and more\"" : "";
+    String ec = (id.hashCode() % 4 == 0) ? "2.7.1.2" : "";
+    String ref = (id.hashCode() % 5 == 0) ? "PMID:1234" : "";
+    return String.join(";", id, "Reaction " + id, eqn, gpr, String.join(" ", genes), String.join(" ", proteins),
+      subsystem, Boolean.toString(reversible), lb, ub, objective, "2", ec, notes, ref);
+  }
+
+  /**
+   * @param file
+   * @return all lines of the given uncompressed file.
+   * @throws IOException
+   */
+  static List<String> readLines(File file) throws IOException {
+    return new ArrayList<String>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param file
+   * @param lines
+   * @throws IOException
+   */
+  static void writeLines(File file, List<String> lines) throws IOException {
+    Writer out = new OutputStreamWriter(Compression.openOutput(file), StandardCharsets.UTF_8);
+    try {
+      for (String line : lines) {
+        out.write(line);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @return the default options for the tables of this class, which are
+   *         encoded in UTF-8.
+   */
+  static ConversionOptions options() {
+    ConversionOptions options = new ConversionOptions();
+    options.setCharset(StandardCharsets.UTF_8);
+    return options;
+  }
+
+  /**
+   * Converts both tables with a new {@link IdentifierCache}.
+   *
+   * @param metabolites
+   * @param reactions
+   * @param output
+   *        the model file, whose name also determines the identifier of the
+   *        model
+   * @param options
+   * @return the normalized content of the written model, see
+   *         {@link #normalize(String)}.
+   * @throws Exception
+   */
+  static String convert(File metabolites, File reactions, File output, ConversionOptions options) throws Exception {
+    Table2Model.convert(metabolites, reactions, output, options, new IdentifierCache());
+    return normalize(read(output));
+  }
+
+  /**
+   * @param file
+   *        a file, which may be compressed
+   * @return the content of the file.
+   * @throws IOException
+   */
+  static String read(File file) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InputStream in = Compression.openInput(file);
+    try {
+      byte buffer[] = new byte[1 << 16];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        bytes.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param xml
+   * @return the given model without the generated meta identifiers and
+   *         the dates of its history, which differ between conversions.
+   */
+  static String normalize(String xml) {
+    return xml.replaceAll("_?[0-9a-f]{8}[-_][0-9a-f]{4}[-_][0-9a-f]{4}[-_][0-9a-f]{4}[-_][0-9a-f]{12}", "UUID")
+        .replaceAll("[0-9]{4}-[0-9]{2}-[0-9]{2}T[0-9:]+Z?", "DATE");
+  }
+
+  /**
+   * @param xml
+   *        a model
+   * @return for each list of the model, the sorted canonical forms of its
+   *         elements, in which attributes and child elements are sorted, so
+   *         that models can be compared regardless of the order of their
+   *         elements. The identifiers of groups are ignored, because they are
+   *         numbered in the order in which groups are created.
+   * @throws Exception
+   */
+  static Map<String, List<String>> canonicalize(String xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(normalize(xml))));
+    Element model = (Element) document.getDocumentElement().getElementsByTagNameNS("*", "model").item(0);
+    Map<String, List<String>> lists = new TreeMap<String, List<String>>();
+    for (Node list = model.getFirstChild(); list != null; list = list.getNextSibling()) {
+      if (list instanceof Element) {
+        List<String> elements = new ArrayList<String>();
+        for (Node child = list.getFirstChild(); child != null; child = child.getNextSibling()) {
+          if (child instanceof Element) {
+            elements.add(canonicalize((Element) child));
+          }
+        }
+        Collections.sort(elements);
+        lists.put(list.getLocalName(), elements);
+      }
+    }
+    return lists;
+  }
+
+  /**
+   * Fails with the elements that only occur in one of the given models.
+   *
+   * @param expected
+   * @param actual
+   * @throws Exception
+   * @see #canonicalize(String)
+   */
+  static void assertEquivalent(String expected, String actual) throws Exception {
+    Map<String, List<String>> e = canonicalize(expected), a = canonicalize(actual);
+    StringBuilder sb = new StringBuilder();
+    Set<String> lists = new TreeSet<String>(e.keySet());
+    lists.addAll(a.keySet());
+    for (String list : lists) {
+      List<String> x = e.containsKey(list) ? e.get(list) : Collections.<String>emptyList();
+      List<String> y = a.containsKey(list) ? a.get(list) : Collections.<String>emptyList();
+      if (!x.equals(y)) {
+        List<String> missing = new ArrayList<String>(x), unexpected = new ArrayList<String>(y);
+        missing.removeAll(y);
+        unexpected.removeAll(x);
+        sb.append(format("\n{0}: missing {1}, unexpected {2}", list, missing, unexpected));
+      }
+    }
+    if (sb.length() > 0) {
+      fail("The models differ in" + sb);
+    }
+  }
+
+  /**
+   * @param element
+   * @return the canonical form of the given element.
+   */
+  private static String canonicalize(Element element) {
+    List<String> attributes = new ArrayList<String>();
+    NamedNodeMap map = element.getAttributes();
+    for (int i = 0; i < map.getLength(); i++) {
+      Node attribute = map.item(i);
+      if (!(element.getLocalName().equals("group") && (attribute.getLocalName().equals("id") || attribute.getLocalName().equals("metaid")))) {
+        attributes.add(attribute.getLocalName() + "=" + attribute.getNodeValue());
+      }
+    }
+    Collections.sort(attributes);
+    List<String> children = new ArrayList<String>();
+    StringBuilder text = new StringBuilder();
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element) {
+        children.add(canonicalize((Element) child));
+      } else if (child.getNodeType() == Node.TEXT_NODE) {
+        text.append(child.getNodeValue());
+      }
+    }
+    Collections.sort(children);
+    return element.getLocalName() + attributes + text.toString().trim() + children;
+  }
+
+  /**
+   * @param dir
+   * @param name
+   * @return a new directory with the given name in the given directory.
+   * @throws IOException
+   */
+  static File newDirectory(File dir, String name) throws IOException {
+    return Files.createDirectories(new File(dir, name).toPath()).toFile();
+  }
+
+}
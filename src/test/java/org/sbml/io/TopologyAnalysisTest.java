@@ -0,0 +1,286 @@
+/**
+ *
+ */
+package org.sbml.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.io.Diagnostics.Category;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
+
+/**
+ * Checks the blocked reactions and dead-end metabolites that
+ * {@link TopologyAnalysis} finds and removes.
+ *
+ * @author Andreas Dr&auml;ger
+ */
+public class TopologyAnalysisTest {
+
+  /**
+   * A network in which {@code C} can be exported, {@code E} only be
+   * produced, so that {@code D} becomes a dead end as well, {@code R5}
+   * cannot carry flux because of its bounds, and {@code G} and {@code H} are
+   * only connected to each other.
+   */
+  private static final List<String> REACTIONS = Arrays.asList(
+    TestTables.REACTIONS_HEADER,
+    "EX_A;;A[e] <=> ;;;;;true;-10;1000;;;;;",
+    "TR_A;;A[e] <=> A[c];g1;g1;P1;;true;-1000;1000;;;;;",
+    "R1;;A[c] -> B[c];g2;g2;P2;;false;0;1000;;;;;",
+    "R2;;B[c] -> C[c];;;;;false;0;1000;;;;;",
+    "EX_C;;C[c] -> ;;;;;false;0;1000;;;;;",
+    "R3;;B[c] -> D[c];g3;g3;P3;;false;0;1000;;;;;",
+    "R4;;D[c] -> E[c];;;;;false;0;1000;;;;;",
+    "R5;;A[c] -> F[c];;;;;false;0;0;;;;;",
+    "R6;;G[x] <=> H[x];;;;;true;;;;;;;");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param reactions
+   *        all lines of the reaction table
+   * @param mode
+   * @return the conversion of the given reactions, whose metabolites are not
+   *         declared.
+   * @throws IOException
+   */
+  private Table2Model convert(List<String> reactions, TopologyAnalysis.Mode mode) throws IOException {
+    File metaboliteFile = folder.newFile();
+    File reactionFile = folder.newFile();
+    TestTables.writeLines(metaboliteFile, Arrays.asList(TestTables.METABOLITES_HEADER));
+    TestTables.writeLines(reactionFile, reactions);
+    ConversionOptions options = TestTables.options();
+    options.setTopology(mode);
+    options.setStoichiometry(StoichiometricMatrix.Format.SMX);
+    return new Table2Model(metaboliteFile, reactionFile, options);
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testReport() throws IOException {
+    Table2Model converter = convert(REACTIONS, TopologyAnalysis.Mode.REPORT);
+    Diagnostics diagnostics = converter.getDiagnostics();
+    assertEquals(Arrays.asList("row 6: R_R3", "row 7: R_R4", "row 8: R_R5", "row 9: R_R6"),
+      diagnostics.getSamples(Category.BLOCKED_REACTION));
+    assertEquals(Arrays.asList("M_D_c", "M_E_c", "M_F_c", "M_G_x", "M_H_x"),
+      diagnostics.getSamples(Category.DEAD_END_METABOLITE));
+    assertEquals(REACTIONS.size() - 1, converter.getSBMLDocument().getModel().getReactionCount());
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testRemove() throws IOException {
+    Model m = convert(REACTIONS, TopologyAnalysis.Mode.REMOVE).getSBMLDocument().getModel();
+    List<String> ids = new ArrayList<String>();
+    for (Reaction r : m.getListOfReactions()) {
+      ids.add(r.getId());
+    }
+    assertEquals(Arrays.asList("R_EX_A", "R_TR_A", "R_R1", "R_R2", "R_EX_C"), ids);
+    ids.clear();
+    for (Species s : m.getListOfSpecies()) {
+      ids.add(s.getId());
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("M_A_e", "M_A_c", "M_B_c", "M_C_c")), new HashSet<String>(ids));
+    // The compartment of G and H and the gene product of R3 are no longer used.
+    assertEquals(null, m.getCompartment("x"));
+    assertTrue(m.getCompartment("c") != null);
+    assertEquals(2, ((FBCModelPlugin) m.getPlugin(FBCConstants.shortLabel)).getGeneProductCount());
+  }
+
+  /**
+   * Streaming removes the same reactions, species, compartments and gene
+   * products as the model, also if all reactions are blocked.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRemoveStreaming() throws Exception {
+    List<List<String>> tables = Arrays.asList(REACTIONS, Arrays.asList(REACTIONS.get(0), REACTIONS.get(9)));
+    for (int i = 0; i < tables.size(); i++) {
+      File metaboliteFile = folder.newFile();
+      File reactionFile = folder.newFile();
+      TestTables.writeLines(metaboliteFile, Arrays.asList(TestTables.METABOLITES_HEADER));
+      TestTables.writeLines(reactionFile, tables.get(i));
+      ConversionOptions options = TestTables.options();
+      options.setTopology(TopologyAnalysis.Mode.REMOVE);
+      File dir = folder.newFolder("model" + i);
+      String expected = TestTables.convert(metaboliteFile, reactionFile, new File(dir, "model.xml"), options);
+      options.setStreaming(true);
+      File streamed = new File(folder.newFolder("streamed" + i), "model.xml");
+      assertEquals(expected, TestTables.convert(metaboliteFile, reactionFile, streamed, options));
+    }
+  }
+
+  /**
+   * The stoichiometric matrix contains the same reactions and species as the
+   * written model.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRemoveMatrix() throws Exception {
+    File metaboliteFile = folder.newFile();
+    File reactionFile = folder.newFile();
+    TestTables.writeLines(metaboliteFile, Arrays.asList(TestTables.METABOLITES_HEADER));
+    TestTables.writeLines(reactionFile, REACTIONS);
+    ConversionOptions options = TestTables.options();
+    options.setTopology(TopologyAnalysis.Mode.REMOVE);
+    options.setStoichiometry(StoichiometricMatrix.Format.SMX);
+    for (boolean streaming : new boolean[] {false, true}) {
+      options.setStreaming(streaming);
+      File dir = folder.newFolder("matrix-" + streaming);
+      File output = new File(dir, "model.xml");
+      TestTables.convert(metaboliteFile, reactionFile, output, options);
+      Model m = SBMLReader.read(output).getModel();
+      StoichiometricMatrix matrix;
+      InputStream in = new FileInputStream(new File(dir, "model" + StoichiometricMatrix.Format.SMX.getExtension()));
+      try {
+        matrix = StoichiometricMatrix.readBinary(in);
+      } finally {
+        in.close();
+      }
+      Set<String> species = new HashSet<String>();
+      for (Species s : m.getListOfSpecies()) {
+        species.add(s.getId());
+      }
+      assertEquals(species, new HashSet<String>(matrix.getRowIds()));
+      assertEquals(m.getReactionCount(), matrix.getColumnIds().size());
+      for (int j = 0; j < m.getReactionCount(); j++) {
+        Reaction r = m.getReaction(j);
+        assertEquals(r.getId(), matrix.getColumnIds().get(j));
+        Map<String, Double> expected = new HashMap<String, Double>(), actual = new HashMap<String, Double>();
+        for (SpeciesReference reference : r.getListOfReactants()) {
+          expected.put(reference.getSpecies(), -reference.getStoichiometry());
+        }
+        for (SpeciesReference reference : r.getListOfProducts()) {
+          expected.put(reference.getSpecies(), reference.getStoichiometry());
+        }
+        for (int k = matrix.getColumnPointers()[j]; k < matrix.getColumnPointers()[j + 1]; k++) {
+          actual.put(matrix.getRowIds().get(matrix.getRowIndices()[k]), matrix.getValues()[k]);
+        }
+        assertEquals(r.getId(), expected, actual);
+      }
+    }
+  }
+
+  /**
+   * A chain of reactions that ends in a dead end is blocked completely,
+   * one reaction after the other.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testLongChain() throws IOException {
+    int n = 20000;
+    List<String> reactions = new ArrayList<String>();
+    reactions.add(TestTables.REACTIONS_HEADER);
+    reactions.add("EX;;S0[c] <=> ;;;;;true;-10;1000;;;;;");
+    for (int i = 0; i < n; i++) {
+      reactions.add("R" + i + ";;S" + i + "[c] -> S" + (i + 1) + "[c];;;;;false;0;1000;;;;;");
+    }
+    Diagnostics diagnostics = convert(reactions, TopologyAnalysis.Mode.REPORT).getDiagnostics();
+    assertEquals(n + 1, diagnostics.getCount(Category.BLOCKED_REACTION));
+    assertEquals(n + 1, diagnostics.getCount(Category.DEAD_END_METABOLITE));
+  }
+
+  /**
+   * Compares the analysis with a simple fixed-point iteration on the
+   * stoichiometric matrix of a larger network.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testLikeFixedPoint() throws IOException {
+    File metabolites = folder.newFile("metabolites.csv");
+    File reactions = folder.newFile("reactions.csv");
+    TestTables.write(metabolites, reactions, 300, 17L);
+    ConversionOptions options = TestTables.options();
+    options.setTopology(TopologyAnalysis.Mode.REPORT);
+    options.setStoichiometry(StoichiometricMatrix.Format.SMX);
+    Table2Model report = new Table2Model(metabolites, reactions, options);
+    options.setTopology(TopologyAnalysis.Mode.REMOVE);
+    Model removed = new Table2Model(metabolites, reactions, options).getSBMLDocument().getModel();
+
+    StoichiometricMatrix matrix = report.getStoichiometricMatrix();
+    Model model = report.getSBMLDocument().getModel();
+    int m = matrix.getRowIds().size(), n = matrix.getColumnIds().size();
+    boolean forward[] = new boolean[n], backward[] = new boolean[n], blocked[] = new boolean[n];
+    for (int j = 0; j < n; j++) {
+      double lb = matrix.getLowerBounds()[j];
+      forward[j] = matrix.getUpperBounds()[j] > 0d;
+      backward[j] = (lb < 0d) && (model.getReaction(j).getReversible() || !Double.isInfinite(lb));
+      blocked[j] = !(forward[j] || backward[j]);
+    }
+    boolean dead[] = new boolean[m];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      int producers[] = new int[m], consumers[] = new int[m], degree[] = new int[m];
+      for (int j = 0; j < n; j++) {
+        for (int k = matrix.getColumnPointers()[j]; !blocked[j] && (k < matrix.getColumnPointers()[j + 1]); k++) {
+          int i = matrix.getRowIndices()[k];
+          double value = matrix.getValues()[k];
+          degree[i]++;
+          producers[i] += ((value > 0d) ? forward[j] : backward[j]) ? 1 : 0;
+          consumers[i] += ((value < 0d) ? forward[j] : backward[j]) ? 1 : 0;
+        }
+      }
+      for (int i = 0; i < m; i++) {
+        dead[i] = (producers[i] == 0) || (consumers[i] == 0) || (degree[i] < 2);
+      }
+      for (int j = 0; j < n; j++) {
+        for (int k = matrix.getColumnPointers()[j]; !blocked[j] && (k < matrix.getColumnPointers()[j + 1]); k++) {
+          if (dead[matrix.getRowIndices()[k]]) {
+            blocked[j] = changed = true;
+          }
+        }
+      }
+    }
+
+    Set<String> expected = new HashSet<String>(), actual = new HashSet<String>();
+    for (int j = 0; j < n; j++) {
+      if (blocked[j]) {
+        expected.add(matrix.getColumnIds().get(j));
+      }
+      if (removed.getReaction(matrix.getColumnIds().get(j)) == null) {
+        actual.add(matrix.getColumnIds().get(j));
+      }
+    }
+    assertTrue(!expected.isEmpty() && (expected.size() < n));
+    assertEquals(expected, actual);
+    assertEquals(expected.size(), report.getDiagnostics().getCount(Category.BLOCKED_REACTION));
+    int deadEnds = 0;
+    for (int i = 0; i < m; i++) {
+      deadEnds += dead[i] ? 1 : 0;
+    }
+    assertEquals(deadEnds, report.getDiagnostics().getCount(Category.DEAD_END_METABOLITE));
+  }
+
+}